@@ -0,0 +1,1618 @@
+package tongji.java.util.concurrent;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * 并发哈希表
+ * <p>
+ * 读: 全程不加锁，Node的val和next都是volatile，桶用AtomicReferenceArray做volatile读。
+ * 写: 桶为空时直接CAS放入；桶不为空(哈希冲突)才对桶的头结点synchronized，不同桶之间的写互不影响。
+ * 冲突链表长度达到TREEIFY_THRESHOLD且表足够大时转成红黑树(TreeBin)，最坏情况从O(n)降到O(log n)。
+ * 树上的读用一个读写状态lockState协调: 有写者时读者退化为沿next链表线性查找，不会被阻塞。
+ * <p>
+ * 扩容: 元素数达到sizeCtl时开始扩容，表被切成若干段(stride)，多个写线程通过CAS transferIndex各自领取一段迁移。
+ * 迁移完的桶放一个ForwardingNode，读到它的get转到新表查找，写到它的put先帮忙迁移。
+ * sizeCtl: -1代表正在初始化；其他负数时高16位是扩容戳(和表长度一一对应)，低16位是参与扩容的线程数+1；正数代表下次扩容的阈值。
+ * <p>
+ * 计数: 先CAS baseCount，失败说明有竞争，改为累加到当前线程探针对应的CounterCell上，size时再求和，
+ * 避免所有写线程在同一个计数器上自旋。
+ * <p>
+ * 和java.util.concurrent.ConcurrentHashMap一样不允许null键和null值。
+ */
+public class ConcurrentHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int DEFAULT_CAPACITY = 16;
+    static final int TREEIFY_THRESHOLD = 8;
+    static final int UNTREEIFY_THRESHOLD = 6;
+    // 表长度小于它时，冲突过多优先扩容而不是树化
+    static final int MIN_TREEIFY_CAPACITY = 64;
+    // 每个线程一次至少领取多少个桶来迁移
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int RESIZE_STAMP_BITS = 16;
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+
+    // 特殊结点的hash
+    static final int MOVED = -1;
+    static final int TREEBIN = -2;
+    static final int RESERVED = -3;
+    // 普通结点的hash都是非负数
+    static final int HASH_BITS = 0x7fffffff;
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final AtomicIntegerFieldUpdater<ConcurrentHashMap> SIZECTL = AtomicIntegerFieldUpdater.newUpdater(ConcurrentHashMap.class, "sizeCtl");
+    private static final AtomicIntegerFieldUpdater<ConcurrentHashMap> TRANSFERINDEX = AtomicIntegerFieldUpdater.newUpdater(ConcurrentHashMap.class, "transferIndex");
+    private static final AtomicIntegerFieldUpdater<ConcurrentHashMap> CELLSBUSY = AtomicIntegerFieldUpdater.newUpdater(ConcurrentHashMap.class, "cellsBusy");
+    private static final AtomicLongFieldUpdater<ConcurrentHashMap> BASECOUNT = AtomicLongFieldUpdater.newUpdater(ConcurrentHashMap.class, "baseCount");
+
+    // 计数单元的探针，冲突时换一个
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    private transient volatile AtomicReferenceArray<Node<K, V>> table;
+    // 扩容期间的新表
+    private transient volatile AtomicReferenceArray<Node<K, V>> nextTable;
+    private transient volatile int sizeCtl;
+    // 下一个待领取迁移区间的上界(不含)，从表尾向表头领取
+    private transient volatile int transferIndex;
+    private transient volatile long baseCount;
+    // 创建或扩容counterCells时的自旋锁
+    private transient volatile int cellsBusy;
+    private transient volatile CounterCell[] counterCells;
+
+    private transient EntrySet entrySet;
+
+    static class Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        volatile V val;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V val) {
+            this.hash = hash;
+            this.key = key;
+            this.val = val;
+        }
+
+        Node(int hash, K key, V val, Node<K, V> next) {
+            this(hash, key, val);
+            this.next = next;
+        }
+
+        @Override
+        public final K getKey() {
+            return key;
+        }
+
+        @Override
+        public final V getValue() {
+            return val;
+        }
+
+        @Override
+        public final V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * 在以当前结点开头的桶里查找，特殊结点各自覆盖
+         */
+        Node<K, V> find(int h, Object k) {
+            Node<K, V> e = this;
+            if (k != null) {
+                do {
+                    K ek;
+                    if (e.hash == h && ((ek = e.key) == k || (ek != null && k.equals(ek)))) return e;
+                } while ((e = e.next) != null);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 已经迁移完的桶，指向新表
+     */
+    static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> tab) {
+            super(MOVED, null, null);
+            this.nextTable = tab;
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            // 用循环而不是递归，新表也可能正在扩容
+            outer:
+            for (AtomicReferenceArray<Node<K, V>> tab = nextTable; ; ) {
+                Node<K, V> e;
+                int n;
+                if (k == null || tab == null || (n = tab.length()) == 0 || (e = tab.get((n - 1) & h)) == null) return null;
+                for (; ; ) {
+                    int eh;
+                    K ek;
+                    if ((eh = e.hash) == h && ((ek = e.key) == k || (ek != null && k.equals(ek)))) return e;
+                    if (eh < 0) {
+                        if (e instanceof ForwardingNode) {
+                            tab = ((ForwardingNode<K, V>) e).nextTable;
+                            continue outer;
+                        }
+                        return e.find(h, k);
+                    }
+                    if ((e = e.next) == null) return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * computeIfAbsent在空桶上计算时的占位结点，计算期间其他线程对这个桶的写会阻塞在它的锁上
+     */
+    static final class ReservationNode<K, V> extends Node<K, V> {
+        ReservationNode() {
+            super(RESERVED, null, null);
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            return null;
+        }
+    }
+
+    /**
+     * 带填充的计数单元，避免相邻的单元落在同一缓存行
+     */
+    static final class CounterCell {
+        private static final AtomicLongFieldUpdater<CounterCell> VALUE = AtomicLongFieldUpdater.newUpdater(CounterCell.class, "value");
+
+        long p1, p2, p3, p4, p5, p6, p7;
+        volatile long value;
+        long p9, p10, p11, p12, p13, p14, p15;
+
+        CounterCell(long x) {
+            value = x;
+        }
+
+        boolean cas(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+
+    public ConcurrentHashMap() {
+    }
+
+    public ConcurrentHashMap(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException();
+        this.sizeCtl = (initialCapacity >= (MAXIMUM_CAPACITY >>> 1)) ? MAXIMUM_CAPACITY : tableSizeFor(initialCapacity + (initialCapacity >>> 1) + 1);
+    }
+
+    public ConcurrentHashMap(Map<? extends K, ? extends V> m) {
+        this.sizeCtl = DEFAULT_CAPACITY;
+        putAll(m);
+    }
+
+    /**
+     * 高16位异或到低16位，让高位也参与桶下标的计算，并去掉符号位
+     */
+    static int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    private static int tableSizeFor(int c) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(c - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * 表长度为n时的扩容戳，左移RESIZE_STAMP_SHIFT位后一定是负数
+     */
+    static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    @Override
+    public V get(Object key) {
+        AtomicReferenceArray<Node<K, V>> tab;
+        Node<K, V> e, p;
+        int n, eh;
+        K ek;
+        int h = spread(key.hashCode());
+        if ((tab = table) != null && (n = tab.length()) > 0 && (e = tab.get((n - 1) & h)) != null) {
+            if ((eh = e.hash) == h) {
+                if ((ek = e.key) == key || (ek != null && key.equals(ek))) return e.val;
+            } else if (eh < 0) {
+                // ForwardingNode、TreeBin或ReservationNode
+                return (p = e.find(h, key)) != null ? p.val : null;
+            }
+            while ((e = e.next) != null) {
+                if (e.hash == h && ((ek = e.key) == key || (ek != null && key.equals(ek)))) return e.val;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        tryPresize(m.size());
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            putVal(e.getKey(), e.getValue(), false);
+        }
+    }
+
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) throw new NullPointerException();
+        int hash = spread(key.hashCode());
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            K fk;
+            V fv;
+            if (tab == null || (n = tab.length()) == 0) {
+                tab = initTable();
+            } else if ((f = tab.get(i = (n - 1) & hash)) == null) {
+                // 空桶，CAS放入，不加锁
+                if (tab.compareAndSet(i, null, new Node<>(hash, key, value))) break;
+            } else if ((fh = f.hash) == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else if (onlyIfAbsent && fh == hash && ((fk = f.key) == key || (fk != null && key.equals(fk))) && (fv = f.val) != null) {
+                // 头结点就是要找的，不加锁直接返回
+                return fv;
+            } else {
+                V oldVal = null;
+                synchronized (f) {
+                    // 加锁后再确认头结点没变(没有被迁移或删除)
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f; ; ++binCount) {
+                                K ek;
+                                if (e.hash == hash && ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    oldVal = e.val;
+                                    if (!onlyIfAbsent) e.val = value;
+                                    break;
+                                }
+                                Node<K, V> pred = e;
+                                if ((e = e.next) == null) {
+                                    pred.next = new Node<>(hash, key, value);
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof TreeBin) {
+                            Node<K, V> p;
+                            binCount = 2;
+                            if ((p = ((TreeBin<K, V>) f).putTreeVal(hash, key, value)) != null) {
+                                oldVal = p.val;
+                                if (!onlyIfAbsent) p.val = value;
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (binCount >= TREEIFY_THRESHOLD) treeifyBin(tab, i);
+                    if (oldVal != null) return oldVal;
+                    break;
+                }
+            }
+        }
+        addCount(1L, binCount);
+        return null;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null) throw new NullPointerException();
+        int h = spread(key.hashCode());
+        V val = null;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            K fk;
+            V fv;
+            if (tab == null || (n = tab.length()) == 0) {
+                tab = initTable();
+            } else if ((f = tab.get(i = (n - 1) & h)) == null) {
+                // 空桶先放一个加了锁的占位结点再计算，保证mappingFunction只执行一次
+                Node<K, V> r = new ReservationNode<>();
+                synchronized (r) {
+                    if (tab.compareAndSet(i, null, r)) {
+                        binCount = 1;
+                        Node<K, V> node = null;
+                        try {
+                            if ((val = mappingFunction.apply(key)) != null) node = new Node<>(h, key, val);
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (binCount != 0) break;
+            } else if ((fh = f.hash) == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else if (fh == h && ((fk = f.key) == key || (fk != null && key.equals(fk))) && (fv = f.val) != null) {
+                return fv;
+            } else {
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f; ; ++binCount) {
+                                K ek;
+                                if (e.hash == h && ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    val = e.val;
+                                    break;
+                                }
+                                Node<K, V> pred = e;
+                                if ((e = e.next) == null) {
+                                    if ((val = mappingFunction.apply(key)) != null) {
+                                        if (pred.next != null) throw new IllegalStateException("Recursive update");
+                                        added = true;
+                                        pred.next = new Node<>(h, key, val);
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof TreeBin) {
+                            binCount = 2;
+                            TreeBin<K, V> t = (TreeBin<K, V>) f;
+                            TreeNode<K, V> r, p;
+                            if ((r = t.root) != null && (p = r.findTreeNode(h, key, null)) != null) {
+                                val = p.val;
+                            } else if ((val = mappingFunction.apply(key)) != null) {
+                                added = true;
+                                t.putTreeVal(h, key, val);
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (binCount >= TREEIFY_THRESHOLD) treeifyBin(tab, i);
+                    if (!added) return val;
+                    break;
+                }
+            }
+        }
+        if (val != null) addCount(1L, binCount);
+        return val;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null) throw new NullPointerException();
+        return value != null && replaceNode(key, null, value) != null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null) throw new NullPointerException();
+        return replaceNode(key, newValue, oldValue) != null;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (key == null || value == null) throw new NullPointerException();
+        return replaceNode(key, value, null);
+    }
+
+    /**
+     * remove和replace的公共实现
+     *
+     * @param value 新值，为null代表删除
+     * @param cv    期望的旧值，为null代表不比较
+     */
+    final V replaceNode(Object key, V value, Object cv) {
+        int hash = spread(key.hashCode());
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0 || (f = tab.get(i = (n - 1) & hash)) == null) {
+                break;
+            } else if ((fh = f.hash) == MOVED) {
+                tab = helpTransfer(tab, f);
+            } else {
+                V oldVal = null;
+                boolean validated = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            validated = true;
+                            for (Node<K, V> e = f, pred = null; ; ) {
+                                K ek;
+                                if (e.hash == hash && ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    V ev = e.val;
+                                    if (cv == null || cv == ev || (ev != null && cv.equals(ev))) {
+                                        oldVal = ev;
+                                        if (value != null) {
+                                            e.val = value;
+                                        } else if (pred != null) {
+                                            pred.next = e.next;
+                                        } else {
+                                            tab.set(i, e.next);
+                                        }
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null) break;
+                            }
+                        } else if (f instanceof TreeBin) {
+                            validated = true;
+                            TreeBin<K, V> t = (TreeBin<K, V>) f;
+                            TreeNode<K, V> r, p;
+                            if ((r = t.root) != null && (p = r.findTreeNode(hash, key, null)) != null) {
+                                V pv = p.val;
+                                if (cv == null || cv == pv || (pv != null && cv.equals(pv))) {
+                                    oldVal = pv;
+                                    if (value != null) {
+                                        p.val = value;
+                                    } else if (t.removeTreeNode(p)) {
+                                        tab.set(i, untreeify(t.first));
+                                    }
+                                }
+                            }
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+                if (validated) {
+                    if (oldVal != null) {
+                        if (value == null) addCount(-1L, -1);
+                        return oldVal;
+                    }
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        long delta = 0L;
+        int i = 0;
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (tab != null && i < tab.length()) {
+            int fh;
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                ++i;
+            } else if ((fh = f.hash) == MOVED) {
+                tab = helpTransfer(tab, f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        Node<K, V> p = (fh >= 0 ? f : (f instanceof TreeBin) ? ((TreeBin<K, V>) f).first : null);
+                        while (p != null) {
+                            --delta;
+                            p = p.next;
+                        }
+                        tab.set(i++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0L) addCount(delta, -1);
+    }
+
+    @Override
+    public int size() {
+        long n = sumCount();
+        return (n < 0L) ? 0 : (n > (long) Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * 元素数可能超过int范围时用它代替size
+     */
+    public long mappingCount() {
+        long n = sumCount();
+        return (n < 0L) ? 0L : n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sumCount() <= 0L;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySet());
+    }
+
+    private AtomicReferenceArray<Node<K, V>> initTable() {
+        AtomicReferenceArray<Node<K, V>> tab;
+        int sc;
+        while ((tab = table) == null || tab.length() == 0) {
+            if ((sc = sizeCtl) < 0) {
+                // 别的线程正在初始化
+                Thread.yield();
+            } else if (SIZECTL.compareAndSet(this, sc, -1)) {
+                try {
+                    if ((tab = table) == null || tab.length() == 0) {
+                        int n = (sc > 0) ? sc : DEFAULT_CAPACITY;
+                        tab = new AtomicReferenceArray<>(n);
+                        table = tab;
+                        // 0.75n
+                        sc = n - (n >>> 2);
+                    }
+                } finally {
+                    sizeCtl = sc;
+                }
+                break;
+            }
+        }
+        return tab;
+    }
+
+    // ---------------- 计数 ----------------
+
+    private static int probe() {
+        return PROBE.get()[0];
+    }
+
+    private static int advanceProbe(int h) {
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        PROBE.get()[0] = h;
+        return h;
+    }
+
+    final long sumCount() {
+        CounterCell[] cs = counterCells;
+        long sum = baseCount;
+        if (cs != null) {
+            for (CounterCell c : cs) {
+                if (c != null) sum += c.value;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 更新计数，并检查是否需要扩容
+     *
+     * @param check 小于0不检查扩容；小于等于1时只有没发生竞争才检查
+     */
+    private void addCount(long x, int check) {
+        CounterCell[] cs;
+        long b, s;
+        if ((cs = counterCells) != null || !BASECOUNT.compareAndSet(this, b = baseCount, s = b + x)) {
+            CounterCell c;
+            long v;
+            int m;
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[probe() & m]) == null || !(uncontended = c.cas(v = c.value, v + x))) {
+                fullAddCount(x, uncontended);
+                return;
+            }
+            if (check <= 1) return;
+            s = sumCount();
+        }
+        if (check >= 0) {
+            AtomicReferenceArray<Node<K, V>> tab, nt;
+            int n, sc;
+            while (s >= (long) (sc = sizeCtl) && (tab = table) != null && (n = tab.length()) < MAXIMUM_CAPACITY) {
+                int rs = resizeStamp(n) << RESIZE_STAMP_SHIFT;
+                if (sc < 0) {
+                    // 已经在扩容了，参与线程数已满、即将结束或者没有区间可领取时就不参与了
+                    if (sc == rs + MAX_RESIZERS || sc == rs + 1 || (nt = nextTable) == null || transferIndex <= 0) break;
+                    if (SIZECTL.compareAndSet(this, sc, sc + 1)) transfer(tab, nt);
+                } else if (SIZECTL.compareAndSet(this, sc, rs + 2)) {
+                    // 第一个发起扩容的线程
+                    transfer(tab, null);
+                }
+                s = sumCount();
+            }
+        }
+    }
+
+    private void fullAddCount(long x, boolean wasUncontended) {
+        int h = probe();
+        boolean collide = false;
+        for (; ; ) {
+            CounterCell[] cs;
+            CounterCell c;
+            int n;
+            long v;
+            if ((cs = counterCells) != null && (n = cs.length) > 0) {
+                if ((c = cs[(n - 1) & h]) == null) {
+                    if (cellsBusy == 0) {
+                        CounterCell r = new CounterCell(x);
+                        if (cellsBusy == 0 && CELLSBUSY.compareAndSet(this, 0, 1)) {
+                            boolean created = false;
+                            try {
+                                CounterCell[] rs;
+                                int m, j;
+                                if ((rs = counterCells) != null && (m = rs.length) > 0 && rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    created = true;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            if (created) break;
+                            continue;
+                        }
+                    }
+                    collide = false;
+                } else if (!wasUncontended) {
+                    // 已知CAS失败过，换个探针再试
+                    wasUncontended = true;
+                } else if (c.cas(v = c.value, v + x)) {
+                    break;
+                } else if (counterCells != cs || n >= NCPU) {
+                    // 单元数不超过CPU数
+                    collide = false;
+                } else if (!collide) {
+                    collide = true;
+                } else if (cellsBusy == 0 && CELLSBUSY.compareAndSet(this, 0, 1)) {
+                    // 连续冲突，单元数翻倍
+                    try {
+                        if (counterCells == cs) {
+                            CounterCell[] rs = new CounterCell[n << 1];
+                            System.arraycopy(cs, 0, rs, 0, n);
+                            counterCells = rs;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    continue;
+                }
+                h = advanceProbe(h);
+            } else if (cellsBusy == 0 && counterCells == cs && CELLSBUSY.compareAndSet(this, 0, 1)) {
+                boolean init = false;
+                try {
+                    if (counterCells == cs) {
+                        CounterCell[] rs = new CounterCell[2];
+                        rs[h & 1] = new CounterCell(x);
+                        counterCells = rs;
+                        init = true;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+                if (init) break;
+            } else if (BASECOUNT.compareAndSet(this, v = baseCount, v + x)) {
+                // 别的线程正在初始化计数单元，退回到baseCount
+                break;
+            }
+        }
+    }
+
+    // ---------------- 扩容 ----------------
+
+    /**
+     * 发现正在扩容时帮忙迁移
+     */
+    final AtomicReferenceArray<Node<K, V>> helpTransfer(AtomicReferenceArray<Node<K, V>> tab, Node<K, V> f) {
+        AtomicReferenceArray<Node<K, V>> nextTab;
+        int sc;
+        if (tab != null && (f instanceof ForwardingNode) && (nextTab = ((ForwardingNode<K, V>) f).nextTable) != null) {
+            int rs = resizeStamp(tab.length()) << RESIZE_STAMP_SHIFT;
+            while (nextTab == nextTable && table == tab && (sc = sizeCtl) < 0) {
+                if (sc == rs + MAX_RESIZERS || sc == rs + 1 || transferIndex <= 0) break;
+                if (SIZECTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, nextTab);
+                    break;
+                }
+            }
+            return nextTab;
+        }
+        return table;
+    }
+
+    /**
+     * 扩容到能容纳size个元素
+     */
+    private void tryPresize(int size) {
+        int c = (size >= (MAXIMUM_CAPACITY >>> 1)) ? MAXIMUM_CAPACITY : tableSizeFor(size + (size >>> 1) + 1);
+        int sc;
+        while ((sc = sizeCtl) >= 0) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            int n;
+            if (tab == null || (n = tab.length()) == 0) {
+                n = (sc > c) ? sc : c;
+                if (SIZECTL.compareAndSet(this, sc, -1)) {
+                    try {
+                        if (table == tab) {
+                            table = new AtomicReferenceArray<>(n);
+                            sc = n - (n >>> 2);
+                        }
+                    } finally {
+                        sizeCtl = sc;
+                    }
+                }
+            } else if (c <= sc || n >= MAXIMUM_CAPACITY) {
+                break;
+            } else if (tab == table) {
+                int rs = resizeStamp(n);
+                if (SIZECTL.compareAndSet(this, sc, (rs << RESIZE_STAMP_SHIFT) + 2)) transfer(tab, null);
+            }
+        }
+    }
+
+    /**
+     * 把tab的桶迁移到nextTab，每个线程每次领取stride个桶，从后往前迁移
+     * 旧表下标i的结点在新表里只会落在i或者i + n，按hash & n拆成两条链表
+     */
+    private void transfer(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab) {
+        int n = tab.length(), stride;
+        if ((stride = (NCPU > 1) ? (n >>> 3) / NCPU : n) < MIN_TRANSFER_STRIDE) stride = MIN_TRANSFER_STRIDE;
+        if (nextTab == null) {
+            try {
+                nextTab = new AtomicReferenceArray<>(n << 1);
+            } catch (OutOfMemoryError ex) {
+                sizeCtl = Integer.MAX_VALUE;
+                return;
+            }
+            nextTable = nextTab;
+            transferIndex = n;
+        }
+        int nextn = nextTab.length();
+        ForwardingNode<K, V> fwd = new ForwardingNode<>(nextTab);
+        // advance为true代表当前桶处理完了，可以处理下一个
+        boolean advance = true;
+        // 最后一个线程退出前要再扫一遍整张表确认都迁移完了
+        boolean finishing = false;
+        for (int i = 0, bound = 0; ; ) {
+            Node<K, V> f;
+            int fh;
+            while (advance) {
+                int nextIndex, nextBound;
+                if (--i >= bound || finishing) {
+                    advance = false;
+                } else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (TRANSFERINDEX.compareAndSet(this, nextIndex, nextBound = (nextIndex > stride ? nextIndex - stride : 0))) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0 || i >= n || i + n >= nextn) {
+                int sc;
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    // 新阈值0.75 * 2n
+                    sizeCtl = (n << 1) - (n >>> 1);
+                    return;
+                }
+                if (SIZECTL.compareAndSet(this, sc = sizeCtl, sc - 1)) {
+                    // 不是最后一个退出的线程
+                    if ((sc - 2) != resizeStamp(n) << RESIZE_STAMP_SHIFT) return;
+                    finishing = advance = true;
+                    i = n;
+                }
+            } else if ((f = tab.get(i)) == null) {
+                advance = tab.compareAndSet(i, null, fwd);
+            } else if ((fh = f.hash) == MOVED) {
+                // 已经迁移过了
+                advance = true;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        Node<K, V> ln, hn;
+                        if (fh >= 0) {
+                            // 找到链表末尾hash & n相同的最长一段，可以整段复用不用复制
+                            int runBit = fh & n;
+                            Node<K, V> lastRun = f;
+                            for (Node<K, V> p = f.next; p != null; p = p.next) {
+                                int b = p.hash & n;
+                                if (b != runBit) {
+                                    runBit = b;
+                                    lastRun = p;
+                                }
+                            }
+                            if (runBit == 0) {
+                                ln = lastRun;
+                                hn = null;
+                            } else {
+                                hn = lastRun;
+                                ln = null;
+                            }
+                            // 前面的结点复制一份，旧表上的读者看到的链表不变
+                            for (Node<K, V> p = f; p != lastRun; p = p.next) {
+                                int ph = p.hash;
+                                K pk = p.key;
+                                V pv = p.val;
+                                if ((ph & n) == 0) {
+                                    ln = new Node<>(ph, pk, pv, ln);
+                                } else {
+                                    hn = new Node<>(ph, pk, pv, hn);
+                                }
+                            }
+                            nextTab.set(i, ln);
+                            nextTab.set(i + n, hn);
+                            tab.set(i, fwd);
+                            advance = true;
+                        } else if (f instanceof TreeBin) {
+                            TreeBin<K, V> t = (TreeBin<K, V>) f;
+                            TreeNode<K, V> lo = null, loTail = null;
+                            TreeNode<K, V> hi = null, hiTail = null;
+                            int lc = 0, hc = 0;
+                            for (Node<K, V> e = t.first; e != null; e = e.next) {
+                                int h = e.hash;
+                                TreeNode<K, V> p = new TreeNode<>(h, e.key, e.val, null, null);
+                                if ((h & n) == 0) {
+                                    if ((p.prev = loTail) == null) {
+                                        lo = p;
+                                    } else {
+                                        loTail.next = p;
+                                    }
+                                    loTail = p;
+                                    ++lc;
+                                } else {
+                                    if ((p.prev = hiTail) == null) {
+                                        hi = p;
+                                    } else {
+                                        hiTail.next = p;
+                                    }
+                                    hiTail = p;
+                                    ++hc;
+                                }
+                            }
+                            // 拆分后元素少了就退化回链表
+                            ln = (lc <= UNTREEIFY_THRESHOLD) ? untreeify(lo) : (hc != 0) ? new TreeBin<>(lo) : t;
+                            hn = (hc <= UNTREEIFY_THRESHOLD) ? untreeify(hi) : (lc != 0) ? new TreeBin<>(hi) : t;
+                            nextTab.set(i, ln);
+                            nextTab.set(i + n, hn);
+                            tab.set(i, fwd);
+                            advance = true;
+                        } else if (f instanceof ReservationNode) {
+                            throw new IllegalStateException("Recursive update");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------- 树化 ----------------
+
+    private void treeifyBin(AtomicReferenceArray<Node<K, V>> tab, int index) {
+        Node<K, V> b;
+        int n;
+        if (tab != null) {
+            if ((n = tab.length()) < MIN_TREEIFY_CAPACITY) {
+                tryPresize(n << 1);
+            } else if ((b = tab.get(index)) != null && b.hash >= 0) {
+                synchronized (b) {
+                    if (tab.get(index) == b) {
+                        TreeNode<K, V> hd = null, tl = null;
+                        for (Node<K, V> e = b; e != null; e = e.next) {
+                            TreeNode<K, V> p = new TreeNode<>(e.hash, e.key, e.val, null, null);
+                            if ((p.prev = tl) == null) {
+                                hd = p;
+                            } else {
+                                tl.next = p;
+                            }
+                            tl = p;
+                        }
+                        tab.set(index, new TreeBin<>(hd));
+                    }
+                }
+            }
+        }
+    }
+
+    static <K, V> Node<K, V> untreeify(Node<K, V> b) {
+        Node<K, V> hd = null, tl = null;
+        for (Node<K, V> q = b; q != null; q = q.next) {
+            Node<K, V> p = new Node<>(q.hash, q.key, q.val);
+            if (tl == null) {
+                hd = p;
+            } else {
+                tl.next = p;
+            }
+            tl = p;
+        }
+        return hd;
+    }
+
+    /**
+     * 键实现了Comparable<自身类型>时返回键的类型，否则返回null
+     */
+    static Class<?> comparableClassFor(Object x) {
+        if (x instanceof Comparable) {
+            Class<?> c;
+            Type[] ts, as;
+            ParameterizedType p;
+            if ((c = x.getClass()) == String.class) return c;
+            if ((ts = c.getGenericInterfaces()) != null) {
+                for (Type t : ts) {
+                    if ((t instanceof ParameterizedType) && ((p = (ParameterizedType) t).getRawType() == Comparable.class)
+                            && (as = p.getActualTypeArguments()) != null && as.length == 1 && as[0] == c) {
+                        return c;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static int compareComparables(Class<?> kc, Object k, Object x) {
+        return (x == null || x.getClass() != kc ? 0 : ((Comparable) k).compareTo(x));
+    }
+
+    /**
+     * hash相同又无法比较时，用类名和identityHashCode决定插入方向，只要求一致，不要求有意义
+     */
+    static int tieBreakOrder(Object a, Object b) {
+        int d;
+        if (a == null || b == null || (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0) {
+            d = (System.identityHashCode(a) <= System.identityHashCode(b) ? -1 : 1);
+        }
+        return d;
+    }
+
+    static final class TreeNode<K, V> extends Node<K, V> {
+        TreeNode<K, V> parent;
+        TreeNode<K, V> left;
+        TreeNode<K, V> right;
+        // 删除时需要修改前驱的next
+        TreeNode<K, V> prev;
+        boolean red;
+
+        TreeNode(int hash, K key, V val, Node<K, V> next, TreeNode<K, V> parent) {
+            super(hash, key, val, next);
+            this.parent = parent;
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            return findTreeNode(h, k, null);
+        }
+
+        /**
+         * 先按hash比较，hash相同再按Comparable比较，都无法区分时两棵子树都要找
+         */
+        TreeNode<K, V> findTreeNode(int h, Object k, Class<?> kc) {
+            if (k != null) {
+                TreeNode<K, V> p = this;
+                do {
+                    int ph, dir;
+                    K pk;
+                    TreeNode<K, V> q;
+                    TreeNode<K, V> pl = p.left, pr = p.right;
+                    if ((ph = p.hash) > h) {
+                        p = pl;
+                    } else if (ph < h) {
+                        p = pr;
+                    } else if ((pk = p.key) == k || (pk != null && k.equals(pk))) {
+                        return p;
+                    } else if (pl == null) {
+                        p = pr;
+                    } else if (pr == null) {
+                        p = pl;
+                    } else if ((kc != null || (kc = comparableClassFor(k)) != null) && (dir = compareComparables(kc, k, pk)) != 0) {
+                        p = (dir < 0) ? pl : pr;
+                    } else if ((q = pr.findTreeNode(h, k, kc)) != null) {
+                        return q;
+                    } else {
+                        p = pl;
+                    }
+                } while (p != null);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 树化的桶放在表里的头结点，持有红黑树的根，同时保留按插入顺序串起来的next链表
+     * <p>
+     * 写者已经持有桶锁(synchronized)，彼此之间不会并发，lockState只用来协调写者和读者:
+     * 读者把lockState加READER后在树上查找；写者调整树结构前要等读者都离开，期间新来的读者沿next链表线性查找。
+     */
+    static final class TreeBin<K, V> extends Node<K, V> {
+        private static final AtomicIntegerFieldUpdater<TreeBin> LOCKSTATE = AtomicIntegerFieldUpdater.newUpdater(TreeBin.class, "lockState");
+
+        static final int WRITER = 1;
+        static final int WAITER = 2;
+        static final int READER = 4;
+
+        TreeNode<K, V> root;
+        volatile TreeNode<K, V> first;
+        volatile Thread waiter;
+        volatile int lockState;
+
+        TreeBin(TreeNode<K, V> b) {
+            super(TREEBIN, null, null);
+            this.first = b;
+            TreeNode<K, V> r = null;
+            for (TreeNode<K, V> x = b, next; x != null; x = next) {
+                next = (TreeNode<K, V>) x.next;
+                x.left = x.right = null;
+                if (r == null) {
+                    x.parent = null;
+                    x.red = false;
+                    r = x;
+                } else {
+                    K k = x.key;
+                    int h = x.hash;
+                    Class<?> kc = null;
+                    for (TreeNode<K, V> p = r; ; ) {
+                        int dir, ph;
+                        K pk = p.key;
+                        if ((ph = p.hash) > h) {
+                            dir = -1;
+                        } else if (ph < h) {
+                            dir = 1;
+                        } else if ((kc == null && (kc = comparableClassFor(k)) == null) || (dir = compareComparables(kc, k, pk)) == 0) {
+                            dir = tieBreakOrder(k, pk);
+                        }
+                        TreeNode<K, V> xp = p;
+                        if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                            x.parent = xp;
+                            if (dir <= 0) {
+                                xp.left = x;
+                            } else {
+                                xp.right = x;
+                            }
+                            r = balanceInsertion(r, x);
+                            break;
+                        }
+                    }
+                }
+            }
+            this.root = r;
+        }
+
+        private void lockRoot() {
+            if (!LOCKSTATE.compareAndSet(this, 0, WRITER)) contendedLock();
+        }
+
+        private void unlockRoot() {
+            lockState = 0;
+        }
+
+        /**
+         * 还有读者在树上，设置WAITER后park，最后一个离开的读者负责唤醒
+         */
+        private void contendedLock() {
+            boolean waiting = false;
+            for (int s; ; ) {
+                if (((s = lockState) & ~WAITER) == 0) {
+                    if (LOCKSTATE.compareAndSet(this, s, WRITER)) {
+                        if (waiting) waiter = null;
+                        return;
+                    }
+                } else if ((s & WAITER) == 0) {
+                    if (LOCKSTATE.compareAndSet(this, s, s | WAITER)) {
+                        waiting = true;
+                        waiter = Thread.currentThread();
+                    }
+                } else if (waiting) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            if (k != null) {
+                for (Node<K, V> e = first; e != null; ) {
+                    int s;
+                    K ek;
+                    if (((s = lockState) & (WAITER | WRITER)) != 0) {
+                        // 有写者，沿链表走一步
+                        if (e.hash == h && ((ek = e.key) == k || (ek != null && k.equals(ek)))) return e;
+                        e = e.next;
+                    } else if (LOCKSTATE.compareAndSet(this, s, s + READER)) {
+                        TreeNode<K, V> r, p;
+                        try {
+                            p = ((r = root) == null ? null : r.findTreeNode(h, k, null));
+                        } finally {
+                            Thread w;
+                            if (LOCKSTATE.getAndAdd(this, -READER) == (READER | WAITER) && (w = waiter) != null) {
+                                LockSupport.unpark(w);
+                            }
+                        }
+                        return p;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 调用者持有桶锁
+         *
+         * @return 已存在的结点，新插入时返回null
+         */
+        TreeNode<K, V> putTreeVal(int h, K k, V v) {
+            Class<?> kc = null;
+            boolean searched = false;
+            for (TreeNode<K, V> p = root; ; ) {
+                int dir, ph;
+                K pk;
+                if (p == null) {
+                    first = root = new TreeNode<>(h, k, v, null, null);
+                    break;
+                } else if ((ph = p.hash) > h) {
+                    dir = -1;
+                } else if (ph < h) {
+                    dir = 1;
+                } else if ((pk = p.key) == k || (pk != null && k.equals(pk))) {
+                    return p;
+                } else if ((kc == null && (kc = comparableClassFor(k)) == null) || (dir = compareComparables(kc, k, pk)) == 0) {
+                    if (!searched) {
+                        TreeNode<K, V> q, ch;
+                        searched = true;
+                        if (((ch = p.left) != null && (q = ch.findTreeNode(h, k, kc)) != null)
+                                || ((ch = p.right) != null && (q = ch.findTreeNode(h, k, kc)) != null)) {
+                            return q;
+                        }
+                    }
+                    dir = tieBreakOrder(k, pk);
+                }
+
+                TreeNode<K, V> xp = p;
+                if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                    TreeNode<K, V> x, f = first;
+                    // 新结点放在链表头，读者走链表也能看到
+                    first = x = new TreeNode<>(h, k, v, f, xp);
+                    if (f != null) f.prev = x;
+                    if (dir <= 0) {
+                        xp.left = x;
+                    } else {
+                        xp.right = x;
+                    }
+                    if (!xp.red) {
+                        // 父结点是黑色，直接染红即可，不需要旋转
+                        x.red = true;
+                    } else {
+                        lockRoot();
+                        try {
+                            root = balanceInsertion(root, x);
+                        } finally {
+                            unlockRoot();
+                        }
+                    }
+                    break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 调用者持有桶锁
+         *
+         * @return true代表树太小了，调用者应当把它退化为链表
+         */
+        boolean removeTreeNode(TreeNode<K, V> p) {
+            TreeNode<K, V> next = (TreeNode<K, V>) p.next;
+            TreeNode<K, V> pred = p.prev;
+            TreeNode<K, V> r, rl;
+            if (pred == null) {
+                first = next;
+            } else {
+                pred.next = next;
+            }
+            if (next != null) next.prev = pred;
+            if (first == null) {
+                root = null;
+                return true;
+            }
+            if ((r = root) == null || r.right == null || (rl = r.left) == null || rl.left == null) return true;
+            lockRoot();
+            try {
+                TreeNode<K, V> replacement;
+                TreeNode<K, V> pl = p.left;
+                TreeNode<K, V> pr = p.right;
+                if (pl != null && pr != null) {
+                    // 和后继结点s交换位置(连同颜色)，转化为删除最多只有一个孩子的结点
+                    TreeNode<K, V> s = pr, sl;
+                    while ((sl = s.left) != null) s = sl;
+                    boolean c = s.red;
+                    s.red = p.red;
+                    p.red = c;
+                    TreeNode<K, V> sr = s.right;
+                    TreeNode<K, V> pp = p.parent;
+                    if (s == pr) {
+                        p.parent = s;
+                        s.right = p;
+                    } else {
+                        TreeNode<K, V> sp = s.parent;
+                        if ((p.parent = sp) != null) {
+                            if (s == sp.left) {
+                                sp.left = p;
+                            } else {
+                                sp.right = p;
+                            }
+                        }
+                        if ((s.right = pr) != null) pr.parent = s;
+                    }
+                    p.left = null;
+                    if ((p.right = sr) != null) sr.parent = p;
+                    if ((s.left = pl) != null) pl.parent = s;
+                    if ((s.parent = pp) == null) {
+                        r = s;
+                    } else if (p == pp.left) {
+                        pp.left = s;
+                    } else {
+                        pp.right = s;
+                    }
+                    replacement = (sr != null) ? sr : p;
+                } else if (pl != null) {
+                    replacement = pl;
+                } else if (pr != null) {
+                    replacement = pr;
+                } else {
+                    replacement = p;
+                }
+                if (replacement != p) {
+                    TreeNode<K, V> pp = replacement.parent = p.parent;
+                    if (pp == null) {
+                        r = replacement;
+                    } else if (p == pp.left) {
+                        pp.left = replacement;
+                    } else {
+                        pp.right = replacement;
+                    }
+                    p.left = p.right = p.parent = null;
+                }
+
+                root = (p.red) ? r : balanceDeletion(r, replacement);
+
+                if (p == replacement) {
+                    // 没有孩子，平衡之后再摘掉
+                    TreeNode<K, V> pp;
+                    if ((pp = p.parent) != null) {
+                        if (p == pp.left) {
+                            pp.left = null;
+                        } else if (p == pp.right) {
+                            pp.right = null;
+                        }
+                        p.parent = null;
+                    }
+                }
+            } finally {
+                unlockRoot();
+            }
+            return false;
+        }
+
+        static <K, V> TreeNode<K, V> rotateLeft(TreeNode<K, V> root, TreeNode<K, V> p) {
+            TreeNode<K, V> r, pp, rl;
+            if (p != null && (r = p.right) != null) {
+                if ((rl = p.right = r.left) != null) rl.parent = p;
+                if ((pp = r.parent = p.parent) == null) {
+                    (root = r).red = false;
+                } else if (pp.left == p) {
+                    pp.left = r;
+                } else {
+                    pp.right = r;
+                }
+                r.left = p;
+                p.parent = r;
+            }
+            return root;
+        }
+
+        static <K, V> TreeNode<K, V> rotateRight(TreeNode<K, V> root, TreeNode<K, V> p) {
+            TreeNode<K, V> l, pp, lr;
+            if (p != null && (l = p.left) != null) {
+                if ((lr = p.left = l.right) != null) lr.parent = p;
+                if ((pp = l.parent = p.parent) == null) {
+                    (root = l).red = false;
+                } else if (pp.right == p) {
+                    pp.right = l;
+                } else {
+                    pp.left = l;
+                }
+                l.right = p;
+                p.parent = l;
+            }
+            return root;
+        }
+
+        static <K, V> TreeNode<K, V> balanceInsertion(TreeNode<K, V> root, TreeNode<K, V> x) {
+            x.red = true;
+            for (TreeNode<K, V> xp, xpp, xppl, xppr; ; ) {
+                if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                } else if (!xp.red || (xpp = xp.parent) == null) {
+                    return root;
+                }
+                if (xp == (xppl = xpp.left)) {
+                    if ((xppr = xpp.right) != null && xppr.red) {
+                        // 叔叔是红色: 父亲和叔叔染黑，祖父染红，问题上移到祖父
+                        xppr.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    } else {
+                        if (x == xp.right) {
+                            root = rotateLeft(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateRight(root, xpp);
+                            }
+                        }
+                    }
+                } else {
+                    if (xppl != null && xppl.red) {
+                        xppl.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    } else {
+                        if (x == xp.left) {
+                            root = rotateRight(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateLeft(root, xpp);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        static <K, V> TreeNode<K, V> balanceDeletion(TreeNode<K, V> root, TreeNode<K, V> x) {
+            for (TreeNode<K, V> xp, xpl, xpr; ; ) {
+                if (x == null || x == root) {
+                    return root;
+                } else if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                } else if (x.red) {
+                    x.red = false;
+                    return root;
+                } else if ((xpl = xp.left) == x) {
+                    if ((xpr = xp.right) != null && xpr.red) {
+                        xpr.red = false;
+                        xp.red = true;
+                        root = rotateLeft(root, xp);
+                        xpr = (xp = x.parent) == null ? null : xp.right;
+                    }
+                    if (xpr == null) {
+                        x = xp;
+                    } else {
+                        TreeNode<K, V> sl = xpr.left, sr = xpr.right;
+                        if ((sr == null || !sr.red) && (sl == null || !sl.red)) {
+                            xpr.red = true;
+                            x = xp;
+                        } else {
+                            if (sr == null || !sr.red) {
+                                if (sl != null) sl.red = false;
+                                xpr.red = true;
+                                root = rotateRight(root, xpr);
+                                xpr = (xp = x.parent) == null ? null : xp.right;
+                            }
+                            if (xpr != null) {
+                                xpr.red = (xp != null) && xp.red;
+                                if ((sr = xpr.right) != null) sr.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateLeft(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                } else {
+                    if (xpl != null && xpl.red) {
+                        xpl.red = false;
+                        xp.red = true;
+                        root = rotateRight(root, xp);
+                        xpl = (xp = x.parent) == null ? null : xp.left;
+                    }
+                    if (xpl == null) {
+                        x = xp;
+                    } else {
+                        TreeNode<K, V> sl = xpl.left, sr = xpl.right;
+                        if ((sl == null || !sl.red) && (sr == null || !sr.red)) {
+                            xpl.red = true;
+                            x = xp;
+                        } else {
+                            if (sl == null || !sl.red) {
+                                if (sr != null) sr.red = false;
+                                xpl.red = true;
+                                root = rotateLeft(root, xpl);
+                                xpl = (xp = x.parent) == null ? null : xp.left;
+                            }
+                            if (xpl != null) {
+                                xpl.red = (xp != null) && xp.red;
+                                if ((sl = xpl.left) != null) sl.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateRight(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------- 遍历 ----------------
+
+    /**
+     * 弱一致的遍历: 不抛ConcurrentModificationException，能看到遍历开始时已有且没被删除的元素
+     * 遇到ForwardingNode时转到新表中对应的两个桶i和i + n继续
+     */
+    final class Traverser {
+        private final ArrayDeque<int[]> bounds = new ArrayDeque<>();
+        private final ArrayDeque<AtomicReferenceArray<Node<K, V>>> tables = new ArrayDeque<>();
+        private Node<K, V> next;
+
+        Traverser() {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            if (tab != null) {
+                // {下一个下标, 剩余桶数, 步长}
+                tables.push(tab);
+                bounds.push(new int[]{0, tab.length(), 1});
+            }
+            next = advance(null);
+        }
+
+        private Node<K, V> advance(Node<K, V> e) {
+            if (e != null && (e = e.next) != null) return e;
+            while (!bounds.isEmpty()) {
+                int[] b = bounds.peek();
+                AtomicReferenceArray<Node<K, V>> tab = tables.peek();
+                if (b[1] == 0) {
+                    bounds.pop();
+                    tables.pop();
+                    continue;
+                }
+                int i = b[0];
+                b[0] += b[2];
+                b[1]--;
+                Node<K, V> f = tab.get(i);
+                if (f == null) continue;
+                if (f instanceof ForwardingNode) {
+                    tables.push(((ForwardingNode<K, V>) f).nextTable);
+                    bounds.push(new int[]{i, 2, tab.length()});
+                } else if (f instanceof TreeBin) {
+                    if ((e = ((TreeBin<K, V>) f).first) != null) return e;
+                } else if (f.hash >= 0) {
+                    return f;
+                }
+            }
+            return null;
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        Node<K, V> nextNode() {
+            Node<K, V> e = next;
+            if (e == null) throw new NoSuchElementException();
+            next = advance(e);
+            return e;
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<Map.Entry<K, V>>() {
+                private final Traverser it = new Traverser();
+                private Node<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    Node<K, V> e = it.nextNode();
+                    last = e;
+                    return new MapEntry(e.key, e.val);
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) throw new IllegalStateException();
+                    ConcurrentHashMap.this.remove(last.key);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Object k, v, r;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) && (k = (e = (Map.Entry<?, ?>) o).getKey()) != null
+                    && (r = get(k)) != null && (v = e.getValue()) != null && (v == r || v.equals(r)));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Object k, v;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) && (k = (e = (Map.Entry<?, ?>) o).getKey()) != null
+                    && (v = e.getValue()) != null && ConcurrentHashMap.this.remove(k, v));
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * 遍历时返回的键值对，setValue会写回map
+     */
+    final class MapEntry extends SimpleEntry<K, V> {
+        MapEntry(K key, V val) {
+            super(key, val);
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (value == null) throw new NullPointerException();
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * state就是计数值，和Semaphore一样只用到AQS的共享模式:
+ * await调用acquireSharedInterruptibly，只要state不为0，tryAcquireShared就返回-1，线程进入同步队列阻塞。
+ * countDown调用releaseShared，只有把state减到0的那一次tryReleaseShared返回true，去唤醒head后继。
+ * <p>
+ * 被唤醒的线程tryAcquireShared返回1(大于0)，于是在setHeadAndPropagate中把自己设为head后继续唤醒自己的后继，
+ * 后继醒来后又重复这个过程。所以countDown的线程只唤醒一个，所有等待线程是一个接一个地级联唤醒的，不会同时争抢。
+ * <p>
+ * state减到0后不会再被重置，所以CountDownLatch是一次性的，要重复使用请用CyclicBarrier。
+ */
+public class CountDownLatch {
+    private final Sync sync;
+
+    private static final class Sync extends AbstractQueuedSynchronizer {
+        Sync(int count) {
+            setState(count);
+        }
+
+        int getCount() {
+            return getState();
+        }
+
+        /**
+         * 不修改state，只是判断计数是否已经为0。返回1而不是0，是为了让setHeadAndPropagate继续传播唤醒
+         */
+        @Override
+        protected int tryAcquireShared(int acquires) {
+            return getState() == 0 ? 1 : -1;
+        }
+
+        /**
+         * 自旋CAS减一。已经为0时返回false，避免重复唤醒；只有减到0的那一次返回true
+         */
+        @Override
+        protected boolean tryReleaseShared(int releases) {
+            for (; ; ) {
+                int c = getState();
+                if (c == 0) return false;
+                int nextc = c - 1;
+                if (compareAndSetState(c, nextc)) return nextc == 0;
+            }
+        }
+    }
+
+    public CountDownLatch(int count) {
+        if (count < 0) throw new IllegalArgumentException("count < 0");
+        this.sync = new Sync(count);
+    }
+
+    /**
+     * 阻塞直到计数减到0，或者被中断
+     */
+    public void await() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+    }
+
+    /**
+     * 计数在超时前减到0返回true，超时返回false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(timeout));
+    }
+
+    public void countDown() {
+        sync.releaseShared(1);
+    }
+
+    public long getCount() {
+        return sync.getCount();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[Count = " + sync.getCount() + "]";
+    }
+}
@@ -0,0 +1,172 @@
+package tongji.java.util.concurrent;
+
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 没有直接使用AQS，而是用ReentrantLock加一个Condition实现:
+ * 每个线程到达时在锁内把count减一，不为0就在trip上await(释放锁并进入条件队列)；
+ * 最后一个到达的线程执行barrierCommand，然后signalAll唤醒所有人并开启新的一代(generation)，count恢复为parties。
+ * <p>
+ * 一代中只要有一个线程被中断、超时或者barrierCommand抛出异常，这一代就被打破(broken)，
+ * 所有等待的线程都会收到BrokenBarrierException，之后需要reset才能继续使用。
+ * <p>
+ * 等待的线程醒来后要用generation判断自己是因为哪一代的结束而醒来，
+ * 因为醒来时可能已经有下一代的线程到达，count已经被重置了。
+ */
+public class CyclicBarrier {
+    // 每一代是一个新对象，只用来比较是否还是同一代
+    private static class Generation {
+        boolean broken = false;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 等待到齐的条件
+    private final Condition trip = lock.newCondition();
+    private final int parties;
+    // 到齐后由最后到达的线程执行
+    private final Runnable barrierCommand;
+    private Generation generation = new Generation();
+    // 这一代还差多少个线程到达
+    private int count;
+
+    public CyclicBarrier(int parties, Runnable barrierAction) {
+        if (parties <= 0) throw new IllegalArgumentException();
+        this.parties = parties;
+        this.count = parties;
+        this.barrierCommand = barrierAction;
+    }
+
+    public CyclicBarrier(int parties) {
+        this(parties, null);
+    }
+
+    /**
+     * 唤醒所有人，开启新的一代，只在持有锁时调用
+     */
+    private void nextGeneration() {
+        trip.signalAll();
+        count = parties;
+        generation = new Generation();
+    }
+
+    /**
+     * 打破当前这一代，只在持有锁时调用
+     */
+    private void breakBarrier() {
+        generation.broken = true;
+        count = parties;
+        trip.signalAll();
+    }
+
+    private int dowait(boolean timed, long nanos) throws InterruptedException, BrokenBarrierException, TimeoutException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            final Generation g = generation;
+            if (g.broken) throw new BrokenBarrierException();
+            if (Thread.interrupted()) {
+                breakBarrier();
+                throw new InterruptedException();
+            }
+
+            int index = --count;
+            if (index == 0) {
+                // 最后一个到达，barrierCommand抛出异常时也要打破这一代，否则其他线程会一直等下去
+                boolean ranAction = false;
+                try {
+                    if (barrierCommand != null) barrierCommand.run();
+                    ranAction = true;
+                    nextGeneration();
+                    return 0;
+                } finally {
+                    if (!ranAction) breakBarrier();
+                }
+            }
+
+            for (; ; ) {
+                try {
+                    if (!timed) {
+                        trip.await();
+                    } else if (nanos > 0L) {
+                        nanos = trip.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException ie) {
+                    if (g == generation && !g.broken) {
+                        breakBarrier();
+                        throw ie;
+                    } else {
+                        // 这一代已经结束了，中断属于之后的事情，只补上中断标记
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                if (g.broken) throw new BrokenBarrierException();
+                if (g != generation) return index;
+                if (timed && nanos <= 0L) {
+                    breakBarrier();
+                    throw new TimeoutException();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getParties() {
+        return parties;
+    }
+
+    /**
+     * 返回到达的序号，parties - 1代表第一个到达，0代表最后一个到达
+     */
+    public int await() throws InterruptedException, BrokenBarrierException {
+        try {
+            return dowait(false, 0L);
+        } catch (TimeoutException toe) {
+            throw new Error(toe); // 不会发生
+        }
+    }
+
+    public int await(long timeout, TimeUnit unit) throws InterruptedException, BrokenBarrierException, TimeoutException {
+        return dowait(true, unit.toNanos(timeout));
+    }
+
+    public boolean isBroken() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return generation.broken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 打破当前这一代(正在等待的线程收到BrokenBarrierException)，再开启新的一代
+     */
+    public void reset() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            breakBarrier();
+            nextGeneration();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getNumberWaiting() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return parties - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
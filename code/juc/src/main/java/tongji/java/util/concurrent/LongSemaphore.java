@@ -0,0 +1,126 @@
+package tongji.java.util.concurrent;
+
+import tongji.java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 许可数为long的信号量，实现和Semaphore相同，只是Sync换成了AbstractQueuedLongSynchronizer
+ * 适合按字节数限流，比如限制同时在途的I/O缓冲区总大小，可以一次申请buffer.length个许可，用完再一次归还。
+ * int的Semaphore在总预算超过2G时就会溢出。
+ */
+public class LongSemaphore {
+    private final Sync sync;
+
+    abstract static class Sync extends AbstractQueuedLongSynchronizer {
+        Sync(long permits) {
+            setState(permits);
+        }
+
+        final long getPermits() {
+            return getState();
+        }
+
+        final long nonfairTryAcquireShared(long acquires) {
+            for (; ; ) {
+                long available = getState();
+                long remaining = available - acquires;
+                if (remaining < 0 || compareAndSetState(available, remaining)) {
+                    return remaining;
+                }
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(long releases) {
+            for (; ; ) {
+                long current = getState();
+                long next = current + releases;
+                if (next < current) throw new Error("Maximum permit count exceeded");
+                if (compareAndSetState(current, next)) return true;
+            }
+        }
+    }
+
+    static final class FairSync extends Sync {
+        FairSync(long permits) {
+            super(permits);
+        }
+
+        @Override
+        protected long tryAcquireShared(long acquires) {
+            for (; ; ) {
+                if (hasQueuedPredecessors()) return -1;
+                long available = getState();
+                long remaining = available - acquires;
+                if (remaining < 0 || compareAndSetState(available, remaining)) {
+                    return remaining;
+                }
+            }
+        }
+    }
+
+    static final class NonfairSync extends Sync {
+        NonfairSync(long permits) {
+            super(permits);
+        }
+
+        @Override
+        protected long tryAcquireShared(long acquires) {
+            return nonfairTryAcquireShared(acquires);
+        }
+    }
+
+    public LongSemaphore(long permits) {
+        sync = new NonfairSync(permits);
+    }
+
+    /**
+     * 按字节限流时建议使用公平模式，否则大的申请可能一直被小的申请插队
+     */
+    public LongSemaphore(long permits, boolean fair) {
+        sync = fair ? new FairSync(permits) : new NonfairSync(permits);
+    }
+
+    public boolean tryAcquire(long permits) {
+        if (permits < 0) throw new IllegalArgumentException();
+        return sync.nonfairTryAcquireShared(permits) >= 0;
+    }
+
+    public boolean tryAcquire(long permits, long timeout, TimeUnit unit) throws InterruptedException {
+        if (permits < 0) throw new IllegalArgumentException();
+        return sync.tryAcquireSharedNanos(permits, unit.toNanos(timeout));
+    }
+
+    public void acquire(long permits) throws InterruptedException {
+        if (permits < 0) throw new IllegalArgumentException();
+        sync.acquireSharedInterruptibly(permits);
+    }
+
+    public void acquireUninterruptibly(long permits) {
+        if (permits < 0) throw new IllegalArgumentException();
+        sync.acquireShared(permits);
+    }
+
+    public void release(long permits) {
+        if (permits < 0) throw new IllegalArgumentException();
+        sync.releaseShared(permits);
+    }
+
+    public long availablePermits() {
+        return sync.getPermits();
+    }
+
+    public final boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    public final int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[Permits = " + sync.getPermits() + "]";
+    }
+}
@@ -0,0 +1,243 @@
+package tongji.java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于数组的有界无锁队列，支持多生产者多消费者(Dmitry Vyukov的MPMC环形队列)
+ * <p>
+ * 每个槽位有一个序号sequence，初始为槽位下标:
+ * 生产者拿到下标pos后，只有sequence == pos时槽位才是空的，CAS推进生产者下标抢到槽位，写入元素后把sequence设为pos + 1；
+ * 消费者拿到下标pos后，只有sequence == pos + 1时槽位里才有元素，CAS推进消费者下标抢到槽位，取出元素后把sequence设为pos + capacity，
+ * 也就是下一轮生产者到达这个槽位时的下标。
+ * 所以生产者之间只在生产者下标上竞争，消费者之间只在消费者下标上竞争，生产者和消费者只在同一个槽位上交接，不需要锁。
+ * <p>
+ * 生产者下标和消费者下标分别放在独占缓存行的PaddedAtomicLong里。
+ * <p>
+ * 环形队列不能从中间拿走元素，remove(Object)把槽位里的元素CAS成REMOVED占位，消费者取到占位时跳过它继续取下一个。
+ * 消费者取元素用getAndSet，和remove的CAS对同一个槽位原子地二选一，一个元素不会既被取走又被删除。
+ * 迭代器是弱一致的: 遍历创建时两个下标之间的槽位，不抛ConcurrentModificationException，
+ * 遍历期间被取走的元素跳过，新放入的元素可能看不到。占位在被消费者跳过之前仍然占着槽位，size只是一个近似值。
+ */
+public class MpmcArrayQueue<E> extends AbstractQueue<E> {
+    private static final Object REMOVED = new Object();
+
+    private final int mask;
+    private final AtomicReferenceArray<Object> buffer;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong producerIndex = new PaddedAtomicLong(0);
+    private final PaddedAtomicLong consumerIndex = new PaddedAtomicLong(0);
+
+    /**
+     * @param capacity 向上取整到2的幂，下标取模只需要一次与运算
+     */
+    public MpmcArrayQueue(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+        if (capacity > 1 << 30) throw new IllegalArgumentException("capacity too large");
+        int actualCapacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = actualCapacity - 1;
+        this.buffer = new AtomicReferenceArray<>(actualCapacity);
+        this.sequences = new AtomicLongArray(actualCapacity);
+        for (int i = 0; i < actualCapacity; i++) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 队列满时返回false
+     */
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        long pos;
+        int index;
+        for (; ; ) {
+            pos = producerIndex.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (producerIndex.compareAndSet(pos, pos + 1)) break;
+            } else if (diff < 0) {
+                // 槽位里还是上一轮的元素，消费者还没取走，队列满了
+                if (pos - consumerIndex.get() >= capacity()) return false;
+            }
+            // diff > 0说明别的生产者已经抢到了这个槽位，重新读下标
+        }
+        buffer.lazySet(index, e);
+        // 发布元素，消费者读到新的sequence后一定能看到上面写入的元素
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * 队列空时返回null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (; ; ) {
+            long pos = consumerIndex.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (consumerIndex.compareAndSet(pos, pos + 1)) {
+                    Object e = release(index, pos);
+                    // 被remove删掉的元素，继续取下一个
+                    if (e != REMOVED) return (E) e;
+                }
+            } else if (diff < 0) {
+                // 生产者还没写到这个槽位，队列空了
+                if (pos >= producerIndex.get()) return null;
+            }
+        }
+    }
+
+    /**
+     * 抢到槽位之后取出元素，把槽位交给下一轮的生产者
+     */
+    private Object release(int index, long pos) {
+        Object e = buffer.getAndSet(index, null);
+        sequences.lazySet(index, pos + mask + 1);
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (; ; ) {
+            long pos = consumerIndex.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                Object e = buffer.get(index);
+                if (e == REMOVED) {
+                    // 队头是删除占位，替消费者跳过它
+                    if (consumerIndex.compareAndSet(pos, pos + 1)) release(index, pos);
+                } else if (e != null && consumerIndex.get() == pos) {
+                    // 读元素期间槽位没有被消费者取走，读到的才是队头
+                    return (E) e;
+                }
+            } else if (diff < 0 && pos >= producerIndex.get()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 删除一个equals(o)的元素，槽位换成占位，消费者取到时跳过
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        long end = producerIndex.get();
+        for (long pos = consumerIndex.get(); pos < end; pos++) {
+            int index = (int) pos & mask;
+            Object e = buffer.get(index);
+            if (e != null && e != REMOVED && sequences.get(index) == pos + 1 && o.equals(e)
+                    && buffer.compareAndSet(index, e, REMOVED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        long end = producerIndex.get();
+        for (long pos = consumerIndex.get(); pos < end; pos++) {
+            int index = (int) pos & mask;
+            Object e = buffer.get(index);
+            if (e != null && e != REMOVED && sequences.get(index) == pos + 1 && o.equals(e)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        // 两次读到相同的消费者下标，说明中间读到的生产者下标和它是同一时刻附近的值
+        for (; ; ) {
+            long before = consumerIndex.get();
+            long producer = producerIndex.get();
+            long after = consumerIndex.get();
+            if (before == after) {
+                long size = producer - after;
+                return (int) Math.max(0, Math.min(size, capacity()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex.get() >= producerIndex.get();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * 弱一致的迭代器，只遍历创建时已经放入的元素
+     */
+    private final class Itr implements Iterator<E> {
+        private final long end = producerIndex.get();
+        private long cursor = consumerIndex.get();
+        private Object next;
+        private int nextIndex;
+        private Object lastRet;
+        private int lastIndex = -1;
+
+        Itr() {
+            advance();
+        }
+
+        /**
+         * 找到下一个还在队列中的元素，槽位的sequence是pos + 1说明这一轮的元素已经放入并且还没被取走
+         */
+        private void advance() {
+            next = null;
+            for (; cursor < end && next == null; cursor++) {
+                int index = (int) cursor & mask;
+                Object e = buffer.get(index);
+                if (e != null && e != REMOVED && sequences.get(index) == cursor + 1) {
+                    next = e;
+                    nextIndex = index;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (next == null) throw new NoSuchElementException();
+            lastRet = next;
+            lastIndex = nextIndex;
+            advance();
+            return (E) lastRet;
+        }
+
+        /**
+         * 元素已经被消费者取走时什么也不做
+         */
+        @Override
+        public void remove() {
+            if (lastIndex < 0) throw new IllegalStateException();
+            buffer.compareAndSet(lastIndex, lastRet, REMOVED);
+            lastRet = null;
+            lastIndex = -1;
+        }
+    }
+}
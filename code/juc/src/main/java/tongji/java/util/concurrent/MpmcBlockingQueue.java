@@ -0,0 +1,214 @@
+package tongji.java.util.concurrent;
+
+import tongji.java.util.concurrent.locks.SpinPolicy;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在MpmcArrayQueue外面包一层阻塞语义
+ * <p>
+ * ArrayBlockingQueue的每次put/take都要先拿同一把锁，生产者和消费者全部串行。
+ * 这里put/take先直接无锁地offer/poll，成功了只需要看一眼有没有线程在等待；只有队列满(put)或空(take)时，
+ * 线程才把自己登记到等待队列里，再重试一次，仍然失败才用LockSupport.park阻塞，和AQS的parkAndCheckInterrupt一样。
+ * <p>
+ * 不会丢失唤醒: 等待者是先登记再重试，放入者是先放入再检查等待者，两者至少有一方能看到对方。
+ * 唤醒只叫醒一个等待者，它成功后如果发现还有剩余(元素或空位)，再接力唤醒下一个，类似共享模式的setHeadAndPropagate。
+ */
+public class MpmcBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    // 阻塞前让出CPU重试的次数，给对方一个放入或取走的机会，比park/unpark便宜得多；虚拟线程按SpinPolicy直接阻塞
+    private static final int YIELDS = 4;
+
+    private final MpmcArrayQueue<E> queue;
+    // 等元素的消费者
+    private final ConcurrentLinkedQueue<Thread> notEmptyWaiters = new ConcurrentLinkedQueue<>();
+    // 等空位的生产者
+    private final ConcurrentLinkedQueue<Thread> notFullWaiters = new ConcurrentLinkedQueue<>();
+
+    public MpmcBlockingQueue(int capacity) {
+        this.queue = new MpmcArrayQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (queue.offer(e)) {
+            signal(notEmptyWaiters);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public E poll() {
+        E e = queue.poll();
+        if (e != null) signal(notFullWaiters);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        offer(e, -1L);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return offer(e, Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return poll(-1L);
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return poll(Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    /**
+     * @param nanos 小于0代表不限时
+     */
+    private boolean offer(E e, long nanos) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        if (offer(e)) return true;
+        for (int i = SpinPolicy.spinsFor(YIELDS); i > 0; i--) {
+            Thread.yield();
+            if (offer(e)) return true;
+        }
+        final long deadline = System.nanoTime() + nanos;
+        Thread current = Thread.currentThread();
+        for (; ; ) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            notFullWaiters.add(current);
+            boolean offered = false;
+            try {
+                offered = queue.offer(e);
+                if (!offered) {
+                    if (nanos < 0L) {
+                        LockSupport.park(this);
+                    } else if ((nanos = deadline - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(this, nanos);
+                    } else {
+                        return false;
+                    }
+                }
+            } finally {
+                notFullWaiters.remove(current);
+                // 超时或中断退出时，可能已经收到了唤醒，要转交给下一个等待者
+                if (!offered && queue.size() < queue.capacity()) signal(notFullWaiters);
+            }
+            if (offered) {
+                signal(notEmptyWaiters);
+                // 接力: 还有空位就唤醒下一个等空位的生产者
+                if (queue.size() < queue.capacity()) signal(notFullWaiters);
+                return true;
+            }
+        }
+    }
+
+    private E poll(long nanos) throws InterruptedException {
+        E e;
+        if ((e = poll()) != null) return e;
+        for (int i = SpinPolicy.spinsFor(YIELDS); i > 0; i--) {
+            Thread.yield();
+            if ((e = poll()) != null) return e;
+        }
+        final long deadline = System.nanoTime() + nanos;
+        Thread current = Thread.currentThread();
+        for (; ; ) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            notEmptyWaiters.add(current);
+            try {
+                e = queue.poll();
+                if (e == null) {
+                    if (nanos < 0L) {
+                        LockSupport.park(this);
+                    } else if ((nanos = deadline - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(this, nanos);
+                    } else {
+                        return null;
+                    }
+                }
+            } finally {
+                notEmptyWaiters.remove(current);
+                if (e == null && !queue.isEmpty()) signal(notEmptyWaiters);
+            }
+            if (e != null) {
+                signal(notFullWaiters);
+                // 接力: 还有元素就唤醒下一个等元素的消费者
+                if (!queue.isEmpty()) signal(notEmptyWaiters);
+                return e;
+            }
+        }
+    }
+
+    private static void signal(ConcurrentLinkedQueue<Thread> waiters) {
+        Thread waiter = waiters.peek();
+        if (waiter != null) LockSupport.unpark(waiter);
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return queue.capacity() - queue.size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) throw new NullPointerException();
+        if (c == this) throw new IllegalArgumentException();
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = queue.poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        if (n > 0) signal(notFullWaiters);
+        return n;
+    }
+
+    /**
+     * 删除的元素在被消费者跳过之前仍然占着槽位，不唤醒等空位的生产者
+     */
+    @Override
+    public boolean remove(Object o) {
+        return queue.remove(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return queue.contains(o);
+    }
+
+    /**
+     * 弱一致的迭代器，见MpmcArrayQueue
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return queue.iterator();
+    }
+}
@@ -0,0 +1,35 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 前后各用7个long填充的原子long，保证value独占一个缓存行(64字节)，
+ * 避免被不同线程频繁修改的两个计数器(比如队列的生产者下标和消费者下标)落在同一缓存行里互相失效(伪共享)
+ */
+final class PaddedAtomicLong {
+    private static final AtomicLongFieldUpdater<PaddedAtomicLong> VALUE = AtomicLongFieldUpdater.newUpdater(PaddedAtomicLong.class, "value");
+
+    long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    PaddedAtomicLong(long initialValue) {
+        value = initialValue;
+    }
+
+    long get() {
+        return value;
+    }
+
+    void set(long newValue) {
+        value = newValue;
+    }
+
+    void lazySet(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    boolean compareAndSet(long expect, long update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+}
@@ -0,0 +1,527 @@
+package tongji.java.util.concurrent;
+
+import tongji.java.util.concurrent.locks.ReentrantLock;
+import tongji.java.util.concurrent.locks.SpinPolicy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 可重复使用、参与者数量可以动态增减的多阶段屏障
+ * <p>
+ * 所有状态压缩在一个long里，一次CAS就能同时修改:
+ * 低16位 unarrived: 本阶段还没到达的参与者数
+ * 16~31位 parties: 注册的参与者数
+ * 32~62位 phase: 当前阶段号
+ * 最高位 terminated: 是否已终止，所以终止后state为负数，phase也为负数
+ * 没有参与者时不能用unarrived为0表示(那代表本阶段全部到达)，于是用特殊值EMPTY(parties=0,unarrived=1)表示。
+ * <p>
+ * 分层: 参与者很多时，所有线程都在同一个state上CAS会成为瓶颈。可以把参与者分散注册到多个子Phaser上，
+ * 子Phaser在第一次有参与者注册时向父Phaser注册自己这一个参与者，子Phaser的参与者全部到达后才向父Phaser到达一次。
+ * 这样到达的CAS分散在各个子Phaser上，只有每个子Phaser的最后一次到达会传到上层。
+ * 阶段号以root为准，子Phaser落后时由reconcileState追上。
+ * <p>
+ * 等待的线程不使用AQS的CLH队列，而是按阶段的奇偶分别挂在root的两个Treiber栈上(evenQ/oddQ)，
+ * 整棵树共享这两个栈。相邻两个阶段的等待者不会互相干扰，推进阶段时只需要弹出上一阶段的栈。
+ */
+public class Phaser {
+    private static final int MAX_PARTIES = 0xffff;
+    private static final int MAX_PHASE = Integer.MAX_VALUE;
+    private static final int PARTIES_SHIFT = 16;
+    private static final int PHASE_SHIFT = 32;
+    private static final int UNARRIVED_MASK = 0xffff;
+    private static final long PARTIES_MASK = 0xffff0000L;
+    private static final long COUNTS_MASK = 0xffffffffL;
+    private static final long TERMINATION_BIT = 1L << 63;
+
+    private static final int ONE_ARRIVAL = 1;
+    private static final int ONE_PARTY = 1 << PARTIES_SHIFT;
+    private static final int ONE_DEREGISTER = ONE_ARRIVAL | ONE_PARTY;
+    private static final int EMPTY = 1;
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    // 每有一个新的参与者到达，等待者就多自旋这么多次再入栈阻塞。单核自旋没有意义
+    private static final int SPINS_PER_ARRIVAL = (NCPU < 2) ? 1 : 1 << 8;
+
+    private static final AtomicLongFieldUpdater<Phaser> STATE = AtomicLongFieldUpdater.newUpdater(Phaser.class, "state");
+
+    private volatile long state;
+    private final Phaser parent;
+    private final Phaser root;
+    // 偶数阶段和奇数阶段的等待者栈，子Phaser直接引用root的
+    private final AtomicReference<QNode> evenQ;
+    private final AtomicReference<QNode> oddQ;
+    // 子Phaser第一次注册时使用
+    private final ReentrantLock registerLock = new ReentrantLock();
+
+    private static int unarrivedOf(long s) {
+        int counts = (int) s;
+        return (counts == EMPTY) ? 0 : (counts & UNARRIVED_MASK);
+    }
+
+    private static int partiesOf(long s) {
+        return (int) s >>> PARTIES_SHIFT;
+    }
+
+    private static int phaseOf(long s) {
+        return (int) (s >>> PHASE_SHIFT);
+    }
+
+    private static int arrivedOf(long s) {
+        int counts = (int) s;
+        return (counts == EMPTY) ? 0 : (counts >>> PARTIES_SHIFT) - (counts & UNARRIVED_MASK);
+    }
+
+    private AtomicReference<QNode> queueFor(int phase) {
+        return ((phase & 1) == 0) ? evenQ : oddQ;
+    }
+
+    public Phaser() {
+        this(null, 0);
+    }
+
+    public Phaser(int parties) {
+        this(null, parties);
+    }
+
+    public Phaser(Phaser parent) {
+        this(parent, 0);
+    }
+
+    public Phaser(Phaser parent, int parties) {
+        if (parties >>> PARTIES_SHIFT != 0) throw new IllegalArgumentException("Illegal number of parties");
+        int phase = 0;
+        this.parent = parent;
+        if (parent != null) {
+            final Phaser root = parent.root;
+            this.root = root;
+            this.evenQ = root.evenQ;
+            this.oddQ = root.oddQ;
+            // 有参与者时才需要作为一个参与者注册到父Phaser
+            if (parties != 0) phase = parent.doRegister(1);
+        } else {
+            this.root = this;
+            this.evenQ = new AtomicReference<>();
+            this.oddQ = new AtomicReference<>();
+        }
+        this.state = (parties == 0) ? (long) EMPTY :
+                ((long) phase << PHASE_SHIFT) | ((long) parties << PARTIES_SHIFT) | ((long) parties);
+    }
+
+    /**
+     * arrive和arriveAndDeregister的公共实现，adjust为ONE_ARRIVAL或ONE_DEREGISTER
+     * 本阶段最后一个到达的参与者负责推进阶段: root直接推进并唤醒等待者，子Phaser则向父Phaser到达一次
+     */
+    private int doArrive(int adjust) {
+        final Phaser root = this.root;
+        for (; ; ) {
+            long s = (root == this) ? state : reconcileState();
+            int phase = phaseOf(s);
+            if (phase < 0) return phase;
+            int unarrived = unarrivedOf(s);
+            if (unarrived <= 0) throw new IllegalStateException(badArrive(s));
+            if (STATE.compareAndSet(this, s, s -= adjust)) {
+                if (unarrived == 1) {
+                    long n = s & PARTIES_MASK;
+                    int nextUnarrived = (int) n >>> PARTIES_SHIFT;
+                    if (root == this) {
+                        STATE.compareAndSet(this, s, nextState(phase, n, nextUnarrived));
+                        releaseWaiters(phase);
+                    } else if (nextUnarrived == 0) {
+                        // 子Phaser已经没有参与者，从父Phaser注销自己
+                        phase = parent.doArrive(ONE_DEREGISTER);
+                        STATE.compareAndSet(this, s, s | EMPTY);
+                    } else {
+                        phase = parent.doArrive(ONE_ARRIVAL);
+                    }
+                }
+                return phase;
+            }
+        }
+    }
+
+    /**
+     * 计算root推进到下一阶段后的state，onAdvance返回true时终止
+     */
+    private long nextState(int phase, long n, int nextUnarrived) {
+        if (onAdvance(phase, nextUnarrived)) {
+            n |= TERMINATION_BIT;
+        } else if (nextUnarrived == 0) {
+            n |= EMPTY;
+        } else {
+            n |= nextUnarrived;
+        }
+        int nextPhase = (phase + 1) & MAX_PHASE;
+        return n | (long) nextPhase << PHASE_SHIFT;
+    }
+
+    /**
+     * register和bulkRegister的实现
+     * 如果本阶段已经全部到达、正在推进，新参与者要等推进完成后再注册到下一阶段
+     */
+    private int doRegister(int registrations) {
+        long adjust = ((long) registrations << PARTIES_SHIFT) | registrations;
+        final Phaser parent = this.parent;
+        int phase;
+        for (; ; ) {
+            long s = (parent == null) ? state : reconcileState();
+            int counts = (int) s;
+            int parties = counts >>> PARTIES_SHIFT;
+            int unarrived = counts & UNARRIVED_MASK;
+            if (registrations > MAX_PARTIES - parties) throw new IllegalStateException(badRegister(s));
+            phase = phaseOf(s);
+            if (phase < 0) break;
+            if (counts != EMPTY) {
+                if (parent == null || reconcileState() == s) {
+                    if (unarrived == 0) {
+                        root.internalAwaitAdvance(phase, null);
+                    } else if (STATE.compareAndSet(this, s, s + adjust)) {
+                        break;
+                    }
+                }
+            } else if (parent == null) {
+                // root的第一次注册
+                long next = ((long) phase << PHASE_SHIFT) | adjust;
+                if (STATE.compareAndSet(this, s, next)) break;
+            } else {
+                // 子Phaser的第一次注册，要先在父Phaser上注册自己，加锁保证只注册一次
+                // 在父Phaser上注册可能要等待阶段推进，用ReentrantLock而不是synchronized，虚拟线程阻塞时不会钉住载体线程
+                registerLock.lock();
+                try {
+                    if (state == s) {
+                        phase = parent.doRegister(1);
+                        if (phase < 0) break;
+                        // 父Phaser注册成功后，阶段号可能已被root推进，这里只能一直重试直到设置成功
+                        while (!STATE.weakCompareAndSet(this, s, ((long) phase << PHASE_SHIFT) | adjust)) {
+                            s = state;
+                            phase = phaseOf(root.state);
+                        }
+                        break;
+                    }
+                } finally {
+                    registerLock.unlock();
+                }
+            }
+        }
+        return phase;
+    }
+
+    /**
+     * 子Phaser的阶段号落后于root时(root推进阶段不会通知子Phaser)，把阶段号改成root的，unarrived恢复为parties
+     */
+    private long reconcileState() {
+        final Phaser root = this.root;
+        long s = state;
+        if (root != this) {
+            int phase, p;
+            while ((phase = phaseOf(root.state)) != phaseOf(s) &&
+                    !STATE.weakCompareAndSet(this, s,
+                            s = (((long) phase << PHASE_SHIFT) |
+                                    ((phase < 0) ? (s & COUNTS_MASK) :
+                                            (((p = (int) s >>> PARTIES_SHIFT) == 0) ? EMPTY :
+                                                    ((s & PARTIES_MASK) | p)))))) {
+                s = state;
+            }
+        }
+        return s;
+    }
+
+    public int register() {
+        return doRegister(1);
+    }
+
+    public int bulkRegister(int parties) {
+        if (parties < 0) throw new IllegalArgumentException();
+        if (parties == 0) return getPhase();
+        return doRegister(parties);
+    }
+
+    /**
+     * 到达但不等待，返回到达时的阶段号，已终止时返回负数
+     */
+    public int arrive() {
+        return doArrive(ONE_ARRIVAL);
+    }
+
+    public int arriveAndDeregister() {
+        return doArrive(ONE_DEREGISTER);
+    }
+
+    /**
+     * 到达并等待其他参与者，返回到达后的阶段号
+     * 子Phaser的最后一个到达者沿着父Phaser一路到达并等待，其余的直接在root上等待
+     */
+    public int arriveAndAwaitAdvance() {
+        final Phaser root = this.root;
+        for (; ; ) {
+            long s = (root == this) ? state : reconcileState();
+            int phase = phaseOf(s);
+            if (phase < 0) return phase;
+            int unarrived = unarrivedOf(s);
+            if (unarrived <= 0) throw new IllegalStateException(badArrive(s));
+            if (STATE.compareAndSet(this, s, s -= ONE_ARRIVAL)) {
+                if (unarrived > 1) return root.internalAwaitAdvance(phase, null);
+                if (root != this) return parent.arriveAndAwaitAdvance();
+                long n = s & PARTIES_MASK;
+                int nextUnarrived = (int) n >>> PARTIES_SHIFT;
+                n = nextState(phase, n, nextUnarrived);
+                if (!STATE.compareAndSet(this, s, n)) {
+                    // 只有forceTermination会在这时修改state
+                    return phaseOf(state);
+                }
+                releaseWaiters(phase);
+                return phaseOf(n);
+            }
+        }
+    }
+
+    /**
+     * 等待阶段号离开phase，当前阶段不是phase或已终止时立即返回，不响应中断
+     */
+    public int awaitAdvance(int phase) {
+        final Phaser root = this.root;
+        long s = (root == this) ? state : reconcileState();
+        int p = phaseOf(s);
+        if (phase < 0) return phase;
+        if (p == phase) return root.internalAwaitAdvance(phase, null);
+        return p;
+    }
+
+    public int awaitAdvanceInterruptibly(int phase) throws InterruptedException {
+        final Phaser root = this.root;
+        long s = (root == this) ? state : reconcileState();
+        int p = phaseOf(s);
+        if (phase < 0) return phase;
+        if (p == phase) {
+            QNode node = new QNode(this, phase, true, false, 0L);
+            p = root.internalAwaitAdvance(phase, node);
+            if (node.wasInterrupted) throw new InterruptedException();
+        }
+        return p;
+    }
+
+    public int awaitAdvanceInterruptibly(int phase, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long nanos = unit.toNanos(timeout);
+        final Phaser root = this.root;
+        long s = (root == this) ? state : reconcileState();
+        int p = phaseOf(s);
+        if (phase < 0) return phase;
+        if (p == phase) {
+            QNode node = new QNode(this, phase, true, true, nanos);
+            p = root.internalAwaitAdvance(phase, node);
+            if (node.wasInterrupted) {
+                throw new InterruptedException();
+            } else if (p == phase) {
+                throw new TimeoutException();
+            }
+        }
+        return p;
+    }
+
+    /**
+     * 设置root的终止位，唤醒所有等待者。子Phaser的终止状态通过reconcileState传递
+     */
+    public void forceTermination() {
+        final Phaser root = this.root;
+        long s;
+        while ((s = root.state) >= 0) {
+            if (STATE.compareAndSet(root, s, s | TERMINATION_BIT)) {
+                releaseWaiters(0);
+                releaseWaiters(1);
+                return;
+            }
+        }
+    }
+
+    public final int getPhase() {
+        return phaseOf(root.state);
+    }
+
+    public int getRegisteredParties() {
+        return partiesOf(state);
+    }
+
+    public int getArrivedParties() {
+        return arrivedOf(reconcileState());
+    }
+
+    public int getUnarrivedParties() {
+        return unarrivedOf(reconcileState());
+    }
+
+    public Phaser getParent() {
+        return parent;
+    }
+
+    public Phaser getRoot() {
+        return root;
+    }
+
+    public boolean isTerminated() {
+        return root.state < 0L;
+    }
+
+    /**
+     * 阶段推进时由最后一个到达者调用，返回true则终止。默认在没有参与者时终止
+     */
+    protected boolean onAdvance(int phase, int registeredParties) {
+        return registeredParties == 0;
+    }
+
+    @Override
+    public String toString() {
+        long s = reconcileState();
+        return super.toString() + "[phase = " + phaseOf(s) + " parties = " + partiesOf(s) + " arrived = " + arrivedOf(s) + "]";
+    }
+
+    private String badArrive(long s) {
+        return "Attempted arrival of unregistered party for " + stateToString(s);
+    }
+
+    private String badRegister(long s) {
+        return "Attempt to register more than " + MAX_PARTIES + " parties for " + stateToString(s);
+    }
+
+    private String stateToString(long s) {
+        return super.toString() + "[phase = " + phaseOf(s) + " parties = " + partiesOf(s) + " arrived = " + arrivedOf(s) + "]";
+    }
+
+    /**
+     * 弹出并唤醒等待phase阶段的节点，栈顶已经是当前阶段的等待者时停止
+     */
+    private void releaseWaiters(int phase) {
+        QNode q;
+        Thread t;
+        AtomicReference<QNode> head = queueFor(phase);
+        while ((q = head.get()) != null && q.phase != phaseOf(root.state)) {
+            if (head.compareAndSet(q, q.next) && (t = q.thread) != null) {
+                q.thread = null;
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * 等待者因超时或中断放弃时调用，顺带清理栈顶已经失效的节点
+     */
+    private int abortWait(int phase) {
+        AtomicReference<QNode> head = queueFor(phase);
+        for (; ; ) {
+            Thread t;
+            QNode q = head.get();
+            int p = phaseOf(root.state);
+            if (q == null || ((t = q.thread) != null && q.phase == p)) return p;
+            if (head.compareAndSet(q, q.next) && t != null) {
+                q.thread = null;
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * 只在root上调用，等待阶段号离开phase
+     * 先自旋，期间每看到有新的参与者到达就多自旋一会儿(说明阶段快要推进了)，自旋不到结果再入栈阻塞
+     *
+     * @param node 可中断或限时等待时传入，否则为null，需要阻塞时再创建
+     */
+    private int internalAwaitAdvance(int phase, QNode node) {
+        // 上一阶段的等待者可能还没被弹出，先帮忙清理，避免栈里混着两个阶段的节点
+        releaseWaiters(phase - 1);
+        boolean queued = false;
+        int lastUnarrived = 0;
+        // 虚拟线程按SpinPolicy不自旋，直接入栈阻塞
+        boolean spin = SpinPolicy.shouldSpin();
+        int spins = spin ? SPINS_PER_ARRIVAL : 0;
+        long s;
+        int p;
+        while ((p = phaseOf(s = state)) == phase) {
+            if (node == null) {
+                int unarrived = (int) s & UNARRIVED_MASK;
+                if (unarrived != lastUnarrived && (lastUnarrived = unarrived) < NCPU && spin) {
+                    spins += SPINS_PER_ARRIVAL;
+                }
+                boolean interrupted = Thread.interrupted();
+                if (interrupted || --spins < 0) {
+                    node = new QNode(this, phase, false, false, 0L);
+                    node.wasInterrupted = interrupted;
+                }
+            } else if (node.isReleasable()) {
+                break;
+            } else if (!queued) {
+                AtomicReference<QNode> head = queueFor(phase);
+                QNode q = node.next = head.get();
+                // 栈里是别的阶段的节点，或阶段已经推进，就不入栈了
+                if ((q == null || q.phase == phase) && phaseOf(state) == phase) {
+                    queued = head.compareAndSet(q, node);
+                }
+            } else {
+                node.block();
+            }
+        }
+
+        if (node != null) {
+            if (node.thread != null) node.thread = null;
+            // 不响应中断的等待，把中断标记还给线程
+            if (node.wasInterrupted && !node.interruptible) Thread.currentThread().interrupt();
+            if (p == phase && (p = phaseOf(state)) == phase) return abortWait(phase);
+        }
+        releaseWaiters(phase);
+        return p;
+    }
+
+    /**
+     * Treiber栈的节点，thread被置为null代表已经唤醒或放弃
+     */
+    static final class QNode {
+        final Phaser phaser;
+        final int phase;
+        final boolean interruptible;
+        final boolean timed;
+        boolean wasInterrupted;
+        long nanos;
+        final long deadline;
+        volatile Thread thread;
+        QNode next;
+
+        QNode(Phaser phaser, int phase, boolean interruptible, boolean timed, long nanos) {
+            this.phaser = phaser;
+            this.phase = phase;
+            this.interruptible = interruptible;
+            this.nanos = nanos;
+            this.timed = timed;
+            this.deadline = timed ? System.nanoTime() + nanos : 0L;
+            thread = Thread.currentThread();
+        }
+
+        boolean isReleasable() {
+            if (thread == null) return true;
+            if (phaser.getPhase() != phase) {
+                thread = null;
+                return true;
+            }
+            if (Thread.interrupted()) wasInterrupted = true;
+            if (wasInterrupted && interruptible) {
+                thread = null;
+                return true;
+            }
+            if (timed && (nanos <= 0L || (nanos = deadline - System.nanoTime()) <= 0L)) {
+                thread = null;
+                return true;
+            }
+            return false;
+        }
+
+        void block() {
+            while (!isReleasable()) {
+                if (timed) {
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 可以递归拆分的任务，交给WorkStealingPool执行
+ * <p>
+ * 典型用法: 在compute里把任务一分为二，fork其中一个(放进当前工作线程自己的双端队列，空闲线程可以来偷)，
+ * 自己直接计算另一个，最后join前一个。
+ * join不会让工作线程干等: 任务还没完成时，它会先执行自己队列里的任务，再去偷别人的，实在没活干才阻塞。
+ * <p>
+ * status >= 0代表未完成。外部线程等待结果时把自己压入waiters栈后LockSupport.park，完成时弹出整个栈逐个unpark。
+ * 不用synchronized + wait/notifyAll，虚拟线程在这里阻塞时不会钉住载体线程。
+ */
+public abstract class RecursiveTask<V> {
+    private static final AtomicIntegerFieldUpdater<RecursiveTask> STATUS = AtomicIntegerFieldUpdater.newUpdater(RecursiveTask.class, "status");
+    private static final AtomicReferenceFieldUpdater<RecursiveTask, WaitNode> WAITERS = AtomicReferenceFieldUpdater.newUpdater(RecursiveTask.class, WaitNode.class, "waiters");
+
+    private static final int NORMAL = -1;
+    private static final int EXCEPTIONAL = -2;
+    // join时没活可干，先让出CPU的次数，被偷走的任务通常很快就能完成
+    private static final int JOIN_YIELDS = 64;
+    // 阻塞等待时每次最多等多久，醒来后再看看有没有新任务可以帮忙执行
+    private static final long JOIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile int status;
+    private volatile WaitNode waiters;
+    private V result;
+    private Throwable exception;
+
+    protected abstract V compute();
+
+    /**
+     * 放进当前工作线程的双端队列，只能在WorkStealingPool的任务里调用；从外部提交要用WorkStealingPool.submit
+     */
+    public final RecursiveTask<V> fork() {
+        Thread t = Thread.currentThread();
+        if (!(t instanceof WorkStealingPool.Worker)) {
+            throw new IllegalStateException("fork() must be called from a WorkStealingPool worker");
+        }
+        ((WorkStealingPool.Worker) t).push(this);
+        return this;
+    }
+
+    /**
+     * 等待任务完成并返回结果，compute抛出的异常原样抛出
+     */
+    public final V join() {
+        if (status >= 0) {
+            Thread t = Thread.currentThread();
+            if (t instanceof WorkStealingPool.Worker) {
+                helpJoin((WorkStealingPool.Worker) t);
+            } else {
+                externalAwaitDone(0L);
+            }
+        }
+        return reportResult();
+    }
+
+    /**
+     * 在当前线程直接执行
+     */
+    public final V invoke() {
+        doExec();
+        return join();
+    }
+
+    /**
+     * 同时执行两个任务: fork第二个，自己执行第一个
+     */
+    public static void invokeAll(RecursiveTask<?> t1, RecursiveTask<?> t2) {
+        t2.fork();
+        t1.invoke();
+        t2.join();
+    }
+
+    public final boolean isDone() {
+        return status < 0;
+    }
+
+    public final boolean isCompletedAbnormally() {
+        return status == EXCEPTIONAL;
+    }
+
+    public final V getRawResult() {
+        return result;
+    }
+
+    final void doExec() {
+        if (status < 0) return;
+        try {
+            result = compute();
+        } catch (Throwable ex) {
+            exception = ex;
+            setCompletion(EXCEPTIONAL);
+            return;
+        }
+        setCompletion(NORMAL);
+    }
+
+    static final class WaitNode {
+        volatile Thread thread;
+        volatile WaitNode next;
+
+        WaitNode(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private void setCompletion(int completion) {
+        if (STATUS.compareAndSet(this, 0, completion)) {
+            for (WaitNode q = WAITERS.getAndSet(this, null); q != null; q = q.next) {
+                Thread t = q.thread;
+                if (t != null) {
+                    q.thread = null;
+                    LockSupport.unpark(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * 工作线程join: 先帮忙执行其他任务，实在没有再短暂阻塞
+     */
+    private void helpJoin(WorkStealingPool.Worker w) {
+        int yields = 0;
+        while (status >= 0) {
+            RecursiveTask<?> task = w.nextTask();
+            if (task != null) {
+                task.doExec();
+                yields = 0;
+            } else if (yields < JOIN_YIELDS) {
+                yields++;
+                Thread.yield();
+            } else {
+                externalAwaitDone(JOIN_WAIT_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 入栈后再检查一次状态才park，完成者是先改状态再弹栈，所以不会错过唤醒
+     * 不响应中断，但会保留中断标记；超时返回时把自己的节点从栈中摘掉，helpJoin反复限时等待也不会堆积节点
+     *
+     * @param nanos 0代表一直等到完成
+     */
+    final void externalAwaitDone(long nanos) {
+        if (status < 0) return;
+        WaitNode node = new WaitNode(Thread.currentThread());
+        WaitNode h;
+        do {
+            node.next = h = waiters;
+        } while (!WAITERS.compareAndSet(this, h, node));
+        final long deadline = System.nanoTime() + nanos;
+        boolean interrupted = false;
+        try {
+            while (status >= 0) {
+                if (nanos == 0L) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) break;
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) interrupted = true;
+            }
+        } finally {
+            node.thread = null;
+            // 完成时整个栈已经被弹出，不用再摘
+            if (status >= 0) removeWaiters();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 摘掉栈中所有thread为null的节点(已经超时返回的等待者)
+     * 和其他等待者并发时可能摘漏或者前驱也刚被置空，发现这种情况就从栈顶重来
+     */
+    private void removeWaiters() {
+        retry:
+        for (; ; ) {
+            for (WaitNode pred = null, q = waiters, s; q != null; q = s) {
+                s = q.next;
+                if (q.thread != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    pred.next = s;
+                    if (pred.thread == null) continue retry;
+                } else if (!WAITERS.compareAndSet(this, q, s)) {
+                    continue retry;
+                }
+            }
+            break;
+        }
+    }
+
+    private V reportResult() {
+        if (status == EXCEPTIONAL) {
+            Throwable ex = exception;
+            if (ex instanceof RuntimeException) throw (RuntimeException) ex;
+            if (ex instanceof Error) throw (Error) ex;
+            throw new RuntimeException(ex);
+        }
+        return result;
+    }
+}
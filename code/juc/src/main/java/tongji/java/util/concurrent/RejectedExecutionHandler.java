@@ -0,0 +1,8 @@
+package tongji.java.util.concurrent;
+
+/**
+ * 线程池无法接收任务时(已关闭，或者线程数达到上限且队列已满)的处理策略
+ */
+public interface RejectedExecutionHandler {
+    void rejectedExecution(Runnable r, ThreadPoolExecutor executor);
+}
@@ -0,0 +1,714 @@
+package tongji.java.util.concurrent;
+
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 线程池
+ * <p>
+ * ctl把两个信息压缩在一个int里，一次CAS就能同时判断状态和修改线程数:
+ * 高3位 runState: RUNNING -> SHUTDOWN(不再接收新任务，但会执行完队列里的) -> STOP(不执行队列里的任务，中断所有工作线程)
+ * -> TIDYING(线程和队列都空了，即将执行terminated钩子) -> TERMINATED
+ * 低29位 workerCount: 工作线程数
+ * 状态只会单调增大，所以可以直接比较大小。
+ * <p>
+ * execute的三步:
+ * 1. 线程数小于corePoolSize，直接新建线程执行这个任务
+ * 2. 否则放入队列，放入后再检查一次状态，防止放入的同时线程池被关闭或者线程全部退出
+ * 3. 队列满了，线程数小于maximumPoolSize时新建线程，否则拒绝
+ * <p>
+ * 工作线程集合workers和统计数据由mainLock保护；每个Worker自己也是一把不可重入的锁，执行任务期间持有，
+ * 这样shutdown时能用tryLock区分出空闲的线程，只中断空闲的，不打断正在执行的任务。
+ */
+public class ThreadPoolExecutor extends AbstractExecutorService {
+    private final AtomicInteger ctl = new AtomicInteger(ctlOf(RUNNING, 0));
+    private static final int COUNT_BITS = Integer.SIZE - 3;
+    private static final int CAPACITY = (1 << COUNT_BITS) - 1;
+
+    private static final int RUNNING = -1 << COUNT_BITS;
+    private static final int SHUTDOWN = 0;
+    private static final int STOP = 1 << COUNT_BITS;
+    private static final int TIDYING = 2 << COUNT_BITS;
+    private static final int TERMINATED = 3 << COUNT_BITS;
+
+    private static int runStateOf(int c) {
+        return c & ~CAPACITY;
+    }
+
+    private static int workerCountOf(int c) {
+        return c & CAPACITY;
+    }
+
+    private static int ctlOf(int rs, int wc) {
+        return rs | wc;
+    }
+
+    private static boolean runStateLessThan(int c, int s) {
+        return c < s;
+    }
+
+    private static boolean runStateAtLeast(int c, int s) {
+        return c >= s;
+    }
+
+    private static boolean isRunning(int c) {
+        return c < SHUTDOWN;
+    }
+
+    private boolean compareAndIncrementWorkerCount(int expect) {
+        return ctl.compareAndSet(expect, expect + 1);
+    }
+
+    private boolean compareAndDecrementWorkerCount(int expect) {
+        return ctl.compareAndSet(expect, expect - 1);
+    }
+
+    /**
+     * 线程异常退出时调用，一直重试直到成功
+     */
+    private void decrementWorkerCount() {
+        do {
+        } while (!compareAndDecrementWorkerCount(ctl.get()));
+    }
+
+    private final BlockingQueue<Runnable> workQueue;
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final HashSet<Worker> workers = new HashSet<>();
+    // awaitTermination等待的条件
+    private final Condition termination = mainLock.newCondition();
+    // 以下统计数据只在持有mainLock时读写
+    private int largestPoolSize;
+    private long completedTaskCount;
+
+    private volatile ThreadFactory threadFactory;
+    private volatile RejectedExecutionHandler handler;
+    private volatile long keepAliveTime;
+    private volatile boolean allowCoreThreadTimeOut;
+    private volatile int corePoolSize;
+    private volatile int maximumPoolSize;
+
+    private static final RejectedExecutionHandler defaultHandler = new AbortPolicy();
+
+    /**
+     * 工作线程，自身是一把不可重入的独占锁: 执行任务时加锁，shutdown只中断能tryLock成功(即空闲)的线程
+     * 不用ReentrantLock是因为任务里调用setCorePoolSize等方法时会尝试中断空闲线程，可重入的话会把自己中断掉
+     */
+    private final class Worker extends AbstractQueuedSynchronizer implements Runnable {
+        final Thread thread;
+        Runnable firstTask;
+        // 该线程执行完成的任务数，只有线程自己在持有锁时写
+        volatile long completedTasks;
+
+        Worker(Runnable firstTask) {
+            // runWorker之前禁止中断
+            setState(-1);
+            this.firstTask = firstTask;
+            this.thread = getThreadFactory().newThread(this);
+        }
+
+        @Override
+        public void run() {
+            runWorker(this);
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            return getState() != 0;
+        }
+
+        @Override
+        protected boolean tryAcquire(int unused) {
+            if (compareAndSetState(0, 1)) {
+                setExclusiveOwnerThread(Thread.currentThread());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean tryRelease(int unused) {
+            setExclusiveOwnerThread(null);
+            setState(0);
+            return true;
+        }
+
+        void lock() {
+            acquire(1);
+        }
+
+        boolean tryLock() {
+            return tryAcquire(1);
+        }
+
+        void unlock() {
+            release(1);
+        }
+
+        boolean isLocked() {
+            return isHeldExclusively();
+        }
+
+        void interruptIfStarted() {
+            Thread t;
+            if (getState() >= 0 && (t = thread) != null && !t.isInterrupted()) {
+                try {
+                    t.interrupt();
+                } catch (SecurityException ignore) {
+                }
+            }
+        }
+    }
+
+    public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, Executors.defaultThreadFactory(), defaultHandler);
+    }
+
+    public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                              ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        if (corePoolSize < 0 || maximumPoolSize <= 0 || maximumPoolSize < corePoolSize || keepAliveTime < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (workQueue == null || threadFactory == null || handler == null) throw new NullPointerException();
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.workQueue = workQueue;
+        this.keepAliveTime = unit.toNanos(keepAliveTime);
+        this.threadFactory = threadFactory;
+        this.handler = handler;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException();
+        int c = ctl.get();
+        if (workerCountOf(c) < corePoolSize) {
+            if (addWorker(command, true)) return;
+            c = ctl.get();
+        }
+        if (isRunning(c) && workQueue.offer(command)) {
+            int recheck = ctl.get();
+            // 放入队列的同时线程池被关闭了，撤回任务并拒绝
+            if (!isRunning(recheck) && remove(command)) {
+                reject(command);
+            } else if (workerCountOf(recheck) == 0) {
+                // corePoolSize为0或线程都退出了，至少保证有一个线程来执行队列里的任务
+                addWorker(null, false);
+            }
+        } else if (!addWorker(command, false)) {
+            reject(command);
+        }
+    }
+
+    /**
+     * 先CAS增加线程数占位，成功后再在mainLock内把Worker加入集合并启动线程
+     *
+     * @param core true时以corePoolSize为上限，否则以maximumPoolSize为上限
+     */
+    private boolean addWorker(Runnable firstTask, boolean core) {
+        retry:
+        for (; ; ) {
+            int c = ctl.get();
+            int rs = runStateOf(c);
+            // SHUTDOWN状态下只允许为了处理队列里剩余的任务而新建没有firstTask的线程
+            if (rs >= SHUTDOWN && !(rs == SHUTDOWN && firstTask == null && !workQueue.isEmpty())) return false;
+            for (; ; ) {
+                int wc = workerCountOf(c);
+                if (wc >= CAPACITY || wc >= (core ? corePoolSize : maximumPoolSize)) return false;
+                if (compareAndIncrementWorkerCount(c)) break retry;
+                c = ctl.get();
+                // 状态变了要回到外层重新判断，只是线程数变了就在内层重试CAS
+                if (runStateOf(c) != rs) continue retry;
+            }
+        }
+
+        boolean workerStarted = false;
+        boolean workerAdded = false;
+        Worker w = null;
+        try {
+            w = new Worker(firstTask);
+            final Thread t = w.thread;
+            if (t != null) {
+                final ReentrantLock mainLock = this.mainLock;
+                mainLock.lock();
+                try {
+                    int rs = runStateOf(ctl.get());
+                    if (rs < SHUTDOWN || (rs == SHUTDOWN && firstTask == null)) {
+                        if (t.isAlive()) throw new IllegalThreadStateException();
+                        workers.add(w);
+                        int s = workers.size();
+                        if (s > largestPoolSize) largestPoolSize = s;
+                        workerAdded = true;
+                    }
+                } finally {
+                    mainLock.unlock();
+                }
+                if (workerAdded) {
+                    t.start();
+                    workerStarted = true;
+                }
+            }
+        } finally {
+            if (!workerStarted) addWorkerFailed(w);
+        }
+        return workerStarted;
+    }
+
+    private void addWorkerFailed(Worker w) {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (w != null) workers.remove(w);
+            decrementWorkerCount();
+            tryTerminate();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    final void runWorker(Worker w) {
+        Thread wt = Thread.currentThread();
+        Runnable task = w.firstTask;
+        w.firstTask = null;
+        // state从-1变为0，允许被中断
+        w.unlock();
+        boolean completedAbruptly = true;
+        try {
+            while (task != null || (task = getTask()) != null) {
+                w.lock();
+                // 线程池STOP时确保线程被中断；否则清掉可能残留的中断标记，避免影响下一个任务
+                if ((runStateAtLeast(ctl.get(), STOP) || (Thread.interrupted() && runStateAtLeast(ctl.get(), STOP))) && !wt.isInterrupted()) {
+                    wt.interrupt();
+                }
+                try {
+                    beforeExecute(wt, task);
+                    Throwable thrown = null;
+                    try {
+                        task.run();
+                    } catch (RuntimeException | Error x) {
+                        thrown = x;
+                        throw x;
+                    } catch (Throwable x) {
+                        thrown = x;
+                        throw new Error(x);
+                    } finally {
+                        afterExecute(task, thrown);
+                    }
+                } finally {
+                    task = null;
+                    w.completedTasks++;
+                    w.unlock();
+                }
+            }
+            completedAbruptly = false;
+        } finally {
+            processWorkerExit(w, completedAbruptly);
+        }
+    }
+
+    /**
+     * 从队列取任务，返回null时工作线程退出:
+     * 线程池STOP，或者SHUTDOWN且队列为空，或者线程数超过上限，或者允许超时的线程空闲超过keepAliveTime
+     */
+    private Runnable getTask() {
+        boolean timedOut = false;
+        for (; ; ) {
+            int c = ctl.get();
+            int rs = runStateOf(c);
+            if (rs >= SHUTDOWN && (rs >= STOP || workQueue.isEmpty())) {
+                decrementWorkerCount();
+                return null;
+            }
+            int wc = workerCountOf(c);
+            boolean timed = allowCoreThreadTimeOut || wc > corePoolSize;
+            if ((wc > maximumPoolSize || (timed && timedOut)) && (wc > 1 || workQueue.isEmpty())) {
+                if (compareAndDecrementWorkerCount(c)) return null;
+                continue;
+            }
+            try {
+                Runnable r = timed ? workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) : workQueue.take();
+                if (r != null) return r;
+                timedOut = true;
+            } catch (InterruptedException retry) {
+                timedOut = false;
+            }
+        }
+    }
+
+    private void processWorkerExit(Worker w, boolean completedAbruptly) {
+        // 正常退出时getTask已经减过线程数了
+        if (completedAbruptly) decrementWorkerCount();
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            completedTaskCount += w.completedTasks;
+            workers.remove(w);
+        } finally {
+            mainLock.unlock();
+        }
+        tryTerminate();
+
+        int c = ctl.get();
+        if (runStateLessThan(c, STOP)) {
+            if (!completedAbruptly) {
+                int min = allowCoreThreadTimeOut ? 0 : corePoolSize;
+                if (min == 0 && !workQueue.isEmpty()) min = 1;
+                if (workerCountOf(c) >= min) return;
+            }
+            // 任务抛异常导致线程退出，或者线程数不够，补一个线程
+            addWorker(null, false);
+        }
+    }
+
+    /**
+     * 满足终止条件(SHUTDOWN且线程和队列都空，或者STOP且线程为空)时进入TIDYING，执行terminated钩子后进入TERMINATED
+     * 还有线程时只中断一个空闲线程，让它退出后再调用tryTerminate，终止信号就这样在线程间传递下去
+     */
+    final void tryTerminate() {
+        for (; ; ) {
+            int c = ctl.get();
+            if (isRunning(c) || runStateAtLeast(c, TIDYING) || (runStateOf(c) == SHUTDOWN && !workQueue.isEmpty())) return;
+            if (workerCountOf(c) != 0) {
+                interruptIdleWorkers(true);
+                return;
+            }
+            final ReentrantLock mainLock = this.mainLock;
+            mainLock.lock();
+            try {
+                if (ctl.compareAndSet(c, ctlOf(TIDYING, 0))) {
+                    try {
+                        terminated();
+                    } finally {
+                        ctl.set(ctlOf(TERMINATED, 0));
+                        termination.signalAll();
+                    }
+                    return;
+                }
+            } finally {
+                mainLock.unlock();
+            }
+        }
+    }
+
+    private void interruptIdleWorkers(boolean onlyOne) {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            for (Worker w : workers) {
+                Thread t = w.thread;
+                if (!t.isInterrupted() && w.tryLock()) {
+                    try {
+                        t.interrupt();
+                    } catch (SecurityException ignore) {
+                    } finally {
+                        w.unlock();
+                    }
+                }
+                if (onlyOne) break;
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    private void advanceRunState(int targetState) {
+        for (; ; ) {
+            int c = ctl.get();
+            if (runStateAtLeast(c, targetState) || ctl.compareAndSet(c, ctlOf(targetState, workerCountOf(c)))) break;
+        }
+    }
+
+    final void reject(Runnable command) {
+        handler.rejectedExecution(command, this);
+    }
+
+    @Override
+    public void shutdown() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            advanceRunState(SHUTDOWN);
+            interruptIdleWorkers(false);
+        } finally {
+            mainLock.unlock();
+        }
+        tryTerminate();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            advanceRunState(STOP);
+            for (Worker w : workers) {
+                w.interruptIfStarted();
+            }
+            tasks = new ArrayList<>();
+            workQueue.drainTo(tasks);
+        } finally {
+            mainLock.unlock();
+        }
+        tryTerminate();
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return !isRunning(ctl.get());
+    }
+
+    public boolean isTerminating() {
+        int c = ctl.get();
+        return !isRunning(c) && runStateLessThan(c, TERMINATED);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return runStateAtLeast(ctl.get(), TERMINATED);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            while (!runStateAtLeast(ctl.get(), TERMINATED)) {
+                if (nanos <= 0L) return false;
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    public boolean remove(Runnable task) {
+        boolean removed = workQueue.remove(task);
+        tryTerminate();
+        return removed;
+    }
+
+    public boolean prestartCoreThread() {
+        return workerCountOf(ctl.get()) < corePoolSize && addWorker(null, true);
+    }
+
+    public int prestartAllCoreThreads() {
+        int n = 0;
+        while (addWorker(null, true)) ++n;
+        return n;
+    }
+
+    public void allowCoreThreadTimeOut(boolean value) {
+        if (value && keepAliveTime <= 0) throw new IllegalArgumentException("Core threads must have nonzero keep alive times");
+        if (value != allowCoreThreadTimeOut) {
+            allowCoreThreadTimeOut = value;
+            if (value) interruptIdleWorkers(false);
+        }
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public long getKeepAliveTime(TimeUnit unit) {
+        return unit.convert(keepAliveTime, TimeUnit.NANOSECONDS);
+    }
+
+    public BlockingQueue<Runnable> getQueue() {
+        return workQueue;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null) throw new NullPointerException();
+        this.handler = handler;
+    }
+
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return handler;
+    }
+
+    public int getPoolSize() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            return runStateAtLeast(ctl.get(), TIDYING) ? 0 : workers.size();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 正在执行任务的线程数，执行任务时Worker是加锁的
+     */
+    public int getActiveCount() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            int n = 0;
+            for (Worker w : workers) {
+                if (w.isLocked()) ++n;
+            }
+            return n;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    public int getLargestPoolSize() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            return largestPoolSize;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 已提交的任务总数的近似值: 已退出线程完成的、存活线程完成的、正在执行的、队列中的
+     */
+    public long getTaskCount() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            long n = completedTaskCount;
+            for (Worker w : workers) {
+                n += w.completedTasks;
+                if (w.isLocked()) ++n;
+            }
+            return n + workQueue.size();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    public long getCompletedTaskCount() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            long n = completedTaskCount;
+            for (Worker w : workers) {
+                n += w.completedTasks;
+            }
+            return n;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 每个存活线程各自完成的任务数，可以看出任务在线程间分配得是否均匀
+     */
+    public long[] getWorkerCompletedTaskCounts() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            long[] counts = new long[workers.size()];
+            int i = 0;
+            for (Worker w : workers) {
+                counts[i++] = w.completedTasks;
+            }
+            return counts;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    // 以下是给子类扩展的钩子
+
+    protected void beforeExecute(Thread t, Runnable r) {
+    }
+
+    protected void afterExecute(Runnable r, Throwable t) {
+    }
+
+    protected void terminated() {
+    }
+
+    @Override
+    public String toString() {
+        long ncompleted;
+        int nworkers, nactive;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            ncompleted = completedTaskCount;
+            nactive = 0;
+            nworkers = workers.size();
+            for (Worker w : workers) {
+                ncompleted += w.completedTasks;
+                if (w.isLocked()) ++nactive;
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        int c = ctl.get();
+        String rs = runStateLessThan(c, SHUTDOWN) ? "Running" : (runStateAtLeast(c, TERMINATED) ? "Terminated" : "Shutting down");
+        return super.toString() + "[" + rs + ", pool size = " + nworkers + ", active threads = " + nactive
+                + ", queued tasks = " + workQueue.size() + ", completed tasks = " + ncompleted + "]";
+    }
+
+    /**
+     * 抛出RejectedExecutionException，默认策略
+     */
+    public static class AbortPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            throw new RejectedExecutionException("Task " + r.toString() + " rejected from " + e.toString());
+        }
+    }
+
+    /**
+     * 由提交任务的线程自己执行，天然地降低了提交速度
+     */
+    public static class CallerRunsPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            if (!e.isShutdown()) r.run();
+        }
+    }
+
+    /**
+     * 直接丢弃
+     */
+    public static class DiscardPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+        }
+    }
+
+    /**
+     * 丢弃队列里最老的任务，再重新提交
+     */
+    public static class DiscardOldestPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            if (!e.isShutdown()) {
+                e.getQueue().poll();
+                e.execute(r);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Chase-Lev工作窃取双端队列
+ * <p>
+ * 只有拥有者线程在底部bottom一端push/pop(后进先出，刚fork出来的子任务数据还在缓存里)，
+ * 其他线程只能从顶部top一端steal(先进先出，偷走的是较早fork出来的大任务，一次偷够干很久)。
+ * 拥有者和窃取者平时操作的是两端，互不干扰；只有剩最后一个元素时，双方才通过CAS top来竞争。
+ * <p>
+ * 数组是循环使用的，满了就扩容为两倍，旧数组里的元素不清理，正在读旧数组的窃取者仍能读到正确的元素。
+ */
+final class WorkStealingDeque<T> {
+    private static final int INITIAL_CAPACITY = 1 << 8;
+
+    // 窃取者通过CAS top抢元素
+    private final PaddedAtomicLong top = new PaddedAtomicLong(0);
+    // 只有拥有者写
+    private final PaddedAtomicLong bottom = new PaddedAtomicLong(0);
+    private volatile AtomicReferenceArray<T> array = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    private static int index(long i, AtomicReferenceArray<?> a) {
+        return (int) i & (a.length() - 1);
+    }
+
+    /**
+     * 只能由拥有者调用
+     */
+    void push(T task) {
+        long b = bottom.get();
+        long t = top.get();
+        AtomicReferenceArray<T> a = array;
+        if (b - t >= a.length() - 1) {
+            a = grow(a, t, b);
+        }
+        a.lazySet(index(b, a), task);
+        // volatile写，既发布了元素，也保证之后检查空闲线程时不会和空闲线程的登记互相错过
+        bottom.set(b + 1);
+    }
+
+    private AtomicReferenceArray<T> grow(AtomicReferenceArray<T> a, long t, long b) {
+        AtomicReferenceArray<T> na = new AtomicReferenceArray<>(a.length() << 1);
+        for (long i = t; i < b; i++) {
+            na.lazySet(index(i, na), a.get(index(i, a)));
+        }
+        array = na;
+        return na;
+    }
+
+    /**
+     * 只能由拥有者调用，从底部取
+     */
+    T pop() {
+        long b = bottom.get() - 1;
+        AtomicReferenceArray<T> a = array;
+        // 先把bottom减一，再读top，窃取者就不会再越过b
+        bottom.set(b);
+        long t = top.get();
+        if (t > b) {
+            // 空
+            bottom.set(b + 1);
+            return null;
+        }
+        int i = index(b, a);
+        T task = a.get(i);
+        if (t == b) {
+            // 最后一个元素，和窃取者竞争
+            if (!top.compareAndSet(t, t + 1)) {
+                task = null;
+            } else {
+                a.lazySet(i, null);
+            }
+            bottom.set(b + 1);
+            return task;
+        }
+        a.lazySet(i, null);
+        return task;
+    }
+
+    /**
+     * 任何线程都可以调用，从顶部偷；为空或者竞争失败都返回null
+     */
+    T steal() {
+        long t = top.get();
+        long b = bottom.get();
+        if (t >= b) return null;
+        AtomicReferenceArray<T> a = array;
+        int i = index(t, a);
+        T task = a.get(i);
+        if (task == null || !top.compareAndSet(t, t + 1)) return null;
+        // 拥有者要绕一圈才会再写这个槽位，期间一定会先扩容，所以这里可以放心清掉
+        a.compareAndSet(i, task, null);
+        return task;
+    }
+
+    /**
+     * 近似值
+     */
+    int size() {
+        long n = bottom.get() - top.get();
+        return n > 0 ? (int) n : 0;
+    }
+
+    boolean isEmpty() {
+        return bottom.get() <= top.get();
+    }
+}
@@ -0,0 +1,205 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 工作窃取线程池，用来执行RecursiveTask
+ * <p>
+ * 共享队列的线程池里，所有线程争抢同一个队列的头尾，CPU密集的细粒度任务大部分时间都耗在这把锁上。
+ * 这里每个工作线程有自己的WorkStealingDeque，fork出来的子任务放进自己的队列，自己从底部取，
+ * 没活干时从随机选择的其他线程的队列顶部偷，争用被分散到了各个队列上。
+ * 外部提交的任务放在一个共享的提交队列里，由工作线程取走。
+ * <p>
+ * 空闲线程的阻塞方式和AQS的parkAndCheckInterrupt一样用LockSupport.park:
+ * 先登记到空闲队列，再扫描一次所有队列，仍然没有任务才park；放入任务的一方先放入再唤醒一个空闲线程，所以不会丢失唤醒。
+ * 被唤醒的线程偷到任务后，如果对方队列里还有剩余，再接力唤醒下一个空闲线程。
+ */
+public class WorkStealingPool {
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final Worker[] workers;
+    private final ConcurrentLinkedQueue<RecursiveTask<?>> submissionQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch terminated;
+    private volatile boolean shutdown;
+
+    public WorkStealingPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkStealingPool(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException();
+        String prefix = "tongji-ws-" + poolNumber.getAndIncrement() + "-worker-";
+        this.workers = new Worker[parallelism];
+        this.terminated = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Worker(this, i, prefix + i);
+        }
+        for (Worker w : workers) {
+            w.start();
+        }
+    }
+
+    /**
+     * 提交任务并等待结果
+     */
+    public <V> V invoke(RecursiveTask<V> task) {
+        return submit(task).join();
+    }
+
+    public <V> RecursiveTask<V> submit(RecursiveTask<V> task) {
+        if (task == null) throw new NullPointerException();
+        if (shutdown) throw new RejectedExecutionException("WorkStealingPool has been shut down");
+        submissionQueue.offer(task);
+        signalWork();
+        return task;
+    }
+
+    /**
+     * 有空闲线程就唤醒一个
+     */
+    final void signalWork() {
+        Worker w = idleWorkers.poll();
+        if (w != null) LockSupport.unpark(w);
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务执行完后工作线程退出
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Worker w : workers) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    /**
+     * 所有线程累计偷到的任务数
+     */
+    public long getStealCount() {
+        long n = 0;
+        for (Worker w : workers) {
+            n += w.stealCount;
+        }
+        return n;
+    }
+
+    /**
+     * 工作线程，持有自己的双端队列
+     */
+    static final class Worker extends Thread {
+        final WorkStealingPool pool;
+        final WorkStealingDeque<RecursiveTask<?>> deque = new WorkStealingDeque<>();
+        final int index;
+        // 选择窃取对象的随机数种子(xorshift)，每个线程一份，不需要同步
+        private int seed;
+        volatile long stealCount;
+
+        Worker(WorkStealingPool pool, int index, String name) {
+            super(name);
+            this.pool = pool;
+            this.index = index;
+            this.seed = index * 0x9E3779B9 + 1;
+            setDaemon(true);
+        }
+
+        void push(RecursiveTask<?> task) {
+            deque.push(task);
+            pool.signalWork();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (; ; ) {
+                    RecursiveTask<?> task = nextTask();
+                    if (task != null) {
+                        task.doExec();
+                    } else if (!awaitWork()) {
+                        break;
+                    }
+                }
+            } finally {
+                pool.terminated.countDown();
+            }
+        }
+
+        /**
+         * 自己的队列 -> 提交队列 -> 从随机位置开始依次尝试偷其他线程的队列
+         */
+        RecursiveTask<?> nextTask() {
+            RecursiveTask<?> task = deque.pop();
+            if (task == null) task = pool.submissionQueue.poll();
+            if (task == null) task = trySteal();
+            return task;
+        }
+
+        private RecursiveTask<?> trySteal() {
+            Worker[] ws = pool.workers;
+            int n = ws.length;
+            if (n == 1) return null;
+            int r = seed;
+            r ^= r << 13;
+            r ^= r >>> 17;
+            r ^= r << 5;
+            seed = r;
+            int start = (r & Integer.MAX_VALUE) % n;
+            for (int k = 0; k < n; k++) {
+                Worker victim = ws[(start + k) % n];
+                if (victim == this) continue;
+                RecursiveTask<?> task = victim.deque.steal();
+                if (task != null) {
+                    stealCount++;
+                    // 对方还有剩余，叫醒其他空闲线程一起来偷
+                    if (!victim.deque.isEmpty()) pool.signalWork();
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 登记为空闲 -> 再扫描一次 -> park
+         *
+         * @return false代表线程池已关闭且没有任务了，线程应当退出
+         */
+        private boolean awaitWork() {
+            WorkStealingPool p = pool;
+            p.idleWorkers.add(this);
+            try {
+                if (hasQueuedTasks()) return true;
+                if (p.shutdown) return false;
+                LockSupport.park(this);
+                // 和parkAndCheckInterrupt一样清掉中断标记，工作线程不响应中断
+                Thread.interrupted();
+                return true;
+            } finally {
+                p.idleWorkers.remove(this);
+            }
+        }
+
+        private boolean hasQueuedTasks() {
+            if (!pool.submissionQueue.isEmpty()) return true;
+            for (Worker w : pool.workers) {
+                if (!w.deque.isEmpty()) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tongji.java.util.concurrent.atomic;
+
+/**
+ * double版本的LongAdder，值按Double.doubleToRawLongBits存储
+ * 浮点加法不满足结合律，并发累加的结果和单线程顺序累加可能有舍入误差
+ */
+public class DoubleAdder extends Striped64 {
+
+    public DoubleAdder() {
+    }
+
+    public void add(double x) {
+        Cell[] cs;
+        long b, v;
+        int m;
+        Cell c;
+        if ((cs = cells) != null || !casBase(b = base, Double.doubleToRawLongBits(Double.longBitsToDouble(b) + x))) {
+            int index = getProbe();
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[index & m]) == null
+                    || !(uncontended = c.cas(v = c.value, Double.doubleToRawLongBits(Double.longBitsToDouble(v) + x)))) {
+                doubleAccumulate(x, null, uncontended);
+            }
+        }
+    }
+
+    public double sum() {
+        Cell[] cs = cells;
+        double sum = Double.longBitsToDouble(base);
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) sum += Double.longBitsToDouble(c.value);
+            }
+        }
+        return sum;
+    }
+
+    public void reset() {
+        Cell[] cs = cells;
+        // 0.0的位模式就是0L
+        base = 0L;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) c.reset();
+            }
+        }
+    }
+
+    public double sumThenReset() {
+        Cell[] cs = cells;
+        double sum = Double.longBitsToDouble(getAndSetBase(0L));
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) sum += Double.longBitsToDouble(c.getAndSet(0L));
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(sum());
+    }
+
+    @Override
+    public double doubleValue() {
+        return sum();
+    }
+
+    @Override
+    public long longValue() {
+        return (long) sum();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) sum();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) sum();
+    }
+}
@@ -0,0 +1,93 @@
+package tongji.java.util.concurrent.atomic;
+
+import java.util.function.LongBinaryOperator;
+
+/**
+ * 用任意函数累积的LongAdder，比如Long::max可以用来统计最大延迟
+ * 函数必须满足结合律和交换律，并且没有副作用: 各单元的累积顺序是不确定的，CAS失败时函数还会被重复调用
+ */
+public class LongAccumulator extends Striped64 {
+    private final LongBinaryOperator function;
+    private final long identity;
+
+    /**
+     * @param identity 函数的单位元，比如max的Long.MIN_VALUE，新建的单元和reset都以它为初值
+     */
+    public LongAccumulator(LongBinaryOperator accumulatorFunction, long identity) {
+        this.function = accumulatorFunction;
+        base = this.identity = identity;
+    }
+
+    public void accumulate(long x) {
+        Cell[] cs;
+        long b, v, r;
+        int m;
+        Cell c;
+        // 结果没变(比如max时x不比当前值大)就不用写，减少缓存行失效
+        if ((cs = cells) != null || ((r = function.applyAsLong(b = base, x)) != b && !casBase(b, r))) {
+            int index = getProbe();
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[index & m]) == null
+                    || !(uncontended = (r = function.applyAsLong(v = c.value, x)) == v || c.cas(v, r))) {
+                longAccumulate(x, function, uncontended);
+            }
+        }
+    }
+
+    public long get() {
+        Cell[] cs = cells;
+        long result = base;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) result = function.applyAsLong(result, c.value);
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        Cell[] cs = cells;
+        base = identity;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) c.reset(identity);
+            }
+        }
+    }
+
+    public long getThenReset() {
+        Cell[] cs = cells;
+        long result = getAndSetBase(identity);
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) result = function.applyAsLong(result, c.getAndSet(identity));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    @Override
+    public long longValue() {
+        return get();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) get();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) get();
+    }
+}
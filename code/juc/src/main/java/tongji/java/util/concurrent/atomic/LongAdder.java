@@ -0,0 +1,99 @@
+package tongji.java.util.concurrent.atomic;
+
+/**
+ * 高并发下的计数器，写多读少时比AtomicLong快得多
+ * 代价是sum不是原子快照，并发修改时读到的是某个近似值
+ */
+public class LongAdder extends Striped64 {
+
+    public LongAdder() {
+    }
+
+    /**
+     * 快路径: 还没有cells就CAS base；有cells就CAS自己探针对应的单元；都失败了才进入longAccumulate
+     */
+    public void add(long x) {
+        Cell[] cs;
+        long b, v;
+        int m;
+        Cell c;
+        if ((cs = cells) != null || !casBase(b = base, b + x)) {
+            int index = getProbe();
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[index & m]) == null || !(uncontended = c.cas(v = c.value, v + x))) {
+                longAccumulate(x, null, uncontended);
+            }
+        }
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public long sum() {
+        Cell[] cs = cells;
+        long sum = base;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) sum += c.value;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 只有在没有并发修改时才能得到准确的清零
+     */
+    public void reset() {
+        Cell[] cs = cells;
+        base = 0L;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) c.reset();
+            }
+        }
+    }
+
+    /**
+     * 读取并清零，用于按时间窗口统计
+     */
+    public long sumThenReset() {
+        Cell[] cs = cells;
+        long sum = getAndSetBase(0L);
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) sum += c.getAndSet(0L);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    @Override
+    public long longValue() {
+        return sum();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) sum();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) sum();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) sum();
+    }
+}
@@ -0,0 +1,261 @@
+package tongji.java.util.concurrent.atomic;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * LongAdder、LongAccumulator、DoubleAdder的公共基类
+ * <p>
+ * 没有竞争时所有线程都CAS同一个base；一旦CAS失败，说明有竞争，线程改为CAS cells中由自己的探针(probe)选中的那个单元。
+ * 在单元上仍然CAS失败时先换一个探针(重新哈希到另一个单元)，连续失败才把cells扩容为两倍，单元数最多到不小于CPU数的2的幂，
+ * 再多也不会有更多线程同时在跑了。读取时把base和所有单元加起来，所以sum只是一个近似的快照。
+ * <p>
+ * double值按Double.doubleToRawLongBits存在long里。
+ */
+abstract class Striped64 extends Number {
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final AtomicLongFieldUpdater<Striped64> BASE = AtomicLongFieldUpdater.newUpdater(Striped64.class, "base");
+    private static final AtomicIntegerFieldUpdater<Striped64> CELLSBUSY = AtomicIntegerFieldUpdater.newUpdater(Striped64.class, "cellsBusy");
+
+    // 每个线程的探针，0代表还没初始化
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 前后填充，保证每个单元独占一个缓存行。
+     * JDK用@Contended做同样的事，但非JDK的类要加-XX:-RestrictContended才生效，所以这里手动填充
+     */
+    static final class Cell {
+        private static final AtomicLongFieldUpdater<Cell> VALUE = AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+        long p1, p2, p3, p4, p5, p6, p7;
+        volatile long value;
+        long p9, p10, p11, p12, p13, p14, p15;
+
+        Cell(long x) {
+            value = x;
+        }
+
+        boolean cas(long cmp, long val) {
+            return VALUE.compareAndSet(this, cmp, val);
+        }
+
+        void reset() {
+            VALUE.lazySet(this, 0L);
+        }
+
+        void reset(long identity) {
+            VALUE.lazySet(this, identity);
+        }
+
+        long getAndSet(long val) {
+            return VALUE.getAndSet(this, val);
+        }
+    }
+
+    // 数组长度总是2的幂
+    transient volatile Cell[] cells;
+    transient volatile long base;
+    // 创建或扩容cells时的自旋锁
+    transient volatile int cellsBusy;
+
+    final boolean casBase(long cmp, long val) {
+        return BASE.compareAndSet(this, cmp, val);
+    }
+
+    final long getAndSetBase(long val) {
+        return BASE.getAndSet(this, val);
+    }
+
+    final boolean casCellsBusy() {
+        return CELLSBUSY.compareAndSet(this, 0, 1);
+    }
+
+    static int getProbe() {
+        return PROBE.get()[0];
+    }
+
+    /**
+     * xorshift换一个探针，让线程落到另一个单元
+     */
+    static int advanceProbe(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        PROBE.get()[0] = probe;
+        return probe;
+    }
+
+    private static int initProbe() {
+        int p = ThreadLocalRandom.current().nextInt();
+        // 0留给"未初始化"
+        if (p == 0) p = 1;
+        PROBE.get()[0] = p;
+        return p;
+    }
+
+    /**
+     * 处理初始化cells、新建单元、扩容和竞争的慢路径
+     *
+     * @param fn             为null代表加法，省去一次函数调用
+     * @param wasUncontended 调用者在单元上的CAS是否成功过(失败了才会走到这里时为false)
+     */
+    final void longAccumulate(long x, LongBinaryOperator fn, boolean wasUncontended) {
+        int h;
+        if ((h = getProbe()) == 0) {
+            h = initProbe();
+            wasUncontended = true;
+        }
+        // 上一次是否发生了冲突，连续两次冲突才扩容
+        boolean collide = false;
+        for (; ; ) {
+            Cell[] cs;
+            Cell c;
+            int n;
+            long v;
+            if ((cs = cells) != null && (n = cs.length) > 0) {
+                if ((c = cs[(n - 1) & h]) == null) {
+                    // 选中的单元还没创建，在锁内创建
+                    if (cellsBusy == 0) {
+                        Cell r = new Cell(x);
+                        if (cellsBusy == 0 && casCellsBusy()) {
+                            try {
+                                Cell[] rs;
+                                int m, j;
+                                if ((rs = cells) != null && (m = rs.length) > 0 && rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    break;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            continue;
+                        }
+                    }
+                    collide = false;
+                } else if (!wasUncontended) {
+                    // 已知在这个单元上CAS失败过，先换探针再试
+                    wasUncontended = true;
+                } else if (c.cas(v = c.value, (fn == null) ? v + x : fn.applyAsLong(v, x))) {
+                    break;
+                } else if (n >= NCPU || cells != cs) {
+                    // 单元数已经到上限，或者已经被别人扩容了，只换探针
+                    collide = false;
+                } else if (!collide) {
+                    collide = true;
+                } else if (cellsBusy == 0 && casCellsBusy()) {
+                    try {
+                        if (cells == cs) {
+                            Cell[] rs = new Cell[n << 1];
+                            System.arraycopy(cs, 0, rs, 0, n);
+                            cells = rs;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    // 扩容后用原来的探针重试
+                    continue;
+                }
+                h = advanceProbe(h);
+            } else if (cellsBusy == 0 && cells == cs && casCellsBusy()) {
+                // 第一次发生竞争，创建两个单元
+                try {
+                    if (cells == cs) {
+                        Cell[] rs = new Cell[2];
+                        rs[h & 1] = new Cell(x);
+                        cells = rs;
+                        break;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+            } else if (casBase(v = base, (fn == null) ? v + x : fn.applyAsLong(v, x))) {
+                // 别人正在创建cells，退回到base
+                break;
+            }
+        }
+    }
+
+    private static long apply(DoubleBinaryOperator fn, long v, double x) {
+        double d = Double.longBitsToDouble(v);
+        d = (fn == null) ? d + x : fn.applyAsDouble(d, x);
+        return Double.doubleToRawLongBits(d);
+    }
+
+    /**
+     * 和longAccumulate相同，值按double解释
+     */
+    final void doubleAccumulate(double x, DoubleBinaryOperator fn, boolean wasUncontended) {
+        int h;
+        if ((h = getProbe()) == 0) {
+            h = initProbe();
+            wasUncontended = true;
+        }
+        boolean collide = false;
+        for (; ; ) {
+            Cell[] cs;
+            Cell c;
+            int n;
+            long v;
+            if ((cs = cells) != null && (n = cs.length) > 0) {
+                if ((c = cs[(n - 1) & h]) == null) {
+                    if (cellsBusy == 0) {
+                        Cell r = new Cell(Double.doubleToRawLongBits(x));
+                        if (cellsBusy == 0 && casCellsBusy()) {
+                            try {
+                                Cell[] rs;
+                                int m, j;
+                                if ((rs = cells) != null && (m = rs.length) > 0 && rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    break;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            continue;
+                        }
+                    }
+                    collide = false;
+                } else if (!wasUncontended) {
+                    wasUncontended = true;
+                } else if (c.cas(v = c.value, apply(fn, v, x))) {
+                    break;
+                } else if (n >= NCPU || cells != cs) {
+                    collide = false;
+                } else if (!collide) {
+                    collide = true;
+                } else if (cellsBusy == 0 && casCellsBusy()) {
+                    try {
+                        if (cells == cs) {
+                            Cell[] rs = new Cell[n << 1];
+                            System.arraycopy(cs, 0, rs, 0, n);
+                            cells = rs;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    continue;
+                }
+                h = advanceProbe(h);
+            } else if (cellsBusy == 0 && cells == cs && casCellsBusy()) {
+                try {
+                    if (cells == cs) {
+                        Cell[] rs = new Cell[2];
+                        rs[h & 1] = new Cell(Double.doubleToRawLongBits(x));
+                        cells = rs;
+                        break;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+            } else if (casBase(v = base, apply(fn, v, x))) {
+                break;
+            }
+        }
+    }
+}
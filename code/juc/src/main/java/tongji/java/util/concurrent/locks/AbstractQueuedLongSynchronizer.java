@@ -0,0 +1,432 @@
+package tongji.java.util.concurrent.locks;
+
+import tongji.java.util.concurrent.locks.AbstractQueuedSynchronizer.Node;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * state为long的AQS
+ * <p>
+ * int的state最多只能表示2^31-1个许可，也没有多余的位可以同时存放版本号等信息。
+ * 这个类除了state的类型(以及tryXxx方法参数的类型)之外，和AbstractQueuedSynchronizer完全一样:
+ * 同步队列直接复用AbstractQueuedSynchronizer.Node，入队、阻塞、取消、唤醒后继、共享模式的传播都是同一套CLH队列逻辑。
+ * <p>
+ * 和AbstractQueuedSynchronizer不同的是，这里的CAS使用原子字段更新器，而不是Unsafe.getUnsafe()，
+ * 后者只允许启动类加载器加载的类调用，应用代码里使用会抛出SecurityException。
+ * 本类暂不提供ConditionObject。
+ */
+public abstract class AbstractQueuedLongSynchronizer extends AbstractOwnableSynchronizer {
+    private static final AtomicLongFieldUpdater<AbstractQueuedLongSynchronizer> STATE =
+            AtomicLongFieldUpdater.newUpdater(AbstractQueuedLongSynchronizer.class, "state");
+    private static final AtomicReferenceFieldUpdater<AbstractQueuedLongSynchronizer, Node> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractQueuedLongSynchronizer.class, Node.class, "head");
+    private static final AtomicReferenceFieldUpdater<AbstractQueuedLongSynchronizer, Node> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractQueuedLongSynchronizer.class, Node.class, "tail");
+    private static final AtomicIntegerFieldUpdater<Node> WAIT_STATUS =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "waitStatus");
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+    static final long spinForTimeoutThreshold = 1000L;
+
+    private volatile Node head;
+    private volatile Node tail;
+    private volatile long state;
+
+    protected AbstractQueuedLongSynchronizer() {
+    }
+
+    protected final long getState() {
+        return state;
+    }
+
+    protected final void setState(long newState) {
+        state = newState;
+    }
+
+    protected final boolean compareAndSetState(long expect, long update) {
+        return STATE.compareAndSet(this, expect, update);
+    }
+
+    // 子类按需实现的方法，含义与AbstractQueuedSynchronizer相同
+
+    protected boolean tryAcquire(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    protected boolean tryRelease(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    protected long tryAcquireShared(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    protected boolean tryReleaseShared(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    protected boolean isHeldExclusively() {
+        throw new UnsupportedOperationException();
+    }
+
+    // ---------------- 独占模式 ----------------
+
+    public final void acquire(long arg) {
+        if (!tryAcquire(arg) && acquireQueued(addWaiter(Node.EXCLUSIVE), arg)) {
+            selfInterrupt();
+        }
+    }
+
+    public final void acquireInterruptibly(long arg) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (!tryAcquire(arg)) doAcquireInterruptibly(arg);
+    }
+
+    public final boolean tryAcquireNanos(long arg, long nanosTimeout) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        return tryAcquire(arg) || doAcquireNanos(arg, nanosTimeout);
+    }
+
+    public final boolean release(long arg) {
+        if (tryRelease(arg)) {
+            Node h = head;
+            if (h != null && h.waitStatus != 0) unparkSuccessor(h);
+            return true;
+        }
+        return false;
+    }
+
+    final boolean acquireQueued(final Node node, long arg) {
+        boolean failed = true;
+        try {
+            boolean interrupted = false;
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head && tryAcquire(arg)) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    failed = false;
+                    return interrupted;
+                }
+                if (shouldParkAfterFailedAcquire(p, node) && parkAndCheckInterrupt()) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    private void doAcquireInterruptibly(long arg) throws InterruptedException {
+        final Node node = addWaiter(Node.EXCLUSIVE);
+        boolean failed = true;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head && tryAcquire(arg)) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    failed = false;
+                    return;
+                }
+                if (shouldParkAfterFailedAcquire(p, node) && parkAndCheckInterrupt())
+                    throw new InterruptedException();
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    private boolean doAcquireNanos(long arg, long nanosTimeout) throws InterruptedException {
+        if (nanosTimeout <= 0L) return false;
+        final long deadline = System.nanoTime() + nanosTimeout;
+        final Node node = addWaiter(Node.EXCLUSIVE);
+        boolean failed = true;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head && tryAcquire(arg)) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    failed = false;
+                    return true;
+                }
+                nanosTimeout = deadline - System.nanoTime();
+                if (nanosTimeout <= 0L) return false;
+                if (shouldParkAfterFailedAcquire(p, node) && nanosTimeout > spinForTimeoutThreshold)
+                    LockSupport.parkNanos(this, nanosTimeout);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    // ---------------- 共享模式 ----------------
+
+    public final void acquireShared(long arg) {
+        if (tryAcquireShared(arg) < 0) doAcquireShared(arg);
+    }
+
+    public final void acquireSharedInterruptibly(long arg) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (tryAcquireShared(arg) < 0) doAcquireSharedInterruptibly(arg);
+    }
+
+    public final boolean tryAcquireSharedNanos(long arg, long nanosTimeout) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        return tryAcquireShared(arg) >= 0 || doAcquireSharedNanos(arg, nanosTimeout);
+    }
+
+    public final boolean releaseShared(long arg) {
+        if (tryReleaseShared(arg)) {
+            doReleaseShared();
+            return true;
+        }
+        return false;
+    }
+
+    private void doAcquireShared(long arg) {
+        final Node node = addWaiter(Node.SHARED);
+        boolean failed = true;
+        try {
+            boolean interrupted = false;
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    long r = tryAcquireShared(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        if (interrupted) selfInterrupt();
+                        failed = false;
+                        return;
+                    }
+                }
+                if (shouldParkAfterFailedAcquire(p, node) && parkAndCheckInterrupt())
+                    interrupted = true;
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    private void doAcquireSharedInterruptibly(long arg) throws InterruptedException {
+        final Node node = addWaiter(Node.SHARED);
+        boolean failed = true;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    long r = tryAcquireShared(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        failed = false;
+                        return;
+                    }
+                }
+                if (shouldParkAfterFailedAcquire(p, node) && parkAndCheckInterrupt())
+                    throw new InterruptedException();
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    private boolean doAcquireSharedNanos(long arg, long nanosTimeout) throws InterruptedException {
+        if (nanosTimeout <= 0L) return false;
+        final long deadline = System.nanoTime() + nanosTimeout;
+        final Node node = addWaiter(Node.SHARED);
+        boolean failed = true;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    long r = tryAcquireShared(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        failed = false;
+                        return true;
+                    }
+                }
+                nanosTimeout = deadline - System.nanoTime();
+                if (nanosTimeout <= 0L) return false;
+                if (shouldParkAfterFailedAcquire(p, node) && nanosTimeout > spinForTimeoutThreshold)
+                    LockSupport.parkNanos(this, nanosTimeout);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            if (failed) cancelAcquire(node);
+        }
+    }
+
+    /**
+     * 成为head后，如果还有剩余资源(propagate > 0)或者旧head/新head要求传播，就继续唤醒共享模式的后继
+     */
+    private void setHeadAndPropagate(Node node, long propagate) {
+        Node h = head;
+        setHead(node);
+        if (propagate > 0 || h == null || h.waitStatus < 0 || (h = head) == null || h.waitStatus < 0) {
+            Node s = node.next;
+            if (s == null || s.isShared()) doReleaseShared();
+        }
+    }
+
+    private void doReleaseShared() {
+        for (; ; ) {
+            Node h = head;
+            if (h != null && h != tail) {
+                int ws = h.waitStatus;
+                if (ws == Node.SIGNAL) {
+                    if (!WAIT_STATUS.compareAndSet(h, Node.SIGNAL, 0)) continue;
+                    unparkSuccessor(h);
+                } else if (ws == 0 && !WAIT_STATUS.compareAndSet(h, 0, Node.PROPAGATE)) {
+                    continue;
+                }
+            }
+            // head没变才退出，变了说明有线程刚获取成功，要继续帮它唤醒后继
+            if (h == head) break;
+        }
+    }
+
+    // ---------------- 队列操作 ----------------
+
+    private Node addWaiter(Node mode) {
+        Node node = new Node(Thread.currentThread(), mode);
+        Node pred = tail;
+        if (pred != null) {
+            node.prev = pred;
+            if (TAIL.compareAndSet(this, pred, node)) {
+                pred.next = node;
+                return node;
+            }
+        }
+        enq(node);
+        return node;
+    }
+
+    private Node enq(final Node node) {
+        for (; ; ) {
+            Node t = tail;
+            if (t == null) {
+                // 第一次入队时才初始化dummy head
+                if (HEAD.compareAndSet(this, null, new Node())) tail = head;
+            } else {
+                node.prev = t;
+                if (TAIL.compareAndSet(this, t, node)) {
+                    t.next = node;
+                    return t;
+                }
+            }
+        }
+    }
+
+    private void setHead(Node node) {
+        head = node;
+        node.thread = null;
+        node.prev = null;
+    }
+
+    private static boolean shouldParkAfterFailedAcquire(Node pred, Node node) {
+        int ws = pred.waitStatus;
+        if (ws == Node.SIGNAL) return true;
+        if (ws > 0) {
+            // 跳过已取消的前驱
+            do {
+                node.prev = pred = pred.prev;
+            } while (pred.waitStatus > 0);
+            pred.next = node;
+        } else {
+            WAIT_STATUS.compareAndSet(pred, ws, Node.SIGNAL);
+        }
+        return false;
+    }
+
+    private boolean parkAndCheckInterrupt() {
+        LockSupport.park(this);
+        return Thread.interrupted();
+    }
+
+    private void cancelAcquire(Node node) {
+        if (node == null) return;
+        node.thread = null;
+        Node pred = node.prev;
+        while (pred.waitStatus > 0)
+            node.prev = pred = pred.prev;
+        Node predNext = pred.next;
+        node.waitStatus = Node.CANCELLED;
+
+        if (node == tail && TAIL.compareAndSet(this, node, pred)) {
+            NEXT.compareAndSet(pred, predNext, null);
+        } else {
+            int ws;
+            if (pred != head && ((ws = pred.waitStatus) == Node.SIGNAL || (ws <= 0 && WAIT_STATUS.compareAndSet(pred, ws, Node.SIGNAL))) && pred.thread != null) {
+                Node next = node.next;
+                if (next != null && next.waitStatus <= 0) NEXT.compareAndSet(pred, predNext, next);
+            } else {
+                // node是head的后继，放弃资格的同时要唤醒自己的后继
+                unparkSuccessor(node);
+            }
+            node.next = node; // help GC
+        }
+    }
+
+    private void unparkSuccessor(Node node) {
+        int ws = node.waitStatus;
+        if (ws < 0) WAIT_STATUS.compareAndSet(node, ws, 0);
+        Node s = node.next;
+        if (s == null || s.waitStatus > 0) {
+            s = null;
+            for (Node t = tail; t != null && t != node; t = t.prev)
+                if (t.waitStatus <= 0) s = t;
+        }
+        if (s != null) LockSupport.unpark(s.thread);
+    }
+
+    static void selfInterrupt() {
+        Thread.currentThread().interrupt();
+    }
+
+    // ---------------- 队列查询 ----------------
+
+    public final boolean hasQueuedThreads() {
+        return head != tail;
+    }
+
+    /**
+     * 是否有比当前线程等得更久的线程，公平模式的tryAcquire用
+     */
+    public final boolean hasQueuedPredecessors() {
+        Node t = tail;
+        Node h = head;
+        Node s;
+        return h != t && ((s = h.next) == null || s.thread != Thread.currentThread());
+    }
+
+    /**
+     * 排在第一个的等待者是否是独占模式，读写锁用它让读者给等待中的写者让路，避免写者饥饿
+     */
+    final boolean apparentlyFirstQueuedIsExclusive() {
+        Node h, s;
+        return (h = head) != null && (s = h.next) != null && !s.isShared() && s.thread != null;
+    }
+
+    public final int getQueueLength() {
+        int n = 0;
+        for (Node p = tail; p != null; p = p.prev) {
+            if (p.thread != null) ++n;
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[State = " + state + ", " + (hasQueuedThreads() ? "non" : "") + "empty queue]";
+    }
+}
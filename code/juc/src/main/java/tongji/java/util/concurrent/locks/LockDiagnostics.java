@@ -0,0 +1,209 @@
+package tongji.java.util.concurrent.locks;
+
+import tongji.java.util.concurrent.ConcurrentHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 可选的锁诊断: 对登记过的ReentrantLock定期采样，发现死锁环和持有时间过长的锁
+ * <p>
+ * 完全在采样线程里完成，lock/unlock的热路径上没有任何额外开销:
+ * 1. 等待图: 每个锁的排队线程(AQS队列里的结点)指向锁的持有者，一个线程同一时刻只会排在一个锁上，所以每个结点最多一条出边，
+ * 顺着边走回到路径上已有的线程就是环。排队和持有在两次读取之间可能变化，同一个环连续两次采样都出现才报告。
+ * 2. 长时间持有: 记录每个锁的持有者第一次被看到的时间，同一个线程连续被看到超过阈值就报告。
+ * 这是采样估计，期间持有者释放后又重新获得会被算作一次持有，所以阈值应当远大于采样周期。
+ * <p>
+ * 调用栈用Thread.getStackTrace获取，需要到达安全点，代价较高，所以只在报告时才获取，每个问题只报告一次。
+ */
+public class LockDiagnostics {
+    private final Map<ReentrantLock, String> locks = new ConcurrentHashMap<>();
+    private final long longHoldNanos;
+    private final Consumer<LockReport> listener;
+
+    // 以下状态只由采样线程(或者手动调用sample的线程)访问，sample方法加锁保证串行
+    private final ReentrantLock sampleLock = new ReentrantLock();
+    private final Map<ReentrantLock, Hold> holds = new IdentityHashMap<>();
+    // 上一次采样看到的环，再次看到时才报告
+    private Set<String> lastCycles = new HashSet<>();
+    private final Set<String> reportedCycles = new HashSet<>();
+
+    private volatile Thread sampler;
+
+    /**
+     * 一次持有的采样记录
+     */
+    private static final class Hold {
+        final Thread owner;
+        final long firstSeen;
+        boolean reported;
+
+        Hold(Thread owner, long firstSeen) {
+            this.owner = owner;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    /**
+     * 等待图的一条边: 线程在名为lockName的锁上等待owner
+     */
+    private static final class Edge {
+        final Thread owner;
+        final String lockName;
+
+        Edge(Thread owner, String lockName) {
+            this.owner = owner;
+            this.lockName = lockName;
+        }
+    }
+
+    public LockDiagnostics(long longHoldThreshold, TimeUnit unit, Consumer<LockReport> listener) {
+        if (listener == null) throw new NullPointerException();
+        this.longHoldNanos = unit.toNanos(longHoldThreshold);
+        this.listener = listener;
+    }
+
+    public void register(String name, ReentrantLock lock) {
+        locks.put(lock, name);
+    }
+
+    public void unregister(ReentrantLock lock) {
+        locks.remove(lock);
+    }
+
+    /**
+     * 启动后台采样线程(守护线程)
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (sampler != null) throw new IllegalStateException("LockDiagnostics has been started");
+        final long periodNanos = unit.toNanos(period);
+        Thread t = new Thread(() -> {
+            Thread self = Thread.currentThread();
+            while (sampler == self) {
+                sample();
+                LockSupport.parkNanos(this, periodNanos);
+            }
+        }, "tongji-lock-diagnostics");
+        t.setDaemon(true);
+        sampler = t;
+        t.start();
+    }
+
+    public synchronized void stop() {
+        Thread t = sampler;
+        sampler = null;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    /**
+     * 采样一次，新发现的问题交给listener，同时作为返回值
+     */
+    public List<LockReport> sample() {
+        List<LockReport> reports = new ArrayList<>();
+        sampleLock.lock();
+        try {
+            long now = System.nanoTime();
+            Map<Thread, Edge> waitsFor = new HashMap<>();
+            Set<ReentrantLock> seen = new HashSet<>();
+            for (Map.Entry<ReentrantLock, String> e : locks.entrySet()) {
+                ReentrantLock lock = e.getKey();
+                String name = e.getValue();
+                seen.add(lock);
+                Thread owner = lock.getOwner();
+                if (owner == null) {
+                    holds.remove(lock);
+                    continue;
+                }
+                for (Thread waiter : lock.getQueuedThreads()) {
+                    if (waiter != owner) waitsFor.put(waiter, new Edge(owner, name));
+                }
+                checkHold(lock, name, owner, now, reports);
+            }
+            holds.keySet().retainAll(seen);
+            findCycles(waitsFor, reports);
+        } finally {
+            sampleLock.unlock();
+        }
+        for (LockReport report : reports) {
+            listener.accept(report);
+        }
+        return reports;
+    }
+
+    private void checkHold(ReentrantLock lock, String name, Thread owner, long now, List<LockReport> reports) {
+        Hold hold = holds.get(lock);
+        if (hold == null || hold.owner != owner) {
+            holds.put(lock, new Hold(owner, now));
+            return;
+        }
+        long held = now - hold.firstSeen;
+        if (!hold.reported && held >= longHoldNanos) {
+            hold.reported = true;
+            Map<Thread, StackTraceElement[]> stacks = new LinkedHashMap<>();
+            stacks.put(owner, owner.getStackTrace());
+            List<String> names = new ArrayList<>();
+            names.add(name);
+            reports.add(new LockReport(LockReport.Type.LONG_HOLD, names, stacks, held));
+        }
+    }
+
+    /**
+     * 每个线程最多一条出边，从每个还没访问过的线程出发顺着边走，走回本次路径上的线程就找到一个环
+     */
+    private void findCycles(Map<Thread, Edge> waitsFor, List<LockReport> reports) {
+        Set<String> cycles = new HashSet<>();
+        Set<Thread> visited = new HashSet<>();
+        for (Thread start : waitsFor.keySet()) {
+            if (visited.contains(start)) continue;
+            // 本次路径上的线程 -> 在路径中的位置
+            Map<Thread, Integer> onPath = new HashMap<>();
+            List<Thread> path = new ArrayList<>();
+            Thread t = start;
+            while (t != null && !visited.contains(t)) {
+                visited.add(t);
+                onPath.put(t, path.size());
+                path.add(t);
+                Edge edge = waitsFor.get(t);
+                t = edge == null ? null : edge.owner;
+            }
+            if (t == null || !onPath.containsKey(t)) continue;
+            List<Thread> cycle = path.subList(onPath.get(t), path.size());
+            String key = cycleKey(cycle);
+            cycles.add(key);
+            if (lastCycles.contains(key) && reportedCycles.add(key)) {
+                reports.add(deadlockReport(cycle, waitsFor));
+            }
+        }
+        // 已经消失的环允许再次报告
+        reportedCycles.retainAll(cycles);
+        lastCycles = cycles;
+    }
+
+    private static String cycleKey(List<Thread> cycle) {
+        Set<Long> ids = new TreeSet<>();
+        for (Thread t : cycle) {
+            ids.add(t.getId());
+        }
+        return ids.toString();
+    }
+
+    private static LockReport deadlockReport(List<Thread> cycle, Map<Thread, Edge> waitsFor) {
+        List<String> names = new ArrayList<>();
+        Map<Thread, StackTraceElement[]> stacks = new LinkedHashMap<>();
+        for (Thread t : cycle) {
+            names.add(waitsFor.get(t).lockName);
+            stacks.put(t, t.getStackTrace());
+        }
+        return new LockReport(LockReport.Type.DEADLOCK, names, stacks, 0L);
+    }
+}
@@ -0,0 +1,64 @@
+package tongji.java.util.concurrent.locks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LockDiagnostics发现的一个问题: 死锁环，或者持有时间过长的锁
+ */
+public final class LockReport {
+    public enum Type {
+        DEADLOCK, LONG_HOLD
+    }
+
+    private final Type type;
+    // 涉及的锁的名字，死锁时按环上的顺序
+    private final List<String> lockNames;
+    // 涉及的线程和它们被发现时的调用栈
+    private final Map<Thread, StackTraceElement[]> stacks;
+    // 持有时间(LONG_HOLD)，DEADLOCK时为0
+    private final long heldNanos;
+
+    LockReport(Type type, List<String> lockNames, Map<Thread, StackTraceElement[]> stacks, long heldNanos) {
+        this.type = type;
+        this.lockNames = Collections.unmodifiableList(lockNames);
+        this.stacks = Collections.unmodifiableMap(new LinkedHashMap<>(stacks));
+        this.heldNanos = heldNanos;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<String> getLockNames() {
+        return lockNames;
+    }
+
+    public Map<Thread, StackTraceElement[]> getStacks() {
+        return stacks;
+    }
+
+    public long getHeldNanos() {
+        return heldNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (type == Type.DEADLOCK) {
+            sb.append("deadlock on locks ").append(lockNames);
+        } else {
+            sb.append("lock ").append(lockNames.get(0)).append(" held for ").append(heldNanos / 1_000_000).append(" ms");
+        }
+        for (Map.Entry<Thread, StackTraceElement[]> e : stacks.entrySet()) {
+            Thread t = e.getKey();
+            sb.append("\n\"").append(t.getName()).append("\" id=").append(t.getId()).append(' ').append(t.getState());
+            for (StackTraceElement element : e.getValue()) {
+                sb.append("\n\tat ").append(element);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package tongji.java.util.concurrent.locks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 阻塞前是否先自旋
+ * <p>
+ * 平台线程park/unpark要经过操作系统，锁很快就会释放时先自旋一小会儿更划算。
+ * 虚拟线程park只是把自己从载体线程上卸下来，代价很小；自旋反而一直占着载体线程，挡住了其他虚拟线程，所以应该直接park。
+ * <p>
+ * 模式由系统属性tongji.juc.spin指定，也可以运行时修改:
+ * ADAPTIVE(默认): 平台线程自旋，虚拟线程不自旋
+ * ALWAYS: 总是自旋
+ * NEVER: 总是直接阻塞
+ * <p>
+ * 项目按Java 8编译，Thread.isVirtual(JDK 21)通过MethodHandle查找，找不到时所有线程都视为平台线程。
+ */
+public final class SpinPolicy {
+    public enum Mode {
+        ADAPTIVE, ALWAYS, NEVER
+    }
+
+    public static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private static volatile Mode mode = parseMode(System.getProperty("tongji.juc.spin"));
+
+    private SpinPolicy() {
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static Mode parseMode(String value) {
+        if (value == null) return Mode.ADAPTIVE;
+        try {
+            return Mode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Mode.ADAPTIVE;
+        }
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode newMode) {
+        if (newMode == null) throw new NullPointerException();
+        mode = newMode;
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) return false;
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 当前线程阻塞前是否应该自旋
+     */
+    public static boolean shouldSpin() {
+        Mode m = mode;
+        if (m == Mode.ALWAYS) return true;
+        if (m == Mode.NEVER) return false;
+        return !isVirtual(Thread.currentThread());
+    }
+
+    /**
+     * @param platformSpins 平台线程的自旋次数
+     * @return 当前线程实际应该自旋的次数
+     */
+    public static int spinsFor(int platformSpins) {
+        return shouldSpin() ? platformSpins : 0;
+    }
+}
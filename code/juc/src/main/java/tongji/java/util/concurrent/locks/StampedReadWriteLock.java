@@ -0,0 +1,198 @@
+package tongji.java.util.concurrent.locks;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于AbstractQueuedLongSynchronizer的读写锁，加锁返回stamp，另外支持乐观读
+ * <p>
+ * state的布局:
+ * 0~30位 持有读锁的线程数
+ * 31位 写锁
+ * 32~63位 版本号，每次释放写锁加一
+ * <p>
+ * stamp就是加锁时state去掉读者数之后的值(版本号加写锁位)。乐观读先拿到stamp，读完数据后用validate比较stamp和当前state，
+ * 期间只要有写者加过锁，写锁位或版本号就一定不同。
+ * int的state放不下版本号，只能像ReentrantReadWriteLock那样不支持乐观读；如果版本号只有几位，
+ * 一次乐观读期间发生的写操作恰好让版本号绕回原值就会误判(ABA)。32位的版本号需要在一次乐观读期间连续写2^32次才会绕回。
+ * <p>
+ * 不可重入，也不记录持有者，任何线程拿着正确的stamp都可以解锁。
+ * 有写者在排队时，新来的读者会排到它后面，避免写者饥饿。
+ */
+public class StampedReadWriteLock {
+    private static final long READER_MASK = (1L << 31) - 1;
+    private static final long WRITER = 1L << 31;
+    private static final long ONE_VERSION = 1L << 32;
+    private static final long STAMP_MASK = ~READER_MASK;
+
+    private final Sync sync = new Sync();
+
+    static final class Sync extends AbstractQueuedLongSynchronizer {
+        Sync() {
+            // 版本号从1开始，stamp为0专门表示失败
+            setState(ONE_VERSION);
+        }
+
+        @Override
+        protected boolean tryAcquire(long arg) {
+            long s = getState();
+            return (s & (READER_MASK | WRITER)) == 0 && compareAndSetState(s, s | WRITER);
+        }
+
+        /**
+         * 持有写锁时只有当前线程会修改state，直接set。版本号绕回0时跳过0
+         */
+        @Override
+        protected boolean tryRelease(long arg) {
+            long s = getState();
+            if ((s & WRITER) == 0) throw new IllegalMonitorStateException();
+            long next = (s & ~WRITER) + ONE_VERSION;
+            if ((next & STAMP_MASK) == 0) next += ONE_VERSION;
+            setState(next);
+            return true;
+        }
+
+        @Override
+        protected long tryAcquireShared(long arg) {
+            for (; ; ) {
+                long s = getState();
+                if ((s & WRITER) != 0 || apparentlyFirstQueuedIsExclusive()) return -1;
+                if ((s & READER_MASK) == READER_MASK) throw new Error("Maximum lock count exceeded");
+                // 返回1让排在后面的读者也被级联唤醒
+                if (compareAndSetState(s, s + 1)) return 1;
+            }
+        }
+
+        /**
+         * 最后一个读者释放时返回true，唤醒排队的写者
+         */
+        @Override
+        protected boolean tryReleaseShared(long arg) {
+            for (; ; ) {
+                long s = getState();
+                if ((s & READER_MASK) == 0) throw new IllegalMonitorStateException();
+                long next = s - 1;
+                if (compareAndSetState(s, next)) return (next & READER_MASK) == 0;
+            }
+        }
+
+        long tryReadLock() {
+            for (; ; ) {
+                long s = getState();
+                if ((s & WRITER) != 0) return 0L;
+                if ((s & READER_MASK) == READER_MASK) throw new Error("Maximum lock count exceeded");
+                if (compareAndSetState(s, s + 1)) return s & STAMP_MASK;
+            }
+        }
+
+        long state() {
+            return getState();
+        }
+    }
+
+    public long writeLock() {
+        sync.acquire(1);
+        return sync.state() & STAMP_MASK;
+    }
+
+    public long writeLockInterruptibly() throws InterruptedException {
+        sync.acquireInterruptibly(1);
+        return sync.state() & STAMP_MASK;
+    }
+
+    /**
+     * 获取不到立即返回0
+     */
+    public long tryWriteLock() {
+        return sync.tryAcquire(1) ? sync.state() & STAMP_MASK : 0L;
+    }
+
+    public long tryWriteLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireNanos(1, unit.toNanos(time)) ? sync.state() & STAMP_MASK : 0L;
+    }
+
+    /**
+     * 持有读锁期间不会有写者，所以加锁后读到的版本号是稳定的
+     */
+    public long readLock() {
+        sync.acquireShared(1);
+        return sync.state() & STAMP_MASK;
+    }
+
+    public long readLockInterruptibly() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+        return sync.state() & STAMP_MASK;
+    }
+
+    public long tryReadLock() {
+        return sync.tryReadLock();
+    }
+
+    public long tryReadLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(time)) ? sync.state() & STAMP_MASK : 0L;
+    }
+
+    public void unlockWrite(long stamp) {
+        if ((stamp & WRITER) == 0 || (sync.state() & STAMP_MASK) != stamp) throw new IllegalMonitorStateException();
+        sync.release(1);
+    }
+
+    public void unlockRead(long stamp) {
+        long s = sync.state();
+        if ((stamp & WRITER) != 0 || (s & STAMP_MASK) != stamp || (s & READER_MASK) == 0) {
+            throw new IllegalMonitorStateException();
+        }
+        sync.releaseShared(1);
+    }
+
+    /**
+     * 没有写者时返回当前stamp，否则返回0
+     */
+    public long tryOptimisticRead() {
+        long s = sync.state();
+        return (s & WRITER) == 0 ? s & STAMP_MASK : 0L;
+    }
+
+    /**
+     * 乐观读结束后调用，stamp之后没有写者加过锁时返回true
+     * 比较之前要加读屏障，防止之前对共享数据的普通读被重排到读state之后
+     */
+    public boolean validate(long stamp) {
+        UNSAFE.loadFence();
+        return stamp != 0L && (sync.state() & STAMP_MASK) == stamp;
+    }
+
+    public boolean isWriteLocked() {
+        return (sync.state() & WRITER) != 0;
+    }
+
+    public boolean isReadLocked() {
+        return (sync.state() & READER_MASK) != 0;
+    }
+
+    public int getReadLockCount() {
+        return (int) (sync.state() & READER_MASK);
+    }
+
+    @Override
+    public String toString() {
+        long s = sync.state();
+        return super.toString() + ((s & WRITER) != 0 ? "[Write-locked]" :
+                (s & READER_MASK) != 0 ? "[Read-locks:" + (s & READER_MASK) + "]" : "[Unlocked]");
+    }
+
+    // Unsafe.getUnsafe()只允许启动类加载器加载的类调用，这里通过反射取theUnsafe，只用它的loadFence
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+        } catch (Exception ex) {
+            throw new Error(ex);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentHashMapTest {
+    /**
+     * hashCode全部相同的键，用来制造长冲突链和树化
+     */
+    static final class CollidingKey implements Comparable<CollidingKey> {
+        final int value;
+
+        CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int compareTo(CollidingKey o) {
+            return Integer.compare(value, o.value);
+        }
+    }
+
+    interface IntConsumer {
+        void accept(int value) throws Exception;
+    }
+
+    /**
+     * 所有线程同时开始执行task，参数是线程编号；任何线程的异常或断言失败都让测试失败
+     */
+    private static void runConcurrently(int threads, IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.accept(id);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(30_000);
+            Assertions.assertFalse(worker.isAlive());
+        }
+        Assertions.assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    public void basicOperationTest() {
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertNull(map.get("a"));
+        Assertions.assertNull(map.put("a", 1));
+        Assertions.assertEquals(1, map.put("a", 2));
+        Assertions.assertEquals(2, map.putIfAbsent("a", 3));
+        Assertions.assertNull(map.putIfAbsent("b", 3));
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertTrue(map.containsKey("b"));
+
+        Assertions.assertFalse(map.replace("a", 1, 10));
+        Assertions.assertTrue(map.replace("a", 2, 10));
+        Assertions.assertEquals(10, map.replace("a", 11));
+        Assertions.assertNull(map.replace("c", 1));
+        Assertions.assertFalse(map.containsKey("c"));
+
+        Assertions.assertFalse(map.remove("a", 10));
+        Assertions.assertTrue(map.remove("a", 11));
+        Assertions.assertEquals(3, map.remove("b"));
+        Assertions.assertNull(map.remove("b"));
+        Assertions.assertTrue(map.isEmpty());
+
+        Assertions.assertThrows(NullPointerException.class, () -> map.put(null, 1));
+        Assertions.assertThrows(NullPointerException.class, () -> map.put("a", null));
+        Assertions.assertThrows(NullPointerException.class, () -> map.get(null));
+    }
+
+    @Test
+    public void computeTest() {
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        AtomicInteger calls = new AtomicInteger();
+        Assertions.assertEquals(1, map.computeIfAbsent("a", k -> calls.incrementAndGet()));
+        Assertions.assertEquals(1, map.computeIfAbsent("a", k -> calls.incrementAndGet()));
+        Assertions.assertEquals(1, calls.get());
+        // 返回null时不放入
+        Assertions.assertNull(map.computeIfAbsent("b", k -> null));
+        Assertions.assertFalse(map.containsKey("b"));
+        Assertions.assertEquals(1, map.size());
+
+        Assertions.assertEquals(11, map.computeIfPresent("a", (k, v) -> v + 10));
+        Assertions.assertNull(map.computeIfPresent("b", (k, v) -> 1));
+        Assertions.assertEquals(5, map.compute("b", (k, v) -> v == null ? 5 : v + 1));
+        Assertions.assertEquals(6, map.compute("b", (k, v) -> v == null ? 5 : v + 1));
+        Assertions.assertNull(map.compute("b", (k, v) -> null));
+        Assertions.assertFalse(map.containsKey("b"));
+
+        Assertions.assertEquals(1, map.merge("c", 1, Integer::sum));
+        Assertions.assertEquals(3, map.merge("c", 2, Integer::sum));
+        Assertions.assertNull(map.merge("c", 0, (a, b) -> null));
+        Assertions.assertEquals(1, map.size());
+        Assertions.assertEquals(11, map.get("a"));
+    }
+
+    @Test
+    public void resizeTest() {
+        int n = 100_000;
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>(2);
+        for (int i = 0; i < n; i++) {
+            map.put(i, i * 2);
+        }
+        Assertions.assertEquals(n, map.size());
+        Assertions.assertEquals(n, map.mappingCount());
+        for (int i = 0; i < n; i++) {
+            Assertions.assertEquals(i * 2, map.get(i));
+        }
+        for (int i = 0; i < n; i += 2) {
+            Assertions.assertEquals(i * 2, map.remove(i));
+        }
+        Assertions.assertEquals(n / 2, map.size());
+        Assertions.assertNull(map.get(0));
+        Assertions.assertEquals(2, map.get(1));
+
+        Map<Integer, Integer> copy = new ConcurrentHashMap<>(map);
+        Assertions.assertEquals(map, copy);
+        map.clear();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertNull(map.get(1));
+    }
+
+    @Test
+    public void treeBinTest() {
+        int n = 1000;
+        ConcurrentHashMap<CollidingKey, Integer> map = new ConcurrentHashMap<>();
+        for (int i = 0; i < n; i++) {
+            map.put(new CollidingKey(i), i);
+        }
+        Assertions.assertEquals(n, map.size());
+        for (int i = 0; i < n; i++) {
+            Assertions.assertEquals(i, map.get(new CollidingKey(i)));
+        }
+        Assertions.assertEquals(-1, map.computeIfAbsent(new CollidingKey(n), k -> -1));
+        Assertions.assertEquals(0, map.computeIfAbsent(new CollidingKey(0), k -> -1));
+        // 删到树退化回链表之后仍然正确
+        for (int i = 0; i <= n - 3; i++) {
+            Assertions.assertEquals(i, map.remove(new CollidingKey(i)));
+        }
+        Assertions.assertEquals(3, map.size());
+        Assertions.assertEquals(n - 1, map.get(new CollidingKey(n - 1)));
+        Set<Integer> values = new HashSet<>(map.values());
+        Assertions.assertEquals(3, values.size());
+        Assertions.assertTrue(values.contains(-1));
+    }
+
+    @Test
+    public void iteratorTest() {
+        ConcurrentHashMap<Integer, String> map = new ConcurrentHashMap<>();
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "v" + i);
+            expected.put(i, "v" + i);
+        }
+        Map<Integer, String> seen = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            Assertions.assertNull(seen.put(entry.getKey(), entry.getValue()));
+        }
+        Assertions.assertEquals(expected, seen);
+        Assertions.assertEquals(expected.keySet(), new HashSet<>(map.keySet()));
+        Assertions.assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+
+        // 通过迭代器删除和写回
+        Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+        Assertions.assertThrows(IllegalStateException.class, iterator::remove);
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            if (entry.getKey() % 2 == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue("w" + entry.getKey());
+            }
+        }
+        Assertions.assertEquals(500, map.size());
+        Assertions.assertNull(map.get(0));
+        Assertions.assertEquals("w1", map.get(1));
+
+        map.keySet().removeIf(k -> k < 100);
+        Assertions.assertEquals(450, map.size());
+        map.values().removeIf(v -> v.equals("w999"));
+        Assertions.assertEquals(449, map.size());
+        Assertions.assertTrue(map.entrySet().contains(new HashMap.SimpleEntry<>(101, "w101")));
+        Assertions.assertTrue(map.entrySet().remove(new HashMap.SimpleEntry<>(101, "w101")));
+        Assertions.assertFalse(map.containsKey(101));
+    }
+
+    /**
+     * 遍历和扩容并发: 遍历开始前就存在并且一直没有删除的键一定能遍历到，且不会重复
+     */
+    @Test
+    public void iterateDuringResizeTest() throws InterruptedException {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>(2);
+        int stable = 1000;
+        for (int i = 0; i < stable; i++) {
+            map.put(i, i);
+        }
+        runConcurrently(2, id -> {
+            if (id == 0) {
+                for (int i = stable; i < stable + 200_000; i++) {
+                    map.put(i, i);
+                }
+            } else {
+                for (int round = 0; round < 20; round++) {
+                    Set<Integer> seen = new HashSet<>();
+                    for (Integer key : map.keySet()) {
+                        Assertions.assertTrue(seen.add(key), "duplicate " + key);
+                    }
+                    for (int i = 0; i < stable; i++) {
+                        Assertions.assertTrue(seen.contains(i), "missing " + i);
+                    }
+                }
+            }
+        });
+        Assertions.assertEquals(stable + 200_000, map.size());
+    }
+
+    @Test
+    public void concurrentPutRemoveTest() throws InterruptedException {
+        int threads = 8;
+        int perThread = 20_000;
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        runConcurrently(threads, id -> {
+            int base = id * perThread;
+            for (int i = base; i < base + perThread; i++) {
+                Assertions.assertNull(map.put(i, i));
+            }
+            for (int i = base; i < base + perThread; i += 2) {
+                Assertions.assertEquals(i, map.remove(i));
+            }
+        });
+        Assertions.assertEquals(threads * perThread / 2, map.size());
+        for (int i = 0; i < threads * perThread; i++) {
+            Assertions.assertEquals(i % 2 == 0 ? null : i, map.get(i));
+        }
+    }
+
+    @Test
+    public void concurrentCounterTest() throws InterruptedException {
+        int threads = 8;
+        int keys = 64;
+        int increments = keys * 160;
+        ConcurrentHashMap<Integer, Integer> merged = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Integer, Integer> computed = new ConcurrentHashMap<>();
+        ConcurrentHashMap<CollidingKey, Integer> colliding = new ConcurrentHashMap<>();
+        runConcurrently(threads, id -> {
+            for (int i = 0; i < increments; i++) {
+                int key = i % keys;
+                merged.merge(key, 1, Integer::sum);
+                computed.compute(key, (k, v) -> v == null ? 1 : v + 1);
+                colliding.merge(new CollidingKey(key), 1, Integer::sum);
+            }
+        });
+        int expected = threads * increments / keys;
+        for (int key = 0; key < keys; key++) {
+            Assertions.assertEquals(expected, merged.get(key));
+            Assertions.assertEquals(expected, computed.get(key));
+            Assertions.assertEquals(expected, colliding.get(new CollidingKey(key)));
+        }
+    }
+
+    @Test
+    public void concurrentComputeIfAbsentTest() throws InterruptedException {
+        int threads = 8;
+        int keys = 10_000;
+        ConcurrentHashMap<Integer, Object> map = new ConcurrentHashMap<>();
+        AtomicInteger calls = new AtomicInteger();
+        runConcurrently(threads, id -> {
+            for (int i = 0; i < keys; i++) {
+                map.computeIfAbsent(i, k -> {
+                    calls.incrementAndGet();
+                    return new Object();
+                });
+            }
+        });
+        // 每个键的mappingFunction只执行一次
+        Assertions.assertEquals(keys, calls.get());
+        Assertions.assertEquals(keys, map.size());
+    }
+}
@@ -0,0 +1,107 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CountDownLatchTest {
+    /**
+     * 等到线程阻塞在某处(WAITING/TIMED_WAITING)再继续，避免测试依赖sleep的时长
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "thread did not block");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 计数减到0之前所有等待者都阻塞，最后一次countDown级联唤醒全部等待者
+     */
+    @Test
+    public void releaseCascadeTest() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        AtomicInteger released = new AtomicInteger();
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread waiter = new Thread(() -> {
+                try {
+                    latch.await();
+                    released.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiters.add(waiter);
+            waiter.start();
+        }
+        for (Thread waiter : waiters) {
+            awaitBlocked(waiter);
+        }
+        latch.countDown();
+        latch.countDown();
+        Assertions.assertEquals(1, latch.getCount());
+        Thread.sleep(20);
+        Assertions.assertEquals(0, released.get());
+
+        latch.countDown();
+        for (Thread waiter : waiters) {
+            waiter.join(10_000);
+            Assertions.assertFalse(waiter.isAlive());
+        }
+        Assertions.assertEquals(16, released.get());
+        // 减到0之后不再变化，await立即返回
+        latch.countDown();
+        Assertions.assertEquals(0, latch.getCount());
+        latch.await();
+        Assertions.assertTrue(latch.await(0, TimeUnit.SECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CountDownLatch(-1));
+    }
+
+    @Test
+    public void timedAwaitTest() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Assertions.assertFalse(latch.await(50, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread timed = new Thread(() -> {
+            try {
+                result.set(latch.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                result.set(e);
+            }
+        });
+        timed.start();
+        awaitBlocked(timed);
+        latch.countDown();
+        timed.join(10_000);
+        Assertions.assertEquals(true, result.get());
+    }
+
+    @Test
+    public void interruptibleAwaitTest() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                latch.await();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        waiter.start();
+        awaitBlocked(waiter);
+        waiter.interrupt();
+        waiter.join(10_000);
+        Assertions.assertTrue(thrown.get() instanceof InterruptedException);
+        Assertions.assertEquals(1, latch.getCount());
+    }
+}
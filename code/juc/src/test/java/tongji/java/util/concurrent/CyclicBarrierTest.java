@@ -0,0 +1,188 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CyclicBarrierTest {
+    interface Awaiter {
+        void await() throws Exception;
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "thread did not block");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 在新线程里调用awaiter，结束后把抛出的异常(没有异常时为null)放进result
+     */
+    private static Thread start(Awaiter awaiter, AtomicReference<Throwable> result) {
+        Thread thread = new Thread(() -> {
+            try {
+                awaiter.await();
+            } catch (Throwable e) {
+                result.set(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 每一代的到达序号恰好是0到parties-1，barrierAction由最后到达(序号0)的线程在其他人被唤醒之前执行
+     */
+    @Test
+    public void generationsTest() throws InterruptedException {
+        int parties = 4;
+        int generations = 200;
+        AtomicInteger arrived = new AtomicInteger();
+        AtomicInteger trips = new AtomicInteger();
+        AtomicReference<Thread> actionThread = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(parties, () -> {
+            if (arrived.get() != (trips.get() + 1) * parties) error.compareAndSet(null, new AssertionError("early trip"));
+            trips.incrementAndGet();
+            actionThread.set(Thread.currentThread());
+        });
+        List<Set<Integer>> indexes = new ArrayList<>();
+        for (int g = 0; g < generations; g++) {
+            indexes.add(Collections.synchronizedSet(new HashSet<>()));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < parties; t++) {
+            threads.add(start(() -> {
+                for (int g = 0; g < generations; g++) {
+                    arrived.incrementAndGet();
+                    int index = barrier.await();
+                    indexes.get(g).add(index);
+                    if (index == 0 && actionThread.get() != Thread.currentThread()) throw new AssertionError("action thread");
+                    if (trips.get() < g + 1) throw new AssertionError("woken before trip");
+                }
+            }, error));
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertNull(error.get());
+        Assertions.assertEquals(generations, trips.get());
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < parties; i++) expected.add(i);
+        for (Set<Integer> generation : indexes) {
+            Assertions.assertEquals(expected, generation);
+        }
+        Assertions.assertEquals(0, barrier.getNumberWaiting());
+        Assertions.assertFalse(barrier.isBroken());
+    }
+
+    @Test
+    public void resetTest() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        List<AtomicReference<Throwable>> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            AtomicReference<Throwable> result = new AtomicReference<>();
+            results.add(result);
+            threads.add(start(barrier::await, result));
+        }
+        for (Thread thread : threads) {
+            awaitBlocked(thread);
+        }
+        Assertions.assertEquals(2, barrier.getNumberWaiting());
+        barrier.reset();
+        for (int i = 0; i < 2; i++) {
+            threads.get(i).join(10_000);
+            Assertions.assertTrue(results.get(i).get() instanceof BrokenBarrierException);
+        }
+        // reset之后开启了新的一代，可以正常使用
+        Assertions.assertFalse(barrier.isBroken());
+        Assertions.assertEquals(0, barrier.getNumberWaiting());
+        AtomicReference<Throwable> first = new AtomicReference<>();
+        AtomicReference<Throwable> second = new AtomicReference<>();
+        Thread t1 = start(barrier::await, first);
+        Thread t2 = start(barrier::await, second);
+        awaitBlocked(t1);
+        awaitBlocked(t2);
+        Assertions.assertEquals(0, barrier.await(10, TimeUnit.SECONDS));
+        t1.join(10_000);
+        t2.join(10_000);
+        Assertions.assertNull(first.get());
+        Assertions.assertNull(second.get());
+    }
+
+    /**
+     * 一个线程超时打破这一代，其他等待者收到BrokenBarrierException，之后的await立即失败直到reset
+     */
+    @Test
+    public void timeoutBreaksBarrierTest() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        AtomicReference<Throwable> waiting = new AtomicReference<>();
+        Thread waiter = start(barrier::await, waiting);
+        awaitBlocked(waiter);
+        long start = System.nanoTime();
+        Assertions.assertThrows(TimeoutException.class, () -> barrier.await(50, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        waiter.join(10_000);
+        Assertions.assertTrue(waiting.get() instanceof BrokenBarrierException);
+        Assertions.assertTrue(barrier.isBroken());
+        Assertions.assertThrows(BrokenBarrierException.class, barrier::await);
+        Assertions.assertThrows(BrokenBarrierException.class, () -> barrier.await(10, TimeUnit.SECONDS));
+        barrier.reset();
+        Assertions.assertFalse(barrier.isBroken());
+    }
+
+    @Test
+    public void interruptBreaksBarrierTest() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        AtomicReference<Throwable> interrupted = new AtomicReference<>();
+        AtomicReference<Throwable> other = new AtomicReference<>();
+        Thread t1 = start(barrier::await, interrupted);
+        Thread t2 = start(() -> barrier.await(10, TimeUnit.SECONDS), other);
+        awaitBlocked(t1);
+        awaitBlocked(t2);
+        t1.interrupt();
+        t1.join(10_000);
+        t2.join(10_000);
+        Assertions.assertTrue(interrupted.get() instanceof InterruptedException);
+        Assertions.assertTrue(other.get() instanceof BrokenBarrierException);
+        Assertions.assertTrue(barrier.isBroken());
+
+        // 已经被中断的线程到达时直接打破
+        barrier.reset();
+        Thread.currentThread().interrupt();
+        Assertions.assertThrows(InterruptedException.class, barrier::await);
+        Assertions.assertTrue(barrier.isBroken());
+    }
+
+    /**
+     * barrierAction抛出异常时最后到达的线程收到这个异常，其他等待者收到BrokenBarrierException
+     */
+    @Test
+    public void barrierActionFailureTest() throws Exception {
+        RuntimeException failure = new IllegalStateException("action failed");
+        CyclicBarrier barrier = new CyclicBarrier(2, () -> {
+            throw failure;
+        });
+        AtomicReference<Throwable> waiting = new AtomicReference<>();
+        Thread waiter = start(barrier::await, waiting);
+        awaitBlocked(waiter);
+        Assertions.assertSame(failure, Assertions.assertThrows(IllegalStateException.class, barrier::await));
+        waiter.join(10_000);
+        Assertions.assertTrue(waiting.get() instanceof BrokenBarrierException);
+        Assertions.assertTrue(barrier.isBroken());
+    }
+}
@@ -0,0 +1,156 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LongSemaphoreTest {
+    private static final long TB = 1L << 40;
+
+    private static void awaitQueued(LongSemaphore semaphore, int length) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (semaphore.getQueueLength() != length) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "queue length " + semaphore.getQueueLength());
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 超过int范围的许可数
+     */
+    @Test
+    public void largePermitsTest() {
+        LongSemaphore semaphore = new LongSemaphore(0);
+        semaphore.release(TB);
+        Assertions.assertEquals(TB, semaphore.availablePermits());
+        Assertions.assertTrue(semaphore.tryAcquire(TB - 1));
+        Assertions.assertEquals(1, semaphore.availablePermits());
+        Assertions.assertFalse(semaphore.tryAcquire(2));
+        Assertions.assertEquals(1, semaphore.availablePermits());
+        semaphore.release(TB - 1);
+        Assertions.assertTrue(semaphore.tryAcquire(TB));
+        Assertions.assertEquals(0, semaphore.availablePermits());
+
+        semaphore.release(Long.MAX_VALUE);
+        Assertions.assertThrows(Error.class, () -> semaphore.release(1));
+        Assertions.assertEquals(Long.MAX_VALUE, semaphore.availablePermits());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> semaphore.tryAcquire(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> semaphore.release(-1));
+    }
+
+    /**
+     * 超时的等待者被取消并出队，不影响后面的等待者拿到许可
+     */
+    @Test
+    public void timedAcquireCancellationTest() throws Exception {
+        LongSemaphore semaphore = new LongSemaphore(TB, true);
+        Assertions.assertTrue(semaphore.tryAcquire(TB));
+        long start = System.nanoTime();
+        Assertions.assertFalse(semaphore.tryAcquire(TB, 50, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertFalse(semaphore.hasQueuedThreads());
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.set(semaphore.tryAcquire(TB, 10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        awaitQueued(semaphore, 1);
+        // 中间插入一个很快超时的等待者
+        Thread timedOut = new Thread(() -> {
+            try {
+                semaphore.tryAcquire(1, 20, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        timedOut.start();
+        timedOut.join(10_000);
+        Assertions.assertEquals(1, semaphore.getQueueLength());
+
+        semaphore.release(TB);
+        waiter.join(10_000);
+        Assertions.assertTrue(acquired.get());
+        Assertions.assertEquals(0, semaphore.availablePermits());
+        Assertions.assertFalse(semaphore.hasQueuedThreads());
+    }
+
+    @Test
+    public void interruptibleAcquireTest() throws Exception {
+        LongSemaphore semaphore = new LongSemaphore(TB, true);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread interrupted = new Thread(() -> {
+            try {
+                semaphore.acquire(TB + 1);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        interrupted.start();
+        awaitQueued(semaphore, 1);
+        interrupted.interrupt();
+        interrupted.join(10_000);
+        Assertions.assertTrue(thrown.get() instanceof InterruptedException);
+        Assertions.assertFalse(semaphore.hasQueuedThreads());
+        Assertions.assertEquals(TB, semaphore.availablePermits());
+
+        // 不响应中断的获取在拿到许可后返回，并保留中断标记
+        AtomicBoolean flag = new AtomicBoolean();
+        Thread uninterruptible = new Thread(() -> {
+            semaphore.acquireUninterruptibly(TB + 1);
+            flag.set(Thread.currentThread().isInterrupted());
+        });
+        uninterruptible.start();
+        awaitQueued(semaphore, 1);
+        uninterruptible.interrupt();
+        Thread.sleep(20);
+        Assertions.assertTrue(uninterruptible.isAlive());
+        semaphore.release(1);
+        uninterruptible.join(10_000);
+        Assertions.assertTrue(flag.get());
+        Assertions.assertEquals(0, semaphore.availablePermits());
+    }
+
+    /**
+     * 按字节限流: 在途字节数任何时候都不超过预算
+     */
+    @Test
+    public void byteBudgetTest() throws InterruptedException {
+        long budget = 3 * TB;
+        LongSemaphore semaphore = new LongSemaphore(budget, true);
+        AtomicLong inFlight = new AtomicLong();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long size = (t + 1) * TB / 2;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        semaphore.acquire(size);
+                        long current = inFlight.addAndGet(size);
+                        if (current > budget) throw new AssertionError("in flight " + current);
+                        inFlight.addAndGet(-size);
+                        semaphore.release(size);
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertNull(error.get());
+        Assertions.assertEquals(budget, semaphore.availablePermits());
+    }
+}
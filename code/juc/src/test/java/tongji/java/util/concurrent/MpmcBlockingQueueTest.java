@@ -0,0 +1,173 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MpmcBlockingQueueTest {
+    @Test
+    public void removeAndIterateTest() {
+        MpmcBlockingQueue<Integer> queue = new MpmcBlockingQueue<>(8);
+        for (int i = 1; i <= 5; i++) {
+            Assertions.assertTrue(queue.offer(i));
+        }
+        Assertions.assertTrue(queue.contains(3));
+        Assertions.assertTrue(queue.remove(3));
+        Assertions.assertFalse(queue.remove(3));
+        Assertions.assertFalse(queue.contains(3));
+        Assertions.assertEquals("[1, 2, 4, 5]", queue.toString());
+
+        Iterator<Integer> iterator = queue.iterator();
+        Assertions.assertEquals(1, iterator.next());
+        iterator.remove();
+        Assertions.assertThrows(IllegalStateException.class, iterator::remove);
+        List<Integer> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        Assertions.assertEquals(Arrays.asList(2, 4, 5), rest);
+
+        // 被删除的元素在队头时peek和poll都跳过它
+        Assertions.assertEquals(2, queue.peek());
+        Assertions.assertEquals(2, queue.poll());
+        Assertions.assertEquals(4, queue.poll());
+        Assertions.assertEquals(5, queue.poll());
+        Assertions.assertNull(queue.poll());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void iteratorWeaklyConsistentTest() {
+        MpmcBlockingQueue<Integer> queue = new MpmcBlockingQueue<>(4);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        Iterator<Integer> iterator = queue.iterator();
+        Assertions.assertEquals(1, queue.poll());
+        Assertions.assertEquals(2, queue.poll());
+        queue.offer(4);
+        // 和ArrayBlockingQueue一样，已经读到的下一个元素仍然返回；之后取走的元素跳过，创建之后放入的元素看不到
+        List<Integer> seen = new ArrayList<>();
+        iterator.forEachRemaining(seen::add);
+        Assertions.assertEquals(Arrays.asList(1, 3), seen);
+    }
+
+    @Test
+    public void removeRacesWithPollTest() throws InterruptedException {
+        int n = 100_000;
+        MpmcBlockingQueue<Integer> queue = new MpmcBlockingQueue<>(1024);
+        AtomicInteger polled = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < n; i++) {
+                    queue.put(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread remover = new Thread(() -> {
+            for (int i = 0; i < n; i += 2) {
+                if (queue.remove(i)) removed.incrementAndGet();
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                while (polled.get() + removed.get() < n) {
+                    if (queue.poll(10, TimeUnit.MILLISECONDS) != null) polled.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        remover.start();
+        consumer.start();
+        producer.join();
+        remover.join();
+        consumer.join(10_000);
+        Assertions.assertFalse(consumer.isAlive());
+        // 每个元素要么被取走要么被删除，不会两者都有
+        Assertions.assertEquals(n, polled.get() + removed.get());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void threadPoolRemoveTest() throws InterruptedException {
+        CountDownLatch block = new CountDownLatch(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new MpmcBlockingQueue<>(16));
+        executor.execute(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicInteger ran = new AtomicInteger();
+        Runnable first = ran::incrementAndGet;
+        Runnable second = ran::incrementAndGet;
+        executor.execute(first);
+        executor.execute(second);
+        Assertions.assertTrue(executor.remove(first));
+        Assertions.assertFalse(executor.getQueue().contains(first));
+        block.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, ran.get());
+    }
+
+    /**
+     * 提交和shutdown并发: execute在shutdown之后的复查中调用workQueue.remove，
+     * 提交要么被拒绝，要么任务一定会执行
+     */
+    @Test
+    public void threadPoolConcurrentShutdownTest() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new MpmcBlockingQueue<>(64),
+                    new ThreadPoolExecutor.AbortPolicy());
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger executed = new AtomicInteger();
+            AtomicInteger unexpected = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread submitter = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 2_000; i++) {
+                        try {
+                            executor.execute(executed::incrementAndGet);
+                            accepted.incrementAndGet();
+                        } catch (RejectedExecutionException e) {
+                            if (executor.isShutdown()) return;
+                        } catch (RuntimeException e) {
+                            unexpected.incrementAndGet();
+                        }
+                    }
+                });
+                submitter.start();
+                submitters.add(submitter);
+            }
+            start.countDown();
+            Thread.yield();
+            executor.shutdown();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, unexpected.get());
+            Assertions.assertEquals(accepted.get(), executed.get());
+        }
+    }
+}
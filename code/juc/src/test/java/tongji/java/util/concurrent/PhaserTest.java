@@ -0,0 +1,261 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PhaserTest {
+    /**
+     * 等到线程阻塞在某处(WAITING/TIMED_WAITING)再继续，避免测试依赖sleep的时长
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "thread did not block");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 参与者分散在两个子Phaser上，任何线程进入下一阶段时，上一阶段所有参与者都已经到达
+     */
+    @Test
+    public void childPhaseOrderingTest() throws InterruptedException {
+        int perChild = 4;
+        int phases = 500;
+        Phaser root = new Phaser();
+        Phaser[] children = {new Phaser(root, perChild), new Phaser(root, perChild)};
+        Assertions.assertEquals(2, root.getRegisteredParties());
+        AtomicIntegerArray arrivals = new AtomicIntegerArray(phases);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (Phaser child : children) {
+            for (int t = 0; t < perChild; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int phase = 0; phase < phases; phase++) {
+                            arrivals.incrementAndGet(phase);
+                            int next = child.arriveAndAwaitAdvance();
+                            Assertions.assertEquals(phase + 1, next);
+                            Assertions.assertEquals(2 * perChild, arrivals.get(phase));
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                        root.forceTermination();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertNull(error.get());
+        Assertions.assertEquals(phases, root.getPhase());
+        Assertions.assertEquals(phases, children[0].getPhase());
+    }
+
+    @Test
+    public void registrationPropagatesToParentTest() {
+        Phaser root = new Phaser();
+        Phaser child = new Phaser(root);
+        Phaser other = new Phaser(root, 1);
+        // 子Phaser没有参与者时不占用父Phaser的名额
+        Assertions.assertEquals(1, root.getRegisteredParties());
+        Assertions.assertEquals(0, child.register());
+        Assertions.assertEquals(2, root.getRegisteredParties());
+        Assertions.assertEquals(0, child.bulkRegister(3));
+        Assertions.assertEquals(0, child.bulkRegister(0));
+        Assertions.assertEquals(4, child.getRegisteredParties());
+        Assertions.assertEquals(2, root.getRegisteredParties());
+
+        // 子Phaser只有最后一次到达传到父Phaser
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(0, child.arrive());
+        }
+        Assertions.assertEquals(0, root.getArrivedParties());
+        Assertions.assertEquals(0, child.arriveAndDeregister());
+        Assertions.assertEquals(1, root.getArrivedParties());
+        Assertions.assertEquals(0, other.arrive());
+        Assertions.assertEquals(1, root.getPhase());
+        Assertions.assertEquals(3, child.getUnarrivedParties());
+
+        // 子Phaser的参与者全部注销后从父Phaser注销自己
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(1, child.arriveAndDeregister());
+        }
+        Assertions.assertEquals(1, root.getRegisteredParties());
+        Assertions.assertEquals(1, root.getPhase());
+        Assertions.assertEquals(1, other.arrive());
+        Assertions.assertEquals(2, root.getPhase());
+        Assertions.assertFalse(root.isTerminated());
+
+        // 子Phaser可以再次注册
+        Assertions.assertEquals(2, child.register());
+        Assertions.assertEquals(2, root.getRegisteredParties());
+        Assertions.assertThrows(IllegalStateException.class, () -> new Phaser().arrive());
+
+        // 默认的onAdvance在没有参与者时终止
+        other.arriveAndDeregister();
+        child.arriveAndDeregister();
+        Assertions.assertTrue(root.isTerminated());
+        Assertions.assertTrue(child.register() < 0);
+    }
+
+    @Test
+    public void timedAwaitTest() throws Exception {
+        Phaser root = new Phaser();
+        Phaser child = new Phaser(root, 2);
+        long start = System.nanoTime();
+        Assertions.assertThrows(TimeoutException.class, () -> child.awaitAdvanceInterruptibly(0, 50, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(0, child.getArrivedParties());
+        // 不是当前阶段时立即返回当前阶段号
+        Assertions.assertEquals(0, child.awaitAdvanceInterruptibly(1, 10, TimeUnit.SECONDS));
+
+        AtomicInteger result = new AtomicInteger(-100);
+        Thread waiter = new Thread(() -> {
+            try {
+                result.set(child.awaitAdvanceInterruptibly(0, 10, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                result.set(-1);
+            }
+        });
+        waiter.start();
+        awaitBlocked(waiter);
+        child.arrive();
+        child.arrive();
+        waiter.join(10_000);
+        Assertions.assertEquals(1, result.get());
+    }
+
+    @Test
+    public void interruptibleAwaitTest() throws Exception {
+        Phaser phaser = new Phaser(2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread interruptible = new Thread(() -> {
+            try {
+                phaser.awaitAdvanceInterruptibly(0);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        interruptible.start();
+        awaitBlocked(interruptible);
+        interruptible.interrupt();
+        interruptible.join(10_000);
+        Assertions.assertTrue(thrown.get() instanceof InterruptedException);
+
+        // 不响应中断的等待在阶段推进后返回，并保留中断标记
+        AtomicInteger result = new AtomicInteger(-100);
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread uninterruptible = new Thread(() -> {
+            result.set(phaser.awaitAdvance(0));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        uninterruptible.start();
+        awaitBlocked(uninterruptible);
+        uninterruptible.interrupt();
+        Thread.sleep(20);
+        Assertions.assertTrue(uninterruptible.isAlive());
+        Assertions.assertEquals(0, phaser.getArrivedParties());
+        phaser.arrive();
+        phaser.arrive();
+        uninterruptible.join(10_000);
+        Assertions.assertEquals(1, result.get());
+        Assertions.assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void forceTerminationTest() throws Exception {
+        Phaser root = new Phaser();
+        Phaser child = new Phaser(root, 2);
+        AtomicInteger result = new AtomicInteger();
+        Thread waiter = new Thread(() -> result.set(child.arriveAndAwaitAdvance()));
+        waiter.start();
+        awaitBlocked(waiter);
+        child.forceTermination();
+        waiter.join(10_000);
+        Assertions.assertFalse(waiter.isAlive());
+        Assertions.assertTrue(result.get() < 0);
+        Assertions.assertTrue(root.isTerminated());
+        Assertions.assertTrue(child.isTerminated());
+        Assertions.assertTrue(child.arrive() < 0);
+        Assertions.assertTrue(child.register() < 0);
+        Assertions.assertTrue(child.awaitAdvance(0) < 0);
+    }
+
+    @Test
+    public void onAdvanceTerminationTest() {
+        List<String> advances = new ArrayList<>();
+        Phaser phaser = new Phaser(1) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                advances.add(phase + ":" + registeredParties);
+                return phase >= 2;
+            }
+        };
+        Assertions.assertEquals(1, phaser.arriveAndAwaitAdvance());
+        Assertions.assertEquals(1, phaser.register());
+        phaser.arrive();
+        Assertions.assertEquals(2, phaser.arriveAndAwaitAdvance());
+        Assertions.assertEquals(2, phaser.arriveAndDeregister());
+        Assertions.assertFalse(phaser.isTerminated());
+        Assertions.assertTrue(phaser.arriveAndAwaitAdvance() < 0);
+        Assertions.assertTrue(phaser.isTerminated());
+        Assertions.assertEquals(Arrays.asList("0:1", "1:2", "2:1"), advances);
+    }
+
+    /**
+     * 批处理场景: 每个阶段10000个任务分散注册到64个子Phaser上，在线程池里到达并注销，主线程等待阶段推进
+     */
+    @Test
+    public void tenThousandTasksPerPhaseTest() throws InterruptedException {
+        int tasks = 10_000;
+        int phases = 20;
+        Phaser root = new Phaser(1);
+        Phaser[] children = new Phaser[64];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = new Phaser(root);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger wrongPhase = new AtomicInteger();
+        try {
+            for (int phase = 0; phase < phases; phase++) {
+                for (Phaser child : children) {
+                    Assertions.assertEquals(phase, child.bulkRegister(tasks / children.length + 1));
+                }
+                int registered = children.length * (tasks / children.length + 1);
+                int expectedPhase = phase;
+                for (int i = 0; i < registered; i++) {
+                    Phaser child = children[i % children.length];
+                    executor.execute(() -> {
+                        completed.incrementAndGet();
+                        if (child.arriveAndDeregister() != expectedPhase) wrongPhase.incrementAndGet();
+                    });
+                }
+                Assertions.assertEquals(phase + 1, root.arriveAndAwaitAdvance());
+                Assertions.assertEquals((phase + 1) * registered, completed.get());
+                // 所有子Phaser都已注销，root上只剩主线程
+                Assertions.assertEquals(1, root.getRegisteredParties());
+            }
+            Assertions.assertEquals(0, wrongPhase.get());
+            Assertions.assertFalse(root.isTerminated());
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
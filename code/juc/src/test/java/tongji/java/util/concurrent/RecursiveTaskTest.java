@@ -0,0 +1,109 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RecursiveTaskTest {
+    /**
+     * compute阻塞到release之后才返回
+     */
+    static final class BlockingTask extends RecursiveTask<Integer> {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected Integer compute() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 42;
+        }
+    }
+
+    static final class Fib extends RecursiveTask<Long> {
+        final int n;
+
+        Fib(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected Long compute() {
+            if (n <= 12) return sequential(n);
+            Fib f1 = new Fib(n - 1);
+            f1.fork();
+            return new Fib(n - 2).compute() + f1.join();
+        }
+
+        static long sequential(int n) {
+            return n <= 1 ? n : sequential(n - 1) + sequential(n - 2);
+        }
+    }
+
+    private static int waiterCount(RecursiveTask<?> task) throws Exception {
+        Field field = RecursiveTask.class.getDeclaredField("waiters");
+        field.setAccessible(true);
+        int count = 0;
+        for (RecursiveTask.WaitNode q = (RecursiveTask.WaitNode) field.get(task); q != null; q = q.next) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 反复限时等待(helpJoin没活可干时就是这样)的节点超时后被摘掉，一直等待的节点保留并且能被唤醒
+     */
+    @Test
+    public void timedWaitUnlinksNodeTest() throws Exception {
+        BlockingTask task = new BlockingTask();
+        Thread runner = new Thread(task::doExec);
+        runner.start();
+        Integer[] joined = new Integer[1];
+        Thread joiner = new Thread(() -> joined[0] = task.join());
+        joiner.start();
+        while (waiterCount(task) == 0) {
+            Thread.yield();
+        }
+
+        List<Thread> pollers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread poller = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    task.externalAwaitDone(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+            });
+            pollers.add(poller);
+            poller.start();
+        }
+        for (Thread poller : pollers) {
+            poller.join();
+        }
+        Assertions.assertEquals(1, waiterCount(task));
+        Assertions.assertFalse(task.isDone());
+
+        task.release.countDown();
+        joiner.join(10_000);
+        Assertions.assertFalse(joiner.isAlive());
+        Assertions.assertEquals(42, joined[0]);
+        Assertions.assertEquals(0, waiterCount(task));
+        runner.join();
+    }
+
+    @Test
+    public void poolJoinTest() throws InterruptedException {
+        WorkStealingPool pool = new WorkStealingPool(4);
+        try {
+            Assertions.assertEquals(Fib.sequential(30), pool.invoke(new Fib(30)));
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,117 @@
+package tongji.java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CountDownLatch和CyclicBarrier在竞争下的耗时，和java.util.concurrent里的对应类对比
+ * <p>
+ * latch: 每轮waiters个线程await同一个计数为1的latch，主线程countDown后等它们全部结束，包含线程启动的时间
+ * barrier: parties个线程连续通过trips次屏障，输出每次通过的平均耗时
+ * java -cp juc/target/classes:juc/target/test-classes tongji.java.util.concurrent.SynchronizerBenchmark
+ * 参数: [latch等待线程数] [barrier参与线程数] [barrier次数] [轮数]
+ */
+public class SynchronizerBenchmark {
+    interface Awaiter {
+        void await() throws Exception;
+    }
+
+    interface Latch {
+        Awaiter awaiter();
+
+        void countDown();
+    }
+
+    interface LatchFactory {
+        Latch create();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int waiters = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int parties = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int trips = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        System.out.printf("waiters=%d parties=%d trips=%d ncpu=%d%n", waiters, parties, trips, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < rounds; round++) {
+            runLatch("JDK CountDownLatch", waiters, () -> {
+                java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+                return new Latch() {
+                    @Override
+                    public Awaiter awaiter() {
+                        return latch::await;
+                    }
+
+                    @Override
+                    public void countDown() {
+                        latch.countDown();
+                    }
+                };
+            });
+            runLatch("CountDownLatch", waiters, () -> {
+                CountDownLatch latch = new CountDownLatch(1);
+                return new Latch() {
+                    @Override
+                    public Awaiter awaiter() {
+                        return latch::await;
+                    }
+
+                    @Override
+                    public void countDown() {
+                        latch.countDown();
+                    }
+                };
+            });
+            java.util.concurrent.CyclicBarrier jdkBarrier = new java.util.concurrent.CyclicBarrier(parties);
+            runBarrier("JDK CyclicBarrier", parties, trips, jdkBarrier::await);
+            CyclicBarrier barrier = new CyclicBarrier(parties);
+            runBarrier("CyclicBarrier", parties, trips, barrier::await);
+            System.out.println();
+        }
+    }
+
+    private static void runLatch(String name, int waiters, LatchFactory factory) throws InterruptedException {
+        int rounds = 200;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            Latch latch = factory.create();
+            List<Thread> threads = startAll(waiters, latch.awaiter(), 1);
+            latch.countDown();
+            joinAll(threads);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-20s %8.3f ms/round%n", name, elapsed / 1e6 / rounds);
+    }
+
+    private static void runBarrier(String name, int parties, int trips, Awaiter awaiter) throws InterruptedException {
+        long start = System.nanoTime();
+        joinAll(startAll(parties, awaiter, trips));
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-20s %8.2f us/trip%n", name, elapsed / 1e3 / trips);
+    }
+
+    private static List<Thread> startAll(int threads, Awaiter awaiter, int times) {
+        List<Thread> list = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int n = 0; n < times; n++) {
+                        awaiter.await();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+        return list;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(5));
+            if (thread.isAlive()) throw new IllegalStateException("thread did not finish");
+        }
+    }
+}
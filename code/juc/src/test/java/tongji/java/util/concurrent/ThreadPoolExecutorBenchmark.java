@@ -0,0 +1,45 @@
+package tongji.java.util.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 短任务吞吐量，和java.util.concurrent.ThreadPoolExecutor对比
+ * <p>
+ * 每轮新建线程池，提交空任务后shutdown并等待结束，输出ops/ms；前几轮是预热，看后面几轮
+ * java -cp juc/target/classes:juc/target/test-classes tongji.java.util.concurrent.ThreadPoolExecutorBenchmark
+ * 参数: [任务数] [线程数] [轮数]
+ */
+public class ThreadPoolExecutorBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        System.out.printf("tasks=%d threads=%d ncpu=%d%n", tasks, threads, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < rounds; round++) {
+            run("JDK TPE + LinkedBlockingQueue", tasks, () -> new java.util.concurrent.ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()));
+            run("TPE + LinkedBlockingQueue", tasks, () -> new ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()));
+            run("TPE + MpmcBlockingQueue", tasks, () -> new ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS, new MpmcBlockingQueue<>(1 << 20)));
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, int tasks, Supplier<ExecutorService> factory) throws InterruptedException {
+        ExecutorService executor = factory.get();
+        Runnable task = () -> {
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(task);
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.MINUTES)) throw new IllegalStateException(name + " timed out");
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-30s %8d ops/ms%n", name, tasks * 1_000_000L / Math.max(1, elapsed));
+    }
+}
@@ -0,0 +1,296 @@
+package tongji.java.util.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class ThreadPoolExecutorTest {
+    /**
+     * 阻塞在gate上直到打开的任务，被中断时记录下来
+     */
+    static final class BlockingTask implements Runnable {
+        final CountDownLatch gate;
+        final AtomicInteger ran;
+        final AtomicInteger interrupted;
+
+        BlockingTask(CountDownLatch gate, AtomicInteger ran, AtomicInteger interrupted) {
+            this.gate = gate;
+            this.ran = ran;
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public void run() {
+            ran.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 先新建到corePoolSize，再排队，队列满了再新建到maximumPoolSize，最后拒绝；空闲的非核心线程超时退出
+     */
+    @Test
+    public void growthTest() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 4, 50, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(2));
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        try {
+            for (int i = 0; i < 2; i++) {
+                executor.execute(new BlockingTask(gate, ran, interrupted));
+            }
+            Assertions.assertEquals(2, executor.getPoolSize());
+            Assertions.assertEquals(0, executor.getQueue().size());
+            for (int i = 0; i < 2; i++) {
+                executor.execute(new BlockingTask(gate, ran, interrupted));
+            }
+            Assertions.assertEquals(2, executor.getPoolSize());
+            Assertions.assertEquals(2, executor.getQueue().size());
+            for (int i = 0; i < 2; i++) {
+                executor.execute(new BlockingTask(gate, ran, interrupted));
+            }
+            Assertions.assertEquals(4, executor.getPoolSize());
+            Assertions.assertEquals(2, executor.getQueue().size());
+            Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+            }));
+            awaitCondition(() -> executor.getActiveCount() == 4, "active " + executor.getActiveCount());
+            Assertions.assertEquals(6, executor.getTaskCount());
+
+            gate.countDown();
+            awaitCondition(() -> executor.getCompletedTaskCount() == 6, "completed " + executor.getCompletedTaskCount());
+            Assertions.assertEquals(6, ran.get());
+            Assertions.assertEquals(4, executor.getLargestPoolSize());
+            // 非核心线程超时退出，核心线程保留
+            awaitCondition(() -> executor.getPoolSize() == 2, "pool size " + executor.getPoolSize());
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, interrupted.get());
+    }
+
+    /**
+     * 一个线程在执行，队列里一个任务，再提交一个就会触发拒绝策略
+     */
+    private static ThreadPoolExecutor saturated(RejectedExecutionHandler handler, CountDownLatch gate, Runnable queued) throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                Thread::new, handler);
+        AtomicInteger ignored = new AtomicInteger();
+        executor.execute(new BlockingTask(gate, ignored, ignored));
+        awaitCondition(() -> executor.getActiveCount() == 1, "worker not started");
+        executor.execute(queued);
+        return executor;
+    }
+
+    @Test
+    public void rejectionPolicyTest() throws InterruptedException {
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        Runnable queued = () -> ran.add("queued");
+        Runnable extra = () -> ran.add("extra:" + Thread.currentThread().getName());
+        List<ThreadPoolExecutor> executors = new ArrayList<>();
+        CountDownLatch gate = new CountDownLatch(1);
+        try {
+            ThreadPoolExecutor abort = saturated(new ThreadPoolExecutor.AbortPolicy(), gate, queued);
+            executors.add(abort);
+            Assertions.assertThrows(RejectedExecutionException.class, () -> abort.execute(extra));
+
+            ThreadPoolExecutor callerRuns = saturated(new ThreadPoolExecutor.CallerRunsPolicy(), gate, queued);
+            executors.add(callerRuns);
+            callerRuns.execute(extra);
+            Assertions.assertEquals(Collections.singletonList("extra:" + Thread.currentThread().getName()), ran);
+            ran.clear();
+
+            ThreadPoolExecutor discard = saturated(new ThreadPoolExecutor.DiscardPolicy(), gate, queued);
+            executors.add(discard);
+            discard.execute(extra);
+            Assertions.assertSame(queued, discard.getQueue().peek());
+
+            ThreadPoolExecutor discardOldest = saturated(new ThreadPoolExecutor.DiscardOldestPolicy(), gate, queued);
+            executors.add(discardOldest);
+            discardOldest.execute(extra);
+            Assertions.assertSame(extra, discardOldest.getQueue().peek());
+            Assertions.assertEquals(1, discardOldest.getQueue().size());
+            Assertions.assertTrue(ran.isEmpty());
+        } finally {
+            gate.countDown();
+            for (ThreadPoolExecutor executor : executors) {
+                executor.shutdown();
+            }
+        }
+        for (ThreadPoolExecutor executor : executors) {
+            Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // abort、callerRuns、discard各执行了排队的任务，discardOldest执行的是新任务
+        Collections.sort(ran);
+        Assertions.assertEquals(4, ran.size());
+        Assertions.assertTrue(ran.get(0).startsWith("extra:"));
+        Assertions.assertEquals(Collections.nCopies(3, "queued"), ran.subList(1, 4));
+
+        // 关闭后CallerRuns也不执行，Abort照样抛异常
+        ThreadPoolExecutor closed = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                Thread::new, new ThreadPoolExecutor.CallerRunsPolicy());
+        closed.shutdown();
+        AtomicBoolean called = new AtomicBoolean();
+        closed.execute(() -> called.set(true));
+        Assertions.assertFalse(called.get());
+        closed.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        Assertions.assertThrows(RejectedExecutionException.class, () -> closed.execute(() -> called.set(true)));
+    }
+
+    /**
+     * shutdown执行完队列里的任务且不中断正在执行的任务；shutdownNow中断正在执行的任务并返回队列里没执行的
+     */
+    @Test
+    public void shutdownTest() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new BlockingTask(gate, ran, interrupted));
+        }
+        awaitCondition(() -> ran.get() == 1, "worker not started");
+        executor.shutdown();
+        Assertions.assertTrue(executor.isShutdown());
+        Assertions.assertFalse(executor.isTerminated());
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        Assertions.assertEquals(3, executor.getQueue().size());
+        gate.countDown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(4, ran.get());
+        Assertions.assertEquals(0, interrupted.get());
+
+        CountDownLatch closedGate = new CountDownLatch(1);
+        AtomicInteger ranNow = new AtomicInteger();
+        AtomicInteger interruptedNow = new AtomicInteger();
+        ThreadPoolExecutor stopped = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        List<Runnable> submitted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            BlockingTask task = new BlockingTask(closedGate, ranNow, interruptedNow);
+            submitted.add(task);
+            stopped.execute(task);
+        }
+        awaitCondition(() -> ranNow.get() == 1, "worker not started");
+        List<Runnable> drained = stopped.shutdownNow();
+        Assertions.assertEquals(submitted.subList(1, 4), drained);
+        Assertions.assertTrue(stopped.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, ranNow.get());
+        Assertions.assertEquals(1, interruptedNow.get());
+        Assertions.assertEquals(0, stopped.getPoolSize());
+    }
+
+    @Test
+    public void allowCoreThreadTimeOutTest() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 50, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        try {
+            Assertions.assertEquals(2, executor.prestartAllCoreThreads());
+            Thread.sleep(200);
+            // 默认核心线程不超时
+            Assertions.assertEquals(2, executor.getPoolSize());
+            executor.allowCoreThreadTimeOut(true);
+            awaitCondition(() -> executor.getPoolSize() == 0, "pool size " + executor.getPoolSize());
+            // 线程全部退出后仍然能执行新任务
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(done::countDown);
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        ThreadPoolExecutor noKeepAlive = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> noKeepAlive.allowCoreThreadTimeOut(true));
+        noKeepAlive.shutdown();
+    }
+
+    @Test
+    public void awaitTerminationTest() throws InterruptedException {
+        AtomicInteger terminated = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>()) {
+            @Override
+            protected void terminated() {
+                terminated.incrementAndGet();
+            }
+        };
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(new BlockingTask(gate, ran, ran));
+        long start = System.nanoTime();
+        Assertions.assertFalse(executor.awaitTermination(50, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        executor.shutdown();
+        Assertions.assertFalse(executor.awaitTermination(20, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(executor.isTerminating());
+        AtomicReference<Boolean> awaited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                awaited.set(executor.awaitTermination(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                awaited.set(false);
+            }
+        });
+        waiter.start();
+        gate.countDown();
+        waiter.join(10_000);
+        Assertions.assertTrue(awaited.get());
+        Assertions.assertTrue(executor.isTerminated());
+        Assertions.assertFalse(executor.isTerminating());
+        Assertions.assertEquals(1, terminated.get());
+        Assertions.assertTrue(executor.awaitTermination(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void workerCompletedTaskCountsTest() throws InterruptedException {
+        int tasks = 10_000;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        try {
+            Assertions.assertEquals(4, executor.prestartAllCoreThreads());
+            Assertions.assertArrayEquals(new long[4], executor.getWorkerCompletedTaskCounts());
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                });
+            }
+            awaitCondition(() -> executor.getCompletedTaskCount() == tasks, "completed " + executor.getCompletedTaskCount());
+            long[] counts = executor.getWorkerCompletedTaskCounts();
+            Assertions.assertEquals(4, counts.length);
+            long sum = 0;
+            for (long count : counts) {
+                Assertions.assertTrue(count >= 0);
+                sum += count;
+            }
+            Assertions.assertEquals(tasks, sum);
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // 线程数先于移出workers减少，终止时其他退出的线程可能还没移出，等它们移出后不再出现在分布里，但总数保留
+        awaitCondition(() -> executor.getWorkerCompletedTaskCounts().length == 0,
+                "workers " + executor.getWorkerCompletedTaskCounts().length);
+        Assertions.assertEquals(tasks, executor.getCompletedTaskCount());
+    }
+}
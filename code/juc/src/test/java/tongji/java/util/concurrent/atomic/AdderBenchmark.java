@@ -0,0 +1,93 @@
+package tongji.java.util.concurrent.atomic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 计数器的写扩展性: 1到maxThreads个线程同时累加，对比AtomicLong、这里的LongAdder和JDK的LongAdder，输出ops/ms
+ * <p>
+ * 单核上线程之间没有真正的竞争，看不出分段的效果，要在多核机器上跑
+ * java -cp juc/target/classes:juc/target/test-classes tongji.java.util.concurrent.atomic.AdderBenchmark
+ * 参数: [最大线程数] [每个线程的累加次数] [轮数]
+ */
+public class AdderBenchmark {
+    interface Counter {
+        void increment();
+
+        long sum();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        System.out.printf("updates=%d ncpu=%d%n", updates, Striped64.NCPU);
+        for (int round = 0; round < rounds; round++) {
+            for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                AtomicLong atomic = new AtomicLong();
+                run("AtomicLong", threads, updates, new Counter() {
+                    @Override
+                    public void increment() {
+                        atomic.incrementAndGet();
+                    }
+
+                    @Override
+                    public long sum() {
+                        return atomic.get();
+                    }
+                });
+                LongAdder adder = new LongAdder();
+                run("LongAdder", threads, updates, counter(adder::increment, adder::sum));
+                java.util.concurrent.atomic.LongAdder jdkAdder = new java.util.concurrent.atomic.LongAdder();
+                run("JDK LongAdder", threads, updates, counter(jdkAdder::increment, jdkAdder::sum));
+            }
+            System.out.println();
+        }
+    }
+
+    private static Counter counter(Runnable increment, LongSupplier sum) {
+        return new Counter() {
+            @Override
+            public void increment() {
+                increment.run();
+            }
+
+            @Override
+            public long sum() {
+                return sum.getAsLong();
+            }
+        };
+    }
+
+    private static void run(String name, int threads, int updates, Counter counter) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < updates; i++) {
+                    counter.increment();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.MINUTES.toMillis(5));
+        }
+        long elapsed = System.nanoTime() - begin;
+        long expected = (long) threads * updates;
+        if (counter.sum() != expected) throw new IllegalStateException(name + " lost updates: " + counter.sum() + " != " + expected);
+        System.out.printf("%-14s threads=%d %8d ops/ms%n", name, threads, expected * 1_000_000L / Math.max(1, elapsed));
+    }
+}
@@ -0,0 +1,157 @@
+package tongji.java.util.concurrent.atomic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Striped64Test {
+    private static final int THREADS = 8;
+    private static final int UPDATES = 200_000;
+
+    interface IntConsumer {
+        void accept(int value) throws Exception;
+    }
+
+    /**
+     * 所有线程同时开始执行task，参数是线程编号；任何线程的异常或断言失败都让测试失败
+     */
+    private static void runConcurrently(int threads, IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.accept(id);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(60_000);
+            Assertions.assertFalse(worker.isAlive());
+        }
+        Assertions.assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    /**
+     * 单核上base的CAS几乎不会失败，直接走一次慢路径把cells建出来，保证并发更新覆盖到单元
+     */
+    private static void forceCells(Striped64 striped) {
+        striped.longAccumulate(0L, null, false);
+        Assertions.assertNotNull(striped.cells);
+    }
+
+    @Test
+    public void longAdderTest() throws InterruptedException {
+        for (boolean striped : new boolean[]{false, true}) {
+            LongAdder adder = new LongAdder();
+            if (striped) forceCells(adder);
+            runConcurrently(THREADS, id -> {
+                for (int i = 0; i < UPDATES; i++) {
+                    adder.increment();
+                    adder.add(2);
+                    adder.decrement();
+                }
+            });
+            long expected = 2L * THREADS * UPDATES;
+            Assertions.assertEquals(expected, adder.sum());
+            Assertions.assertEquals(expected, adder.longValue());
+            Assertions.assertEquals(String.valueOf(expected), adder.toString());
+            adder.reset();
+            Assertions.assertEquals(0, adder.sum());
+            adder.add(5);
+            Assertions.assertEquals(5, adder.sumThenReset());
+            Assertions.assertEquals(0, adder.sum());
+        }
+    }
+
+    /**
+     * 一边并发累加一边sumThenReset，每个增量只会被取走一次: 取走的总和加上剩余的等于加进去的总和
+     */
+    @Test
+    public void sumThenResetTest() throws InterruptedException {
+        LongAdder adder = new LongAdder();
+        forceCells(adder);
+        AtomicLong drained = new AtomicLong();
+        runConcurrently(THREADS + 1, id -> {
+            if (id == THREADS) {
+                for (int i = 0; i < 10_000; i++) {
+                    drained.addAndGet(adder.sumThenReset());
+                }
+            } else {
+                for (int i = 0; i < UPDATES; i++) {
+                    adder.increment();
+                }
+            }
+        });
+        Assertions.assertEquals((long) THREADS * UPDATES, drained.get() + adder.sum());
+    }
+
+    @Test
+    public void longAccumulatorTest() throws InterruptedException {
+        for (boolean striped : new boolean[]{false, true}) {
+            LongAccumulator max = new LongAccumulator(Long::max, Long.MIN_VALUE);
+            LongAccumulator sum = new LongAccumulator(Long::sum, 0L);
+            if (striped) {
+                forceCells(sum);
+                max.longAccumulate(Long.MIN_VALUE, Long::max, false);
+                Assertions.assertNotNull(max.cells);
+            }
+            Assertions.assertEquals(Long.MIN_VALUE, max.get());
+            runConcurrently(THREADS, id -> {
+                for (int i = 0; i < UPDATES; i++) {
+                    // 每个线程的值互不相同，最大值来自最后一个线程
+                    max.accumulate((long) i * THREADS + id);
+                    sum.accumulate(i);
+                }
+            });
+            Assertions.assertEquals((long) (UPDATES - 1) * THREADS + THREADS - 1, max.get());
+            Assertions.assertEquals((long) THREADS * UPDATES * (UPDATES - 1) / 2, sum.get());
+            Assertions.assertEquals((long) (UPDATES - 1) * THREADS + THREADS - 1, max.getThenReset());
+            Assertions.assertEquals(Long.MIN_VALUE, max.get());
+            max.accumulate(-3);
+            Assertions.assertEquals(-3, max.longValue());
+            max.reset();
+            Assertions.assertEquals(Long.MIN_VALUE, max.get());
+        }
+    }
+
+    @Test
+    public void doubleAdderTest() throws InterruptedException {
+        for (boolean striped : new boolean[]{false, true}) {
+            DoubleAdder adder = new DoubleAdder();
+            if (striped) {
+                adder.doubleAccumulate(0.0, null, false);
+                Assertions.assertNotNull(adder.cells);
+            }
+            runConcurrently(THREADS, id -> {
+                for (int i = 0; i < UPDATES; i++) {
+                    // 0.5和0.25的和都能精确表示，结果和累加顺序无关
+                    adder.add(0.5);
+                    adder.add(0.25);
+                }
+            });
+            double expected = 0.75 * THREADS * UPDATES;
+            Assertions.assertEquals(expected, adder.sum());
+            Assertions.assertEquals(expected, adder.sumThenReset());
+            Assertions.assertEquals(0.0, adder.sum());
+            adder.add(-1.5);
+            Assertions.assertEquals(-1, adder.longValue());
+            adder.reset();
+            Assertions.assertEquals(0.0, adder.doubleValue());
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package tongji.java.util.concurrent.locks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 直接调用sample，不启动后台采样线程，采样的时机由测试控制
+ */
+public class LockDiagnosticsTest {
+    private static void awaitQueued(ReentrantLock lock, Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!lock.hasQueuedThread(thread)) {
+            Assertions.assertTrue(System.nanoTime() < deadline, thread.getName() + " not queued");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 两个线程按相反顺序获取A、B，死锁两轮: 每轮第二次采样才报告，之后不重复报告；环消失后同样的环可以再次报告
+     */
+    @Test
+    public void deadlockTest() throws Exception {
+        List<LockReport> received = Collections.synchronizedList(new ArrayList<>());
+        LockDiagnostics diagnostics = new LockDiagnostics(1, TimeUnit.HOURS, received::add);
+        ReentrantLock a = new ReentrantLock();
+        ReentrantLock b = new ReentrantLock();
+        diagnostics.register("A", a);
+        diagnostics.register("B", b);
+        int rounds = 2;
+        CyclicBarrier start = new CyclicBarrier(3);
+        CyclicBarrier holding = new CyclicBarrier(2);
+        CyclicBarrier end = new CyclicBarrier(3);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread t1 = new Thread(() -> lockInOrder(a, b, rounds, start, holding, end, error), "deadlock-1");
+        Thread t2 = new Thread(() -> lockInOrder(b, a, rounds, start, holding, end, error), "deadlock-2");
+        t1.start();
+        t2.start();
+
+        for (int r = 0; r < rounds; r++) {
+            start.await(10, TimeUnit.SECONDS);
+            awaitQueued(b, t1);
+            awaitQueued(a, t2);
+            // 第一次看到环不报告
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+            List<LockReport> reports = diagnostics.sample();
+            Assertions.assertEquals(1, reports.size());
+            LockReport report = reports.get(0);
+            Assertions.assertEquals(LockReport.Type.DEADLOCK, report.getType());
+            Assertions.assertEquals(new HashSet<>(Arrays.asList("A", "B")), new HashSet<>(report.getLockNames()));
+            Assertions.assertEquals(new HashSet<>(Arrays.asList(t1, t2)), report.getStacks().keySet());
+            Assertions.assertTrue(report.toString().startsWith("deadlock on locks "));
+            // 环一直存在也只报告一次
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+
+            // 中断t1打破死锁，环消失
+            t1.interrupt();
+            end.await(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+        }
+        t1.join(10_000);
+        t2.join(10_000);
+        Assertions.assertNull(error.get());
+        Assertions.assertEquals(rounds, received.size());
+    }
+
+    /**
+     * 持有first后等对方也持有，再去获取second；被中断时放弃second
+     */
+    private static void lockInOrder(ReentrantLock first, ReentrantLock second, int rounds,
+                                    CyclicBarrier start, CyclicBarrier holding, CyclicBarrier end, AtomicReference<Throwable> error) {
+        try {
+            for (int r = 0; r < rounds; r++) {
+                start.await(10, TimeUnit.SECONDS);
+                first.lock();
+                try {
+                    holding.await(10, TimeUnit.SECONDS);
+                    try {
+                        second.lockInterruptibly();
+                        second.unlock();
+                    } catch (InterruptedException e) {
+                        // 被测试打破死锁
+                    }
+                } finally {
+                    first.unlock();
+                }
+                end.await(10, TimeUnit.SECONDS);
+            }
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * 持有600ms，阈值200ms: 报告一次，持有时间不小于阈值
+     */
+    @Test
+    public void longHoldTest() throws Exception {
+        List<LockReport> received = Collections.synchronizedList(new ArrayList<>());
+        LockDiagnostics diagnostics = new LockDiagnostics(200, TimeUnit.MILLISECONDS, received::add);
+        ReentrantLock lock = new ReentrantLock();
+        diagnostics.register("slow", lock);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }, "slow-holder");
+        holder.start();
+        Assertions.assertTrue(locked.await(10, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        List<LockReport> reports = new ArrayList<>();
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(600)) {
+            reports.addAll(diagnostics.sample());
+            Thread.sleep(20);
+        }
+        release.countDown();
+        holder.join(10_000);
+        Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+
+        Assertions.assertEquals(1, reports.size());
+        LockReport report = reports.get(0);
+        Assertions.assertEquals(LockReport.Type.LONG_HOLD, report.getType());
+        Assertions.assertEquals(Collections.singletonList("slow"), report.getLockNames());
+        Assertions.assertEquals(Collections.singleton(holder), report.getStacks().keySet());
+        Assertions.assertTrue(report.getHeldNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+        Assertions.assertEquals(reports, received);
+
+        // 注销后不再采样
+        diagnostics.unregister(lock);
+        lock.lock();
+        try {
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在循环里反复加锁解锁的线程，每次持有都很短，不报告
+     */
+    @Test
+    public void tightLoopTest() throws Exception {
+        List<LockReport> received = Collections.synchronizedList(new ArrayList<>());
+        LockDiagnostics diagnostics = new LockDiagnostics(200, TimeUnit.MILLISECONDS, received::add);
+        ReentrantLock lock = new ReentrantLock();
+        diagnostics.register("hot", lock);
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] counter = new long[2];
+        Thread looper = new Thread(() -> {
+            while (running.get()) {
+                lock.lock();
+                try {
+                    counter[0]++;
+                } finally {
+                    lock.unlock();
+                }
+                // 锁外的工作比锁内多，和真实的使用方式一样
+                for (int i = 0; i < 100; i++) {
+                    counter[1] += i;
+                }
+            }
+        }, "hot-looper");
+        looper.start();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(600)) {
+            Assertions.assertEquals(Collections.emptyList(), diagnostics.sample());
+            Thread.sleep(10);
+        }
+        running.set(false);
+        looper.join(10_000);
+        Assertions.assertTrue(received.isEmpty());
+        lock.lock();
+        try {
+            Assertions.assertTrue(counter[0] > 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tongji.java.util.concurrent.locks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SpinPolicyTest {
+    private final SpinPolicy.Mode original = SpinPolicy.getMode();
+
+    @AfterEach
+    public void restoreMode() {
+        SpinPolicy.setMode(original);
+    }
+
+    @Test
+    public void parseModeTest() {
+        Assertions.assertEquals(SpinPolicy.Mode.ADAPTIVE, SpinPolicy.parseMode(null));
+        Assertions.assertEquals(SpinPolicy.Mode.ALWAYS, SpinPolicy.parseMode(" always "));
+        Assertions.assertEquals(SpinPolicy.Mode.NEVER, SpinPolicy.parseMode("NEVER"));
+        Assertions.assertEquals(SpinPolicy.Mode.ADAPTIVE, SpinPolicy.parseMode("sometimes"));
+    }
+
+    @Test
+    public void modeTest() {
+        SpinPolicy.setMode(SpinPolicy.Mode.ALWAYS);
+        Assertions.assertTrue(SpinPolicy.shouldSpin());
+        Assertions.assertEquals(64, SpinPolicy.spinsFor(64));
+        SpinPolicy.setMode(SpinPolicy.Mode.NEVER);
+        Assertions.assertFalse(SpinPolicy.shouldSpin());
+        Assertions.assertEquals(0, SpinPolicy.spinsFor(64));
+        // 平台线程在ADAPTIVE下自旋
+        SpinPolicy.setMode(SpinPolicy.Mode.ADAPTIVE);
+        Assertions.assertFalse(SpinPolicy.isVirtual(Thread.currentThread()));
+        Assertions.assertTrue(SpinPolicy.shouldSpin());
+        Assertions.assertEquals(64, SpinPolicy.spinsFor(64));
+        Assertions.assertThrows(NullPointerException.class, () -> SpinPolicy.setMode(null));
+    }
+
+    /**
+     * 只在JDK 21以上运行: 虚拟线程在ADAPTIVE下不自旋，ALWAYS下仍然自旋
+     */
+    @Test
+    public void virtualThreadTest() throws Exception {
+        Method ofVirtual;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            ofVirtual = null;
+        }
+        Assumptions.assumeTrue(ofVirtual != null, "virtual threads not supported");
+        Object builder = ofVirtual.invoke(null);
+        // 实现类不是public的，要通过公开的Thread.Builder接口调用
+        Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+
+        SpinPolicy.setMode(SpinPolicy.Mode.ADAPTIVE);
+        AtomicReference<boolean[]> result = new AtomicReference<>();
+        Thread thread = (Thread) unstarted.invoke(builder, (Runnable) () -> {
+            boolean adaptive = SpinPolicy.shouldSpin();
+            SpinPolicy.setMode(SpinPolicy.Mode.ALWAYS);
+            result.set(new boolean[]{SpinPolicy.isVirtual(Thread.currentThread()), adaptive, SpinPolicy.shouldSpin()});
+        });
+        Assertions.assertTrue(SpinPolicy.isVirtual(thread));
+        thread.start();
+        thread.join(10_000);
+        Assertions.assertArrayEquals(new boolean[]{true, false, true}, result.get());
+    }
+}
@@ -0,0 +1,140 @@
+package tongji.java.util.concurrent.locks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StampedReadWriteLockTest {
+    /**
+     * 写者保证x + y == 0，乐观读者validate通过时读到的两个值必须满足这个约束；非volatile，靠锁和validate的屏障保证可见性
+     */
+    private long x;
+    private long y;
+
+    @Test
+    public void validateAcrossWriteTest() {
+        StampedReadWriteLock lock = new StampedReadWriteLock();
+        long stamp = lock.tryOptimisticRead();
+        Assertions.assertNotEquals(0L, stamp);
+        Assertions.assertTrue(lock.validate(stamp));
+
+        // 读锁不影响乐观读
+        long read = lock.readLock();
+        Assertions.assertEquals(stamp, read);
+        Assertions.assertTrue(lock.validate(stamp));
+        Assertions.assertEquals(0L, lock.tryWriteLock());
+        lock.unlockRead(read);
+
+        long write = lock.writeLock();
+        Assertions.assertFalse(lock.validate(stamp));
+        Assertions.assertEquals(0L, lock.tryOptimisticRead());
+        Assertions.assertEquals(0L, lock.tryReadLock());
+        lock.unlockWrite(write);
+        // 写锁释放后版本号变了，之前的stamp仍然无效
+        Assertions.assertFalse(lock.validate(stamp));
+        long next = lock.tryOptimisticRead();
+        Assertions.assertNotEquals(stamp, next);
+        Assertions.assertTrue(lock.validate(next));
+        Assertions.assertFalse(lock.validate(0L));
+
+        Assertions.assertThrows(IllegalMonitorStateException.class, () -> lock.unlockWrite(write));
+        Assertions.assertThrows(IllegalMonitorStateException.class, () -> lock.unlockRead(next));
+        Assertions.assertFalse(lock.isWriteLocked());
+        Assertions.assertFalse(lock.isReadLocked());
+    }
+
+    @Test
+    public void timedAndInterruptibleTest() throws Exception {
+        StampedReadWriteLock lock = new StampedReadWriteLock();
+        long read = lock.readLock();
+        Assertions.assertEquals(0L, lock.tryWriteLock(20, TimeUnit.MILLISECONDS));
+        lock.unlockRead(read);
+
+        long write = lock.writeLock();
+        Assertions.assertEquals(0L, lock.tryReadLock(20, TimeUnit.MILLISECONDS));
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                lock.readLockInterruptibly();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        reader.start();
+        while (reader.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        reader.interrupt();
+        reader.join(10_000);
+        Assertions.assertTrue(thrown.get() instanceof InterruptedException);
+        lock.unlockWrite(write);
+        // 取消的读者不占用读锁
+        Assertions.assertFalse(lock.isReadLocked());
+        Assertions.assertNotEquals(0L, lock.tryWriteLock());
+    }
+
+    /**
+     * 2个写者、2个读锁读者、2个乐观读者各20万次操作，validate通过的乐观读和加读锁的读都不能读到写了一半的数据
+     */
+    @Test
+    public void tornReadStressTest() throws InterruptedException {
+        StampedReadWriteLock lock = new StampedReadWriteLock();
+        int ops = 200_000;
+        AtomicLong validated = new AtomicLong();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            int role = t % 3;
+            Thread thread = new Thread(() -> {
+                try {
+                    // 乐观读者至少校验成功一次才结束，写者结束后一定能成功
+                    for (int i = 0; i < ops || (role == 2 && validated.get() == 0); i++) {
+                        if (role == 0) {
+                            long stamp = lock.writeLock();
+                            try {
+                                x++;
+                                y--;
+                            } finally {
+                                lock.unlockWrite(stamp);
+                            }
+                        } else if (role == 1) {
+                            long stamp = lock.readLock();
+                            try {
+                                Assertions.assertEquals(0, x + y);
+                            } finally {
+                                lock.unlockRead(stamp);
+                            }
+                        } else {
+                            long stamp = lock.tryOptimisticRead();
+                            long a = x;
+                            long b = y;
+                            if (lock.validate(stamp)) {
+                                validated.incrementAndGet();
+                                Assertions.assertEquals(0, a + b, "torn read");
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60_000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertNull(error.get());
+        Assertions.assertTrue(validated.get() > 0);
+        Assertions.assertEquals(2L * ops, x);
+        Assertions.assertEquals(-2L * ops, y);
+        Assertions.assertFalse(lock.isWriteLocked());
+        Assertions.assertEquals(0, lock.getReadLockCount());
+    }
+}
@@ -0,0 +1,128 @@
+package tongji.java.util.concurrent.locks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10万个虚拟线程在64把分段锁上各加锁20次，临界区内yield，对比juc的ReentrantLock和synchronized
+ * <p>
+ * 需要JDK 21以上运行，用-Djdk.tracePinnedThreads=short可以看到synchronized把载体线程钉住:
+ * java -Djdk.tracePinnedThreads=short -cp juc/target/classes:juc/target/test-classes tongji.java.util.concurrent.locks.VirtualThreadLockBenchmark
+ * 参数: [线程数] [每个线程加锁次数] [轮数]
+ */
+public class VirtualThreadLockBenchmark {
+    private static final int STRIPES = 64;
+
+    interface StripedCounter {
+        void increment(int stripe);
+
+        long sum();
+    }
+
+    static final class LockCounter implements StripedCounter {
+        private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        private final long[] counts = new long[STRIPES];
+
+        LockCounter() {
+            for (int i = 0; i < STRIPES; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+
+        @Override
+        public void increment(int stripe) {
+            ReentrantLock lock = locks[stripe];
+            lock.lock();
+            try {
+                long c = counts[stripe];
+                Thread.yield();
+                counts[stripe] = c + 1;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long sum() {
+            long sum = 0;
+            for (long c : counts) sum += c;
+            return sum;
+        }
+    }
+
+    static final class MonitorCounter implements StripedCounter {
+        private final Object[] monitors = new Object[STRIPES];
+        private final long[] counts = new long[STRIPES];
+
+        MonitorCounter() {
+            for (int i = 0; i < STRIPES; i++) {
+                monitors[i] = new Object();
+            }
+        }
+
+        @Override
+        public void increment(int stripe) {
+            synchronized (monitors[stripe]) {
+                long c = counts[stripe];
+                Thread.yield();
+                counts[stripe] = c + 1;
+            }
+        }
+
+        @Override
+        public long sum() {
+            long sum = 0;
+            for (long c : counts) sum += c;
+            return sum;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        ExecutorService probe = newVirtualThreadPerTaskExecutor();
+        if (probe == null) {
+            System.out.println("virtual threads not supported on " + System.getProperty("java.version") + ", skipped");
+            return;
+        }
+        probe.shutdown();
+        System.out.printf("threads=%d iterations=%d stripes=%d ncpu=%d spin=%s%n",
+                threads, iterations, STRIPES, SpinPolicy.NCPU, SpinPolicy.getMode());
+        for (int round = 0; round < rounds; round++) {
+            run("juc ReentrantLock", new LockCounter(), threads, iterations);
+            run("synchronized", new MonitorCounter(), threads, iterations);
+        }
+    }
+
+    private static void run(String name, StripedCounter counter, int threads, int iterations) throws Exception {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            executor.execute(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    counter.increment((first + i) % STRIPES);
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.MINUTES)) throw new IllegalStateException(name + " timed out");
+        long elapsed = System.nanoTime() - start;
+        long expected = (long) threads * iterations;
+        if (counter.sum() != expected) throw new IllegalStateException(name + " lost updates: " + counter.sum() + " != " + expected);
+        System.out.printf("%-18s %6d ms%n", name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * 项目按Java 8编译，Executors.newVirtualThreadPerTaskExecutor通过反射调用，不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
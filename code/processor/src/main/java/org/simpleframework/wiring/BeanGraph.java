@@ -0,0 +1,331 @@
+package org.simpleframework.wiring;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译期的bean图: 解析每个bean的创建方式和注入点，按和运行时DependencyResolver相同的规则选出依赖
+ * 发现的问题都以编译错误报告在对应的字段、参数或者类上
+ */
+final class BeanGraph {
+    static final String AUTOWIRED = "org.simpleframework.inject.annotation.Autowired";
+    static final String QUALIFIER = "org.simpleframework.inject.annotation.Qualifier";
+    static final String PRIMARY = "org.simpleframework.inject.annotation.Primary";
+
+    private final Types types;
+    private final Elements elements;
+    private final Messager messager;
+    // 全限定名 -> bean
+    final Map<String, Bean> beans = new LinkedHashMap<>();
+    private boolean hasErrors;
+
+    enum Kind {
+        SINGLE, LIST, SET, MAP
+    }
+
+    static final class Bean {
+        final TypeElement type;
+        // @Repository接口，由RepositoryFactory创建代理，只作为注入的候选
+        final boolean repository;
+        // 构造器注入时的构造器，否则为null
+        ExecutableElement constructor;
+        final List<InjectionPoint> parameters = new ArrayList<>();
+        final List<InjectionPoint> fields = new ArrayList<>();
+
+        Bean(TypeElement type) {
+            this.type = type;
+            this.repository = type.getKind() == ElementKind.INTERFACE;
+        }
+    }
+
+    static final class InjectionPoint {
+        // 字段或者构造器参数
+        final VariableElement element;
+        final Kind kind;
+        final List<Bean> targets = new ArrayList<>();
+
+        InjectionPoint(VariableElement element, Kind kind) {
+            this.element = element;
+            this.kind = kind;
+        }
+    }
+
+    BeanGraph(Types types, Elements elements, Messager messager) {
+        this.types = types;
+        this.elements = elements;
+        this.messager = messager;
+    }
+
+    void addBean(TypeElement type) {
+        beans.putIfAbsent(type.getQualifiedName().toString(), new Bean(type));
+    }
+
+    /**
+     * 解析所有bean的注入点并检查构造器循环依赖
+     *
+     * @return 没有错误时返回true
+     */
+    boolean resolve() {
+        for (Bean bean : beans.values()) {
+            if (bean.repository) continue;
+            resolveConstructor(bean);
+            for (VariableElement field : ElementFilter.fieldsIn(bean.type.getEnclosedElements())) {
+                AnnotationMirror autowired = annotation(field, AUTOWIRED);
+                if (autowired == null) continue;
+                if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.FINAL)) {
+                    error(field, "@Autowired field must not be static or final");
+                    continue;
+                }
+                InjectionPoint point = injectionPoint(field, stringValue(autowired));
+                if (point != null) bean.fields.add(point);
+            }
+        }
+        if (!hasErrors) checkConstructorCycles();
+        return !hasErrors;
+    }
+
+    private void resolveConstructor(Bean bean) {
+        TypeElement type = bean.type;
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "bean class must not be abstract");
+            return;
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "nested bean class must be static");
+            return;
+        }
+        ExecutableElement noArg = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            AnnotationMirror autowired = annotation(constructor, AUTOWIRED);
+            if (autowired != null) {
+                if (bean.constructor != null) {
+                    error(constructor, "multiple @Autowired constructors in " + type.getQualifiedName());
+                    return;
+                }
+                bean.constructor = constructor;
+                for (VariableElement parameter : constructor.getParameters()) {
+                    InjectionPoint point = injectionPoint(parameter, stringValue(autowired));
+                    if (point != null) bean.parameters.add(point);
+                }
+            } else if (constructor.getParameters().isEmpty()) {
+                noArg = constructor;
+            }
+        }
+        if (bean.constructor == null && noArg == null) {
+            error(type, "bean class needs a no-arg constructor or an @Autowired constructor");
+        }
+    }
+
+    private InjectionPoint injectionPoint(VariableElement element, String autowiredValue) {
+        AnnotationMirror qualifierAnnotation = annotation(element, QUALIFIER);
+        String qualifier = qualifierAnnotation != null ? stringValue(qualifierAnnotation) : autowiredValue;
+        TypeMirror type = element.asType();
+        Kind kind = Kind.SINGLE;
+        TypeMirror elementType = type;
+        String raw = type.getKind() == TypeKind.DECLARED ? ((TypeElement) types.asElement(type)).getQualifiedName().toString() : "";
+        if (raw.equals("java.util.List") || raw.equals("java.util.Collection") || raw.equals("java.util.Set")) {
+            kind = raw.equals("java.util.Set") ? Kind.SET : Kind.LIST;
+            elementType = typeArgument(element, type, 0);
+        } else if (raw.equals("java.util.Map")) {
+            TypeMirror keyType = typeArgument(element, type, 0);
+            if (keyType != null && !types.isSameType(keyType, elements.getTypeElement("java.lang.String").asType())) {
+                error(element, "only Map<String, T> can be injected");
+                return null;
+            }
+            kind = Kind.MAP;
+            elementType = typeArgument(element, type, 1);
+        }
+        if (elementType == null) return null;
+        InjectionPoint point = new InjectionPoint(element, kind);
+        List<Bean> candidates = candidates(elementType, qualifier);
+        if (kind != Kind.SINGLE) {
+            point.targets.addAll(candidates);
+            return point;
+        }
+        Bean chosen = choose(element, elementType, qualifier, candidates);
+        if (chosen == null) return null;
+        point.targets.add(chosen);
+        return point;
+    }
+
+    private TypeMirror typeArgument(Element element, TypeMirror type, int index) {
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() <= index) {
+            error(element, "type argument is required to inject " + type);
+            return null;
+        }
+        TypeMirror argument = arguments.get(index);
+        if (argument.getKind() == TypeKind.WILDCARD) {
+            TypeMirror bound = ((WildcardType) argument).getExtendsBound();
+            return bound != null ? bound : elements.getTypeElement("java.lang.Object").asType();
+        }
+        return argument;
+    }
+
+    private List<Bean> candidates(TypeMirror type, String qualifier) {
+        List<Bean> candidates = new ArrayList<>();
+        for (Bean bean : beans.values()) {
+            if (!types.isAssignable(beanType(bean), type)) continue;
+            if (!qualifier.isEmpty() && !hasName(bean.type, qualifier)) continue;
+            candidates.add(bean);
+        }
+        return candidates;
+    }
+
+    private Bean choose(Element element, TypeMirror type, String qualifier, List<Bean> candidates) {
+        if (candidates.size() == 1) return candidates.get(0);
+        if (candidates.isEmpty()) {
+            error(element, "no bean of type " + type + (qualifier.isEmpty() ? "" : " named " + qualifier));
+            return null;
+        }
+        for (Bean candidate : candidates) {
+            if (types.isSameType(types.erasure(beanType(candidate)), types.erasure(type))) return candidate;
+        }
+        List<Bean> primaries = new ArrayList<>();
+        for (Bean candidate : candidates) {
+            if (annotation(candidate.type, PRIMARY) != null) primaries.add(candidate);
+        }
+        if (primaries.size() == 1) return primaries.get(0);
+        List<String> names = new ArrayList<>();
+        for (Bean candidate : candidates) {
+            names.add(candidate.type.getQualifiedName().toString());
+        }
+        error(element, "multiple beans of type " + type + (qualifier.isEmpty() ? "" : " named " + qualifier) + ": " + names
+                + (primaries.isEmpty() ? ", use @Qualifier or @Primary" : ", multiple @Primary"));
+        return null;
+    }
+
+    /**
+     * 泛型bean类按原始类型参与匹配
+     */
+    private TypeMirror beanType(Bean bean) {
+        return bean.type.getTypeParameters().isEmpty() ? bean.type.asType() : types.erasure(bean.type.asType());
+    }
+
+    private static boolean hasName(TypeElement type, String name) {
+        AnnotationMirror qualifier = annotation(type, QUALIFIER);
+        return name.contentEquals(type.getSimpleName()) || (qualifier != null && name.equals(stringValue(qualifier)));
+    }
+
+    /**
+     * bean的名字，Map注入时作为key
+     */
+    static String beanName(TypeElement type) {
+        AnnotationMirror qualifier = annotation(type, QUALIFIER);
+        return qualifier != null ? stringValue(qualifier) : type.getSimpleName().toString();
+    }
+
+    /**
+     * 构造器参数之间的依赖必须是无环的，同时得到构造器注入的bean的创建顺序
+     */
+    private void checkConstructorCycles() {
+        Set<Bean> done = new HashSet<>();
+        for (Bean bean : beans.values()) {
+            visit(bean, done, new ArrayDeque<>());
+        }
+    }
+
+    private void visit(Bean bean, Set<Bean> done, Deque<Bean> path) {
+        if (done.contains(bean) || bean.constructor == null) return;
+        if (path.contains(bean)) {
+            StringBuilder cycle = new StringBuilder();
+            boolean inCycle = false;
+            for (Bean b : path) {
+                if (b == bean) inCycle = true;
+                if (inCycle) cycle.append(b.type.getQualifiedName()).append(" -> ");
+            }
+            error(bean.constructor, "unresolvable circular constructor dependency: " + cycle + bean.type.getQualifiedName());
+            done.add(bean);
+            return;
+        }
+        path.addLast(bean);
+        for (InjectionPoint parameter : bean.parameters) {
+            for (Bean target : parameter.targets) {
+                visit(target, done, path);
+            }
+        }
+        path.removeLast();
+        done.add(bean);
+    }
+
+    /**
+     * 构造器注入的bean按依赖顺序排列，被依赖的在前
+     */
+    List<Bean> constructorInjectedInOrder() {
+        List<Bean> order = new ArrayList<>();
+        Set<Bean> visited = new HashSet<>();
+        for (Bean bean : beans.values()) {
+            topologicalOrder(bean, visited, order);
+        }
+        return order;
+    }
+
+    private static void topologicalOrder(Bean bean, Set<Bean> visited, List<Bean> order) {
+        if (bean.constructor == null || !visited.add(bean)) return;
+        for (InjectionPoint parameter : bean.parameters) {
+            for (Bean target : parameter.targets) {
+                topologicalOrder(target, visited, order);
+            }
+        }
+        order.add(bean);
+    }
+
+    Collection<Bean> getBeans() {
+        return beans.values();
+    }
+
+    static AnnotationMirror annotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 注解的value属性，没有设置时为空字符串
+     */
+    static String stringValue(AnnotationMirror mirror) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals("value")) {
+                return String.valueOf(e.getValue().getValue());
+            }
+        }
+        return "";
+    }
+
+    private void error(Element element, String message) {
+        hasErrors = true;
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    static boolean isBeanClass(Element element) {
+        return element.getKind() == ElementKind.CLASS
+                || (element.getKind() == ElementKind.INTERFACE && annotation(element, WiringProcessor.REPOSITORY) != null);
+    }
+}
@@ -0,0 +1,205 @@
+package org.simpleframework.wiring;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 生成native-image需要的配置，和ApplicationWiring一起写到CLASS_OUTPUT
+ * <p>
+ * native-image构建时会读取classpath上META-INF/native-image下的配置:
+ * reflect-config.json只登记运行时真正要反射的成员(bean的字段、带框架注解的方法、生成代码退回到反射的构造器、Repository的实体)，
+ * proxy-config.json登记Repository接口的动态代理，resource-config.json把类索引打进镜像。类索引列出本次编译的所有类，
+ * 镜像里没有类路径目录，ClassUtil扫描包时改为读取这个索引。
+ */
+final class NativeImageConfig {
+    static final String CLASS_INDEX = "META-INF/simpleframework/classes.idx";
+    private static final String CONFIG_DIR = "META-INF/native-image/simpleframework/";
+    private static final String FRAMEWORK_PACKAGE = "org.simpleframework.";
+    private static final String CRUD_REPOSITORY = "org.simpleframework.data.CrudRepository";
+
+    private final Types types;
+    private final Elements elements;
+    private final Filer filer;
+    // 类的二进制名 -> 这个类在reflect-config中的条目
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<String> indexedClasses = new ArrayList<>();
+    // 需要生成JDK动态代理的接口
+    private final List<String> proxyInterfaces = new ArrayList<>();
+
+    private static final class Entry {
+        boolean allDeclaredFields;
+        final Set<String> methods = new LinkedHashSet<>();
+    }
+
+    NativeImageConfig(Types types, Elements elements, Filer filer) {
+        this.types = types;
+        this.elements = elements;
+        this.filer = filer;
+    }
+
+    /**
+     * 索引中的类只登记类名，Class.forName能找到即可
+     */
+    void addIndexedClass(TypeElement type) {
+        entry(type);
+        indexedClasses.add(elements.getBinaryName(type).toString());
+    }
+
+    /**
+     * bean类和它的父类: 所有字段(注入、配置绑定、生命周期排序都会反射读写字段)和带框架注解的方法
+     *
+     * @param reflectiveConstructor 生成的代码访问不到无参构造器，要通过反射创建
+     */
+    void addBean(TypeElement type, boolean reflectiveConstructor) {
+        if (reflectiveConstructor) entry(type).methods.add(method("<init>", new ArrayList<>()));
+        for (TypeElement c = type; c != null && !c.getQualifiedName().contentEquals("java.lang.Object"); c = superclass(c)) {
+            Entry entry = entry(c);
+            entry.allDeclaredFields = true;
+            for (ExecutableElement method : ElementFilter.methodsIn(c.getEnclosedElements())) {
+                if (hasFrameworkAnnotation(method)) {
+                    entry.methods.add(method(method.getSimpleName().toString(), method.getParameters()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Repository接口要登记动态代理，实体类由gson反射读写字段、用无参构造器创建
+     */
+    void addRepository(TypeElement type) {
+        proxyInterfaces.add(elements.getBinaryName(type).toString());
+        TypeElement entity = entityType(type.asType());
+        if (entity != null) addBean(entity, true);
+    }
+
+    /**
+     * 从继承的CrudRepository<T, ID>中取出T
+     */
+    private TypeElement entityType(TypeMirror type) {
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            DeclaredType declared = (DeclaredType) supertype;
+            if (((TypeElement) declared.asElement()).getQualifiedName().contentEquals(CRUD_REPOSITORY)) {
+                List<? extends TypeMirror> arguments = declared.getTypeArguments();
+                return !arguments.isEmpty() && arguments.get(0).getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(arguments.get(0)) : null;
+            }
+            TypeElement entity = entityType(supertype);
+            if (entity != null) return entity;
+        }
+        return null;
+    }
+
+    /**
+     * ApplicationWiring通过ServiceLoader创建
+     */
+    void addWiring(String qualifiedName) {
+        Entry entry = new Entry();
+        entry.methods.add(method("<init>", new ArrayList<>()));
+        entries.put(qualifiedName, entry);
+    }
+
+    void write(String packageName, Element[] origins) throws IOException {
+        String dir = CONFIG_DIR + (packageName.isEmpty() ? "default" : packageName) + "/";
+        StringBuilder reflect = new StringBuilder("[\n");
+        boolean first = true;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (!first) reflect.append(",\n");
+            first = false;
+            reflect.append("  {\"name\": \"").append(e.getKey()).append('"');
+            if (e.getValue().allDeclaredFields) reflect.append(", \"allDeclaredFields\": true");
+            if (!e.getValue().methods.isEmpty()) {
+                reflect.append(", \"methods\": [").append(String.join(", ", e.getValue().methods)).append(']');
+            }
+            reflect.append('}');
+        }
+        reflect.append("\n]\n");
+        write(dir + "reflect-config.json", reflect.toString(), origins);
+        if (!proxyInterfaces.isEmpty()) {
+            List<String> proxies = new ArrayList<>();
+            for (String name : proxyInterfaces) {
+                proxies.add("  [\"" + name + "\"]");
+            }
+            write(dir + "proxy-config.json", "[\n" + String.join(",\n", proxies) + "\n]\n", origins);
+        }
+        write(dir + "resource-config.json",
+                "{\"resources\": {\"includes\": [{\"pattern\": \"\\\\Q" + CLASS_INDEX + "\\\\E\"}]}}\n", origins);
+        write(CLASS_INDEX, String.join("\n", indexedClasses) + "\n", origins);
+    }
+
+    private void write(String name, String content, Element[] origins) throws IOException {
+        FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", name, origins);
+        try (Writer writer = file.openWriter()) {
+            writer.write(content);
+        }
+    }
+
+    private Entry entry(TypeElement type) {
+        return entries.computeIfAbsent(elements.getBinaryName(type).toString(), k -> new Entry());
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private static boolean hasFrameworkAnnotation(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString().startsWith(FRAMEWORK_PACKAGE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String method(String name, List<? extends VariableElement> parameters) {
+        List<String> parameterTypes = new ArrayList<>();
+        for (VariableElement parameter : parameters) {
+            parameterTypes.add('"' + typeName(types.erasure(parameter.asType())) + '"');
+        }
+        return "{\"name\": \"" + name + "\", \"parameterTypes\": [" + String.join(", ", parameterTypes) + "]}";
+    }
+
+    /**
+     * reflect-config中参数类型的写法: 类用二进制名，数组在后面加[]
+     */
+    private String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            return elements.getBinaryName((TypeElement) types.asElement(type)).toString();
+        }
+        return type.toString();
+    }
+
+    /**
+     * 本次编译的所有类，包括嵌套类
+     */
+    static void collectTypes(Element element, List<TypeElement> types) {
+        if (!(element instanceof TypeElement)) return;
+        types.add((TypeElement) element);
+        for (Element enclosed : element.getEnclosedElements()) {
+            collectTypes(enclosed, types);
+        }
+    }
+}
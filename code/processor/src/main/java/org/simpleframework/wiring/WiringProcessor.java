@@ -0,0 +1,341 @@
+package org.simpleframework.wiring;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 编译期检查bean图并生成装配代码
+ * <p>
+ * 收集被@Component/@Service/@Controller/@Repository标记的类，按运行时的规则解析所有@Autowired注入点，
+ * 缺少依赖、依赖有歧义、构造器循环依赖都作为编译错误报告在对应的位置，不再等到启动时才抛出异常。
+ * 没有错误时在bean的公共包(或者-Asimpleframework.wiring.package指定的包)下生成ApplicationWiring，
+ * 用new和字段赋值/setter装配所有bean，并登记到META-INF/services/org.simpleframework.core.GeneratedWiring。
+ * <p>
+ * 生成的类只能访问public成员和同一个包中的非private成员；访问不到的字段优先用setter，
+ * 都不行时(比如private字段)退回到GeneratedWiring.setField反射赋值，并给出NOTE提示，不算作编译警告；
+ * 反射赋值在native-image中依赖生成的reflect-config，把字段改成包可见或者加上setter就能去掉。
+ * 同时生成native-image的反射、资源配置和类索引，见NativeImageConfig。
+ * 处理器按名字识别注解，不依赖spring模块。
+ */
+@SupportedAnnotationTypes({
+        WiringProcessor.COMPONENT, WiringProcessor.CONTROLLER, WiringProcessor.SERVICE, WiringProcessor.REPOSITORY
+})
+@SupportedOptions(WiringProcessor.PACKAGE_OPTION)
+public class WiringProcessor extends AbstractProcessor {
+    static final String COMPONENT = "org.simpleframework.core.annotation.Component";
+    static final String CONTROLLER = "org.simpleframework.core.annotation.Controller";
+    static final String SERVICE = "org.simpleframework.core.annotation.Service";
+    static final String REPOSITORY = "org.simpleframework.core.annotation.Repository";
+    static final String PACKAGE_OPTION = "simpleframework.wiring.package";
+    static final String CLASS_NAME = "ApplicationWiring";
+    static final String SERVICE_FILE = "META-INF/services/org.simpleframework.core.GeneratedWiring";
+    private static final String WIRING = "org.simpleframework.core.GeneratedWiring";
+    private static final String CONTAINER = "org.simpleframework.core.BeanContainer";
+
+    private Types types;
+    private Elements elements;
+    private boolean generated;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        types = processingEnv.getTypeUtils();
+        elements = processingEnv.getElementUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // 用户的源文件都在第一轮，只生成一次
+        if (generated || annotations.isEmpty()) return false;
+        List<TypeElement> compiledTypes = new ArrayList<>();
+        for (Element element : roundEnv.getRootElements()) {
+            NativeImageConfig.collectTypes(element, compiledTypes);
+        }
+        BeanGraph graph = new BeanGraph(types, elements, processingEnv.getMessager());
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (BeanGraph.isBeanClass(element)) graph.addBean((TypeElement) element);
+            }
+        }
+        if (graph.beans.isEmpty()) return false;
+        generated = true;
+        if (!graph.resolve()) return false;
+        String packageName = processingEnv.getOptions().get(PACKAGE_OPTION);
+        if (packageName == null) packageName = commonPackage(graph);
+        try {
+            write(graph, packageName, compiledTypes);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "write " + CLASS_NAME + " error: " + e);
+        }
+        return false;
+    }
+
+    private String commonPackage(BeanGraph graph) {
+        String common = null;
+        for (BeanGraph.Bean bean : graph.getBeans()) {
+            String name = packageOf(bean.type).getQualifiedName().toString();
+            if (common == null) {
+                common = name;
+            } else {
+                while (!(name.equals(common) || name.startsWith(common + "."))) {
+                    int index = common.lastIndexOf('.');
+                    common = index < 0 ? "" : common.substring(0, index);
+                }
+            }
+        }
+        return common;
+    }
+
+    private void write(BeanGraph graph, String packageName, List<TypeElement> compiledTypes) throws IOException {
+        String qualifiedName = packageName.isEmpty() ? CLASS_NAME : packageName + "." + CLASS_NAME;
+        Element[] origins = new Element[graph.beans.size()];
+        int i = 0;
+        for (BeanGraph.Bean bean : graph.getBeans()) {
+            origins[i++] = bean.type;
+        }
+        NativeImageConfig nativeImage = new NativeImageConfig(types, elements, processingEnv.getFiler());
+        for (TypeElement type : compiledTypes) {
+            nativeImage.addIndexedClass(type);
+        }
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, origins);
+        try (PrintWriter out = new PrintWriter(source.openWriter())) {
+            new Generator(graph, packageName, out, nativeImage).generate();
+        }
+        FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE, origins);
+        try (Writer writer = services.openWriter()) {
+            writer.write(qualifiedName + "\n");
+        }
+        nativeImage.addWiring(qualifiedName);
+        nativeImage.write(packageName, origins);
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    /**
+     * 生成ApplicationWiring的源码
+     */
+    private final class Generator {
+        private final BeanGraph graph;
+        private final String packageName;
+        private final PrintWriter out;
+        private final NativeImageConfig nativeImage;
+
+        Generator(BeanGraph graph, String packageName, PrintWriter out, NativeImageConfig nativeImage) {
+            this.graph = graph;
+            this.packageName = packageName;
+            this.out = out;
+            this.nativeImage = nativeImage;
+        }
+
+        void generate() {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * 由" + WiringProcessor.class.getName() + "生成，不要修改");
+            out.println(" */");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            out.println("public final class " + CLASS_NAME + " implements " + WIRING + " {");
+            out.println("    @Override");
+            out.println("    public String getBasePackage() {");
+            out.println("        return \"" + packageName + "\";");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public java.util.List<Class<?>> getBeanClasses() {");
+            out.println("        return java.util.Arrays.<Class<?>>asList(");
+            List<String> classes = new ArrayList<>();
+            List<String> repositories = new ArrayList<>();
+            for (BeanGraph.Bean bean : graph.getBeans()) {
+                if (bean.repository) {
+                    repositories.add(classLiteral(bean.type));
+                    nativeImage.addRepository(bean.type);
+                } else if (bean.constructor == null) {
+                    classes.add(classLiteral(bean.type));
+                }
+            }
+            for (BeanGraph.Bean bean : graph.constructorInjectedInOrder()) {
+                classes.add(classLiteral(bean.type));
+            }
+            out.println("                " + String.join(",\n                ", classes) + ");");
+            out.println("    }");
+            out.println();
+            if (!repositories.isEmpty()) {
+                out.println("    @Override");
+                out.println("    public java.util.List<Class<?>> getRepositoryInterfaces() {");
+                out.println("        return java.util.Arrays.<Class<?>>asList(");
+                out.println("                " + String.join(",\n                ", repositories) + ");");
+                out.println("    }");
+                out.println();
+            }
+            out.println("    @Override");
+            out.println("    public void instantiate(" + CONTAINER + " container) {");
+            for (BeanGraph.Bean bean : graph.getBeans()) {
+                if (bean.constructor != null || bean.repository) continue;
+                ExecutableElement constructor = noArgConstructor(bean.type);
+                String creation = isAccessible(bean.type) && isAccessible(constructor)
+                        ? "new " + bean.type.getQualifiedName() + "()"
+                        : WIRING + ".newInstance(" + classLiteral(bean.type) + ")";
+                nativeImage.addBean(bean.type, !isAccessible(bean.type) || !isAccessible(constructor));
+                if (!isAccessible(bean.type) || !isAccessible(constructor)) {
+                    note(bean.type, "constructor is not accessible from package " + packageName + ", generated wiring falls back to reflection");
+                }
+                out.println("        container.addBean(" + classLiteral(bean.type) + ", " + creation + ");");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void inject(" + CONTAINER + " container) {");
+            for (BeanGraph.Bean bean : graph.constructorInjectedInOrder()) {
+                nativeImage.addBean(bean.type, false);
+                if (!isAccessible(bean.type) || !isAccessible(bean.constructor)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "@Autowired constructor must be accessible from package " + packageName + " for generated wiring", bean.constructor);
+                    continue;
+                }
+                List<String> args = new ArrayList<>();
+                for (BeanGraph.InjectionPoint parameter : bean.parameters) {
+                    args.add(value(parameter));
+                }
+                out.println("        container.addBean(" + classLiteral(bean.type) + ", new " + bean.type.getQualifiedName() + "("
+                        + String.join(", ", args) + "));");
+            }
+            int index = 0;
+            for (BeanGraph.Bean bean : graph.getBeans()) {
+                if (bean.fields.isEmpty()) continue;
+                String variable = "bean" + index++;
+                String beanType = isAccessible(bean.type) ? bean.type.getQualifiedName().toString() : "Object";
+                out.println("        " + beanType + " " + variable + " = (" + beanType + ") container.getBean(" + classLiteral(bean.type) + ");");
+                for (BeanGraph.InjectionPoint field : bean.fields) {
+                    out.println("        " + assignment(bean, variable, field) + ";");
+                }
+            }
+            out.println("    }");
+            out.println("}");
+        }
+
+        private String assignment(BeanGraph.Bean bean, String variable, BeanGraph.InjectionPoint field) {
+            VariableElement element = field.element;
+            String value = value(field);
+            if (isAccessible(bean.type) && isAccessible(element) && isAccessible(element.asType())) {
+                return variable + "." + element.getSimpleName() + " = " + value;
+            }
+            ExecutableElement setter = setter(bean.type, element);
+            if (isAccessible(bean.type) && isAccessible(element.asType()) && setter != null) {
+                return variable + "." + setter.getSimpleName() + "(" + value + ")";
+            }
+            note(element, "field is not accessible from package " + packageName
+                    + ", generated wiring falls back to reflection; make it package-private in " + packageName + " or add a setter");
+            return WIRING + ".setField(" + variable + ", " + classLiteral(bean.type) + ", \"" + element.getSimpleName() + "\", " + value + ")";
+        }
+
+        /**
+         * 注入点的值: 单个bean强制转换成注入点的类型，集合通过GeneratedWiring的辅助方法创建
+         */
+        private String value(BeanGraph.InjectionPoint point) {
+            List<String> beans = new ArrayList<>();
+            for (BeanGraph.Bean target : point.targets) {
+                if (point.kind == BeanGraph.Kind.MAP) {
+                    beans.add("\"" + BeanGraph.beanName(target.type) + "\"");
+                }
+                beans.add("container.getBean(" + classLiteral(target.type) + ")");
+            }
+            switch (point.kind) {
+                case LIST:
+                    return WIRING + ".list(" + String.join(", ", beans) + ")";
+                case SET:
+                    return WIRING + ".set(" + String.join(", ", beans) + ")";
+                case MAP:
+                    return WIRING + ".map(" + String.join(", ", beans) + ")";
+                default:
+                    TypeMirror type = types.erasure(point.element.asType());
+                    String cast = isAccessible(type) ? type.toString() : "Object";
+                    return "(" + cast + ") " + beans.get(0);
+            }
+        }
+
+        private String classLiteral(TypeElement type) {
+            if (isAccessible(type)) return type.getQualifiedName() + ".class";
+            return WIRING + ".loadClass(\"" + elements.getBinaryName(type) + "\")";
+        }
+
+        private ExecutableElement noArgConstructor(TypeElement type) {
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                if (constructor.getParameters().isEmpty()) return constructor;
+            }
+            throw new IllegalStateException("no-arg constructor of " + type + " was checked");
+        }
+
+        private ExecutableElement setter(TypeElement type, VariableElement field) {
+            String name = field.getSimpleName().toString();
+            String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getSimpleName().contentEquals(setterName) && method.getParameters().size() == 1
+                        && types.isSameType(method.getParameters().get(0).asType(), field.asType()) && isAccessible(method)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 元素本身和外层的类都能从生成的包中访问
+         */
+        private boolean isAccessible(Element element) {
+            for (Element e = element; e != null && !(e instanceof PackageElement); e = e.getEnclosingElement()) {
+                Set<Modifier> modifiers = e.getModifiers();
+                if (modifiers.contains(Modifier.PUBLIC)) continue;
+                if (modifiers.contains(Modifier.PRIVATE)) return false;
+                if (!packageOf(e).getQualifiedName().contentEquals(packageName)) return false;
+            }
+            return true;
+        }
+
+        private boolean isAccessible(TypeMirror type) {
+            Element element = types.asElement(type);
+            return element == null || isAccessible(element);
+        }
+
+        /**
+         * 退回反射只是少了编译期的访问检查，不影响装配结果，报告成NOTE，不让-Werror之类的构建失败
+         */
+        private void note(Element element, String message) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+        }
+    }
+}
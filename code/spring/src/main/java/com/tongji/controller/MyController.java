@@ -2,11 +2,18 @@ package com.tongji.controller;
 
 import com.tongji.service.MyService;
 import lombok.ToString;
+import org.simpleframework.cache.annotation.Cacheable;
 import org.simpleframework.core.annotation.Controller;
 import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.mvc.annotation.RequestMapping;
+import org.simpleframework.mvc.annotation.RequestParam;
+import org.simpleframework.mvc.annotation.Throttle;
+
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @ToString
+@RequestMapping("/my")
 public class MyController {
     @Autowired
     private MyService myService;
@@ -14,4 +21,18 @@ public class MyController {
     public MyController() {
         System.out.println("MyController init");
     }
+
+    // 相同参数的请求在60秒内直接返回缓存的响应，客户端带上ETag时回复304
+    @Cacheable(ttlSeconds = 60)
+    @RequestMapping("/hello")
+    public String hello(@RequestParam("name") String name) {
+        return myService.hello(name);
+    }
+
+    // 返回CompletableFuture的方法会以AsyncContext异步执行，不占用容器线程；同时最多处理100个请求
+    @Throttle(permits = 100)
+    @RequestMapping("/helloAsync")
+    public CompletableFuture<String> helloAsync(@RequestParam("name") String name) {
+        return CompletableFuture.supplyAsync(() -> myService.hello(name));
+    }
 }
@@ -1,11 +1,18 @@
 package com.tongji.service;
 
 import org.simpleframework.core.annotation.Service;
+import org.simpleframework.lifecycle.annotation.PostConstruct;
 
 @Service
 public class MyService {
     private int value;
-    public MyService() {
+
+    @PostConstruct
+    public void init() {
         System.out.println("MyService init");
     }
+
+    public String hello(String name) {
+        return "hello " + name;
+    }
 }
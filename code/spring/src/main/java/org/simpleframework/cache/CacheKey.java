@@ -0,0 +1,29 @@
+package org.simpleframework.cache;
+
+import java.util.Arrays;
+
+/**
+ * 以方法参数作为缓存的key，参数数组按内容比较
+ */
+final class CacheKey {
+    private final Object[] args;
+    private final int hashCode;
+
+    CacheKey(Object[] args) {
+        this.args = args == null ? new Object[0] : args.clone();
+        this.hashCode = Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CacheKey)) return false;
+        CacheKey other = (CacheKey) o;
+        return hashCode == other.hashCode && Arrays.deepEquals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,36 @@
+package org.simpleframework.cache;
+
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * 代理对象的方法拦截器，被@Cacheable标记的方法先查缓存，未命中时才调用被代理的方法
+ */
+public class CacheMethodInterceptor implements MethodInterceptor {
+    // 每个被@Cacheable标记的方法独享一个缓存，在织入时就已经创建好
+    private final Map<Method, TinyLfuCache<CacheKey, Object>> methodCaches;
+
+    public CacheMethodInterceptor(Map<Method, TinyLfuCache<CacheKey, Object>> methodCaches) {
+        this.methodCaches = methodCaches;
+    }
+
+    @Override
+    public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+        TinyLfuCache<CacheKey, Object> cache = methodCaches.get(method);
+        if (cache == null) {
+            return methodProxy.invokeSuper(proxy, args);
+        }
+        return cache.get(new CacheKey(args), () -> {
+            try {
+                return methodProxy.invokeSuper(proxy, args);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package org.simpleframework.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.proxy.Enhancer;
+import org.simpleframework.cache.annotation.Cacheable;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.core.annotation.Controller;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为含有@Cacheable方法的bean生成cglib代理并替换容器中的原始bean
+ * 需要在依赖注入之前执行，这样注入到其他bean中的就是代理对象
+ * <p>
+ * Controller上的@Cacheable由ControllerRequestProcessor在序列化后的响应层面处理(同时负责ETag)，这里跳过
+ */
+@Slf4j
+public class CacheWeaver {
+    private final BeanContainer beanContainer;
+
+    public CacheWeaver() {
+        this.beanContainer = BeanContainer.getInstance();
+    }
+
+    public void doCache() {
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            Object proxy = createProxy(clazz);
+            if (proxy != null) {
+                beanContainer.addBean(clazz, proxy);
+            }
+        }
+    }
+
+    /**
+     * 为clazz生成缓存代理，没有需要缓存的方法时返回null
+     */
+    public Object createProxy(Class<?> clazz) {
+        if (clazz.isAnnotationPresent(Controller.class)) {
+            return null;
+        }
+        Map<Method, TinyLfuCache<CacheKey, Object>> methodCaches = createMethodCaches(clazz);
+        if (methodCaches.isEmpty()) {
+            return null;
+        }
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(clazz);
+        enhancer.setCallback(new CacheMethodInterceptor(methodCaches));
+        log.info("create cache proxy for {}, cached methods {}", clazz.getName(), methodCaches.size());
+        return enhancer.create();
+    }
+
+    private Map<Method, TinyLfuCache<CacheKey, Object>> createMethodCaches(Class<?> clazz) {
+        Map<Method, TinyLfuCache<CacheKey, Object>> methodCaches = new HashMap<>();
+        for (Method method : clazz.getMethods()) {
+            Cacheable cacheable = method.getAnnotation(Cacheable.class);
+            if (cacheable == null) {
+                continue;
+            }
+            if (method.getReturnType() == void.class) {
+                log.warn("@Cacheable on void method {} is ignored", method);
+                continue;
+            }
+            methodCaches.put(method, new TinyLfuCache<>(cacheable.maximumSize(), cacheable.ttlSeconds(), TimeUnit.SECONDS));
+        }
+        return methodCaches;
+    }
+}
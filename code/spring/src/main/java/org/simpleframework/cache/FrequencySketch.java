@@ -0,0 +1,87 @@
+package org.simpleframework.cache;
+
+/**
+ * TinyLFU使用的频率草图(Count-Min Sketch)
+ * 每个计数器4bit，一个long存16个计数器，每个key通过4个哈希落在4个计数器上，取最小值作为频率的估计。
+ * 累计增加次数达到sampleSize后所有计数器减半，让历史热度逐渐衰减，适应访问模式的变化。
+ * 非线程安全，由调用方加锁。
+ */
+final class FrequencySketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int maximumSize) {
+        int capacity = tableSizeFor(Math.max(maximumSize, 16));
+        table = new long[capacity];
+        tableMask = capacity - 1;
+        sampleSize = 10 * Math.max(maximumSize, 16);
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = counterOffset(hash, i);
+            int count = (int) ((table[index] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), counterOffset(hash, i));
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    // 所有计数器减半
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    // 第i个哈希使用long中的第(hash的第i个字节的低2位)*4+i个计数器，每个计数器占4bit
+    private static int counterOffset(int hash, int i) {
+        int counter = (((hash >>> (i << 3)) & 3) << 2) + i;
+        return counter << 2;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int tableSizeFor(int n) {
+        int c = Integer.highestOneBit(n - 1) << 1;
+        return c <= 0 ? 1 << 30 : c;
+    }
+}
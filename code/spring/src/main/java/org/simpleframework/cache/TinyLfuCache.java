@@ -0,0 +1,355 @@
+package org.simpleframework.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 有界的内存缓存，淘汰策略为W-TinyLFU，支持TTL和同一个key的并发加载合并(single-flight)
+ * <p>
+ * 淘汰策略：
+ * 新条目先进入占容量1%的window区(LRU)，window溢出时被挤出的条目作为候选者进入main区的probation段。
+ * main区是分段LRU：probation段的条目再次被访问会晋升到protected段(占main区80%)，protected溢出时降级回probation。
+ * 总容量超出时，用频率草图比较候选者和probation段最久未访问的条目，频率低的那个被淘汰。
+ * 这样一次性的扫描流量只能在window区停留，进不了main区，热点数据不会被冲掉。
+ * <p>
+ * 并发：
+ * 数据存在ConcurrentHashMap中，读不加锁；淘汰策略的链表和频率草图由一把锁保护。
+ * 写入时替换map中的节点和调整链表在同一次加锁内完成，并发的put、invalidate不会在链表里留下map中已经没有的节点。
+ * 读路径只tryLock，抢不到锁就放弃这次访问记录，以少量的命中率换取读不阻塞。
+ */
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    // 正在加载的key，保证同一个key同一时刻只有一个线程在执行loader
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final LongSupplier ticker;
+    private final long ttlNanos;
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    private final Deque<K, V> window = new Deque<>();
+    private final Deque<K, V> probation = new Deque<>();
+    private final Deque<K, V> protectedQueue = new Deque<>();
+
+    public TinyLfuCache(int maximumSize, long ttl, TimeUnit unit) {
+        this(maximumSize, ttl, unit, System::nanoTime);
+    }
+
+    TinyLfuCache(int maximumSize, long ttl, TimeUnit unit, LongSupplier ticker) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize must be positive");
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = Math.max(1, (int) ((maximumSize - windowMaximum) * 0.8));
+        this.ttlNanos = unit.toNanos(ttl);
+        this.ticker = ticker;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 返回未过期的缓存值，没有则返回null
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            recordMiss(key);
+            return null;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            invalidate(key, node);
+            return null;
+        }
+        recordHit(node);
+        return node.value;
+    }
+
+    /**
+     * 命中则直接返回，否则执行loader并缓存结果。同一个key的并发未命中只会执行一次loader，其余线程等待其结果。
+     * loader返回null时不缓存。
+     */
+    public V get(K key, Callable<? extends V> loader) throws Exception {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // 抢到加载权后再查一次，避免前一个加载者刚写入、刚从loading中移除的窗口期内重复加载
+            value = getIfPresent(key);
+            if (value == null) {
+                value = loader.call();
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    public void put(K key, V value) {
+        Node<K, V> node = new Node<>(key, value, ticker.getAsLong() + ttlNanos);
+        evictionLock.lock();
+        try {
+            Node<K, V> old = data.put(key, node);
+            if (old != null) {
+                unlink(old);
+            }
+            sketch.increment(key);
+            node.queue = WINDOW;
+            window.addLast(node);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            invalidate(key, node);
+        }
+    }
+
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            clear(window);
+            clear(probation);
+            clear(protectedQueue);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 各段链表中的节点总数，没有并发写入时应当和size相等
+     */
+    int policySize() {
+        evictionLock.lock();
+        try {
+            return window.size + probation.size + protectedQueue.size;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void invalidate(K key, Node<K, V> node) {
+        if (data.remove(key, node)) {
+            evictionLock.lock();
+            try {
+                unlink(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void recordMiss(K key) {
+        if (evictionLock.tryLock()) {
+            try {
+                sketch.increment(key);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void recordHit(Node<K, V> node) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(node.key);
+            // 已被淘汰或替换的节点不再调整位置
+            if (node.queue < 0) {
+                return;
+            }
+            if (node.queue == WINDOW) {
+                window.moveToLast(node);
+            } else if (node.queue == PROBATION) {
+                // probation段再次被访问，晋升到protected段
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > protectedMaximum) {
+                    Node<K, V> demoted = protectedQueue.removeFirst();
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            } else {
+                protectedQueue.moveToLast(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * window溢出的条目进入probation段成为候选者，总量超出时候选者与probation段的victim按频率决出一个淘汰
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        while (window.size > windowMaximum) {
+            Node<K, V> node = window.removeFirst();
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        while (window.size + probation.size + protectedQueue.size > maximumSize) {
+            Node<K, V> victim = probation.first();
+            if (victim == null) {
+                victim = protectedQueue.first();
+            }
+            if (candidate == null || candidate == victim || candidate.queue != PROBATION) {
+                evictNode(victim);
+                candidate = null;
+                continue;
+            }
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evictNode(victim);
+            } else {
+                Node<K, V> next = candidate.next;
+                evictNode(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evictNode(Node<K, V> node) {
+        unlink(node);
+        data.remove(node.key, node);
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else if (node.queue == PROTECTED) {
+            protectedQueue.remove(node);
+        }
+        node.queue = -1;
+    }
+
+    // 逐个摘下节点并标记为不在任何段中，防止读线程拿着旧节点再去调整链表
+    private void clear(Deque<K, V> deque) {
+        Node<K, V> node;
+        while ((node = deque.removeFirst()) != null) {
+            node.queue = -1;
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long expireAt;
+        // 所在的段，-1代表已经不在任何段中
+        int queue = -1;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expireAt >= 0;
+        }
+    }
+
+    /**
+     * 带头尾指针的双向链表，头部为最久未访问，尾部为最近访问
+     */
+    static final class Deque<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        Node<K, V> removeFirst() {
+            Node<K, V> node = head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+    }
+}
@@ -0,0 +1,21 @@
+package org.simpleframework.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 缓存方法的返回值
+ * 作用在Service等bean的方法上时，由CacheWeaver生成代理对象，以方法参数作为key缓存返回值；
+ * 作用在GET类型的Controller方法上时，由ControllerRequestProcessor缓存序列化后的响应，并根据ETag回复304。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+    // 缓存条目的存活时间(秒)
+    long ttlSeconds() default 60;
+
+    // 缓存的最大条目数
+    int maximumSize() default 1024;
+}
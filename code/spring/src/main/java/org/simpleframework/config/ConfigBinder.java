@@ -0,0 +1,301 @@
+package org.simpleframework.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.config.annotation.ConfigurationProperties;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.inject.annotation.Value;
+import org.simpleframework.util.ClassUtil;
+import org.simpleframework.util.ConverterUtil;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 把配置绑定到bean的成员变量: @Value("${key:默认值}")的字段，以及@ConfigurationProperties类的所有字段
+ * <p>
+ * 绑定时为每个字段预先选好转换函数并登记"key -> 绑定"的索引，之后业务代码读配置就是读自己的字段，不再查表和解析字符串。
+ * 重新加载时和旧快照做diff，只重新转换、赋值key变化了的字段；所有新值先全部转换成功才开始赋值，
+ * 任何一个转换失败或者缺少必需的key都放弃这次加载，继续使用旧的配置。
+ * 赋值不是原子的，同一个bean的多个字段在很短的时间内可能新旧混合；需要看到新值的字段应当声明为volatile。
+ */
+@Slf4j
+public class ConfigBinder {
+    private final File source;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile ConfigSnapshot snapshot;
+    private long lastModified;
+    // 下面两个索引都在lock下访问
+    private final Map<String, List<Binding>> bindingsByKey = new HashMap<>();
+    private final Map<Object, List<Binding>> bindingsByBean = new IdentityHashMap<>();
+
+    /**
+     * 一个字段的绑定: 按顺序查找keys，第一个存在的生效，都不存在时使用默认值
+     */
+    private static final class Binding {
+        final Object bean;
+        final Field field;
+        final String[] keys;
+        // @Value的默认值，@ConfigurationProperties字段的初始值
+        final Object fallback;
+        final boolean required;
+        final Function<String, Object> converter;
+
+        Binding(Object bean, Field field, String[] keys, Object fallback, boolean required) {
+            this.bean = bean;
+            this.field = field;
+            this.keys = keys;
+            this.fallback = fallback;
+            this.required = required;
+            this.converter = ConverterUtil.converterFor(field.getType());
+        }
+
+        /**
+         * @return 在snapshot中的值，required的key缺失时抛出异常
+         */
+        Object resolve(ConfigSnapshot snapshot) {
+            for (String key : keys) {
+                String value = snapshot.get(key);
+                if (value != null) {
+                    try {
+                        return converter.apply(value);
+                    } catch (RuntimeException e) {
+                        throw new RuntimeException("can not convert config " + key + "=" + value + " to " + field, e);
+                    }
+                }
+            }
+            if (required) {
+                throw new RuntimeException("missing config " + keys[0] + " for " + field);
+            }
+            return fallback;
+        }
+    }
+
+    public ConfigBinder(ConfigSnapshot snapshot) {
+        this.source = null;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 从文件加载配置，之后可以用reloadIfModified重新加载
+     */
+    public ConfigBinder(File source) throws IOException {
+        this.source = source;
+        this.lastModified = source.lastModified();
+        this.snapshot = ConfigSnapshot.load(source);
+        log.info("loaded {} config entries from {}", snapshot.size(), source);
+    }
+
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 绑定bean中的配置字段并赋初值；clazz是bean在容器中的类，bean可能是它的代理
+     */
+    public void bind(Class<?> clazz, Object bean) {
+        List<Binding> bindings = collectBindings(clazz, bean);
+        if (bindings.isEmpty()) return;
+        lock.lock();
+        try {
+            ConfigSnapshot current = snapshot;
+            List<Object> values = new ArrayList<>(bindings.size());
+            for (Binding binding : bindings) {
+                values.add(binding.resolve(current));
+            }
+            for (int i = 0; i < bindings.size(); i++) {
+                Binding binding = bindings.get(i);
+                ClassUtil.setField(binding.field, bean, values.get(i), true);
+                for (String key : binding.keys) {
+                    bindingsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(binding);
+                }
+            }
+            bindingsByBean.computeIfAbsent(bean, k -> new ArrayList<>()).addAll(bindings);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 绑定容器中所有的bean，用于不经过DependencyInjector创建bean的场景(比如快照回放)
+     */
+    public void bindAll(BeanContainer beanContainer) {
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            bind(clazz, beanContainer.getBean(clazz));
+        }
+    }
+
+    /**
+     * 解除bean的绑定，比如热加载替换掉的旧bean
+     */
+    public void unbind(Object bean) {
+        lock.lock();
+        try {
+            List<Binding> bindings = bindingsByBean.remove(bean);
+            if (bindings == null) return;
+            for (Binding binding : bindings) {
+                for (String key : binding.keys) {
+                    List<Binding> list = bindingsByKey.get(key);
+                    if (list == null) continue;
+                    list.remove(binding);
+                    if (list.isEmpty()) bindingsByKey.remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 切换到新的配置，只重新绑定key变化了的字段
+     *
+     * @return 变化的key，新的配置无法绑定时返回null且不做任何改动
+     */
+    public Set<String> reload(ConfigSnapshot newer) {
+        lock.lock();
+        try {
+            Set<String> changed = snapshot.diff(newer);
+            if (changed.isEmpty()) {
+                snapshot = newer;
+                return changed;
+            }
+            Set<Binding> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String key : changed) {
+                affected.addAll(bindingsByKey.getOrDefault(key, Collections.emptyList()));
+            }
+            // 先全部转换，全部成功才赋值
+            Map<Binding, Object> values = new IdentityHashMap<>();
+            for (Binding binding : affected) {
+                try {
+                    values.put(binding, binding.resolve(newer));
+                } catch (RuntimeException e) {
+                    log.error("reload config error, keep the old config", e);
+                    return null;
+                }
+            }
+            for (Map.Entry<Binding, Object> e : values.entrySet()) {
+                ClassUtil.setField(e.getKey().field, e.getKey().bean, e.getValue(), true);
+            }
+            snapshot = newer;
+            log.info("config changed {}, rebound {} fields", changed, values.size());
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 配置文件的修改时间变化时重新加载
+     *
+     * @return 变化的key，没有重新加载或者加载失败时为空
+     */
+    public Set<String> reloadIfModified() {
+        if (source == null) return Collections.emptySet();
+        lock.lock();
+        try {
+            long modified = source.lastModified();
+            if (modified == lastModified) return Collections.emptySet();
+            // 失败时同样记下，等下一次修改再加载
+            lastModified = modified;
+            Set<String> changed = reload(ConfigSnapshot.load(source));
+            return changed == null ? Collections.emptySet() : changed;
+        } catch (IOException | RuntimeException e) {
+            log.error("reload config {} error, keep the old config", source, e);
+            return Collections.emptySet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static List<Binding> collectBindings(Class<?> clazz, Object bean) {
+        List<Binding> bindings = new ArrayList<>();
+        ConfigurationProperties properties = clazz.getAnnotation(ConfigurationProperties.class);
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) continue;
+            Value value = field.getAnnotation(Value.class);
+            if (value != null) {
+                bindings.add(valueBinding(bean, field, value.value()));
+            } else if (properties != null && !field.isAnnotationPresent(Autowired.class)) {
+                String prefix = properties.prefix().isEmpty() ? "" : properties.prefix() + ".";
+                Set<String> keys = new LinkedHashSet<>();
+                keys.add(prefix + field.getName());
+                keys.add(prefix + kebabCase(field.getName()));
+                bindings.add(new Binding(bean, field, internAll(keys), getField(field, bean), false));
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * 解析"${key}"和"${key:默认值}"
+     */
+    private static Binding valueBinding(Object bean, Field field, String expression) {
+        if (!expression.startsWith("${") || !expression.endsWith("}")) {
+            throw new RuntimeException("@Value of " + field + " must be ${key} or ${key:default}, but was " + expression);
+        }
+        String body = expression.substring(2, expression.length() - 1);
+        int colon = body.indexOf(':');
+        String key = (colon < 0 ? body : body.substring(0, colon)).trim();
+        if (key.isEmpty()) {
+            throw new RuntimeException("empty config key in @Value of " + field);
+        }
+        Object fallback = null;
+        if (colon >= 0) {
+            String defaultValue = body.substring(colon + 1);
+            try {
+                fallback = ConverterUtil.converterFor(field.getType()).apply(defaultValue);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("can not convert default value " + defaultValue + " to " + field, e);
+            }
+        }
+        return new Binding(bean, field, new String[]{key.intern()}, fallback, colon < 0);
+    }
+
+    private static String[] internAll(Set<String> keys) {
+        String[] result = new String[keys.size()];
+        int i = 0;
+        for (String key : keys) {
+            result[i++] = key.intern();
+        }
+        return result;
+    }
+
+    /**
+     * maxSize -> max-size
+     */
+    static String kebabCase(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) sb.append('-');
+                sb.append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Object getField(Field field, Object target) {
+        field.setAccessible(true);
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.simpleframework.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 某一时刻的全部配置，读取一次后不再改变
+ * <p>
+ * .properties和.yml/.yaml都展开成同一张扁平的"key -> 字符串值"表，key经过intern，
+ * 同一个key在新旧快照和绑定信息中是同一个字符串对象。重新加载时生成新的快照，用diff找出变化的key
+ */
+public final class ConfigSnapshot {
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyMap());
+
+    private final Map<String, String> values;
+
+    ConfigSnapshot(Map<String, String> values) {
+        Map<String, String> interned = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            interned.put(e.getKey().intern(), e.getValue());
+        }
+        this.values = Collections.unmodifiableMap(interned);
+    }
+
+    public static ConfigSnapshot of(Map<String, String> values) {
+        return new ConfigSnapshot(values);
+    }
+
+    /**
+     * 根据扩展名选择格式，.yml/.yaml按YAML解析，其余按properties解析，都使用UTF-8
+     */
+    public static ConfigSnapshot load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return load(in, file.getName());
+        }
+    }
+
+    public static ConfigSnapshot load(InputStream in, String name) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+            return new ConfigSnapshot(YamlParser.parse(reader));
+        }
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, String> values = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key).trim());
+        }
+        return new ConfigSnapshot(values);
+    }
+
+    /**
+     * @return 配置值，没有时返回null
+     */
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    /**
+     * @return 和newer相比新增、删除或者值变化的key
+     */
+    public Set<String> diff(ConfigSnapshot newer) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            if (!e.getValue().equals(newer.values.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        for (String key : newer.values.keySet()) {
+            if (!values.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,181 @@
+package org.simpleframework.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只支持配置文件常用子集的YAML解析器，直接展开成扁平的key
+ * <p>
+ * 支持: 按缩进嵌套的映射、标量(可以加单引号或双引号)、# 注释、"- "开头的列表(元素可以是标量或者映射)、[a, b]形式的行内列表。
+ * 嵌套映射展开成server.port，列表元素展开成list[0]、list[0].name；标量列表同时以逗号连接放在列表自己的key下，
+ * 这样既可以按下标取，也可以直接绑定到String[]或者List。
+ * 不支持: 锚点和引用、多行字符串(| 和 >)、{a: b}形式的行内映射、多文档，遇到时抛出异常并给出行号。
+ */
+class YamlParser {
+    private final Map<String, String> values = new LinkedHashMap<>();
+    // 标量列表的元素，解析结束后连接起来
+    private final Map<String, List<String>> scalarLists = new LinkedHashMap<>();
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private int lineNumber;
+
+    /**
+     * 一层嵌套: 打开它的行的缩进和key前缀
+     */
+    private static final class Frame {
+        final int indent;
+        final String prefix;
+        // 由"key:"打开的层，和key同样缩进的"- "也属于这一层
+        final boolean listCapable;
+        int nextIndex;
+
+        Frame(int indent, String prefix, boolean listCapable) {
+            this.indent = indent;
+            this.prefix = prefix;
+            this.listCapable = listCapable;
+        }
+    }
+
+    static Map<String, String> parse(Reader reader) throws IOException {
+        return new YamlParser().doParse(reader);
+    }
+
+    private Map<String, String> doParse(Reader reader) throws IOException {
+        stack.push(new Frame(-1, "", false));
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == ' ') indent++;
+            if (indent < line.length() && line.charAt(indent) == '\t') {
+                throw error("tabs are not allowed for indentation");
+            }
+            String content = stripComment(line.substring(indent)).trim();
+            if (content.isEmpty() || content.equals("---")) continue;
+            boolean listItem = content.equals("-") || content.startsWith("- ");
+            while (stack.size() > 1) {
+                Frame top = stack.peek();
+                if (indent > top.indent || (listItem && indent == top.indent && top.listCapable)) break;
+                stack.pop();
+            }
+            if (listItem) {
+                parseListItem(indent, content);
+            } else {
+                parseEntry(indent, content);
+            }
+        }
+        for (Map.Entry<String, List<String>> e : scalarLists.entrySet()) {
+            values.putIfAbsent(e.getKey(), String.join(",", e.getValue()));
+        }
+        return values;
+    }
+
+    private void parseListItem(int indent, String content) {
+        Frame frame = stack.peek();
+        if (frame.prefix.isEmpty()) throw error("list item without a key");
+        String itemPrefix = frame.prefix + "[" + frame.nextIndex++ + "]";
+        String rest = content.substring(1).trim();
+        if (rest.isEmpty()) {
+            stack.push(new Frame(indent, itemPrefix, false));
+        } else if (keyEnd(rest) > 0) {
+            // "- name: a"，同一个元素后续的key和name对齐
+            int keyColumn = indent + content.indexOf(rest);
+            stack.push(new Frame(keyColumn - 1, itemPrefix, false));
+            parseEntry(keyColumn, rest);
+        } else {
+            values.put(itemPrefix, scalar(rest));
+            scalarLists.computeIfAbsent(frame.prefix, k -> new ArrayList<>()).add(scalar(rest));
+        }
+    }
+
+    private void parseEntry(int indent, String content) {
+        int end = keyEnd(content);
+        if (end <= 0) throw error("expected 'key: value'");
+        String key = stack.peek().prefix.isEmpty() ? unquote(content.substring(0, end).trim())
+                : stack.peek().prefix + "." + unquote(content.substring(0, end).trim());
+        String value = content.substring(end + 1).trim();
+        if (value.isEmpty()) {
+            stack.push(new Frame(indent, key, true));
+        } else if (value.startsWith("[")) {
+            if (!value.endsWith("]")) throw error("unterminated flow list");
+            String inner = value.substring(1, value.length() - 1).trim();
+            List<String> items = new ArrayList<>();
+            if (!inner.isEmpty()) {
+                for (String item : inner.split(",")) {
+                    items.add(scalar(item.trim()));
+                }
+            }
+            for (int i = 0; i < items.size(); i++) {
+                values.put(key + "[" + i + "]", items.get(i));
+            }
+            values.put(key, String.join(",", items));
+        } else if (value.startsWith("{") || value.startsWith("|") || value.startsWith(">")
+                || value.startsWith("&") || value.startsWith("*")) {
+            throw error("unsupported yaml syntax: " + value);
+        } else {
+            values.put(key, scalar(value));
+        }
+    }
+
+    /**
+     * @return key结束的位置，也就是引号之外第一个后面跟着空白或者行尾的冒号，没有时返回-1
+     */
+    private static int keyEnd(String content) {
+        char quote = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == ':' && (i + 1 == content.length() || content.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 去掉引号之外、行首或者空白之后的#开始的注释
+     */
+    private static String stripComment(String content) {
+        char quote = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || Character.isWhitespace(content.charAt(i - 1)))) {
+                return content.substring(0, i);
+            }
+        }
+        return content;
+    }
+
+    private String scalar(String value) {
+        if (value.equals("~") || value.equals("null")) return "";
+        return unquote(value);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            if ((first == '"' || first == '\'') && value.charAt(value.length() - 1) == first) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException("yaml line " + lineNumber + ": " + message);
+    }
+}
@@ -0,0 +1,16 @@
+package org.simpleframework.config.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把prefix下的配置按字段名绑定到bean的所有非static、非final成员变量
+ * 字段maxSize对应prefix.maxSize或者prefix.max-size，没有配置时保留字段的初始值
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConfigurationProperties {
+    String prefix();
+}
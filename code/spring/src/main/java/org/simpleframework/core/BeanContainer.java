@@ -7,22 +7,32 @@ import org.simpleframework.core.annotation.Component;
 import org.simpleframework.core.annotation.Controller;
 import org.simpleframework.core.annotation.Repository;
 import org.simpleframework.core.annotation.Service;
+import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.snapshot.ContainerSnapshot;
 import org.simpleframework.util.ClassUtil;
 import org.simpleframework.util.ValidationUtil;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+import tongji.java.util.concurrent.locks.ReentrantLock;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class BeanContainer {
     // 存储了Class,Class对应的对象
     private final Map<Class<?>, Object> beanMap = new ConcurrentHashMap<>();
+    // 构造器注入的bean，扫描时无法实例化，由DependencyInjector创建后放入beanMap
+    private final Set<Class<?>> deferredClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 被@Repository标记的接口，没有实现类，由RepositoryFactory创建代理后放入beanMap
+    private final Set<Class<?>> repositoryInterfaces = Collections.newSetFromMap(new ConcurrentHashMap<>());
     // 加载bean的注解列表。被这些注解标记的类就会被BeanContainer管理起来
     private static final List<Class<? extends Annotation>> BEAN_ANNOTATION = Arrays.asList(Component.class, Controller.class, Service.class, Repository.class);
 
-    private boolean loaded = false;
+    // loadBeans要扫描类路径、创建实例，耗时较长；用ReentrantLock而不是synchronized，虚拟线程在这里等待时不会钉住载体线程
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded = false;
 
     public boolean isLoaded() {
         return loaded;
@@ -46,31 +56,125 @@ public class BeanContainer {
     }
 
     // 扫描加载所有packageName下的bean
-    public synchronized void loadBeans(String packageName) {
-        if (isLoaded()) {
-            log.warn("BeanContainer has been loaded");
-            return;
-        }
+    public void loadBeans(String packageName) {
+        loadLock.lock();
+        try {
+            if (isLoaded()) {
+                log.warn("BeanContainer has been loaded");
+                return;
+            }
 
-        Set<Class<?>> classSet = ClassUtil.extractPackageClass(packageName);
-        if (ValidationUtil.isEmpty(classSet)) {
-            log.warn("extract nothing from packageName" + packageName);
-            return;
+            Set<Class<?>> classSet = ClassUtil.extractPackageClass(packageName);
+            if (ValidationUtil.isEmpty(classSet)) {
+                log.warn("extract nothing from packageName" + packageName);
+                return;
+            }
+            for (Class<?> clazz : classSet) {
+                for (Class<? extends Annotation> annotation : BEAN_ANNOTATION) {
+                    if (clazz.isAnnotationPresent(annotation)) {
+                        if (clazz.isInterface()) {
+                            if (annotation == Repository.class) repositoryInterfaces.add(clazz);
+                        } else if (hasAutowiredConstructor(clazz)) {
+                            deferredClasses.add(clazz);
+                        } else {
+                            beanMap.put(clazz, ClassUtil.newInstance(clazz, true));
+                        }
+                    }
+                }
+            }
+            loaded = true;
+        } finally {
+            loadLock.unlock();
         }
-        for (Class<?> clazz : classSet) {
-            for (Class<? extends Annotation> annotation : BEAN_ANNOTATION) {
-                if (clazz.isAnnotationPresent(annotation)) {
+    }
+
+    /**
+     * 按快照记录的创建顺序直接实例化bean，跳过包扫描和注解过滤，只加载bean本身的类
+     * 快照是否和当前的class文件一致由调用者通过ContainerSnapshot.isValid确认
+     */
+    public void loadBeans(ContainerSnapshot snapshot) {
+        loadLock.lock();
+        try {
+            if (isLoaded()) {
+                log.warn("BeanContainer has been loaded");
+                return;
+            }
+            for (String className : snapshot.getBeanClassNames()) {
+                Class<?> clazz = ClassUtil.loadClass(className);
+                if (clazz.isInterface()) {
+                    repositoryInterfaces.add(clazz);
+                } else {
                     beanMap.put(clazz, ClassUtil.newInstance(clazz, true));
                 }
             }
+            loaded = true;
+        } finally {
+            loadLock.unlock();
         }
-        loaded = true;
+    }
+
+    private static boolean hasAutowiredConstructor(Class<?> clazz) {
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Autowired.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 用编译期生成的装配代码创建bean，跳过类路径扫描；之后由GeneratedWiring.inject完成注入
+     */
+    public void loadBeans(GeneratedWiring wiring) {
+        loadLock.lock();
+        try {
+            if (isLoaded()) {
+                log.warn("BeanContainer has been loaded");
+                return;
+            }
+            wiring.instantiate(this);
+            repositoryInterfaces.addAll(wiring.getRepositoryInterfaces());
+            loaded = true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * 构造器注入、还没有创建的bean类
+     */
+    public Set<Class<?>> getDeferredClasses() {
+        return Collections.unmodifiableSet(deferredClasses);
+    }
+
+    /**
+     * 加载时发现的@Repository接口，包括还没有创建代理的
+     */
+    public Set<Class<?>> getRepositoryInterfaces() {
+        return Collections.unmodifiableSet(repositoryInterfaces);
+    }
+
+    public boolean isBeanClass(Class<?> clazz) {
+        return beanMap.containsKey(clazz) || deferredClasses.contains(clazz);
     }
 
     public Object addBean(Class<?> clazz, Object bean) {
         return beanMap.put(clazz, bean);
     }
 
+    /**
+     * 热加载后用新类的实例替换旧类的bean，先放入新的再移除旧的，按接口查找时不会出现找不到的窗口
+     */
+    public void replaceBean(Class<?> oldClass, Class<?> newClass, Object bean) {
+        beanMap.put(newClass, bean);
+        if (deferredClasses.remove(oldClass)) {
+            deferredClasses.add(newClass);
+        }
+        if (oldClass != newClass) {
+            beanMap.remove(oldClass);
+        }
+    }
+
     public Object removeBean(Class<?> clazz) {
         return beanMap.remove(clazz);
     }
@@ -103,7 +207,8 @@ public class BeanContainer {
     }
 
     public Set<Class<?>> getClassesBySuper(Class<?> interfaceOrClass) {
-        Set<Class<?>> keySet = beanMap.keySet();
+        Set<Class<?>> keySet = new HashSet<>(beanMap.keySet());
+        keySet.addAll(deferredClasses);
         if (ValidationUtil.isEmpty(keySet)) {
             log.warn("nothing in beanMap");
             return null;
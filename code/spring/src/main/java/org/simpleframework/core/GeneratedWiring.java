@@ -0,0 +1,100 @@
+package org.simpleframework.core;
+
+import org.simpleframework.util.ClassUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * 编译期生成的bean装配代码，由processor模块的WiringProcessor为每次编译生成一个ApplicationWiring实现类，
+ * 并登记在META-INF/services中
+ * <p>
+ * 生成的代码直接new出bean并给字段赋值(或者调用setter)，运行时不再扫描类路径、不再反射解析依赖；
+ * 依赖缺失、有歧义、构造器循环依赖都已经在编译时报错。只有生成的代码访问不到的成员(比如其他包中的private字段)
+ * 才会退回到下面的反射方法，编译时会给出警告
+ * <p>
+ * 用法和快照一样分两步: instantiate之后可以织入缓存代理，再调用inject完成构造器注入的bean和字段注入
+ */
+public interface GeneratedWiring {
+    /**
+     * @return 生成时bean所在的公共包，和scanPackage相同时才会被使用
+     */
+    String getBasePackage();
+
+    /**
+     * @return 所有bean的类，按创建顺序
+     */
+    List<Class<?>> getBeanClasses();
+
+    /**
+     * @return 被@Repository标记的接口，由RepositoryFactory在instantiate之后、inject之前创建代理
+     */
+    default List<Class<?>> getRepositoryInterfaces() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 创建所有通过无参构造器创建的bean并放入容器
+     */
+    void instantiate(BeanContainer beanContainer);
+
+    /**
+     * 按依赖顺序创建构造器注入的bean，再给所有@Autowired字段赋值，依赖从容器中获取(可能已经是代理)
+     */
+    void inject(BeanContainer beanContainer);
+
+    /**
+     * 查找classpath上为scanPackage生成的装配代码，没有时返回null
+     */
+    static GeneratedWiring find(String scanPackage) {
+        for (GeneratedWiring wiring : ServiceLoader.load(GeneratedWiring.class, ClassUtil.getClassLoader())) {
+            if (wiring.getBasePackage().equals(scanPackage)) return wiring;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> List<T> list(Object... beans) {
+        return (List<T>) Collections.unmodifiableList(new ArrayList<>(Arrays.asList(beans)));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Set<T> set(Object... beans) {
+        return (Set<T>) Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(beans)));
+    }
+
+    /**
+     * @param namesAndBeans 名字和bean交替排列
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Map<String, T> map(Object... namesAndBeans) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndBeans.length; i += 2) {
+            map.put((String) namesAndBeans[i], namesAndBeans[i + 1]);
+        }
+        return (Map<String, T>) Collections.unmodifiableMap(map);
+    }
+
+    static Class<?> loadClass(String className) {
+        return ClassUtil.loadClass(className);
+    }
+
+    static Object newInstance(Class<?> clazz) {
+        return ClassUtil.newInstance(clazz, true);
+    }
+
+    static void setField(Object target, Class<?> declaringClass, String fieldName, Object value) {
+        try {
+            ClassUtil.setField(declaringClass.getDeclaredField(fieldName), target, value, true);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException("generated wiring refers to missing field " + declaringClass.getName() + "." + fieldName);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.simpleframework.data;
+
+import lombok.extern.slf4j.Slf4j;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射的追加日志
+ * <p>
+ * 每条记录: [int 数据长度][int CRC32(类型+数据)][byte 类型][数据]。文件按容量映射，未写入的部分都是0，
+ * 打开时从头读到长度为0或者校验失败的位置为止，之后的内容(写到一半时进程退出留下的)清零后被覆盖。
+ * <p>
+ * 追加只是往映射的内存里复制数据；持久化用组提交: 写入者拿到序号后调用sync，
+ * 同一时刻只有一个线程执行force，它把当时已经追加的记录全部刷盘，排队等待的写入者发现自己的序号已经落盘就直接返回，
+ * 一次force覆盖一批写入。
+ */
+@Slf4j
+final class AppendLog implements Closeable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final int HEADER = 9;
+
+    interface Replayer {
+        void accept(byte type, byte[] payload);
+    }
+
+    private final File file;
+    private final int initialCapacity;
+    // 追加、扩容、重写都持有这个锁
+    private final ReentrantLock lock = new ReentrantLock();
+    // 同一时刻只有一个线程force，重写和关闭也持有它；需要两个锁时先拿syncLock
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long appended;
+    private volatile long durable;
+
+    AppendLog(File file, int initialCapacity, Replayer replayer) throws IOException {
+        this.file = file;
+        this.initialCapacity = initialCapacity;
+        open();
+        replay(replayer);
+    }
+
+    private void open() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        long capacity = initialCapacity;
+        while (capacity < channel.size()) {
+            capacity <<= 1;
+        }
+        buffer = map(capacity);
+    }
+
+    private MappedByteBuffer map(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("log " + file + " exceeds " + Integer.MAX_VALUE + " bytes");
+        }
+        // 映射超过文件长度的部分时文件会被扩展，新增的内容都是0
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void replay(Replayer replayer) {
+        ByteBuffer view = buffer.duplicate();
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (offset + HEADER <= view.capacity()) {
+            int length = view.getInt(offset);
+            if (length == 0) break;
+            if (length < 0 || offset + HEADER + length > view.capacity()) {
+                truncate(offset);
+                break;
+            }
+            byte type = view.get(offset + 8);
+            byte[] payload = new byte[length];
+            view.position(offset + HEADER);
+            view.get(payload);
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != view.getInt(offset + 4)) {
+                truncate(offset);
+                break;
+            }
+            replayer.accept(type, payload);
+            offset += HEADER + length;
+        }
+        position = offset;
+    }
+
+    /**
+     * 丢弃offset之后不完整的记录
+     */
+    private void truncate(int offset) {
+        log.warn("discard incomplete records of {} after offset {}", file, offset);
+        for (int i = offset; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * 追加一条记录，返回后还没有刷盘
+     *
+     * @return 记录的序号，传给sync等待落盘
+     */
+    long append(byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        lock.lock();
+        try {
+            int size = HEADER + payload.length;
+            if (position + size > buffer.capacity()) {
+                grow(position + size);
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            // 先写数据最后写长度，进程在中途退出时这条记录的长度仍然是0
+            view.putInt(0).putInt((int) crc.getValue()).put(type).put(payload);
+            buffer.putInt(position, payload.length);
+            position += size;
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grow(int required) throws IOException {
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        // 旧的映射上可能还有没刷盘的记录，换掉之前先刷，之后的sync只需要force新的映射
+        buffer.force();
+        buffer = map(capacity);
+    }
+
+    /**
+     * 等待seq及之前的记录落盘
+     */
+    void sync(long seq) {
+        if (durable >= seq) return;
+        syncLock.lock();
+        try {
+            // 等锁期间前一个线程的force已经包含了这条记录
+            if (durable >= seq) return;
+            MappedByteBuffer current;
+            long target;
+            lock.lock();
+            try {
+                current = buffer;
+                target = appended;
+            } finally {
+                lock.unlock();
+            }
+            current.force();
+            durable = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 已经使用的字节数
+     */
+    int size() {
+        lock.lock();
+        try {
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 用records(当前所有实体的PUT记录)重写日志: 先写到临时文件并刷盘，再原子地替换原来的日志
+     * 调用者要保证重写期间没有新的写入
+     */
+    void rewrite(Iterable<byte[]> records) throws IOException {
+        syncLock.lock();
+        lock.lock();
+        try {
+            File compacted = new File(file.getPath() + ".compact");
+            try (FileChannel out = new RandomAccessFile(compacted, "rw").getChannel()) {
+                out.truncate(0);
+                CRC32 crc = new CRC32();
+                for (byte[] payload : records) {
+                    crc.reset();
+                    crc.update(PUT);
+                    crc.update(payload);
+                    ByteBuffer record = ByteBuffer.allocate(HEADER + payload.length);
+                    record.putInt(payload.length).putInt((int) crc.getValue()).put(PUT).put(payload);
+                    record.flip();
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(true);
+            }
+            long size = compacted.length();
+            channel.close();
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+            position = (int) size;
+            durable = appended;
+        } finally {
+            lock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 刷盘并关闭文件，映射的内存在被回收时释放
+     */
+    @Override
+    public void close() throws IOException {
+        syncLock.lock();
+        lock.lock();
+        try {
+            buffer.force();
+            durable = appended;
+            channel.close();
+        } finally {
+            lock.unlock();
+            syncLock.unlock();
+        }
+    }
+}
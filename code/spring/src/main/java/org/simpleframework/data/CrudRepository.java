@@ -0,0 +1,37 @@
+package org.simpleframework.data;
+
+import java.util.List;
+
+/**
+ * 被@Repository标记的接口继承这个接口后由RepositoryFactory生成实现
+ * <p>
+ * 除了下面的方法，还可以按@Indexed字段声明查询方法，例如字段city:
+ * List&lt;T&gt; findByCity(String city)、T findByCity(String city)(多于一个结果时抛出异常)、
+ * long countByCity(String city)、boolean existsByCity(String city)
+ * <p>
+ * 读取只访问内存，返回的是实体的副本(字段是浅拷贝)，修改后需要save才会生效
+ *
+ * @param <T>  实体类型，需要有无参构造器和一个@Id字段
+ * @param <ID> 主键类型
+ */
+public interface CrudRepository<T, ID> {
+    /**
+     * 写入日志并且刷到磁盘后才返回，并发的写入合并成一次刷盘
+     */
+    T save(T entity);
+
+    T findById(ID id);
+
+    boolean existsById(ID id);
+
+    List<T> findAll();
+
+    long count();
+
+    /**
+     * @return 实体存在并被删除时返回true
+     */
+    boolean deleteById(ID id);
+
+    boolean delete(T entity);
+}
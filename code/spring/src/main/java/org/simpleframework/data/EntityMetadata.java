@@ -0,0 +1,109 @@
+package org.simpleframework.data;
+
+import org.simpleframework.data.annotation.Id;
+import org.simpleframework.data.annotation.Indexed;
+import org.simpleframework.util.ClassUtil;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体类的主键、索引字段和需要复制的字段，创建EntityStore时解析一次
+ */
+final class EntityMetadata<T> {
+    final Class<T> type;
+    final Field idField;
+    // 字段名 -> 索引字段，按声明顺序
+    final Map<String, Field> indexedFields;
+    // 和indexedFields顺序一致
+    final boolean[] unique;
+    private final List<Field> fields;
+
+    EntityMetadata(Class<T> type) {
+        this.type = type;
+        Field id = null;
+        Map<String, Field> indexed = new LinkedHashMap<>();
+        List<Boolean> uniqueList = new ArrayList<>();
+        List<Field> all = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                field.setAccessible(true);
+                all.add(field);
+                if (field.isAnnotationPresent(Id.class)) {
+                    if (id != null) {
+                        throw new RuntimeException("multiple @Id fields in " + type.getName() + ": " + id.getName() + ", " + field.getName());
+                    }
+                    id = field;
+                }
+                Indexed index = field.getAnnotation(Indexed.class);
+                if (index != null) {
+                    indexed.put(field.getName(), field);
+                    uniqueList.add(index.unique());
+                }
+            }
+        }
+        if (id == null) {
+            throw new RuntimeException("no @Id field in " + type.getName());
+        }
+        this.idField = id;
+        this.indexedFields = Collections.unmodifiableMap(indexed);
+        this.unique = new boolean[uniqueList.size()];
+        for (int i = 0; i < unique.length; i++) {
+            unique[i] = uniqueList.get(i);
+        }
+        this.fields = Collections.unmodifiableList(all);
+        // 提前检查无参构造器，不要等到第一次读取
+        ClassUtil.<T>newInstance(type, true);
+    }
+
+    Object getId(T entity) {
+        return get(idField, entity);
+    }
+
+    /**
+     * @return 各个索引字段的值，顺序和indexedFields一致
+     */
+    Object[] getIndexValues(T entity) {
+        Object[] values = new Object[indexedFields.size()];
+        int i = 0;
+        for (Field field : indexedFields.values()) {
+            values[i++] = get(field, entity);
+        }
+        return values;
+    }
+
+    int indexOf(String fieldName) {
+        int i = 0;
+        for (String name : indexedFields.keySet()) {
+            if (name.equals(fieldName)) return i;
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * 浅拷贝，内存中保存的实体不会被调用者修改
+     */
+    T copy(T entity) {
+        T copy = ClassUtil.newInstance(type, true);
+        for (Field field : fields) {
+            ClassUtil.setField(field, copy, get(field, entity), true);
+        }
+        return copy;
+    }
+
+    private static Object get(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
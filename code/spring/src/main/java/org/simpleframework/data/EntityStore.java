@@ -0,0 +1,276 @@
+package org.simpleframework.data;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 一个实体类的全部数据: 内存中的主键表和二级索引，以及持久化它们的追加日志
+ * <p>
+ * 读取只访问内存，主键表和索引都是ConcurrentHashMap，不加锁。
+ * 写入在writeLock内检查唯一索引、追加日志、更新内存，释放锁之后再等待组提交刷盘，
+ * 并发的写入因此可以共享同一次force。内存中保存的是从写入日志的JSON解码出来的对象，和重启后回放得到的完全一致。
+ * <p>
+ * 日志中失效的记录(被覆盖或者删除的实体)超过一半时压缩: 把当前的所有实体写成快照替换原来的日志。
+ */
+@Slf4j
+final class EntityStore<T> implements Closeable {
+    private static final Gson GSON = new Gson();
+
+    final EntityMetadata<T> metadata;
+    private final AppendLog appendLog;
+    private final long minCompactBytes;
+    private final Map<Object, Row<T>> rows = new ConcurrentHashMap<>();
+    // 每个索引字段一个: 字段值 -> 主键集合
+    private final List<Map<Object, Set<Object>>> indexes = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // 当前实体对应的记录在日志中占的字节数
+    private long liveBytes;
+
+    private static final class Row<T> {
+        final T entity;
+        final Object[] indexValues;
+        final int size;
+
+        Row(T entity, Object[] indexValues, int size) {
+            this.entity = entity;
+            this.indexValues = indexValues;
+            this.size = size;
+        }
+    }
+
+    EntityStore(Class<T> type, File file, int initialCapacity, long minCompactBytes) throws IOException {
+        this.metadata = new EntityMetadata<>(type);
+        this.minCompactBytes = minCompactBytes;
+        for (int i = 0; i < metadata.indexedFields.size(); i++) {
+            indexes.add(new ConcurrentHashMap<>());
+        }
+        this.appendLog = new AppendLog(file, initialCapacity, this::replay);
+        log.info("load {} {} from {}", rows.size(), type.getSimpleName(), file);
+    }
+
+    private void replay(byte type, byte[] payload) {
+        if (type == AppendLog.PUT) {
+            T entity = decode(payload);
+            put(metadata.getId(entity), entity, AppendLog.HEADER + payload.length);
+        } else if (type == AppendLog.DELETE) {
+            remove(GSON.fromJson(new String(payload, StandardCharsets.UTF_8), metadata.idField.getType()));
+        }
+    }
+
+    T save(T entity) {
+        Object id = metadata.getId(entity);
+        if (id == null) {
+            throw new RuntimeException("@Id field " + metadata.idField.getName() + " of " + metadata.type.getName() + " must not be null");
+        }
+        byte[] payload = GSON.toJson(entity).getBytes(StandardCharsets.UTF_8);
+        T stored = decode(payload);
+        long seq;
+        writeLock.lock();
+        try {
+            Object[] indexValues = metadata.getIndexValues(stored);
+            checkUnique(id, indexValues);
+            seq = append(AppendLog.PUT, payload);
+            put(id, stored, AppendLog.HEADER + payload.length);
+        } finally {
+            writeLock.unlock();
+        }
+        appendLog.sync(seq);
+        return entity;
+    }
+
+    boolean delete(Object id) {
+        if (id == null) return false;
+        byte[] payload = GSON.toJson(id).getBytes(StandardCharsets.UTF_8);
+        long seq;
+        writeLock.lock();
+        try {
+            if (!rows.containsKey(id)) return false;
+            seq = append(AppendLog.DELETE, payload);
+            remove(id);
+        } finally {
+            writeLock.unlock();
+        }
+        appendLog.sync(seq);
+        return true;
+    }
+
+    T findById(Object id) {
+        Row<T> row = id == null ? null : rows.get(id);
+        return row == null ? null : metadata.copy(row.entity);
+    }
+
+    boolean existsById(Object id) {
+        return id != null && rows.containsKey(id);
+    }
+
+    List<T> findAll() {
+        List<T> result = new ArrayList<>(rows.size());
+        for (Row<T> row : rows.values()) {
+            result.add(metadata.copy(row.entity));
+        }
+        return result;
+    }
+
+    long count() {
+        return rows.size();
+    }
+
+    /**
+     * 按第index个索引字段查询
+     */
+    List<T> findBy(int index, Object value) {
+        if (value == null) return Collections.emptyList();
+        Set<Object> ids = indexes.get(index).get(value);
+        if (ids == null) return Collections.emptyList();
+        List<T> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            Row<T> row = rows.get(id);
+            // 写入者先更新主键表再更新索引，中间读到的旧索引项在这里过滤掉
+            if (row != null && value.equals(row.indexValues[index])) {
+                result.add(metadata.copy(row.entity));
+            }
+        }
+        return result;
+    }
+
+    int countBy(int index, Object value) {
+        if (value == null) return 0;
+        Set<Object> ids = indexes.get(index).get(value);
+        if (ids == null) return 0;
+        int count = 0;
+        for (Object id : ids) {
+            Row<T> row = rows.get(id);
+            if (row != null && value.equals(row.indexValues[index])) count++;
+        }
+        return count;
+    }
+
+    private long append(byte type, byte[] payload) {
+        try {
+            return appendLog.append(type, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException("append " + metadata.type.getSimpleName() + " log error", e);
+        }
+    }
+
+    private void checkUnique(Object id, Object[] indexValues) {
+        for (int i = 0; i < indexValues.length; i++) {
+            if (!metadata.unique[i] || indexValues[i] == null) continue;
+            Set<Object> ids = indexes.get(i).get(indexValues[i]);
+            if (ids == null) continue;
+            for (Object other : ids) {
+                if (!other.equals(id)) {
+                    throw new RuntimeException("duplicate " + metadata.type.getSimpleName() + "." + indexName(i) + " " + indexValues[i]
+                            + ", already used by " + other);
+                }
+            }
+        }
+    }
+
+    private String indexName(int index) {
+        return new ArrayList<>(metadata.indexedFields.keySet()).get(index);
+    }
+
+    private void put(Object id, T entity, int size) {
+        Row<T> row = new Row<>(entity, metadata.getIndexValues(entity), size);
+        Row<T> old = rows.put(id, row);
+        if (old != null) {
+            liveBytes -= old.size;
+            unindex(id, old);
+        }
+        liveBytes += size;
+        for (int i = 0; i < row.indexValues.length; i++) {
+            if (row.indexValues[i] == null) continue;
+            indexes.get(i).computeIfAbsent(row.indexValues[i], k -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(id);
+        }
+    }
+
+    private void remove(Object id) {
+        Row<T> old = rows.remove(id);
+        if (old == null) return;
+        liveBytes -= old.size;
+        unindex(id, old);
+    }
+
+    private void unindex(Object id, Row<T> old) {
+        Row<T> current = rows.get(id);
+        for (int i = 0; i < old.indexValues.length; i++) {
+            Object value = old.indexValues[i];
+            // 值没有变化时保留索引项
+            if (value == null || (current != null && Objects.equals(value, current.indexValues[i]))) continue;
+            Set<Object> ids = indexes.get(i).get(value);
+            if (ids == null) continue;
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                indexes.get(i).remove(value);
+            }
+        }
+    }
+
+    /**
+     * 日志超过minCompactBytes并且一半以上是失效记录时压缩
+     *
+     * @return 是否进行了压缩
+     */
+    boolean compactIfNeeded() throws IOException {
+        writeLock.lock();
+        try {
+            long size = appendLog.size();
+            if (size < minCompactBytes || size < liveBytes * 2) return false;
+            compact();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 把当前所有实体写成新的日志，持有writeLock，期间的写入等待，读取不受影响
+     */
+    void compact() throws IOException {
+        writeLock.lock();
+        try {
+            long before = appendLog.size();
+            List<byte[]> records = new ArrayList<>(rows.size());
+            for (Row<T> row : rows.values()) {
+                records.add(GSON.toJson(row.entity).getBytes(StandardCharsets.UTF_8));
+            }
+            appendLog.rewrite(records);
+            log.info("compact {} log from {} to {} bytes", metadata.type.getSimpleName(), before, appendLog.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    long logSize() {
+        return appendLog.size();
+    }
+
+    private T decode(byte[] payload) {
+        return GSON.fromJson(new String(payload, StandardCharsets.UTF_8), metadata.type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            appendLog.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.simpleframework.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.core.BeanContainer;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为继承了CrudRepository的接口生成实现，数据保存在本地目录下，每个实体类一个日志文件
+ * <p>
+ * 接口的方法在创建代理时就解析好: CrudRepository的方法转给EntityStore，
+ * findBy/countBy/existsBy方法检查字段上有@Indexed，接口不能有默认方法，不满足时启动失败而不是等到调用时。
+ * 同一个实体类的多个Repository接口共享一个EntityStore。
+ * <p>
+ * compactionSeconds大于0时后台线程按这个间隔检查各个日志，需要时压缩。
+ */
+@Slf4j
+public class RepositoryFactory implements Closeable {
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final long MIN_COMPACT_BYTES = 4L << 20;
+
+    private final File directory;
+    private final Map<Class<?>, EntityStore<?>> stores = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor;
+
+    public RepositoryFactory(File directory, long compactionSeconds) {
+        this.directory = directory;
+        if (compactionSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "repository-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionSeconds, compactionSeconds, TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * 为容器记录的@Repository接口创建代理并放入容器，已经有bean的接口跳过
+     */
+    public void registerRepositories(BeanContainer beanContainer) {
+        for (Class<?> repositoryInterface : beanContainer.getRepositoryInterfaces()) {
+            if (beanContainer.getBean(repositoryInterface) == null) {
+                beanContainer.addBean(repositoryInterface, create(repositoryInterface));
+            }
+        }
+    }
+
+    public <R> R create(Class<R> repositoryInterface) {
+        if (!repositoryInterface.isInterface() || !CrudRepository.class.isAssignableFrom(repositoryInterface)) {
+            throw new RuntimeException(repositoryInterface.getName() + " must be an interface extending " + CrudRepository.class.getName());
+        }
+        Class<?> entityType = entityType(repositoryInterface);
+        EntityStore<?> store = store(entityType);
+        Map<Method, Invoker> invokers = new HashMap<>();
+        for (Method method : repositoryInterface.getMethods()) {
+            // JDK 8的动态代理没有可移植的办法调用接口的默认方法，启动时拒绝，不要等到调用时才失败
+            if (method.isDefault()) {
+                throw new RuntimeException("default method " + repositoryInterface.getName() + "." + method.getName()
+                        + " is not supported in repository interfaces");
+            }
+            invokers.put(method, invoker(repositoryInterface, method, store));
+        }
+        Object proxy = Proxy.newProxyInstance(repositoryInterface.getClassLoader(), new Class<?>[]{repositoryInterface},
+                new RepositoryHandler(repositoryInterface, invokers));
+        log.info("create repository {} for {}", repositoryInterface.getName(), entityType.getName());
+        return repositoryInterface.cast(proxy);
+    }
+
+    /**
+     * 从接口继承的CrudRepository<T, ID>中取出T
+     */
+    private static Class<?> entityType(Class<?> repositoryInterface) {
+        for (Type type : repositoryInterface.getGenericInterfaces()) {
+            if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == CrudRepository.class) {
+                Type entity = ((ParameterizedType) type).getActualTypeArguments()[0];
+                if (entity instanceof Class) return (Class<?>) entity;
+            } else if (type instanceof Class && CrudRepository.class.isAssignableFrom((Class<?>) type) && type != CrudRepository.class) {
+                return entityType((Class<?>) type);
+            }
+        }
+        throw new RuntimeException(repositoryInterface.getName() + " must declare the entity class in CrudRepository<T, ID>");
+    }
+
+    private EntityStore<?> store(Class<?> entityType) {
+        return stores.computeIfAbsent(entityType, type -> {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new RuntimeException("can not create data directory " + directory);
+            }
+            try {
+                return new EntityStore<>(type, new File(directory, type.getName() + ".log"), INITIAL_CAPACITY, MIN_COMPACT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("open store of " + type.getName() + " error", e);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Invoker {
+        Object invoke(Object[] args);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Invoker invoker(Class<?> repositoryInterface, Method method, EntityStore store) {
+        if (method.getDeclaringClass() == CrudRepository.class) {
+            switch (method.getName()) {
+                case "save":
+                    return args -> store.save(args[0]);
+                case "findById":
+                    return args -> store.findById(args[0]);
+                case "existsById":
+                    return args -> store.existsById(args[0]);
+                case "findAll":
+                    return args -> store.findAll();
+                case "count":
+                    return args -> store.count();
+                case "deleteById":
+                    return args -> store.delete(args[0]);
+                case "delete":
+                    return args -> args[0] != null && store.delete(store.metadata.getId(args[0]));
+                default:
+                    break;
+            }
+        }
+        String name = method.getName();
+        String prefix = name.startsWith("findBy") ? "findBy" : name.startsWith("countBy") ? "countBy" : name.startsWith("existsBy") ? "existsBy" : null;
+        if (prefix == null || name.length() == prefix.length() || method.getParameterCount() != 1) {
+            throw new RuntimeException("unsupported repository method " + repositoryInterface.getName() + "." + name
+                    + ", expect findBy/countBy/existsBy with one argument");
+        }
+        String property = name.substring(prefix.length());
+        String field = Character.toLowerCase(property.charAt(0)) + property.substring(1);
+        int index = store.metadata.indexOf(field);
+        if (index < 0) {
+            throw new RuntimeException(repositoryInterface.getName() + "." + name + " requires @Indexed on "
+                    + store.metadata.type.getName() + "." + field);
+        }
+        Class<?> returnType = method.getReturnType();
+        switch (prefix) {
+            case "countBy":
+                if (returnType == int.class || returnType == Integer.class) {
+                    return args -> store.countBy(index, args[0]);
+                }
+                return args -> (long) store.countBy(index, args[0]);
+            case "existsBy":
+                return args -> store.countBy(index, args[0]) > 0;
+            default:
+                if (returnType.isAssignableFrom(List.class)) {
+                    return args -> store.findBy(index, args[0]);
+                }
+                if (!returnType.isAssignableFrom(store.metadata.type)) {
+                    throw new RuntimeException(repositoryInterface.getName() + "." + name + " must return a List or "
+                            + store.metadata.type.getName());
+                }
+                return args -> {
+                    List<?> result = store.findBy(index, args[0]);
+                    if (result.size() > 1) {
+                        throw new RuntimeException(repositoryInterface.getSimpleName() + "." + name + "(" + args[0] + ") returns "
+                                + result.size() + " results, declare it to return a List");
+                    }
+                    return result.isEmpty() ? null : result.get(0);
+                };
+        }
+    }
+
+    private static final class RepositoryHandler implements InvocationHandler {
+        private final Class<?> repositoryInterface;
+        private final Map<Method, Invoker> invokers;
+
+        RepositoryHandler(Class<?> repositoryInterface, Map<Method, Invoker> invokers) {
+            this.repositoryInterface = repositoryInterface;
+            this.invokers = invokers;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Invoker invoker = invokers.get(method);
+            if (invoker != null) return invoker.invoke(args);
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return repositoryInterface.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        }
+    }
+
+    /**
+     * 检查所有实体的日志，需要时压缩
+     */
+    public void compact() {
+        for (EntityStore<?> store : stores.values()) {
+            try {
+                store.compactIfNeeded();
+            } catch (IOException | RuntimeException e) {
+                log.warn("compact {} error", store.metadata.type.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        for (EntityStore<?> store : stores.values()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("close store of {} error", store.metadata.type.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.simpleframework.data.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 在内存中为这个字段建立二级索引，Repository接口的findBy/countBy/existsBy方法只能按有索引的字段查询
+ * 字段为null的实体不进入索引
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Indexed {
+    /**
+     * 为true时不同实体的字段值不能相同，保存冲突的实体会抛出异常
+     */
+    boolean unique() default false;
+}
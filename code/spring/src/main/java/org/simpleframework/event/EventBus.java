@@ -0,0 +1,190 @@
+package org.simpleframework.event;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.event.annotation.EventListener;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+import tongji.java.util.concurrent.MpmcBlockingQueue;
+import tongji.java.util.concurrent.ThreadPoolExecutor;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的事件总线，bean之间不必直接调用就能通信
+ * <p>
+ * 注册: 扫描容器中所有bean上被@EventListener标记的方法，按参数类型建立"事件类型 -> 监听方法数组"的索引，
+ * 一个监听方法同时匹配参数类型的所有子类。注册时为每个声明过的参数类型预先算好数组，
+ * 第一次出现的事件类型(比如某个子类)算一次后缓存，之后发布只是一次哈希查找加数组遍历。
+ * <p>
+ * 发布: 同步监听方法在发布线程中按order依次调用，异常直接抛给发布者；异步监听方法只把事件放进各自的无锁队列，
+ * 由有界线程池批量处理，异常只记录日志。发布过程不为每个监听方法分配对象。
+ * <p>
+ * 索引是不可变的，重新注册(比如热加载之后)时整体替换，不影响正在进行的发布。
+ */
+@Slf4j
+public class EventBus {
+    private static final ListenerMethod[] NO_LISTENERS = new ListenerMethod[0];
+    private static final Comparator<ListenerMethod> ORDER = Comparator.comparingInt(ListenerMethod::getOrder);
+
+    private final BeanContainer beanContainer;
+    private final int asyncThreads;
+    private final int queueCapacity;
+    private final ReentrantLock registerLock = new ReentrantLock();
+    private volatile ListenerIndex index = new ListenerIndex(new ArrayList<>());
+    // 有异步监听方法时才创建
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * @param asyncThreads  处理异步事件的线程数
+     * @param queueCapacity 每个异步监听方法的队列容量，满了之后发布线程会被拖慢
+     */
+    public EventBus(BeanContainer beanContainer, int asyncThreads, int queueCapacity) {
+        if (asyncThreads <= 0 || queueCapacity < 2) throw new IllegalArgumentException();
+        this.beanContainer = beanContainer;
+        this.asyncThreads = asyncThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * 从容器中的bean重新注册所有监听方法，并把自己交给实现了EventBusAware的bean
+     */
+    public void registerListeners() {
+        registerLock.lock();
+        try {
+            List<ListenerMethod> listeners = new ArrayList<>();
+            for (Class<?> clazz : beanContainer.getClasses()) {
+                Object bean = beanContainer.getBean(clazz);
+                collectListeners(bean, listeners);
+                if (bean instanceof EventBusAware) {
+                    ((EventBusAware) bean).setEventBus(this);
+                }
+            }
+            index = new ListenerIndex(listeners);
+            log.info("registered {} event listeners", listeners.size());
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    /**
+     * 在已有的监听方法之外注册bean上的监听方法
+     */
+    public void register(Object bean) {
+        registerLock.lock();
+        try {
+            List<ListenerMethod> listeners = new ArrayList<>(index.listeners);
+            collectListeners(bean, listeners);
+            index = new ListenerIndex(listeners);
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    public void publish(Object event) {
+        for (ListenerMethod listener : index.get(event.getClass())) {
+            if (listener.isAsync()) {
+                listener.enqueue(event);
+            } else {
+                listener.invoke(event);
+            }
+        }
+    }
+
+    /**
+     * 不再接受新的异步任务，已经提交的批次继续处理完；之后发布的异步事件在发布线程中处理
+     */
+    public void shutdown() {
+        ThreadPoolExecutor e = executor;
+        if (e != null) {
+            e.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ThreadPoolExecutor e = executor;
+        return e == null || e.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 沿着类层次查找@EventListener方法，cglib代理不会复制注解，只会找到原始类上的方法；子类覆盖的方法只注册一次
+     */
+    private void collectListeners(Object bean, List<ListenerMethod> listeners) {
+        Set<String> signatures = new HashSet<>();
+        for (Class<?> clazz = bean.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                EventListener eventListener = method.getAnnotation(EventListener.class);
+                if (eventListener == null) continue;
+                if (method.getParameterCount() != 1 || method.getParameterTypes()[0].isPrimitive()) {
+                    throw new RuntimeException("@EventListener method must have exactly one object parameter: " + method);
+                }
+                if (!signatures.add(method.getName() + method.getParameterTypes()[0].getName())) continue;
+                listeners.add(new ListenerMethod(bean, method, eventListener.order(),
+                        eventListener.async() ? asyncExecutor() : null, queueCapacity));
+            }
+        }
+    }
+
+    private ThreadPoolExecutor asyncExecutor() {
+        ThreadPoolExecutor e = executor;
+        if (e == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread t = new Thread(r, "event-bus-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            // 每个异步监听方法同一时刻最多只有一个任务在排队，队列容量只需覆盖监听方法的数量；真的满了由发布线程自己处理这一批。
+            // 关闭之后抛出异常而不是像CallerRunsPolicy那样静默丢弃，ListenerMethod据此在发布线程中处理剩余的事件
+            e = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS, new MpmcBlockingQueue<>(1024),
+                    threadFactory, (task, executor) -> {
+                        if (executor.isShutdown()) throw new RejectedExecutionException("event bus has been shut down");
+                        task.run();
+                    });
+            executor = e;
+        }
+        return e;
+    }
+
+    /**
+     * 不可变的监听方法集合及其按事件类型的索引
+     */
+    private static final class ListenerIndex {
+        final List<ListenerMethod> listeners;
+        final Map<Class<?>, ListenerMethod[]> byEventType = new ConcurrentHashMap<>();
+
+        ListenerIndex(List<ListenerMethod> listeners) {
+            this.listeners = listeners;
+            for (ListenerMethod listener : listeners) {
+                byEventType.computeIfAbsent(listener.getEventType(), this::match);
+            }
+        }
+
+        ListenerMethod[] get(Class<?> eventType) {
+            ListenerMethod[] matched = byEventType.get(eventType);
+            return matched != null ? matched : byEventType.computeIfAbsent(eventType, this::match);
+        }
+
+        private ListenerMethod[] match(Class<?> eventType) {
+            List<ListenerMethod> matched = new ArrayList<>();
+            for (ListenerMethod listener : listeners) {
+                if (listener.getEventType().isAssignableFrom(eventType)) {
+                    matched.add(listener);
+                }
+            }
+            if (matched.isEmpty()) return NO_LISTENERS;
+            matched.sort(ORDER);
+            return matched.toArray(NO_LISTENERS);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.simpleframework.event;
+
+/**
+ * 实现了这个接口的bean在EventBus注册监听方法时会拿到EventBus，用来发布事件
+ */
+public interface EventBusAware {
+    void setEventBus(EventBus eventBus);
+}
@@ -0,0 +1,138 @@
+package org.simpleframework.event;
+
+import lombok.extern.slf4j.Slf4j;
+import tongji.java.util.concurrent.MpmcArrayQueue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个监听方法，异步时同时也是提交到线程池的任务
+ * <p>
+ * 方法句柄在注册时绑定好bean并转换成(Object)void，调用时不需要像Method.invoke那样每次分配参数数组。
+ * 异步监听方法有自己的无锁队列，发布只是offer进队列；scheduled保证同一时刻最多只有一个任务在线程池中，
+ * 任务一次最多处理BATCH个事件，处理完还有剩余就重新提交，让其他监听方法也有机会执行。
+ * 队列满时发布线程抢到scheduled就自己处理一批，抢不到就让出CPU，形成背压而不是丢弃事件。
+ * 提交失败(线程池已经关闭)时释放scheduled，由发布线程处理完队列中剩余的事件，事件不会滞留在队列里。
+ */
+@Slf4j
+final class ListenerMethod implements Runnable {
+    static final int BATCH = 256;
+
+    private final Method method;
+    private final MethodHandle handle;
+    private final Class<?> eventType;
+    private final int order;
+    private final MpmcArrayQueue<Object> queue;
+    private final Executor executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param executor 为null时是同步监听方法
+     */
+    ListenerMethod(Object bean, Method method, int order, Executor executor, int queueCapacity) {
+        this.method = method;
+        this.eventType = method.getParameterTypes()[0];
+        this.order = order;
+        this.executor = executor;
+        this.queue = executor == null ? null : new MpmcArrayQueue<>(queueCapacity);
+        method.setAccessible(true);
+        try {
+            this.handle = MethodHandles.lookup().unreflect(method).bindTo(bean).asType(MethodType.methodType(void.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("can not access event listener " + method, e);
+        }
+    }
+
+    Class<?> getEventType() {
+        return eventType;
+    }
+
+    int getOrder() {
+        return order;
+    }
+
+    boolean isAsync() {
+        return executor != null;
+    }
+
+    void invoke(Object event) {
+        try {
+            handle.invokeExact(event);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void enqueue(Object event) {
+        while (!queue.offer(event)) {
+            if (scheduled.compareAndSet(false, true)) {
+                runBatch();
+            } else if (executor instanceof ExecutorService && ((ExecutorService) executor).isTerminated()) {
+                // 线程池已经终止，持有scheduled的任务被shutdownNow丢弃了，不会再运行
+                scheduled.set(false);
+            } else {
+                Thread.yield();
+            }
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                log.warn("event listener {} rejected by executor, handle {} pending events in the publishing thread", method, queue.size());
+                drain();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程处理完队列中的事件，其他线程抢到scheduled时由它继续处理
+     */
+    private void drain() {
+        while (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            runBatch();
+        }
+    }
+
+    @Override
+    public void run() {
+        runBatch();
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * 只能在抢到scheduled之后调用，返回前释放scheduled
+     */
+    private void runBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            Object event = queue.poll();
+            if (event == null) break;
+            try {
+                invoke(event);
+            } catch (RuntimeException | Error e) {
+                log.error("event listener {} error", method, e);
+            }
+        }
+        // 释放之后由调用者再检查队列，和发布线程先放入再检查scheduled配合，不会漏掉事件
+        scheduled.set(false);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
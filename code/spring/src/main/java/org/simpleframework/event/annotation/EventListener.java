@@ -0,0 +1,23 @@
+package org.simpleframework.event.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记bean中处理事件的方法，方法只能有一个参数，参数类型就是监听的事件类型(包括它的子类)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EventListener {
+    /**
+     * 为true时在EventBus的线程池中批量异步处理，同一个监听方法上的事件按发布顺序串行处理
+     */
+    boolean async() default false;
+
+    /**
+     * 同一个事件的监听方法按order从小到大调用
+     */
+    int order() default 0;
+}
@@ -1,88 +1,146 @@
 package org.simpleframework.inject;
 
 import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.config.ConfigBinder;
+import org.simpleframework.config.ConfigSnapshot;
 import org.simpleframework.core.BeanContainer;
 import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.inject.annotation.Qualifier;
 import org.simpleframework.util.ClassUtil;
 import org.simpleframework.util.ValidationUtil;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * 依赖注入，bean的创建经过SingletonRegistry的三级缓存:
+ * 扫描时已经实例化的bean直接登记提前引用后注入成员变量；构造器注入的bean先创建构造器参数对应的bean，实例化后再登记、注入
+ * 注入点的候选bean由DependencyResolver按类型、泛型参数、@Qualifier和@Primary选出
+ * 成员变量注入完成后由ConfigBinder绑定@Value和@ConfigurationProperties的配置字段
+ * getBean可以被多个线程并发调用
+ */
 @Slf4j
 public class DependencyInjector {
     private BeanContainer beanContainer;
+    private final SingletonRegistry singletonRegistry = new SingletonRegistry();
+    private final ConfigBinder configBinder;
+    private final DependencyResolver dependencyResolver = new DependencyResolver(this::beanClasses);
 
     public DependencyInjector() {
-        beanContainer = BeanContainer.getInstance();
+        this(BeanContainer.getInstance());
     }
 
     public DependencyInjector(BeanContainer beanContainer) {
+        this(beanContainer, new ConfigBinder(ConfigSnapshot.EMPTY));
+    }
+
+    public DependencyInjector(BeanContainer beanContainer, ConfigBinder configBinder) {
         this.beanContainer = beanContainer;
+        this.configBinder = configBinder;
     }
 
     public void doIoc() {
-        if (ValidationUtil.isEmpty(beanContainer.getClasses())) {
+        List<Class<?>> classes = new ArrayList<>(beanContainer.getClasses());
+        classes.addAll(beanContainer.getDeferredClasses());
+        if (ValidationUtil.isEmpty(classes)) {
             log.warn("empty class in beanContainer");
             return;
         }
-        for (Class<?> clazz : beanContainer.getClasses()) {
-            Field[] fields = clazz.getDeclaredFields();
-            if (fields == null || fields.length == 0) {
-                continue;
-            }
-            for (Field field : fields) {
-                if (field.isAnnotationPresent(Autowired.class)) {
-                    Autowired autowired = field.getAnnotation(Autowired.class);
-                    String autowiredValue = autowired.value();
-                    Class<?> fieldClass = field.getType();
-                    Object fieldInstance = getFieldInstance(fieldClass, autowiredValue);
-                    if (fieldInstance == null) {
-                        throw new RuntimeException();
-                    } else {
-                        Object targetBean = beanContainer.getBean(clazz);
-                        // 通过反射注入成员变量
-                        ClassUtil.setField(field, targetBean, fieldInstance, true);
-                    }
-                }
-            }
+        for (Class<?> clazz : classes) {
+            getBean(clazz);
         }
     }
 
     /**
-     * 根据Class在beanContainer中获取其实例或实现类
+     * 获取完成注入的bean；在创建过程中被循环依赖时返回提前暴露的引用
      */
-    private Object getFieldInstance(Class<?> fieldClass, String autowiredValue) {
-        Object fieldValue = beanContainer.getBean(fieldClass);
-        if (fieldValue != null) {
-            return fieldValue;
+    public Object getBean(Class<?> clazz) {
+        return singletonRegistry.getSingleton(clazz, this::createBean);
+    }
+
+    private Object createBean(Class<?> clazz) {
+        Object bean = beanContainer.getBean(clazz);
+        if (bean == null) {
+            if (!beanContainer.getDeferredClasses().contains(clazz)) {
+                throw new RuntimeException("no bean definition for " + clazz.getName());
+            }
+            bean = autowireConstructor(clazz);
+        }
+        final Object earlyReference = bean;
+        singletonRegistry.addSingletonFactory(clazz, () -> earlyReference);
+        populateBean(clazz, bean);
+        configBinder.bind(clazz, bean);
+        beanContainer.addBean(clazz, bean);
+        return bean;
+    }
+
+    private Object autowireConstructor(Class<?> clazz) {
+        Constructor<?> constructor = null;
+        for (Constructor<?> candidate : clazz.getDeclaredConstructors()) {
+            if (candidate.isAnnotationPresent(Autowired.class)) {
+                if (constructor != null) {
+                    throw new RuntimeException("multiple @Autowired constructors in " + clazz.getName());
+                }
+                constructor = candidate;
+            }
+        }
+        String autowiredValue = constructor.getAnnotation(Autowired.class).value();
+        Type[] parameterTypes = constructor.getGenericParameterTypes();
+        Parameter[] parameters = constructor.getParameters();
+        Object[] args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            String qualifier = DependencyResolver.qualifier(parameters[i].getAnnotation(Qualifier.class), autowiredValue);
+            args[i] = getFieldInstance(parameterTypes[i], qualifier);
+            if (args[i] == null) {
+                throw new RuntimeException("no bean for parameter " + i + " of " + constructor);
+            }
         }
-        // 为空代表注入的是接口，我们需要找到他的实现类
-        Class<?> implementClass = getImplementClass(fieldClass, autowiredValue);
-        if (implementClass != null) {
-            return beanContainer.getBean(implementClass);
+        try {
+            constructor.setAccessible(true);
+            return constructor.newInstance(args);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException("create bean " + clazz.getName() + " error", e);
         }
-        return null;
     }
 
-    private Class<?> getImplementClass(Class<?> fieldClass, String autowiredValue) {
-        Set<Class<?>> classSet = beanContainer.getClassesBySuper(fieldClass);
-        if (ValidationUtil.isEmpty(classSet)) {
-            if (autowiredValue == null || autowiredValue.equals("")) {
-                if (classSet.size() == 1) {
-                    return classSet.iterator().next();
+    private void populateBean(Class<?> clazz, Object targetBean) {
+        Field[] fields = clazz.getDeclaredFields();
+        if (fields == null || fields.length == 0) {
+            return;
+        }
+        for (Field field : fields) {
+            if (field.isAnnotationPresent(Autowired.class)) {
+                Autowired autowired = field.getAnnotation(Autowired.class);
+                String qualifier = DependencyResolver.qualifier(field.getAnnotation(Qualifier.class), autowired.value());
+                Object fieldInstance = getFieldInstance(field.getGenericType(), qualifier);
+                if (fieldInstance == null) {
+                    throw new RuntimeException("no bean for field " + field);
                 } else {
-                    // 大于一个实现类，并且用户未指定
-                    throw new RuntimeException("multiple implement class");
-                }
-            } else {
-                for (Class<?> clazz : classSet) {
-                    if (autowiredValue.equals(clazz.getSimpleName())) {
-                        return clazz;
-                    }
+                    // 通过反射注入成员变量
+                    ClassUtil.setField(field, targetBean, fieldInstance, true);
                 }
             }
         }
-        return null;
+    }
+
+    /**
+     * 根据注入点的类型(可以是接口、带泛型参数的类型或者List/Set/Map)在beanContainer中获取要注入的bean
+     */
+    private Object getFieldInstance(Type fieldType, String qualifier) {
+        return dependencyResolver.resolve(fieldType, qualifier).toValue(this::getBean);
+    }
+
+    private Collection<Class<?>> beanClasses() {
+        Set<Class<?>> classes = new HashSet<>(beanContainer.getClasses());
+        classes.addAll(beanContainer.getDeferredClasses());
+        return classes;
     }
 }
@@ -0,0 +1,301 @@
+package org.simpleframework.inject;
+
+import org.simpleframework.inject.annotation.Primary;
+import org.simpleframework.inject.annotation.Qualifier;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 按注入点的类型和名字从bean类中选出要注入的bean
+ * <p>
+ * 1. 类型匹配考虑泛型: Repository&lt;User&gt;只匹配类型参数解析为User的实现类，沿着父类和接口把类型变量一路代换下去；
+ * 没有写类型参数的实现类(原始类型)视为匹配
+ * 2. 注入点的类型是List/Collection、Set或者Map&lt;String, T&gt;时注入T的所有bean，Map的key是bean的名字
+ * 3. 单个注入有多个候选时依次尝试: @Qualifier指定的名字、类型完全相同的bean、唯一的@Primary bean，仍然无法确定时报错
+ * <p>
+ * 选择结果按(类型, 名字)缓存，同一个类型被注入到很多地方时只计算一次，连接整个bean图的代价和注入点数量成线性关系
+ */
+public class DependencyResolver {
+    private static final Comparator<Class<?>> BY_NAME = Comparator.comparing(Class::getName);
+
+    private final Supplier<Collection<Class<?>>> beanClasses;
+    private final Map<Key, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    private enum Kind {
+        SINGLE, LIST, SET, MAP
+    }
+
+    /**
+     * @param beanClasses 所有的bean类，缓存未命中时才会调用
+     */
+    public DependencyResolver(Supplier<Collection<Class<?>>> beanClasses) {
+        this.beanClasses = beanClasses;
+    }
+
+    /**
+     * @param qualifier 没有指定名字时为空字符串
+     */
+    public Resolution resolve(Type type, String qualifier) {
+        Key key = new Key(type, qualifier);
+        Resolution resolution = resolutions.get(key);
+        if (resolution == null) {
+            resolution = resolutions.computeIfAbsent(key, k -> doResolve(k.type, k.qualifier));
+        }
+        return resolution;
+    }
+
+    /**
+     * 注入点上的名字，@Qualifier优先于@Autowired的值
+     */
+    public static String qualifier(Qualifier qualifier, String autowiredValue) {
+        return qualifier != null ? qualifier.value() : autowiredValue;
+    }
+
+    private Resolution doResolve(Type type, String qualifier) {
+        Class<?> raw = rawClass(type);
+        if (raw == List.class || raw == Collection.class || raw == Set.class) {
+            Type elementType = typeArgument(type, 0);
+            Kind kind = raw == Set.class ? Kind.SET : Kind.LIST;
+            return new Resolution(kind, candidates(elementType, qualifier));
+        }
+        if (raw == Map.class) {
+            if (typeArgument(type, 0) != String.class) {
+                throw new RuntimeException("only Map<String, T> can be injected, but was " + type.getTypeName());
+            }
+            return new Resolution(Kind.MAP, candidates(typeArgument(type, 1), qualifier));
+        }
+        List<Class<?>> candidates = candidates(type, qualifier);
+        if (candidates.size() <= 1) {
+            return new Resolution(Kind.SINGLE, candidates);
+        }
+        for (Class<?> candidate : candidates) {
+            if (candidate == raw) return new Resolution(Kind.SINGLE, Collections.singletonList(candidate));
+        }
+        List<Class<?>> primaries = new ArrayList<>();
+        for (Class<?> candidate : candidates) {
+            if (candidate.isAnnotationPresent(Primary.class)) primaries.add(candidate);
+        }
+        if (primaries.size() == 1) {
+            return new Resolution(Kind.SINGLE, primaries);
+        }
+        throw new RuntimeException("multiple beans of " + type.getTypeName()
+                + (qualifier.isEmpty() ? "" : " named " + qualifier) + ": " + candidates
+                + (primaries.isEmpty() ? ", use @Qualifier or @Primary" : ", multiple @Primary"));
+    }
+
+    private List<Class<?>> candidates(Type type, String qualifier) {
+        Class<?> raw = rawClass(type);
+        List<Class<?>> candidates = new ArrayList<>();
+        for (Class<?> clazz : beanClasses.get()) {
+            if (!raw.isAssignableFrom(clazz)) continue;
+            if (type instanceof ParameterizedType && !matchTypeArguments((ParameterizedType) type, clazz)) continue;
+            if (!qualifier.isEmpty() && !hasName(clazz, qualifier)) continue;
+            candidates.add(clazz);
+        }
+        candidates.sort(BY_NAME);
+        return candidates;
+    }
+
+    private static boolean hasName(Class<?> clazz, String name) {
+        Qualifier qualifier = clazz.getAnnotation(Qualifier.class);
+        return name.equals(clazz.getSimpleName()) || (qualifier != null && name.equals(qualifier.value()));
+    }
+
+    /**
+     * bean的名字，用作Map注入的key
+     */
+    public static String beanName(Class<?> clazz) {
+        Qualifier qualifier = clazz.getAnnotation(Qualifier.class);
+        return qualifier != null ? qualifier.value() : clazz.getSimpleName();
+    }
+
+    private static boolean matchTypeArguments(ParameterizedType required, Class<?> clazz) {
+        Type[] actual = resolveTypeArguments(clazz, rawClass(required), Collections.emptyMap());
+        if (actual == null) return true;
+        Type[] expected = required.getActualTypeArguments();
+        for (int i = 0; i < expected.length; i++) {
+            if (!matchType(expected[i], actual[i])) return false;
+        }
+        return true;
+    }
+
+    private static boolean matchType(Type expected, Type actual) {
+        // 未解析的类型变量(原始类型)和注入点上的类型变量都放行
+        if (actual instanceof TypeVariable || expected instanceof TypeVariable) return true;
+        if (expected instanceof Class) {
+            return expected == rawClass(actual);
+        }
+        if (expected instanceof WildcardType) {
+            Class<?> actualClass = rawClass(actual);
+            for (Type bound : ((WildcardType) expected).getUpperBounds()) {
+                if (!rawClass(bound).isAssignableFrom(actualClass)) return false;
+            }
+            for (Type bound : ((WildcardType) expected).getLowerBounds()) {
+                if (!actualClass.isAssignableFrom(rawClass(bound))) return false;
+            }
+            return true;
+        }
+        if (expected instanceof ParameterizedType) {
+            if (rawClass(expected) != rawClass(actual)) return false;
+            if (!(actual instanceof ParameterizedType)) return true;
+            Type[] e = ((ParameterizedType) expected).getActualTypeArguments();
+            Type[] a = ((ParameterizedType) actual).getActualTypeArguments();
+            for (int i = 0; i < e.length; i++) {
+                if (!matchType(e[i], a[i])) return false;
+            }
+            return true;
+        }
+        return rawClass(expected) == rawClass(actual);
+    }
+
+    /**
+     * 从type出发沿着父类和接口找到target，返回target的类型参数在这条路径上代换后的结果
+     *
+     * @param bindings type所在层的类型变量 -> 实际类型
+     * @return type不是target的子类型时返回null
+     */
+    private static Type[] resolveTypeArguments(Type type, Class<?> target, Map<TypeVariable<?>, Type> bindings) {
+        Class<?> raw = rawClass(type);
+        if (!target.isAssignableFrom(raw)) return null;
+        Map<TypeVariable<?>, Type> current = new HashMap<>();
+        if (type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            TypeVariable<?>[] variables = raw.getTypeParameters();
+            for (int i = 0; i < variables.length; i++) {
+                current.put(variables[i], substitute(args[i], bindings));
+            }
+        }
+        if (raw == target) {
+            TypeVariable<?>[] variables = raw.getTypeParameters();
+            Type[] result = new Type[variables.length];
+            for (int i = 0; i < variables.length; i++) {
+                result[i] = current.getOrDefault(variables[i], variables[i]);
+            }
+            return result;
+        }
+        for (Type superInterface : raw.getGenericInterfaces()) {
+            Type[] result = resolveTypeArguments(superInterface, target, current);
+            if (result != null) return result;
+        }
+        Type superclass = raw.getGenericSuperclass();
+        return superclass == null ? null : resolveTypeArguments(superclass, target, current);
+    }
+
+    private static Type substitute(Type type, Map<TypeVariable<?>, Type> bindings) {
+        return type instanceof TypeVariable && bindings.containsKey(type) ? bindings.get(type) : type;
+    }
+
+    /**
+     * 集合注入点(List/Collection/Set/Map&lt;String, T&gt;)的元素类型T，其他类型返回null
+     */
+    public static Class<?> elementClass(Type type) {
+        if (!(type instanceof ParameterizedType)) return null;
+        Class<?> raw = rawClass(type);
+        if (raw == List.class || raw == Collection.class || raw == Set.class) {
+            return rawClass(typeArgument(type, 0));
+        }
+        return raw == Map.class ? rawClass(typeArgument(type, 1)) : null;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (!(type instanceof ParameterizedType)) {
+            throw new RuntimeException("type argument is required to inject " + type.getTypeName());
+        }
+        return ((ParameterizedType) type).getActualTypeArguments()[index];
+    }
+
+    static Class<?> rawClass(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) type).getRawType();
+        if (type instanceof WildcardType) return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        if (type instanceof TypeVariable) {
+            Type[] bounds = ((TypeVariable<?>) type).getBounds();
+            return bounds.length == 0 ? Object.class : rawClass(bounds[0]);
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        throw new RuntimeException("unsupported type " + type);
+    }
+
+    /**
+     * 一个注入点选出的bean类
+     */
+    public static final class Resolution {
+        private final Kind kind;
+        private final List<Class<?>> classes;
+
+        private Resolution(Kind kind, List<Class<?>> classes) {
+            this.kind = kind;
+            this.classes = Collections.unmodifiableList(classes);
+        }
+
+        public List<Class<?>> getClasses() {
+            return classes;
+        }
+
+        /**
+         * 用getBean把选出的bean类换成要注入的值，单个注入没有候选时返回null，集合注入没有候选时是空集合
+         */
+        public Object toValue(Function<Class<?>, Object> getBean) {
+            switch (kind) {
+                case SINGLE:
+                    return classes.isEmpty() ? null : getBean.apply(classes.get(0));
+                case LIST:
+                    List<Object> list = new ArrayList<>(classes.size());
+                    for (Class<?> clazz : classes) list.add(getBean.apply(clazz));
+                    return Collections.unmodifiableList(list);
+                case SET:
+                    Set<Object> set = new LinkedHashSet<>();
+                    for (Class<?> clazz : classes) set.add(getBean.apply(clazz));
+                    return Collections.unmodifiableSet(set);
+                default:
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (Class<?> clazz : classes) map.put(beanName(clazz), getBean.apply(clazz));
+                    return Collections.unmodifiableMap(map);
+            }
+        }
+    }
+
+    private static final class Key {
+        final Type type;
+        final String qualifier;
+
+        Key(Type type, String qualifier) {
+            this.type = type;
+            this.qualifier = qualifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return type.equals(key.type) && qualifier.equals(key.qualifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, qualifier);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.simpleframework.inject;
+
+import tongji.java.util.concurrent.ConcurrentHashMap;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 单例的三级缓存，解决创建过程中的循环依赖
+ * <p>
+ * 1. singletonObjects: 完成注入的bean
+ * 2. earlySingletonObjects: 已经提前交出去的引用，之后都返回同一个对象
+ * 3. singletonFactories: bean实例化之后、注入之前登记的工厂，第一次被依赖时才调用它生成提前引用(以后的代理可以在这里包装)
+ * <p>
+ * 成员变量之间的循环依赖: A实例化后登记工厂，注入时创建B，B依赖A时拿到A的提前引用，B完成后A继续注入。
+ * 构造器之间的循环依赖: A还没实例化就去创建B，B又依赖A，此时A没有提前引用，无法解决，抛出异常并给出完整的依赖路径。
+ * <p>
+ * 每个bean有自己的锁，不同的bean可以在多个线程中并行创建，锁只在改变创建状态时短暂持有。
+ * 依赖的bean正在被其他线程实例化时等待它完成或者交出提前引用；等待之前先登记自己在等谁，
+ * 再顺着"线程等待的bean -> bean的创建线程"走一遍，走回自己说明跨线程的构造器循环依赖，直接失败而不是互相等待下去。
+ */
+public class SingletonRegistry {
+    private final Map<Class<?>, Object> singletonObjects = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Object> earlySingletonObjects = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Supplier<Object>> singletonFactories = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Creation> creations = new ConcurrentHashMap<>();
+    // 线程 -> 它正在等待的bean
+    private final Map<Thread, Class<?>> waiting = new ConcurrentHashMap<>();
+    // 当前线程正在创建的bean，按依赖顺序
+    private final ThreadLocal<Deque<Class<?>>> creationPath = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private enum State {
+        NEW, CREATING, EARLY, DONE
+    }
+
+    /**
+     * 一个bean的创建状态，state和creator都在lock下修改
+     */
+    private static final class Creation {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+        volatile State state = State.NEW;
+        volatile Thread creator;
+    }
+
+    /**
+     * @return 完成注入的bean或者提前引用，还没开始创建时返回null
+     */
+    public Object getSingleton(Class<?> clazz) {
+        Object bean = singletonObjects.get(clazz);
+        if (bean != null) return bean;
+        bean = earlySingletonObjects.get(clazz);
+        if (bean != null) return bean;
+        if (!singletonFactories.containsKey(clazz)) return null;
+        Creation creation = creation(clazz);
+        creation.lock.lock();
+        try {
+            // 加锁后重新检查，工厂只调用一次
+            bean = singletonObjects.get(clazz);
+            if (bean != null) return bean;
+            bean = earlySingletonObjects.get(clazz);
+            if (bean != null) return bean;
+            Supplier<Object> factory = singletonFactories.remove(clazz);
+            if (factory == null) return null;
+            bean = factory.get();
+            earlySingletonObjects.put(clazz, bean);
+            return bean;
+        } finally {
+            creation.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取bean，还没有创建时在当前线程调用singletonFactory创建；可以被多个线程并发调用，每个bean只创建一次
+     * singletonFactory在实例化之后、注入之前应当调用addSingletonFactory交出提前引用
+     */
+    public Object getSingleton(Class<?> clazz, Function<Class<?>, Object> singletonFactory) {
+        Object bean = getSingleton(clazz);
+        if (bean != null) return bean;
+        Creation creation = creation(clazz);
+        Thread current = Thread.currentThread();
+        creation.lock.lock();
+        try {
+            for (; ; ) {
+                if (creation.state == State.DONE) return singletonObjects.get(clazz);
+                if (creation.state == State.EARLY) {
+                    bean = getSingleton(clazz);
+                    if (bean != null) return bean;
+                }
+                if (creation.state == State.NEW) {
+                    creation.state = State.CREATING;
+                    creation.creator = current;
+                    break;
+                }
+                if (creation.creator == current) {
+                    throw new RuntimeException("unresolvable circular dependency: " + currentPath(clazz));
+                }
+                // 先登记再检查，两个线程同时进入时至少有一个能看到对方的登记
+                waiting.put(current, clazz);
+                try {
+                    String cycle = findCrossThreadCycle(clazz);
+                    if (cycle != null) {
+                        throw new RuntimeException("unresolvable circular dependency across threads: " + cycle);
+                    }
+                    creation.changed.awaitUninterruptibly();
+                } finally {
+                    waiting.remove(current);
+                }
+            }
+        } finally {
+            creation.lock.unlock();
+        }
+        return create(clazz, creation, singletonFactory);
+    }
+
+    /**
+     * 登记提前引用的工厂，只能由正在创建这个bean的线程调用
+     */
+    public void addSingletonFactory(Class<?> clazz, Supplier<Object> factory) {
+        Creation creation = creation(clazz);
+        creation.lock.lock();
+        try {
+            if (creation.creator != Thread.currentThread()) {
+                throw new IllegalStateException(clazz.getName() + " is not being created by current thread");
+            }
+            singletonFactories.put(clazz, factory);
+            creation.state = State.EARLY;
+            creation.changed.signalAll();
+        } finally {
+            creation.lock.unlock();
+        }
+    }
+
+    public boolean isCurrentlyInCreation(Class<?> clazz) {
+        Creation creation = creations.get(clazz);
+        return creation != null && (creation.state == State.CREATING || creation.state == State.EARLY);
+    }
+
+    private Object create(Class<?> clazz, Creation creation, Function<Class<?>, Object> singletonFactory) {
+        Deque<Class<?>> path = creationPath.get();
+        path.addLast(clazz);
+        Object bean = null;
+        try {
+            bean = singletonFactory.apply(clazz);
+            if (bean == null) {
+                throw new RuntimeException("create bean " + clazz.getName() + " returned null");
+            }
+        } finally {
+            path.removeLast();
+            creation.lock.lock();
+            try {
+                if (bean != null) {
+                    // 已经交出过提前引用时以它为准，保证所有依赖方拿到的是同一个对象
+                    Object early = earlySingletonObjects.get(clazz);
+                    singletonObjects.put(clazz, early != null ? early : bean);
+                    creation.state = State.DONE;
+                } else {
+                    // 创建失败，允许之后重新创建
+                    creation.state = State.NEW;
+                }
+                singletonFactories.remove(clazz);
+                earlySingletonObjects.remove(clazz);
+                creation.creator = null;
+                creation.changed.signalAll();
+            } finally {
+                creation.lock.unlock();
+            }
+        }
+        return singletonObjects.get(clazz);
+    }
+
+    private Creation creation(Class<?> clazz) {
+        return creations.computeIfAbsent(clazz, k -> new Creation());
+    }
+
+    private String currentPath(Class<?> clazz) {
+        StringBuilder sb = new StringBuilder();
+        boolean inCycle = false;
+        for (Class<?> c : creationPath.get()) {
+            if (c == clazz) inCycle = true;
+            if (inCycle) sb.append(c.getName()).append(" -> ");
+        }
+        return sb.append(clazz.getName()).toString();
+    }
+
+    /**
+     * 从clazz的创建线程出发，沿着它等待的bean的创建线程走，走回当前线程就是环
+     *
+     * @return 环上的依赖路径，没有环时返回null
+     */
+    private String findCrossThreadCycle(Class<?> clazz) {
+        Thread current = Thread.currentThread();
+        List<String> cycle = new ArrayList<>();
+        Class<?> waitingFor = clazz;
+        // 每个线程最多等待一个bean，走过的步数超过线程数说明遇到了别的环，不是当前线程的问题
+        for (int steps = 0; steps <= waiting.size(); steps++) {
+            Creation creation = creations.get(waitingFor);
+            Thread creator = creation == null ? null : creation.creator;
+            if (creator == null || creation.state != State.CREATING) return null;
+            cycle.add(waitingFor.getName() + "(creating in " + creator.getName() + ")");
+            if (creator == current) return String.join(" -> ", cycle);
+            waitingFor = waiting.get(creator);
+            if (waitingFor == null) return null;
+        }
+        return null;
+    }
+}
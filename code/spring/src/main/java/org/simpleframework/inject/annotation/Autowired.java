@@ -6,9 +6,11 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * 仅支持成员变量注入
+ * 支持成员变量注入和构造器注入
+ * 构造器上有@Autowired的bean在扫描时不会实例化，由DependencyInjector解析构造器参数后创建；
+ * 构造器参数之间的循环依赖无法解决，会直接报错
  */
-@Target(ElementType.FIELD)
+@Target({ElementType.FIELD, ElementType.CONSTRUCTOR})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Autowired {
     String value() default "";
@@ -0,0 +1,14 @@
+package org.simpleframework.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 有多个候选bean并且没有指定名字时，优先注入被@Primary标记的bean
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Primary {
+}
@@ -0,0 +1,17 @@
+package org.simpleframework.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 有多个候选bean时按名字选择
+ * 用在字段或者构造器参数上时指定要注入的bean，名字是bean的类名(getSimpleName)或者bean类上@Qualifier的值；
+ * 用在bean类上时给它起一个名字，一个bean可以同时用两个名字匹配
+ */
+@Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Qualifier {
+    String value();
+}
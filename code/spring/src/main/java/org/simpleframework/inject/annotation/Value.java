@@ -0,0 +1,16 @@
+package org.simpleframework.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把配置注入成员变量，格式为"${key}"或者"${key:默认值}"
+ * 没有配置也没有默认值时启动失败；配置重新加载后只有key变化了的字段会被重新赋值，需要感知变化的字段应当声明为volatile
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Value {
+    String value();
+}
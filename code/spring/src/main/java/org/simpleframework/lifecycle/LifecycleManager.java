@@ -0,0 +1,450 @@
+package org.simpleframework.lifecycle;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.annotation.Autowired;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+import tongji.java.util.concurrent.CountDownLatch;
+import tongji.java.util.concurrent.MpmcBlockingQueue;
+import tongji.java.util.concurrent.ThreadPoolExecutor;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * bean的生命周期: 依赖注入完成后调用@PostConstruct方法，关闭时调用@PreDestroy方法
+ * <p>
+ * 按bean之间的引用关系(实例字段的值是另一个bean，或者是注入的包含bean的集合)分层: 不依赖任何bean的在第0层，
+ * 其余的在它依赖的bean的最大层数加一，循环依赖的bean之间的边忽略。
+ * 启动时逐层初始化，同一层的bean互不依赖，在有界线程池中并行执行，启动完成后这个线程池关闭；
+ * 异步的预热方法在所属bean的同步初始化之后提交到单独的预热线程池，队列能容纳所有预热任务，不占用初始化线程也不阻塞启动，
+ * 全部完成后进入就绪状态。
+ * 热加载替换了bean之后调用beansReloaded: 新实例执行初始化方法，被替换的旧实例执行销毁方法，之后的关闭面对的是容器中当前的bean。
+ * 每次初始化bean都为它的预热新建计数和失败记录，替换掉这个类之前的，新实例的预热完成前不就绪，旧实例预热失败也不再影响就绪。
+ * 关闭时按相反的层次销毁，依赖方先于被依赖的bean销毁；同一层并行执行，每个bean最多等待它的销毁方法超时时间之和。
+ */
+@Slf4j
+public class LifecycleManager {
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // 取得容器中当前的bean
+    private final Supplier<Map<Class<?>, Object>> beanSource;
+    private volatile Map<Class<?>, Object> beans;
+    private final int threads;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private volatile List<List<Class<?>>> levels;
+    // start、beansReloaded和shutdown互斥
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    // 同步初始化全部成功完成
+    private volatile boolean initialized;
+    private volatile ThreadPoolExecutor warmUpExecutor;
+    // bean的类 -> 最近一次初始化的预热，只包含有预热方法的bean
+    private final Map<Class<?>, WarmUp> warmUps = new ConcurrentHashMap<>();
+    private volatile Thread shutdownHook;
+
+    /**
+     * 一个bean一次初始化的预热: 还没完成的预热方法数和失败原因
+     */
+    private static final class WarmUp {
+        final CountDownLatch remaining;
+        volatile Throwable failure;
+
+        WarmUp(int count) {
+            remaining = new CountDownLatch(count);
+        }
+    }
+
+    /**
+     * @param threads 并行初始化和执行预热方法的线程数
+     */
+    public LifecycleManager(BeanContainer beanContainer, int threads) {
+        this(() -> beansOf(beanContainer), threads);
+    }
+
+    /**
+     * @param beanSource 每次调用返回当前所有的bean，热加载后返回的是替换之后的
+     */
+    LifecycleManager(Supplier<Map<Class<?>, Object>> beanSource, int threads) {
+        if (threads <= 0) throw new IllegalArgumentException();
+        this.beanSource = beanSource;
+        this.beans = beanSource.get();
+        this.threads = threads;
+    }
+
+    private static Map<Class<?>, Object> beansOf(BeanContainer beanContainer) {
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            beans.put(clazz, beanContainer.getBean(clazz));
+        }
+        return beans;
+    }
+
+    /**
+     * 逐层调用同步的初始化方法，返回时所有同步初始化都已完成，异步预热可能还在进行
+     * 任何一个同步初始化方法抛出异常都会让启动失败
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) throw new IllegalStateException("LifecycleManager has been started");
+        lifecycleLock.lock();
+        ThreadPoolExecutor initExecutor = null;
+        try {
+            long startTime = System.nanoTime();
+            List<List<Class<?>>> levels = levels();
+            int asyncCount = 0;
+            for (Class<?> clazz : beans.keySet()) {
+                asyncCount += LifecycleMethods.of(clazz).asyncInitMethods.size();
+            }
+            if (asyncCount > 0) {
+                // 队列放得下所有预热任务，提交时不会因为队列满而在初始化线程上执行
+                warmUpExecutor = newWarmUpExecutor(Math.max(QUEUE_CAPACITY, asyncCount));
+            }
+            for (List<Class<?>> level : levels) {
+                List<Class<?>> toInit = new ArrayList<>();
+                for (Class<?> clazz : level) {
+                    LifecycleMethods methods = LifecycleMethods.of(clazz);
+                    if (!methods.initMethods.isEmpty() || !methods.asyncInitMethods.isEmpty()) toInit.add(clazz);
+                }
+                if (toInit.size() == 1) {
+                    // 只有一个时直接在当前线程执行
+                    initBean(toInit.get(0));
+                    continue;
+                }
+                if (initExecutor == null && !toInit.isEmpty()) {
+                    initExecutor = newExecutor("lifecycle-init-", QUEUE_CAPACITY);
+                }
+                Map<Class<?>, Future<?>> futures = new LinkedHashMap<>();
+                for (Class<?> clazz : toInit) {
+                    futures.put(clazz, initExecutor.submit(() -> initBean(clazz)));
+                }
+                for (Map.Entry<Class<?>, Future<?>> e : futures.entrySet()) {
+                    try {
+                        e.getValue().get();
+                    } catch (ExecutionException ex) {
+                        throw new RuntimeException("init bean " + e.getKey().getName() + " error", ex.getCause());
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("interrupted while initializing beans", ex);
+                    }
+                }
+            }
+            initialized = true;
+            log.info("initialized {} beans in {} levels in {} ms, {} warm-ups pending", beans.size(), levels.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), pendingWarmUps());
+        } finally {
+            // 初始化线程只在启动期间使用
+            if (initExecutor != null) initExecutor.shutdown();
+            lifecycleLock.unlock();
+        }
+    }
+
+    private void initBean(Class<?> clazz) {
+        Object bean = beans.get(clazz);
+        LifecycleMethods methods = LifecycleMethods.of(clazz);
+        for (Method method : methods.initMethods) {
+            LifecycleMethods.invoke(method, bean);
+        }
+        if (methods.asyncInitMethods.isEmpty()) return;
+        // 先登记再提交，预热开始前就已经不就绪
+        WarmUp warmUp = new WarmUp(methods.asyncInitMethods.size());
+        warmUps.put(clazz, warmUp);
+        for (Method method : methods.asyncInitMethods) {
+            warmUpExecutor.execute(() -> {
+                try {
+                    LifecycleMethods.invoke(method, bean);
+                } catch (Throwable e) {
+                    warmUp.failure = e;
+                    log.error("warm up {} error", method, e);
+                } finally {
+                    warmUp.remaining.countDown();
+                }
+            });
+        }
+    }
+
+    private long pendingWarmUps() {
+        long pending = 0;
+        for (WarmUp warmUp : warmUps.values()) {
+            pending += warmUp.remaining.getCount();
+        }
+        return pending;
+    }
+
+    /**
+     * 热加载替换bean之后调用: 新的bean执行初始化方法(预热方法异步执行)，被替换掉的旧实例执行销毁方法，
+     * 之后的shutdown销毁的是新的bean。旧实例可能还在处理请求，所以先初始化新的再销毁旧的
+     *
+     * @param reloaded 热加载得到的新类
+     */
+    public void beansReloaded(Set<Class<?>> reloaded) {
+        lifecycleLock.lock();
+        try {
+            if (!started.get() || stopped.get()) return;
+            Map<Class<?>, Object> previous = beans;
+            Map<Class<?>, Object> current = beanSource.get();
+            beans = current;
+            levels = null;
+            // 已经不在容器中的bean的预热不再影响就绪
+            warmUps.keySet().retainAll(current.keySet());
+            for (Class<?> clazz : reloaded) {
+                if (!current.containsKey(clazz)) continue;
+                LifecycleMethods methods = LifecycleMethods.of(clazz);
+                if (!methods.asyncInitMethods.isEmpty() && warmUpExecutor == null) {
+                    warmUpExecutor = newWarmUpExecutor(QUEUE_CAPACITY);
+                }
+                initBean(clazz);
+            }
+            for (Map.Entry<Class<?>, Object> e : previous.entrySet()) {
+                if (current.get(e.getKey()) == e.getValue()) continue;
+                for (Method method : LifecycleMethods.of(e.getKey()).destroyMethods) {
+                    try {
+                        LifecycleMethods.invoke(method, e.getValue());
+                    } catch (RuntimeException ex) {
+                        log.error("destroy replaced bean {} error", method, ex);
+                    }
+                }
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * 同步初始化已完成，当前每个bean最近一次初始化的异步预热都已成功完成
+     */
+    public boolean isReady() {
+        if (!initialized || stopped.get()) return false;
+        for (WarmUp warmUp : warmUps.values()) {
+            if (warmUp.remaining.getCount() != 0 || warmUp.failure != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 等待异步预热完成，等待期间热加载提交的预热也会等待
+     *
+     * @return 是否就绪，预热失败时为false
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            boolean waited = false;
+            for (WarmUp warmUp : warmUps.values()) {
+                if (warmUp.remaining.getCount() == 0) continue;
+                waited = true;
+                if (!warmUp.remaining.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) return false;
+            }
+            // 完整地看过一遍都已完成才返回
+            if (!waited) return isReady();
+        }
+    }
+
+    /**
+     * 注册JVM关闭钩子，进程退出时执行shutdown
+     */
+    public void registerShutdownHook() {
+        if (shutdownHook != null) return;
+        Thread hook = new Thread(this::shutdown, "lifecycle-shutdown");
+        shutdownHook = hook;
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * 按依赖的相反顺序调用销毁方法，只执行一次；超时的销毁方法被中断后继续销毁下一层
+     */
+    public void shutdown() {
+        if (!stopped.compareAndSet(false, true)) return;
+        Thread hook = shutdownHook;
+        if (hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // JVM已经在关闭
+            }
+        }
+        lifecycleLock.lock();
+        ThreadPoolExecutor destroyExecutor = newExecutor("lifecycle-destroy-", QUEUE_CAPACITY);
+        try {
+            ThreadPoolExecutor warmUp = warmUpExecutor;
+            if (warmUp != null) {
+                // 还没完成的预热不再需要
+                warmUp.shutdownNow();
+            }
+            List<List<Class<?>>> levels = levels();
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                destroyLevel(levels.get(i), destroyExecutor);
+            }
+        } finally {
+            destroyExecutor.shutdownNow();
+            lifecycleLock.unlock();
+        }
+    }
+
+    private void destroyLevel(List<Class<?>> level, ThreadPoolExecutor destroyExecutor) {
+        long start = System.nanoTime();
+        Map<Class<?>, Future<?>> futures = new LinkedHashMap<>();
+        for (Class<?> clazz : level) {
+            LifecycleMethods methods = LifecycleMethods.of(clazz);
+            if (methods.destroyMethods.isEmpty()) continue;
+            Object bean = beans.get(clazz);
+            futures.put(clazz, destroyExecutor.submit(() -> {
+                for (Method method : methods.destroyMethods) {
+                    try {
+                        LifecycleMethods.invoke(method, bean);
+                    } catch (RuntimeException e) {
+                        log.error("destroy {} error", method, e);
+                    }
+                }
+            }));
+        }
+        for (Map.Entry<Class<?>, Future<?>> e : futures.entrySet()) {
+            // 同一层同时开始，每个bean从这一层开始时计算自己的超时
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(LifecycleMethods.of(e.getKey()).destroyTimeoutMillis);
+            try {
+                e.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                e.getValue().cancel(true);
+                log.warn("destroy bean {} timed out, skipped", e.getKey().getName());
+            } catch (ExecutionException ex) {
+                log.error("destroy bean {} error", e.getKey().getName(), ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                e.getValue().cancel(true);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按依赖关系分层，第一次调用时计算
+     */
+    List<List<Class<?>>> levels() {
+        List<List<Class<?>>> result = levels;
+        if (result == null) {
+            result = computeLevels(dependencies());
+            levels = result;
+        }
+        return result;
+    }
+
+    /**
+     * bean的类 -> 它的实例字段引用的bean的类
+     */
+    private Map<Class<?>, Set<Class<?>>> dependencies() {
+        Map<Object, Class<?>> beanToClass = new IdentityHashMap<>();
+        for (Map.Entry<Class<?>, Object> e : beans.entrySet()) {
+            beanToClass.put(e.getValue(), e.getKey());
+        }
+        Map<Class<?>, Set<Class<?>>> dependencies = new HashMap<>();
+        for (Map.Entry<Class<?>, Object> e : beans.entrySet()) {
+            Set<Class<?>> deps = new HashSet<>();
+            for (Class<?> c = e.getKey(); c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                    Object value = getField(field, e.getValue());
+                    // 只有注入的集合才遍历，业务数据的集合可能很大
+                    boolean injected = field.isAnnotationPresent(Autowired.class);
+                    if (injected && value instanceof Map) value = ((Map<?, ?>) value).values();
+                    if (injected && value instanceof Collection) {
+                        for (Object element : (Collection<?>) value) {
+                            addDependency(beanToClass.get(element), e.getKey(), deps);
+                        }
+                    } else if (value != null) {
+                        addDependency(beanToClass.get(value), e.getKey(), deps);
+                    }
+                }
+            }
+            dependencies.put(e.getKey(), deps);
+        }
+        return dependencies;
+    }
+
+    private static void addDependency(Class<?> dependency, Class<?> self, Set<Class<?>> deps) {
+        if (dependency != null && dependency != self) deps.add(dependency);
+    }
+
+    private List<List<Class<?>>> computeLevels(Map<Class<?>, Set<Class<?>>> dependencies) {
+        Map<Class<?>, Integer> levelOf = new HashMap<>();
+        Set<Class<?>> visiting = new HashSet<>();
+        List<List<Class<?>>> result = new ArrayList<>();
+        for (Class<?> clazz : beans.keySet()) {
+            int level = level(clazz, dependencies, levelOf, visiting);
+            while (result.size() <= level) result.add(new ArrayList<>());
+        }
+        for (Class<?> clazz : beans.keySet()) {
+            result.get(levelOf.get(clazz)).add(clazz);
+        }
+        List<List<Class<?>>> immutable = new ArrayList<>(result.size());
+        for (List<Class<?>> level : result) {
+            immutable.add(Collections.unmodifiableList(level));
+        }
+        return Collections.unmodifiableList(immutable);
+    }
+
+    /**
+     * 深度优先计算层数，回到正在计算的bean说明有环，这条边不计入层数
+     */
+    private static int level(Class<?> clazz, Map<Class<?>, Set<Class<?>>> dependencies, Map<Class<?>, Integer> levelOf, Set<Class<?>> visiting) {
+        Integer known = levelOf.get(clazz);
+        if (known != null) return known;
+        visiting.add(clazz);
+        int level = 0;
+        for (Class<?> dependency : dependencies.getOrDefault(clazz, Collections.emptySet())) {
+            if (visiting.contains(dependency)) continue;
+            level = Math.max(level, level(dependency, dependencies, levelOf, visiting) + 1);
+        }
+        visiting.remove(clazz);
+        levelOf.put(clazz, level);
+        return level;
+    }
+
+    /**
+     * 预热都完成后空闲的线程超时退出，热加载再提交预热时重新创建线程
+     */
+    private ThreadPoolExecutor newWarmUpExecutor(int queueCapacity) {
+        ThreadPoolExecutor e = newExecutor("lifecycle-warmup-", queueCapacity);
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+
+    private ThreadPoolExecutor newExecutor(String namePrefix, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // 队列满时由提交的线程自己执行，启动不会因为拒绝而失败
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new MpmcBlockingQueue<>(queueCapacity),
+                threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static Object getField(Field field, Object target) {
+        field.setAccessible(true);
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
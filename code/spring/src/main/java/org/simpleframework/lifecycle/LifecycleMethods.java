@@ -0,0 +1,90 @@
+package org.simpleframework.lifecycle;
+
+import org.simpleframework.lifecycle.annotation.PostConstruct;
+import org.simpleframework.lifecycle.annotation.PreDestroy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一个类的生命周期方法，每个类只查找一次
+ * 父类的方法先于子类初始化、晚于子类销毁；子类覆盖的方法只按子类的注解调用一次
+ */
+final class LifecycleMethods {
+    private static final ClassValue<LifecycleMethods> CACHE = new ClassValue<LifecycleMethods>() {
+        @Override
+        protected LifecycleMethods computeValue(Class<?> type) {
+            return new LifecycleMethods(type);
+        }
+    };
+
+    final List<Method> initMethods;
+    final List<Method> asyncInitMethods;
+    final List<Method> destroyMethods;
+    // 所有销毁方法的超时时间之和
+    final long destroyTimeoutMillis;
+
+    static LifecycleMethods of(Class<?> clazz) {
+        return CACHE.get(clazz);
+    }
+
+    private LifecycleMethods(Class<?> clazz) {
+        // 从子类往父类找，子类覆盖的方法名先记下
+        Set<String> seen = new HashSet<>();
+        Deque<List<Method>> initByClass = new ArrayDeque<>();
+        List<Method> asyncInit = new ArrayList<>();
+        List<Method> destroy = new ArrayList<>();
+        long timeout = 0;
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            List<Method> classInit = new ArrayList<>();
+            for (Method method : c.getDeclaredMethods()) {
+                PostConstruct postConstruct = method.getAnnotation(PostConstruct.class);
+                PreDestroy preDestroy = method.getAnnotation(PreDestroy.class);
+                if (postConstruct == null && preDestroy == null) continue;
+                if (method.getParameterCount() != 0 || Modifier.isStatic(method.getModifiers())) {
+                    throw new RuntimeException("lifecycle method must be a non-static method without parameters: " + method);
+                }
+                if (!Modifier.isPrivate(method.getModifiers()) && !seen.add(method.getName())) continue;
+                method.setAccessible(true);
+                if (postConstruct != null) {
+                    (postConstruct.async() ? asyncInit : classInit).add(method);
+                }
+                if (preDestroy != null) {
+                    destroy.add(method);
+                    timeout += preDestroy.timeoutMillis();
+                }
+            }
+            // 初始化从父类到子类
+            initByClass.push(classInit);
+        }
+        List<Method> init = new ArrayList<>();
+        for (List<Method> classInit : initByClass) {
+            init.addAll(classInit);
+        }
+        this.initMethods = Collections.unmodifiableList(init);
+        this.asyncInitMethods = Collections.unmodifiableList(asyncInit);
+        this.destroyMethods = Collections.unmodifiableList(destroy);
+        this.destroyTimeoutMillis = timeout;
+    }
+
+    static void invoke(Method method, Object bean) {
+        try {
+            method.invoke(bean);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException("invoke " + method + " error", cause);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.simpleframework.lifecycle.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 依赖注入完成后调用的无参方法，代替在构造器里做初始化
+ * 同步方法在它依赖的bean都初始化完成后执行，互不依赖的bean并行执行，抛出异常时启动失败；
+ * async为true的方法(比如预热缓存)不阻塞启动，全部完成后LifecycleManager才进入就绪状态
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PostConstruct {
+    boolean async() default false;
+}
@@ -0,0 +1,16 @@
+package org.simpleframework.lifecycle.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 容器关闭时调用的无参方法，依赖它的bean先销毁
+ * 超过timeoutMillis没有返回时不再等待，继续销毁其他bean
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PreDestroy {
+    long timeoutMillis() default 5000;
+}
@@ -0,0 +1,305 @@
+package org.simpleframework.mvc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.cache.CacheWeaver;
+import org.simpleframework.config.ConfigBinder;
+import org.simpleframework.config.ConfigSnapshot;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.core.GeneratedWiring;
+import org.simpleframework.data.RepositoryFactory;
+import org.simpleframework.event.EventBus;
+import org.simpleframework.inject.DependencyInjector;
+import org.simpleframework.lifecycle.LifecycleManager;
+import org.simpleframework.mvc.annotation.RequestMapping;
+import org.simpleframework.mvc.async.AsyncExecutors;
+import org.simpleframework.mvc.interceptor.HandlerInterceptor;
+import org.simpleframework.mvc.metrics.MetricsRegistry;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.processor.impl.ControllerRequestProcessor;
+import org.simpleframework.mvc.processor.impl.MetricsRequestProcessor;
+import org.simpleframework.mvc.processor.impl.ReadinessRequestProcessor;
+import org.simpleframework.mvc.processor.impl.StaticResourceRequestProcessor;
+import org.simpleframework.mvc.resource.StaticResourceCache;
+import org.simpleframework.reload.HotReloader;
+import org.simpleframework.snapshot.ContainerSnapshot;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拦截所有请求，初始化容器后按责任链分派给各个请求处理器
+ * <p>
+ * 初始化参数：
+ * scanPackage: 需要扫描的包
+ * asyncExecutor: 异步Controller的执行器，virtual或fixed
+ * asyncThreads: fixed模式下的线程数
+ * asyncTimeout: 异步请求的超时时间(毫秒)
+ * staticPrefix: 静态资源的路径前缀，默认/static/
+ * staticRoot: 静态资源所在目录，默认为web应用的根目录
+ * staticCacheFileSize / staticCacheSize: 缓存在堆外内存中的单个文件上限和总量上限(字节)
+ * metricsPath: 以JSON输出各路由指标的路径，默认/metrics，指标同时以MXBean注册到JMX
+ * generatedWiring: 为true(默认)时优先使用编译期为scanPackage生成的ApplicationWiring装配bean，不扫描也不反射解析依赖
+ * containerSnapshot: 容器快照文件路径，快照有效时直接回放bean图，否则正常扫描后重新写入快照
+ * eventThreads / eventQueueSize: 异步事件监听方法的线程数和每个监听方法的队列容量
+ * hotReload: 为true时监听扫描包的class文件，变化的bean热加载，涉及Controller或拦截器时重建路由
+ * config: 配置文件路径，默认依次查找classpath下的application.yml、application.yaml、application.properties
+ * configRefreshSeconds: 大于0时按这个间隔检查配置文件，修改后只重新绑定变化了的配置字段
+ * lifecycleThreads: 并行执行@PostConstruct和异步预热的线程数
+ * readinessPath: 就绪检查的路径，默认/ready，异步预热全部完成前返回503
+ * dataDir: @Repository接口的数据目录，默认为工作目录下的data
+ * dataCompactionSeconds: 检查并压缩数据日志的间隔，默认60，不大于0时不压缩
+ */
+@Slf4j
+@WebServlet(urlPatterns = "/*", asyncSupported = true, initParams = {
+        @WebInitParam(name = "scanPackage", value = "com.tongji")
+})
+public class DispatcherServlet extends HttpServlet {
+    private static final String[] CONFIG_NAMES = {"application.yml", "application.yaml", "application.properties"};
+    // 热加载时会替换其中的Controller请求处理器，正在处理的请求继续使用旧的
+    private final List<RequestProcessor> PROCESSOR = new CopyOnWriteArrayList<>();
+    private ExecutorService asyncExecutor;
+    private long asyncTimeout;
+    private MetricsRegistry metricsRegistry;
+    private HotReloader hotReloader;
+    private EventBus eventBus;
+    private ConfigBinder configBinder;
+    private ScheduledExecutorService configRefresher;
+    private LifecycleManager lifecycleManager;
+    private RepositoryFactory repositoryFactory;
+
+    @Override
+    public void init() throws ServletException {
+        // 1.初始化配置、容器和事件总线
+        initConfig();
+        initContainer();
+        eventBus = new EventBus(BeanContainer.getInstance(),
+                Integer.parseInt(getInitParameter("eventThreads", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(getInitParameter("eventQueueSize", "8192")));
+        eventBus.registerListeners();
+        // 2.调用bean的初始化方法，关闭时(包括JVM退出)按依赖的相反顺序销毁
+        lifecycleManager = new LifecycleManager(BeanContainer.getInstance(),
+                Integer.parseInt(getInitParameter("lifecycleThreads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        lifecycleManager.registerShutdownHook();
+        try {
+            lifecycleManager.start();
+        } catch (RuntimeException e) {
+            throw new ServletException("init beans error", e);
+        }
+        // 3.初始化异步执行器
+        asyncExecutor = AsyncExecutors.create(getInitParameter("asyncExecutor", AsyncExecutors.FIXED),
+                Integer.parseInt(getInitParameter("asyncThreads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2))));
+        asyncTimeout = Long.parseLong(getInitParameter("asyncTimeout", "30000"));
+        // 4.初始化请求处理器责任链
+        initStaticResourceProcessor();
+        PROCESSOR.add(new ReadinessRequestProcessor(getInitParameter("readinessPath", "/ready"), lifecycleManager));
+        metricsRegistry = new MetricsRegistry();
+        PROCESSOR.add(new MetricsRequestProcessor(getInitParameter("metricsPath", "/metrics"), metricsRegistry));
+        PROCESSOR.add(new ControllerRequestProcessor(asyncExecutor, asyncTimeout, metricsRegistry));
+        // 5.热加载
+        if (Boolean.parseBoolean(getInitParameter("hotReload", "false"))) {
+            initHotReloader();
+        }
+    }
+
+    private void initHotReloader() {
+        try {
+            hotReloader = new HotReloader(BeanContainer.getInstance(), getInitParameter("scanPackage", "com.tongji"), configBinder);
+            // 新的bean先执行初始化方法，被替换的旧实例执行销毁方法
+            hotReloader.addReloadListener(lifecycleManager::beansReloaded);
+            hotReloader.addReloadListener(this::rebuildControllerProcessor);
+            // 监听方法绑定的是旧的bean，重新注册
+            hotReloader.addReloadListener(reloaded -> eventBus.registerListeners());
+            hotReloader.start();
+        } catch (IOException | RuntimeException e) {
+            log.warn("init hot reload error, hot reload disabled", e);
+        }
+    }
+
+    /**
+     * 路由中保存的是Controller的Method和拦截器实例，重新加载了它们之后整个重建Controller请求处理器
+     */
+    private void rebuildControllerProcessor(Set<Class<?>> reloaded) {
+        boolean affected = false;
+        for (Class<?> clazz : reloaded) {
+            if (clazz.isAnnotationPresent(RequestMapping.class) || HandlerInterceptor.class.isAssignableFrom(clazz)) {
+                affected = true;
+                break;
+            }
+        }
+        if (!affected) return;
+        for (int i = 0; i < PROCESSOR.size(); i++) {
+            if (PROCESSOR.get(i) instanceof ControllerRequestProcessor) {
+                PROCESSOR.set(i, new ControllerRequestProcessor(asyncExecutor, asyncTimeout, metricsRegistry));
+            }
+        }
+    }
+
+    private void initConfig() throws ServletException {
+        File file = findConfigFile();
+        try {
+            if (file != null) {
+                configBinder = new ConfigBinder(file);
+            } else {
+                configBinder = new ConfigBinder(loadClasspathConfig());
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new ServletException("load config error", e);
+        }
+        long refreshSeconds = Long.parseLong(getInitParameter("configRefreshSeconds", "0"));
+        if (file != null && refreshSeconds > 0) {
+            configRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "config-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+            configRefresher.scheduleWithFixedDelay(configBinder::reloadIfModified, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return 可以监听修改的配置文件，没有时返回null
+     */
+    private File findConfigFile() {
+        String path = getInitParameter("config", null);
+        if (path != null) return new File(path);
+        for (String name : CONFIG_NAMES) {
+            URL url = Thread.currentThread().getContextClassLoader().getResource(name);
+            if (url != null && "file".equals(url.getProtocol())) {
+                try {
+                    return new File(url.toURI());
+                } catch (URISyntaxException e) {
+                    log.warn("invalid config url {}", url);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 配置文件在jar包中时只能读取一次，不能重新加载
+     */
+    private ConfigSnapshot loadClasspathConfig() throws IOException {
+        for (String name : CONFIG_NAMES) {
+            try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(name)) {
+                if (in != null) return ConfigSnapshot.load(in, name);
+            }
+        }
+        return ConfigSnapshot.EMPTY;
+    }
+
+    private void initContainer() {
+        BeanContainer beanContainer = BeanContainer.getInstance();
+        String scanPackage = getInitParameter("scanPackage", "com.tongji");
+        repositoryFactory = new RepositoryFactory(new File(getInitParameter("dataDir", "data")),
+                Long.parseLong(getInitParameter("dataCompactionSeconds", "60")));
+        GeneratedWiring wiring = Boolean.parseBoolean(getInitParameter("generatedWiring", "true")) ? GeneratedWiring.find(scanPackage) : null;
+        if (wiring != null) {
+            log.info("wiring {} beans with {}", wiring.getBeanClasses().size(), wiring.getClass().getName());
+            beanContainer.loadBeans(wiring);
+            repositoryFactory.registerRepositories(beanContainer);
+            new CacheWeaver().doCache();
+            wiring.inject(beanContainer);
+            configBinder.bindAll(beanContainer);
+            return;
+        }
+        String snapshotPath = getInitParameter("containerSnapshot", null);
+        ContainerSnapshot snapshot = snapshotPath == null ? null : ContainerSnapshot.loadIfValid(new File(snapshotPath), scanPackage);
+        if (snapshot != null) {
+            beanContainer.loadBeans(snapshot);
+            repositoryFactory.registerRepositories(beanContainer);
+            new CacheWeaver().doCache();
+            snapshot.inject(beanContainer);
+            configBinder.bindAll(beanContainer);
+            return;
+        }
+        beanContainer.loadBeans(scanPackage);
+        repositoryFactory.registerRepositories(beanContainer);
+        new CacheWeaver().doCache();
+        new DependencyInjector(beanContainer, configBinder).doIoc();
+        if (snapshotPath != null) {
+            try {
+                ContainerSnapshot.record(beanContainer, scanPackage).write(new File(snapshotPath));
+            } catch (IOException | RuntimeException e) {
+                log.warn("write container snapshot {} error", snapshotPath, e);
+            }
+        }
+    }
+
+    private void initStaticResourceProcessor() throws ServletException {
+        String staticRoot = getInitParameter("staticRoot", getServletContext().getRealPath("/"));
+        if (staticRoot == null) {
+            // 以未解压的war包运行时拿不到真实路径
+            log.warn("static resource root is not available, static resource serving disabled");
+            return;
+        }
+        StaticResourceCache cache = new StaticResourceCache(
+                Long.parseLong(getInitParameter("staticCacheFileSize", String.valueOf(64 * 1024))),
+                Long.parseLong(getInitParameter("staticCacheSize", String.valueOf(32 * 1024 * 1024))));
+        try {
+            PROCESSOR.add(new StaticResourceRequestProcessor(getInitParameter("staticPrefix", "/static/"), new File(staticRoot), cache));
+        } catch (IOException e) {
+            throw new ServletException("init static resource processor error", e);
+        }
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) {
+        // 1.创建责任链对象实例
+        RequestProcessorChain requestProcessorChain = new RequestProcessorChain(PROCESSOR.iterator(), req, resp);
+        // 2.通过责任链模式来依次调用请求处理器对请求进行处理
+        requestProcessorChain.doRequestProcessorChain();
+        // 3.对处理结果进行渲染，异步结果在这里只会startAsync，容器线程随即返回
+        requestProcessorChain.doRender();
+    }
+
+    @Override
+    public void destroy() {
+        if (configRefresher != null) {
+            configRefresher.shutdownNow();
+        }
+        if (hotReloader != null) {
+            try {
+                hotReloader.close();
+            } catch (IOException e) {
+                log.warn("close hot reloader error", e);
+            }
+        }
+        if (lifecycleManager != null) {
+            lifecycleManager.shutdown();
+        }
+        // @PreDestroy方法可能还在写数据，销毁bean之后再关闭
+        if (repositoryFactory != null) {
+            repositoryFactory.close();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+        if (eventBus != null) {
+            eventBus.shutdown();
+        }
+        if (metricsRegistry != null) {
+            metricsRegistry.unregisterAll();
+        }
+    }
+
+    private String getInitParameter(String name, String defaultValue) {
+        String value = getInitParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,80 @@
+package org.simpleframework.mvc;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.mvc.interceptor.HandlerExecutionChain;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.render.ResultRender;
+import org.simpleframework.mvc.render.impl.DefaultResultRender;
+import org.simpleframework.mvc.render.impl.InternalErrorResultRender;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Iterator;
+
+/**
+ * 1. 以责任链的模式执行注册的请求处理器
+ * 2. 委派给特定的Render实例对处理后的结果进行渲染
+ */
+@Data
+@Slf4j
+public class RequestProcessorChain {
+    private Iterator<RequestProcessor> requestProcessorIterator;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private String requestMethod;
+    private String requestPath;
+    private int responseCode;
+    private ResultRender resultRender;
+    // 命中Controller路由时由ControllerRequestProcessor设置
+    private HandlerExecutionChain handlerExecutionChain;
+
+    public RequestProcessorChain(Iterator<RequestProcessor> iterator, HttpServletRequest req, HttpServletResponse resp) {
+        this.requestProcessorIterator = iterator;
+        this.request = req;
+        this.response = resp;
+        this.requestMethod = req.getMethod();
+        this.requestPath = req.getPathInfo() != null ? req.getPathInfo() : req.getServletPath();
+        this.responseCode = HttpServletResponse.SC_OK;
+    }
+
+    /**
+     * 以责任链的模式执行请求链
+     */
+    public void doRequestProcessorChain() {
+        try {
+            while (requestProcessorIterator.hasNext()) {
+                // 直到某个请求处理器执行后返回为false为止
+                if (!requestProcessorIterator.next().process(this)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // 期间如果出现异常，则交由内部异常渲染器处理
+            this.resultRender = new InternalErrorResultRender(e.getMessage());
+            log.error("doRequestProcessorChain error:", e);
+        }
+    }
+
+    /**
+     * 执行处理器
+     */
+    public void doRender() {
+        if (this.resultRender == null) {
+            this.resultRender = new DefaultResultRender();
+        }
+        Exception renderException = null;
+        try {
+            this.resultRender.render(this);
+        } catch (Exception e) {
+            renderException = e;
+            log.error("doRender error: ", e);
+            throw new RuntimeException(e);
+        } finally {
+            // 同步请求渲染完即结束，异步请求等AsyncContext结束
+            if (handlerExecutionChain != null && !handlerExecutionChain.isAsyncStarted()) {
+                handlerExecutionChain.triggerAfterCompletion(this, renderException);
+            }
+        }
+    }
+}
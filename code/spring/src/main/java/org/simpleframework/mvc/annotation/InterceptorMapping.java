@@ -0,0 +1,21 @@
+package org.simpleframework.mvc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明HandlerInterceptor拦截的路径，支持*(匹配一段路径中的任意字符)和**(匹配任意多段路径)
+ * 没有标记该注解的拦截器拦截所有路径
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InterceptorMapping {
+    String[] value() default "/**";
+
+    String[] exclude() default {};
+
+    // 数值小的先执行
+    int order() default 0;
+}
@@ -0,0 +1,20 @@
+package org.simpleframework.mvc.annotation;
+
+import org.simpleframework.mvc.type.RequestMethod;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标识Controller的请求路径和请求方法
+ * 作用在类上时作为路径前缀，作用在方法上时与类上的前缀拼接成完整路径
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequestMapping {
+    String value() default "";
+
+    RequestMethod method() default RequestMethod.GET;
+}
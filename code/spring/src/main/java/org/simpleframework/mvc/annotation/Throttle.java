@@ -0,0 +1,17 @@
+package org.simpleframework.mvc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 限制Controller方法的并发请求数，超出的请求直接返回429，不排队等待
+ * 异步方法的许可在异步结果完成、响应结束时才归还
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Throttle {
+    // 同时处理的最大请求数
+    int permits();
+}
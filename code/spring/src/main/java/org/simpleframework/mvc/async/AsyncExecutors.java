@@ -0,0 +1,56 @@
+package org.simpleframework.mvc.async;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步Controller使用的执行器
+ * virtual: 在JDK21及以上通过反射调用Executors.newVirtualThreadPerTaskExecutor，低版本JDK退化为fixed
+ * fixed: 固定大小的守护线程池，与servlet容器的线程池隔离，慢后端不会再占住容器线程
+ */
+@Slf4j
+public class AsyncExecutors {
+    public static final String VIRTUAL = "virtual";
+    public static final String FIXED = "fixed";
+
+    public static ExecutorService create(String mode, int threads) {
+        if (VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            log.warn("virtual threads are not available on this JVM, fall back to fixed thread pool");
+        }
+        return newFixedThreadPool(threads);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("create virtual thread executor error", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newFixedThreadPool(int threads) {
+        final AtomicInteger index = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "mvc-async-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+}
@@ -0,0 +1,45 @@
+package org.simpleframework.mvc.async;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 包装一次异步请求的AsyncContext
+ * 正常写完、写出异常、超时三条路径都可能去结束请求，这里保证complete只会执行一次
+ */
+@Slf4j
+public class AsyncResponseContext {
+    private final AsyncContext asyncContext;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    public AsyncResponseContext(AsyncContext asyncContext) {
+        this.asyncContext = asyncContext;
+    }
+
+    public HttpServletResponse getResponse() {
+        return (HttpServletResponse) asyncContext.getResponse();
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * 抢占结束权，返回true的一方负责写出响应并调用complete
+     */
+    public boolean tryFinish() {
+        return finished.compareAndSet(false, true);
+    }
+
+    public void complete() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // 容器已经因为超时或连接断开结束了请求
+            log.debug("async context already completed", e);
+        }
+    }
+}
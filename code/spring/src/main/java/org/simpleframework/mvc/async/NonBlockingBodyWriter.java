@@ -0,0 +1,47 @@
+package org.simpleframework.mvc.async;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+
+/**
+ * 基于WriteListener的非阻塞写出，只在isReady()为true时写，写不动就返回，等容器回调onWritePossible后继续。
+ * 这样写响应的线程不会因为客户端读得慢而阻塞在socket上。
+ */
+@Slf4j
+public class NonBlockingBodyWriter implements WriteListener {
+    static final int CHUNK_SIZE = 8192;
+
+    private final AsyncResponseContext context;
+    private final ServletOutputStream outputStream;
+    private final byte[] body;
+    // 只会在容器串行回调的onWritePossible中修改，不需要volatile
+    private int offset;
+
+    public NonBlockingBodyWriter(AsyncResponseContext context, ServletOutputStream outputStream, byte[] body) {
+        this.context = context;
+        this.outputStream = outputStream;
+        this.body = body;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (outputStream.isReady()) {
+            if (offset >= body.length) {
+                context.complete();
+                return;
+            }
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            outputStream.write(body, offset, length);
+            offset += length;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.error("async write error", throwable);
+        context.complete();
+    }
+}
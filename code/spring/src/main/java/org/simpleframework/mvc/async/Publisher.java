@@ -0,0 +1,9 @@
+package org.simpleframework.mvc.async;
+
+/**
+ * 与Reactive Streams的Publisher同形的最小接口，Controller方法返回它时结果以流的方式异步写出。
+ * 订阅者通过Subscription.request(n)拉取数据，写出端只在输出可写时才请求下一个元素，从而形成背压。
+ */
+public interface Publisher<T> {
+    void subscribe(Subscriber<? super T> subscriber);
+}
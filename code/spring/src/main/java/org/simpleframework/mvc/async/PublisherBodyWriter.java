@@ -0,0 +1,188 @@
+package org.simpleframework.mvc.async;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把Publisher的元素以JSON数组的形式流式写出
+ * <p>
+ * onNext来自发布者的线程，onWritePossible来自容器的线程，两边都会调用drain。
+ * drain使用wip计数保证同一时刻只有一个线程在操作ServletOutputStream，没抢到的线程只把wip加一，由正在drain的线程多跑一轮。
+ * 只有当输出可写并且没有待写数据时，才向上游request(1)，所以慢客户端会自然地把背压传给发布者。
+ * 请求超时或出错时调用cancel，取消上游订阅并停止写出。
+ */
+@Slf4j
+public class PublisherBodyWriter implements Subscriber<Object> {
+    private static final byte[] OPEN = {'['};
+    private static final byte[] CLOSE = {']'};
+    private static final byte[] SEPARATOR = {','};
+
+    private final AsyncResponseContext context;
+    private final ServletOutputStream outputStream;
+    private final Gson gson;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Subscription subscription;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+
+    // 以下字段只在持有wip的线程中访问
+    private byte[] current;
+    private int offset;
+    private boolean opened;
+    private boolean firstItem = true;
+    private boolean requested;
+    private boolean finished;
+
+    public PublisherBodyWriter(AsyncResponseContext context, ServletOutputStream outputStream, Gson gson) {
+        this.context = context;
+        this.outputStream = outputStream;
+        this.gson = gson;
+    }
+
+    /**
+     * 注册到ServletOutputStream上，容器会在可写时回调
+     */
+    public WriteListener writeListener() {
+        return new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                drain();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                log.error("async stream write error", throwable);
+                cancelUpstream();
+                context.complete();
+            }
+        };
+    }
+
+    /**
+     * 请求已经由超时或出错结束，不再写出；订阅还没建立时在onSubscribe中取消
+     */
+    public void cancel() {
+        cancelled = true;
+        pending.clear();
+        cancelUpstream();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(Object item) {
+        if (cancelled) {
+            return;
+        }
+        pending.offer(gson.toJson(item).getBytes(StandardCharsets.UTF_8));
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (; ; ) {
+            try {
+                writeWhileReady();
+            } catch (IOException e) {
+                log.error("async stream write error", e);
+                finished = true;
+                cancelUpstream();
+                context.complete();
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void writeWhileReady() throws IOException {
+        while (!finished && !cancelled && outputStream.isReady()) {
+            if (!opened) {
+                outputStream.write(OPEN);
+                opened = true;
+            } else if (current != null) {
+                int length = Math.min(NonBlockingBodyWriter.CHUNK_SIZE, current.length - offset);
+                outputStream.write(current, offset, length);
+                offset += length;
+                if (offset >= current.length) {
+                    current = null;
+                }
+            } else {
+                byte[] next = pending.poll();
+                if (next != null) {
+                    requested = false;
+                    current = next;
+                    offset = 0;
+                    if (!firstItem) {
+                        outputStream.write(SEPARATOR);
+                    }
+                    firstItem = false;
+                } else if (upstreamDone) {
+                    finish();
+                } else {
+                    if (!requested && subscription != null) {
+                        requested = true;
+                        // request可能在当前线程同步回调onNext，此时onNext里的drain只会增加wip，由本轮循环继续处理
+                        subscription.request(1);
+                        continue;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        finished = true;
+        if (upstreamError != null) {
+            // 响应头已经提交，无法再改状态码，只能截断输出
+            log.error("publisher terminated with error", upstreamError);
+        } else {
+            outputStream.write(CLOSE);
+        }
+        context.complete();
+    }
+
+    private void cancelUpstream() {
+        Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.simpleframework.mvc.async;
+
+public interface Subscriber<T> {
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,7 @@
+package org.simpleframework.mvc.async;
+
+public interface Subscription {
+    void request(long n);
+
+    void cancel();
+}
@@ -0,0 +1,80 @@
+package org.simpleframework.mvc.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.route.Route;
+import org.simpleframework.mvc.type.ControllerMethod;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次请求中路由拦截器的执行状态
+ * 记录执行到第几个拦截器，请求结束时只对preHandle成功的拦截器倒序调用afterCompletion，并记录路由指标。
+ * 异步请求的结束发生在其他线程，用completed保证只结束一次。
+ */
+@Slf4j
+public class HandlerExecutionChain {
+    private final Route route;
+    private final long startNanos;
+    // 最后一个preHandle返回true的拦截器下标，异步请求在其他线程读取
+    private volatile int interceptorIndex = -1;
+    private volatile boolean asyncStarted;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    public HandlerExecutionChain(Route route, long startNanos) {
+        this.route = route;
+        this.startNanos = startNanos;
+    }
+
+    public ControllerMethod getControllerMethod() {
+        return route.getControllerMethod();
+    }
+
+    public boolean applyPreHandle(RequestProcessorChain requestProcessorChain) throws Exception {
+        HandlerInterceptor[] interceptors = route.getInterceptors();
+        for (int i = 0; i < interceptors.length; i++) {
+            if (!interceptors[i].preHandle(requestProcessorChain, route.getControllerMethod())) {
+                triggerAfterCompletion(requestProcessorChain, null);
+                return false;
+            }
+            interceptorIndex = i;
+        }
+        return true;
+    }
+
+    public void applyPostHandle(RequestProcessorChain requestProcessorChain, Object result) throws Exception {
+        HandlerInterceptor[] interceptors = route.getInterceptors();
+        for (int i = interceptors.length - 1; i >= 0; i--) {
+            interceptors[i].postHandle(requestProcessorChain, route.getControllerMethod(), result);
+        }
+    }
+
+    /**
+     * 请求结束，倒序调用afterCompletion，拦截器抛出的异常只记录日志，不影响其他拦截器
+     */
+    public void triggerAfterCompletion(RequestProcessorChain requestProcessorChain, Exception ex) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        HandlerInterceptor[] interceptors = route.getInterceptors();
+        for (int i = interceptorIndex; i >= 0; i--) {
+            try {
+                interceptors[i].afterCompletion(requestProcessorChain, route.getControllerMethod(), ex);
+            } catch (Exception e) {
+                log.error("HandlerInterceptor.afterCompletion threw exception", e);
+            }
+        }
+        route.getControllerMethod().getRouteMetrics().record(startNanos, ex != null);
+    }
+
+    public boolean isAsyncStarted() {
+        return asyncStarted;
+    }
+
+    /**
+     * 异步渲染器startAsync之后调用，之后由AsyncContext结束时触发afterCompletion
+     */
+    public void setAsyncStarted() {
+        this.asyncStarted = true;
+    }
+}
@@ -0,0 +1,31 @@
+package org.simpleframework.mvc.interceptor;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.type.ControllerMethod;
+
+/**
+ * Controller方法的拦截器，实现类被@Component等注解标记后由容器管理，
+ * 再通过@InterceptorMapping声明要拦截的路径，启动时就为每个路由确定好拦截器数组
+ */
+public interface HandlerInterceptor {
+    /**
+     * Controller方法执行前调用，返回false时中断请求，此时应自行设置ResultRender
+     */
+    default boolean preHandle(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod) throws Exception {
+        return true;
+    }
+
+    /**
+     * Controller方法正常返回后、渲染前调用，异步结果此时尚未完成
+     */
+    default void postHandle(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod, Object result) throws Exception {
+    }
+
+    /**
+     * 请求结束后调用，只对preHandle返回true的拦截器调用。同步请求在渲染之后，异步请求在AsyncContext结束时
+     *
+     * @param ex 处理过程中的异常，没有则为null
+     */
+    default void afterCompletion(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod, Exception ex) throws Exception {
+    }
+}
@@ -0,0 +1,49 @@
+package org.simpleframework.mvc.interceptor;
+
+import lombok.Getter;
+import org.simpleframework.mvc.annotation.InterceptorMapping;
+import org.simpleframework.util.PathMatchUtil;
+
+/**
+ * 拦截器及其@InterceptorMapping路径配置，只在启动时用来决定拦截器作用于哪些路由
+ */
+@Getter
+public class MappedInterceptor {
+    private final HandlerInterceptor interceptor;
+    private final String[] includePatterns;
+    private final String[] excludePatterns;
+    private final int order;
+
+    public MappedInterceptor(HandlerInterceptor interceptor) {
+        InterceptorMapping mapping = findMapping(interceptor.getClass());
+        this.interceptor = interceptor;
+        this.includePatterns = mapping == null ? new String[]{"/**"} : mapping.value();
+        this.excludePatterns = mapping == null ? new String[0] : mapping.exclude();
+        this.order = mapping == null ? 0 : mapping.order();
+    }
+
+    /**
+     * cglib代理类不会复制类上的注解，沿着父类找到原始类上的@InterceptorMapping
+     */
+    private static InterceptorMapping findMapping(Class<?> interceptorClass) {
+        for (Class<?> clazz = interceptorClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            InterceptorMapping mapping = clazz.getAnnotation(InterceptorMapping.class);
+            if (mapping != null) return mapping;
+        }
+        return null;
+    }
+
+    public boolean matches(String path) {
+        for (String pattern : excludePatterns) {
+            if (PathMatchUtil.match(pattern, path)) {
+                return false;
+            }
+        }
+        for (String pattern : includePatterns) {
+            if (PathMatchUtil.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
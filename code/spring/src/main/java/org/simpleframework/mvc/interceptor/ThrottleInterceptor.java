@@ -0,0 +1,32 @@
+package org.simpleframework.mvc.interceptor;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.impl.TooManyRequestsResultRender;
+import org.simpleframework.mvc.type.ControllerMethod;
+import tongji.java.util.concurrent.Semaphore;
+
+/**
+ * 被@Throttle标记的路由独享的并发限制拦截器，启动时为每个路由创建一个
+ * 只用tryAcquire，拿不到许可立即拒绝，不会让容器线程阻塞在信号量上
+ */
+public class ThrottleInterceptor implements HandlerInterceptor {
+    private final Semaphore semaphore;
+
+    public ThrottleInterceptor(int permits) {
+        this.semaphore = new Semaphore(permits);
+    }
+
+    @Override
+    public boolean preHandle(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod) {
+        if (semaphore.tryAcquire()) {
+            return true;
+        }
+        requestProcessorChain.setResultRender(new TooManyRequestsResultRender(requestProcessorChain.getRequestPath()));
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod, Exception ex) {
+        semaphore.release();
+    }
+}
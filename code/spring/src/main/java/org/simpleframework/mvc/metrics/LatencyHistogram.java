@@ -0,0 +1,104 @@
+package org.simpleframework.mvc.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HdrHistogram风格的对数线性直方图，记录纳秒级延迟
+ * <p>
+ * 小于64ns的值每个值一个桶；之后每个2的幂区间分成32个等宽的桶，所以任意值的相对误差不超过1/32。
+ * 可记录的上限约为2^38ns(约4.5分钟)，更大的值记在最后一个桶。
+ * <p>
+ * 为了避免所有请求线程在同一组计数器上争抢缓存行，桶数组按线程分成多个stripe，
+ * 记录时只对本线程对应stripe中的一个桶做一次原子自增，读取时再把各stripe相加。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+    private static final int MAX_VALUE_BITS = 38;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        stripes[(int) Thread.currentThread().getId() & stripeMask].incrementAndGet(indexOf(value));
+        // 只有出现更大的值时才会CAS，稳定之后这里只是一次读
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 各stripe合并后的快照，用于计算分位数
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 返回分位数对应桶的上界，percentile取值0~100
+     */
+    public static long valueAtPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // value >>> shift 落在[32, 64)，即该2的幂区间中的32个桶之一
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long sub = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,68 @@
+package org.simpleframework.mvc.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 所有路由指标的注册中心，路由在启动时注册，同时登记到平台MBeanServer
+ */
+@Slf4j
+public class MetricsRegistry {
+    private static final String JMX_DOMAIN = "org.simpleframework.mvc";
+    private final Map<String, RouteMetrics> routeMetricsMap = new ConcurrentHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    public RouteMetrics register(String httpMethod, String httpPath) {
+        String route = httpMethod + " " + httpPath;
+        return routeMetricsMap.computeIfAbsent(route, key -> {
+            RouteMetrics routeMetrics = new RouteMetrics(key);
+            registerMBean(routeMetrics);
+            return routeMetrics;
+        });
+    }
+
+    public List<RouteMetricsSnapshot> snapshot() {
+        List<RouteMetricsSnapshot> snapshots = new ArrayList<>();
+        for (RouteMetrics routeMetrics : routeMetricsMap.values()) {
+            snapshots.add(routeMetrics.snapshot());
+        }
+        snapshots.sort((a, b) -> a.getRoute().compareTo(b.getRoute()));
+        return snapshots;
+    }
+
+    /**
+     * 应用卸载时注销MBean，避免重新部署后名字冲突和类加载器泄漏
+     */
+    public synchronized void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                log.warn("unregister mbean {} error", name, e);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private synchronized void registerMBean(RouteMetrics routeMetrics) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=RouteMetrics,name=" + ObjectName.quote(routeMetrics.getRoute()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(routeMetrics, name);
+            registeredNames.add(name);
+        } catch (Exception e) {
+            log.warn("register mbean for route {} error", routeMetrics.getRoute(), e);
+        }
+    }
+}
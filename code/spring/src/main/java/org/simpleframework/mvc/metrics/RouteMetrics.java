@@ -0,0 +1,90 @@
+package org.simpleframework.mvc.metrics;
+
+import tongji.java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个路由的请求数、错误数和延迟分布
+ * 计数使用LongAdder，高并发下各线程落在不同的cell上累加，不会争抢同一个变量
+ */
+public class RouteMetrics implements RouteMetricsMXBean {
+    private final String route;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    public void record(long startNanos, boolean error) {
+        long elapsed = System.nanoTime() - startNanos;
+        count.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalNanos.add(elapsed);
+        histogram.record(elapsed);
+    }
+
+    public RouteMetricsSnapshot snapshot() {
+        long[] counts = histogram.snapshot();
+        long requests = count.sum();
+        return new RouteMetricsSnapshot(route, requests, errors.sum(),
+                requests == 0 ? 0 : toMicros(totalNanos.sum() / (double) requests),
+                toMicros(LatencyHistogram.valueAtPercentile(counts, 50)),
+                toMicros(LatencyHistogram.valueAtPercentile(counts, 90)),
+                toMicros(LatencyHistogram.valueAtPercentile(counts, 99)),
+                toMicros(LatencyHistogram.valueAtPercentile(counts, 99.9)),
+                toMicros(histogram.getMax()));
+    }
+
+    private static double toMicros(double nanos) {
+        return nanos / 1000.0;
+    }
+
+    @Override
+    public String getRoute() {
+        return route;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return snapshot().getMeanMicros();
+    }
+
+    @Override
+    public double getP50Micros() {
+        return snapshot().getP50Micros();
+    }
+
+    @Override
+    public double getP90Micros() {
+        return snapshot().getP90Micros();
+    }
+
+    @Override
+    public double getP99Micros() {
+        return snapshot().getP99Micros();
+    }
+
+    @Override
+    public double getP999Micros() {
+        return snapshot().getP999Micros();
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return toMicros(histogram.getMax());
+    }
+}
@@ -0,0 +1,24 @@
+package org.simpleframework.mvc.metrics;
+
+/**
+ * 通过JMX暴露的单个路由的指标，延迟单位为微秒
+ */
+public interface RouteMetricsMXBean {
+    String getRoute();
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,21 @@
+package org.simpleframework.mvc.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 指标快照，由gson序列化后作为/metrics的响应，延迟单位为微秒
+ */
+@Data
+@AllArgsConstructor
+public class RouteMetricsSnapshot {
+    private String route;
+    private long count;
+    private long errors;
+    private double meanMicros;
+    private double p50Micros;
+    private double p90Micros;
+    private double p99Micros;
+    private double p999Micros;
+    private double maxMicros;
+}
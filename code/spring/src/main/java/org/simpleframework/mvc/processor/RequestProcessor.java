@@ -0,0 +1,11 @@
+package org.simpleframework.mvc.processor;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+
+/**
+ * 请求执行器
+ * 返回true代表交给链上的下一个执行器继续处理，返回false代表请求已经处理完毕
+ */
+public interface RequestProcessor {
+    boolean process(RequestProcessorChain requestProcessorChain) throws Exception;
+}
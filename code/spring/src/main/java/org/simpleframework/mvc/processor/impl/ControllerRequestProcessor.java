@@ -0,0 +1,219 @@
+package org.simpleframework.mvc.processor.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.cache.TinyLfuCache;
+import org.simpleframework.cache.annotation.Cacheable;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.annotation.RequestMapping;
+import org.simpleframework.mvc.annotation.RequestParam;
+import org.simpleframework.mvc.annotation.Throttle;
+import org.simpleframework.mvc.async.Publisher;
+import org.simpleframework.mvc.interceptor.HandlerExecutionChain;
+import org.simpleframework.mvc.interceptor.HandlerInterceptor;
+import org.simpleframework.mvc.interceptor.MappedInterceptor;
+import org.simpleframework.mvc.interceptor.ThrottleInterceptor;
+import org.simpleframework.mvc.metrics.MetricsRegistry;
+import org.simpleframework.mvc.metrics.RouteMetrics;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.render.impl.AsyncResultRender;
+import org.simpleframework.mvc.render.impl.CachedResultRender;
+import org.simpleframework.mvc.render.impl.JsonResultRender;
+import org.simpleframework.mvc.render.impl.ResourceNotFoundResultRender;
+import org.simpleframework.mvc.route.Route;
+import org.simpleframework.mvc.route.RouteTrie;
+import org.simpleframework.mvc.type.CachedResponse;
+import org.simpleframework.mvc.type.ControllerMethod;
+import org.simpleframework.util.ConverterUtil;
+import org.simpleframework.util.ValidationUtil;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller请求处理器
+ * 启动时解析所有被@RequestMapping标记的Controller方法，连同匹配到的拦截器和响应缓存一起放进路由树；
+ * 请求到来时在路由树中找到路由，依次执行拦截器，解析参数，反射调用，再根据返回值选择渲染器。
+ */
+@Slf4j
+public class ControllerRequestProcessor implements RequestProcessor {
+    // 请求路径和路由的映射
+    private final RouteTrie routeTrie = new RouteTrie();
+    // 容器中的拦截器及其路径配置，按order排好序
+    private final List<MappedInterceptor> interceptorMappings = new ArrayList<>();
+    private final BeanContainer beanContainer;
+    private final Executor asyncExecutor;
+    private final long asyncTimeoutMillis;
+    private final MetricsRegistry metricsRegistry;
+
+    public ControllerRequestProcessor(Executor asyncExecutor, long asyncTimeoutMillis, MetricsRegistry metricsRegistry) {
+        this.beanContainer = BeanContainer.getInstance();
+        this.asyncExecutor = asyncExecutor;
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+        this.metricsRegistry = metricsRegistry;
+        initInterceptorMappings(beanContainer.getClassesBySuper(HandlerInterceptor.class));
+        Set<Class<?>> requestMappingSet = beanContainer.getClassesByAnnotation(RequestMapping.class);
+        initRouteTrie(requestMappingSet);
+    }
+
+    private void initInterceptorMappings(Set<Class<?>> interceptorSet) {
+        if (ValidationUtil.isEmpty(interceptorSet)) {
+            return;
+        }
+        for (Class<?> interceptorClass : interceptorSet) {
+            interceptorMappings.add(new MappedInterceptor((HandlerInterceptor) beanContainer.getBean(interceptorClass)));
+        }
+        interceptorMappings.sort(Comparator.comparingInt(MappedInterceptor::getOrder)
+                .thenComparing(mappedInterceptor -> mappedInterceptor.getInterceptor().getClass().getName()));
+    }
+
+    private void initRouteTrie(Set<Class<?>> requestMappingSet) {
+        if (ValidationUtil.isEmpty(requestMappingSet)) {
+            return;
+        }
+        for (Class<?> requestMappingClass : requestMappingSet) {
+            RequestMapping requestMapping = requestMappingClass.getAnnotation(RequestMapping.class);
+            String basePath = requestMapping.value();
+            if (!basePath.startsWith("/")) {
+                basePath = "/" + basePath;
+            }
+            for (Method method : requestMappingClass.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(RequestMapping.class)) {
+                    continue;
+                }
+                RequestMapping methodRequest = method.getAnnotation(RequestMapping.class);
+                String methodPath = methodRequest.value();
+                if (!methodPath.startsWith("/")) {
+                    methodPath = "/" + methodPath;
+                }
+                String url = basePath.endsWith("/") ? basePath + methodPath.substring(1) : basePath + methodPath;
+                // 解析方法里被@RequestParam标记的参数，按声明顺序保存参数名和类型
+                Map<String, Class<?>> methodParams = new LinkedHashMap<>();
+                for (Parameter parameter : method.getParameters()) {
+                    RequestParam param = parameter.getAnnotation(RequestParam.class);
+                    if (param == null) {
+                        throw new RuntimeException("The parameter must have @RequestParam");
+                    }
+                    methodParams.put(param.value(), parameter.getType());
+                }
+                String httpMethod = String.valueOf(methodRequest.method());
+                method.setAccessible(true);
+                RouteMetrics routeMetrics = metricsRegistry.register(httpMethod, url);
+                ControllerMethod controllerMethod = new ControllerMethod(requestMappingClass, method, methodParams, routeMetrics);
+                Route route = new Route(controllerMethod, resolveInterceptors(url, method), initResponseCache(httpMethod, method));
+                if (routeTrie.put(httpMethod, url, route) != null) {
+                    log.warn("duplicate url:{} registration, current class {} method{} will override the former one",
+                            url, requestMappingClass.getName(), method.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * 找出作用于该路由的拦截器，@Throttle生成的限流拦截器排在最前面，被拒绝的请求不再经过其他拦截器
+     */
+    private HandlerInterceptor[] resolveInterceptors(String url, Method method) {
+        List<HandlerInterceptor> interceptors = new ArrayList<>();
+        Throttle throttle = method.getAnnotation(Throttle.class);
+        if (throttle != null) {
+            interceptors.add(new ThrottleInterceptor(throttle.permits()));
+        }
+        for (MappedInterceptor mappedInterceptor : interceptorMappings) {
+            if (mappedInterceptor.matches(url)) {
+                interceptors.add(mappedInterceptor.getInterceptor());
+            }
+        }
+        return interceptors.toArray(new HandlerInterceptor[0]);
+    }
+
+    private TinyLfuCache<String, CachedResponse> initResponseCache(String httpMethod, Method method) {
+        Cacheable cacheable = method.getAnnotation(Cacheable.class);
+        if (cacheable == null) {
+            return null;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (!"GET".equals(httpMethod) || CompletionStage.class.isAssignableFrom(returnType)
+                || Callable.class.isAssignableFrom(returnType) || Publisher.class.isAssignableFrom(returnType)) {
+            // 只缓存幂等的GET请求，异步结果无法在调用时得到响应体，也不缓存
+            log.warn("@Cacheable on {} is ignored, only synchronous GET methods can be cached", method);
+            return null;
+        }
+        return new TinyLfuCache<>(cacheable.maximumSize(), cacheable.ttlSeconds(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean process(RequestProcessorChain requestProcessorChain) throws Exception {
+        String method = requestProcessorChain.getRequestMethod();
+        String path = requestProcessorChain.getRequestPath();
+        Route route = routeTrie.get(method, path);
+        if (route == null) {
+            requestProcessorChain.setResultRender(new ResourceNotFoundResultRender(method, path));
+            return false;
+        }
+        ControllerMethod controllerMethod = route.getControllerMethod();
+        HandlerExecutionChain handlerExecutionChain = new HandlerExecutionChain(route, System.nanoTime());
+        requestProcessorChain.setHandlerExecutionChain(handlerExecutionChain);
+        try {
+            if (!handlerExecutionChain.applyPreHandle(requestProcessorChain)) {
+                return false;
+            }
+            TinyLfuCache<String, CachedResponse> responseCache = route.getResponseCache();
+            if (responseCache != null) {
+                // 命中缓存时不会调用Controller方法，If-None-Match匹配时由渲染器直接回复304
+                String queryString = requestProcessorChain.getRequest().getQueryString();
+                String cacheKey = queryString == null ? path : path + "?" + queryString;
+                CachedResponse cachedResponse = responseCache.get(cacheKey, () -> new CachedResponse(
+                        JsonResultRender.GSON.toJson(invokeControllerMethod(controllerMethod, requestProcessorChain)).getBytes(StandardCharsets.UTF_8)));
+                handlerExecutionChain.applyPostHandle(requestProcessorChain, cachedResponse);
+                requestProcessorChain.setResultRender(new CachedResultRender(cachedResponse));
+            } else {
+                Object result = invokeControllerMethod(controllerMethod, requestProcessorChain);
+                handlerExecutionChain.applyPostHandle(requestProcessorChain, result);
+                if (AsyncResultRender.isAsyncResult(result)) {
+                    requestProcessorChain.setResultRender(new AsyncResultRender(result, asyncExecutor, asyncTimeoutMillis, handlerExecutionChain));
+                } else {
+                    requestProcessorChain.setResultRender(new JsonResultRender(result));
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            handlerExecutionChain.triggerAfterCompletion(requestProcessorChain, e);
+            throw e;
+        }
+    }
+
+    private Object invokeControllerMethod(ControllerMethod controllerMethod, RequestProcessorChain requestProcessorChain) throws Exception {
+        Map<String, String[]> requestParams = requestProcessorChain.getRequest().getParameterMap();
+        List<Object> methodParams = new ArrayList<>();
+        for (Map.Entry<String, Class<?>> entry : controllerMethod.getMethodParameters().entrySet()) {
+            String[] values = requestParams.get(entry.getKey());
+            if (values == null || values.length == 0) {
+                methodParams.add(ConverterUtil.primitiveNull(entry.getValue()));
+            } else {
+                methodParams.add(ConverterUtil.convert(entry.getValue(), values[0]));
+            }
+        }
+        Object controller = beanContainer.getBean(controllerMethod.getControllerClass());
+        Method invokeMethod = controllerMethod.getInvokeMethod();
+        try {
+            return methodParams.isEmpty() ? invokeMethod.invoke(controller) : invokeMethod.invoke(controller, methodParams.toArray());
+        } catch (InvocationTargetException e) {
+            // 解包出Controller方法自身抛出的异常
+            Throwable target = e.getTargetException();
+            throw target instanceof Exception ? (Exception) target : new RuntimeException(target);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.simpleframework.mvc.processor.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.metrics.MetricsRegistry;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.render.impl.JsonResultRender;
+
+/**
+ * 以JSON返回所有路由的指标
+ */
+public class MetricsRequestProcessor implements RequestProcessor {
+    private final String metricsPath;
+    private final MetricsRegistry metricsRegistry;
+
+    public MetricsRequestProcessor(String metricsPath, MetricsRegistry metricsRegistry) {
+        this.metricsPath = metricsPath;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public boolean process(RequestProcessorChain requestProcessorChain) throws Exception {
+        if (!"GET".equals(requestProcessorChain.getRequestMethod()) || !metricsPath.equals(requestProcessorChain.getRequestPath())) {
+            return true;
+        }
+        requestProcessorChain.setResultRender(new JsonResultRender(metricsRegistry.snapshot()));
+        return false;
+    }
+}
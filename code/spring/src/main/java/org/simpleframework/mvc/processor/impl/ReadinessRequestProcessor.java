@@ -0,0 +1,33 @@
+package org.simpleframework.mvc.processor.impl;
+
+import org.simpleframework.lifecycle.LifecycleManager;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.render.impl.JsonResultRender;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+
+/**
+ * 就绪检查: 异步预热全部完成前返回503，之后返回200，供负载均衡判断是否可以转发流量
+ */
+public class ReadinessRequestProcessor implements RequestProcessor {
+    private final String readinessPath;
+    private final LifecycleManager lifecycleManager;
+
+    public ReadinessRequestProcessor(String readinessPath, LifecycleManager lifecycleManager) {
+        this.readinessPath = readinessPath;
+        this.lifecycleManager = lifecycleManager;
+    }
+
+    @Override
+    public boolean process(RequestProcessorChain requestProcessorChain) throws Exception {
+        if (!"GET".equals(requestProcessorChain.getRequestMethod()) || !readinessPath.equals(requestProcessorChain.getRequestPath())) {
+            return true;
+        }
+        boolean ready = lifecycleManager.isReady();
+        requestProcessorChain.setResponseCode(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        requestProcessorChain.setResultRender(new JsonResultRender(Collections.singletonMap("ready", ready)));
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package org.simpleframework.mvc.processor.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.processor.RequestProcessor;
+import org.simpleframework.mvc.render.impl.ResourceNotFoundResultRender;
+import org.simpleframework.mvc.render.impl.StaticResourceResultRender;
+import org.simpleframework.mvc.resource.StaticResource;
+import org.simpleframework.mvc.resource.StaticResourceCache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 静态资源请求处理器，处理路径前缀为staticPrefix的GET/HEAD请求
+ * 客户端的Accept-Encoding允许时，优先返回预先压缩好的.br、.gz兄弟文件，省去每次请求在线压缩
+ */
+@Slf4j
+public class StaticResourceRequestProcessor implements RequestProcessor {
+    private static final String[][] ENCODINGS = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    private final String staticPrefix;
+    private final File root;
+    private final String rootPath;
+    private final StaticResourceCache cache;
+
+    public StaticResourceRequestProcessor(String staticPrefix, File root, StaticResourceCache cache) throws IOException {
+        this.staticPrefix = staticPrefix.endsWith("/") ? staticPrefix : staticPrefix + "/";
+        this.root = root.getCanonicalFile();
+        this.rootPath = this.root.getPath() + File.separator;
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean process(RequestProcessorChain requestProcessorChain) throws Exception {
+        String method = requestProcessorChain.getRequestMethod();
+        String path = requestProcessorChain.getRequestPath();
+        if (!path.startsWith(staticPrefix) || !("GET".equals(method) || "HEAD".equals(method))) {
+            return true;
+        }
+        File file = resolve(path.substring(staticPrefix.length()));
+        if (file == null) {
+            requestProcessorChain.setResultRender(new ResourceNotFoundResultRender(method, path));
+            return false;
+        }
+        String acceptEncoding = requestProcessorChain.getRequest().getHeader("Accept-Encoding");
+        requestProcessorChain.setResultRender(new StaticResourceResultRender(selectVariant(file, acceptEncoding), cache));
+        return false;
+    }
+
+    /**
+     * 把请求路径映射到root下的文件，规范化后不在root目录内的路径(如../)一律视为不存在
+     */
+    private File resolve(String relativePath) throws IOException {
+        if (relativePath.isEmpty()) {
+            return null;
+        }
+        File file = new File(root, relativePath).getCanonicalFile();
+        if (!file.getPath().startsWith(rootPath) || !file.isFile()) {
+            return null;
+        }
+        return file;
+    }
+
+    static StaticResource selectVariant(File file, String acceptEncoding) {
+        for (String[] encoding : ENCODINGS) {
+            if (accepts(acceptEncoding, encoding[0])) {
+                File compressed = new File(file.getPath() + encoding[1]);
+                if (compressed.isFile()) {
+                    return new StaticResource(compressed, file.getName(), encoding[0]);
+                }
+            }
+        }
+        return new StaticResource(file, file.getName(), null);
+    }
+
+    /**
+     * 解析Accept-Encoding，例如"gzip;q=0.8, br"。q=0表示明确拒绝该编码
+     */
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(encoding) && !"*".equals(name)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
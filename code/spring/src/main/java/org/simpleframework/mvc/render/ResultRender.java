@@ -0,0 +1,10 @@
+package org.simpleframework.mvc.render;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+
+/**
+ * 渲染请求结果
+ */
+public interface ResultRender {
+    void render(RequestProcessorChain requestProcessorChain) throws Exception;
+}
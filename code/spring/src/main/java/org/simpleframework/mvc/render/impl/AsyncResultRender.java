@@ -0,0 +1,268 @@
+package org.simpleframework.mvc.render.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.async.AsyncResponseContext;
+import org.simpleframework.mvc.async.NonBlockingBodyWriter;
+import org.simpleframework.mvc.async.Publisher;
+import org.simpleframework.mvc.async.PublisherBodyWriter;
+import org.simpleframework.mvc.async.Subscriber;
+import org.simpleframework.mvc.async.Subscription;
+import org.simpleframework.mvc.interceptor.HandlerExecutionChain;
+import org.simpleframework.mvc.render.ResultRender;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 异步结果渲染器，处理Controller方法返回的CompletionStage、Callable和Publisher
+ * <p>
+ * render只负责startAsync并登记回调，随后容器线程直接返回线程池；
+ * 结果就绪后在配置的执行器上序列化，再通过WriteListener非阻塞地写出。
+ */
+@Slf4j
+public class AsyncResultRender implements ResultRender {
+    private final Object result;
+    private final Executor executor;
+    private final long timeoutMillis;
+    private final HandlerExecutionChain handlerExecutionChain;
+
+    public AsyncResultRender(Object result, Executor executor, long timeoutMillis, HandlerExecutionChain handlerExecutionChain) {
+        this.result = result;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.handlerExecutionChain = handlerExecutionChain;
+    }
+
+    public static boolean isAsyncResult(Object result) {
+        return result instanceof CompletionStage || result instanceof Callable || result instanceof Publisher;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        HttpServletRequest request = requestProcessorChain.getRequest();
+        HttpServletResponse response = requestProcessorChain.getResponse();
+        if (!request.isAsyncSupported()) {
+            // 容器或过滤器没有开启异步支持，只能在当前线程阻塞等待结果，Publisher收集成数组一次写出
+            log.warn("async is not supported for {}, fall back to blocking render", requestProcessorChain.getRequestPath());
+            renderBlocking(requestProcessorChain);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeoutMillis);
+        AsyncResponseContext context = new AsyncResponseContext(asyncContext);
+        // 拦截器的afterCompletion和路由指标推迟到AsyncContext结束时，流式结果也包含在内
+        CompletionListener listener = new CompletionListener(context, requestProcessorChain);
+        asyncContext.addListener(listener);
+        handlerExecutionChain.setAsyncStarted();
+
+        if (result instanceof Publisher) {
+            writePublisher(context, requestProcessorChain.getResponseCode(), listener);
+            return;
+        }
+        int status = requestProcessorChain.getResponseCode();
+        toStage().whenCompleteAsync((value, throwable) -> {
+            if (throwable != null) {
+                listener.failure = toException(unwrap(throwable));
+            }
+            if (!context.tryFinish()) {
+                return;
+            }
+            if (throwable != null) {
+                writeError(context, unwrap(throwable));
+            } else {
+                writeBody(context, status, value);
+            }
+        }, executor);
+    }
+
+    /**
+     * 在当前线程限时等待结果，超时和异步请求超时一样取消上游并返回503；timeoutMillis不大于0时和AsyncContext一样不限时
+     */
+    private void renderBlocking(RequestProcessorChain requestProcessorChain) throws Exception {
+        CompletableFuture<Object> future = toStage().toCompletableFuture();
+        Object value;
+        try {
+            value = timeoutMillis > 0 ? future.get(timeoutMillis, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            requestProcessorChain.getResponse().sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "async request timeout");
+            return;
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+        new JsonResultRender(value).render(requestProcessorChain);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletionStage<Object> toStage() {
+        if (result instanceof CompletionStage) {
+            return (CompletionStage<Object>) result;
+        }
+        if (result instanceof Publisher) {
+            return collect((Publisher<Object>) result);
+        }
+        Callable<Object> callable = (Callable<Object>) result;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * 请求全部元素并收集成List，渲染出的JSON数组和流式写出的相同；返回的future被取消时取消订阅
+     */
+    private CompletionStage<Object> collect(Publisher<Object> publisher) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        List<Object> items = Collections.synchronizedList(new ArrayList<>());
+        Subscriber<Object> collector = new Subscriber<Object>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                future.whenComplete((value, throwable) -> {
+                    if (future.isCancelled()) subscription.cancel();
+                });
+                if (!future.isCancelled()) subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(items);
+            }
+        };
+        executor.execute(() -> {
+            try {
+                publisher.subscribe(collector);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void writeBody(AsyncResponseContext context, int status, Object value) {
+        HttpServletResponse response = context.getResponse();
+        byte[] body = JsonResultRender.GSON.toJson(value).getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType(JsonResultRender.CONTENT_TYPE);
+        response.setContentLength(body.length);
+        try {
+            ServletOutputStream outputStream = response.getOutputStream();
+            outputStream.setWriteListener(new NonBlockingBodyWriter(context, outputStream, body));
+        } catch (IOException e) {
+            log.error("async write error", e);
+            context.complete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writePublisher(AsyncResponseContext context, int status, CompletionListener listener) throws IOException {
+        // 流式写出时由PublisherBodyWriter负责结束请求，这里先占住结束权让超时回调不再写入
+        context.tryFinish();
+        HttpServletResponse response = context.getResponse();
+        response.setStatus(status);
+        response.setContentType(JsonResultRender.CONTENT_TYPE);
+        ServletOutputStream outputStream = response.getOutputStream();
+        PublisherBodyWriter writer = new PublisherBodyWriter(context, outputStream, JsonResultRender.GSON);
+        outputStream.setWriteListener(writer.writeListener());
+        listener.publisherWriter = writer;
+        executor.execute(() -> ((Publisher<Object>) result).subscribe(writer));
+    }
+
+    private void writeError(AsyncResponseContext context, Throwable throwable) {
+        log.error("async controller method error", throwable);
+        try {
+            context.getResponse().sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, throwable.getMessage());
+        } catch (IOException e) {
+            log.error("send error response failed", e);
+        }
+        context.complete();
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static Exception toException(Throwable throwable) {
+        return throwable instanceof Exception ? (Exception) throwable : new RuntimeException(throwable);
+    }
+
+    private class CompletionListener implements AsyncListener {
+        private final AsyncResponseContext context;
+        private final RequestProcessorChain requestProcessorChain;
+        private volatile Exception failure;
+        // 流式结果的写出端，超时或出错时取消上游订阅
+        private volatile PublisherBodyWriter publisherWriter;
+
+        CompletionListener(AsyncResponseContext context, RequestProcessorChain requestProcessorChain) {
+            this.context = context;
+            this.requestProcessorChain = requestProcessorChain;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            failure = new TimeoutException("async request timeout");
+            cancelPublisher();
+            if (context.tryFinish()) {
+                context.getResponse().sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "async request timeout");
+            }
+            context.complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            log.error("async request error", event.getThrowable());
+            failure = toException(event.getThrowable());
+            cancelPublisher();
+            context.tryFinish();
+        }
+
+        private void cancelPublisher() {
+            PublisherBodyWriter writer = publisherWriter;
+            if (writer != null) {
+                writer.cancel();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            handlerExecutionChain.triggerAfterCompletion(requestProcessorChain, failure);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
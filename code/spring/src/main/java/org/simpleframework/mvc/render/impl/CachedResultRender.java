@@ -0,0 +1,36 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+import org.simpleframework.mvc.type.CachedResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+
+/**
+ * 写出缓存的响应，带上ETag；请求携带的If-None-Match与之匹配时只回复304
+ */
+public class CachedResultRender implements ResultRender {
+    private final CachedResponse cachedResponse;
+
+    public CachedResultRender(CachedResponse cachedResponse) {
+        this.cachedResponse = cachedResponse;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        HttpServletResponse response = requestProcessorChain.getResponse();
+        response.setHeader("ETag", cachedResponse.getETag());
+        if (cachedResponse.matches(requestProcessorChain.getRequest().getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] body = cachedResponse.getBody();
+        response.setStatus(requestProcessorChain.getResponseCode());
+        response.setContentType(JsonResultRender.CONTENT_TYPE);
+        response.setContentLength(body.length);
+        try (OutputStream outputStream = response.getOutputStream()) {
+            outputStream.write(body);
+        }
+    }
+}
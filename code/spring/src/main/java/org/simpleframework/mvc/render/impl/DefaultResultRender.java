@@ -0,0 +1,14 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+
+/**
+ * 默认渲染器，只设置状态码
+ */
+public class DefaultResultRender implements ResultRender {
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        requestProcessorChain.getResponse().setStatus(requestProcessorChain.getResponseCode());
+    }
+}
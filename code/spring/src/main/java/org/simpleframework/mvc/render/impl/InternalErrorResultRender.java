@@ -0,0 +1,22 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 内部异常渲染器
+ */
+public class InternalErrorResultRender implements ResultRender {
+    private final String errorMsg;
+
+    public InternalErrorResultRender(String errorMsg) {
+        this.errorMsg = errorMsg;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        requestProcessorChain.getResponse().sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
+    }
+}
@@ -0,0 +1,35 @@
+package org.simpleframework.mvc.render.impl;
+
+import com.google.gson.Gson;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Json渲染器
+ */
+public class JsonResultRender implements ResultRender {
+    public static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+    public static final Gson GSON = new Gson();
+
+    private final Object jsonData;
+
+    public JsonResultRender(Object jsonData) {
+        this.jsonData = jsonData;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        HttpServletResponse response = requestProcessorChain.getResponse();
+        byte[] body = GSON.toJson(jsonData).getBytes(StandardCharsets.UTF_8);
+        response.setStatus(requestProcessorChain.getResponseCode());
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        try (OutputStream outputStream = response.getOutputStream()) {
+            outputStream.write(body);
+        }
+    }
+}
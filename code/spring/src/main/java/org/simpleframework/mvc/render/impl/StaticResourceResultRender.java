@@ -0,0 +1,119 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+import org.simpleframework.mvc.resource.StaticResource;
+import org.simpleframework.mvc.resource.StaticResourceCache;
+import org.simpleframework.mvc.type.ByteRange;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 静态资源渲染器，按以下顺序选择写出方式，全程不为每个请求分配堆上的字节数组：
+ * 1. 容器支持sendfile(Tomcat的org.apache.tomcat.sendfile.support)且文件不在缓存中：只设置请求属性，由容器零拷贝发送
+ * 2. 小文件：从StaticResourceCache的堆外缓冲区写出
+ * 3. 其他：FileChannel.map映射文件后写出
+ * 后两种通过线程复用的分块数组拷贝到ServletOutputStream，因为servlet的输出流只接受byte[]
+ */
+public class StaticResourceResultRender implements ResultRender {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final int CHUNK_SIZE = 8192;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    private final StaticResource resource;
+    private final StaticResourceCache cache;
+
+    public StaticResourceResultRender(StaticResource resource, StaticResourceCache cache) {
+        this.resource = resource;
+        this.cache = cache;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        HttpServletRequest request = requestProcessorChain.getRequest();
+        HttpServletResponse response = requestProcessorChain.getResponse();
+        long length = resource.getLength();
+
+        String mimeType = request.getServletContext().getMimeType(resource.getContentTypeName());
+        response.setContentType(mimeType != null ? mimeType : "application/octet-stream");
+        if (resource.getContentEncoding() != null) {
+            response.setHeader("Content-Encoding", resource.getContentEncoding());
+        }
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setDateHeader("Last-Modified", resource.getLastModified());
+
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        // Last-Modified只精确到秒
+        if (ifModifiedSince != -1 && resource.getLastModified() / 1000 <= ifModifiedSince / 1000) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteRange range = ByteRange.parse(request.getHeader("Range"), length);
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range == null) {
+            range = new ByteRange(0, length - 1);
+            response.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + range.getStart() + "-" + range.getEnd() + "/" + length);
+        }
+        response.setContentLengthLong(range.length());
+        if ("HEAD".equals(request.getMethod()) || range.length() <= 0) {
+            return;
+        }
+
+        boolean cacheable = cache.isCacheable(resource);
+        if (!cacheable && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, resource.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START, range.getStart());
+            request.setAttribute(SENDFILE_END, range.getEnd() + 1);
+            return;
+        }
+        OutputStream outputStream = response.getOutputStream();
+        if (cacheable) {
+            ByteBuffer buffer = cache.get(resource);
+            buffer.position((int) range.getStart());
+            buffer.limit((int) (range.getEnd() + 1));
+            write(buffer, outputStream);
+        } else {
+            try (RandomAccessFile file = new RandomAccessFile(resource.getFile(), "r");
+                 FileChannel channel = file.getChannel()) {
+                // 单次映射不能超过2G，大文件按窗口分段映射
+                long position = range.getStart();
+                long remaining = range.length();
+                while (remaining > 0) {
+                    long size = Math.min(remaining, MAP_WINDOW);
+                    write(channel.map(FileChannel.MapMode.READ_ONLY, position, size), outputStream);
+                    position += size;
+                    remaining -= size;
+                }
+            }
+        }
+        outputStream.flush();
+    }
+
+    private static void write(ByteBuffer buffer, OutputStream outputStream) throws IOException {
+        byte[] chunk = CHUNK.get();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+    }
+}
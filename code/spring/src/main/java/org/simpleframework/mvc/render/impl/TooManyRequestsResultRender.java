@@ -0,0 +1,21 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.render.ResultRender;
+
+/**
+ * 请求被限流时使用的渲染器
+ */
+public class TooManyRequestsResultRender implements ResultRender {
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private final String httpPath;
+
+    public TooManyRequestsResultRender(String path) {
+        this.httpPath = path;
+    }
+
+    @Override
+    public void render(RequestProcessorChain requestProcessorChain) throws Exception {
+        requestProcessorChain.getResponse().sendError(SC_TOO_MANY_REQUESTS, "请求过于频繁：请求路径[" + httpPath + "]");
+    }
+}
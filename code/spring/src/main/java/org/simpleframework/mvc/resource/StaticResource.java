@@ -0,0 +1,27 @@
+package org.simpleframework.mvc.resource;
+
+import lombok.Getter;
+
+import java.io.File;
+
+/**
+ * 一次请求选中的静态资源
+ * file是实际读取的文件，可能是预压缩的.br/.gz兄弟文件；contentTypeName是原始文件名，用来推断Content-Type
+ */
+@Getter
+public class StaticResource {
+    private final File file;
+    private final String contentTypeName;
+    // br、gzip，未压缩时为null
+    private final String contentEncoding;
+    private final long length;
+    private final long lastModified;
+
+    public StaticResource(File file, String contentTypeName, String contentEncoding) {
+        this.file = file;
+        this.contentTypeName = contentTypeName;
+        this.contentEncoding = contentEncoding;
+        this.length = file.length();
+        this.lastModified = file.lastModified();
+    }
+}
@@ -0,0 +1,129 @@
+package org.simpleframework.mvc.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 小的热点静态文件缓存在堆外的direct ByteBuffer中，按总字节数做LRU淘汰
+ * 文件修改时间或长度变化时缓存失效，重新读入
+ * 读入时把内容和读之前的修改时间作为一份快照，和请求看到的文件属性一致才放进缓存，文件正在被替换时不会缓存新旧混杂的内容
+ */
+public class StaticResourceCache {
+    // 读的过程中文件一直在变化时最多读几次
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final long maxFileSize;
+    private final long maxTotalSize;
+    // accessOrder为true的LinkedHashMap，迭代顺序即最久未访问到最近访问
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalSize;
+
+    public StaticResourceCache(long maxFileSize, long maxTotalSize) {
+        this.maxFileSize = maxFileSize;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    public boolean isCacheable(StaticResource resource) {
+        return resource.getLength() <= maxFileSize;
+    }
+
+    /**
+     * 返回文件内容的只读视图，每个调用方拿到独立的position/limit，共享同一块堆外内存
+     */
+    public ByteBuffer get(StaticResource resource) throws IOException {
+        String key = resource.getFile().getPath();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.matches(resource)) {
+                return entry.buffer.duplicate();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 读文件放在锁外，避免慢磁盘阻塞其他请求的命中
+        Entry loaded = load(resource.getFile());
+        ByteBuffer buffer = loaded.buffer;
+        if (!loaded.matches(resource)) {
+            // 请求之后文件被改写了，读到的不是请求看到的那个版本，不缓存；长度变了时响应头已经对不上，只能失败
+            if (buffer.capacity() != resource.getLength()) {
+                throw new IOException("static resource changed while reading: " + resource.getFile());
+            }
+            return buffer.duplicate();
+        }
+        lock.lock();
+        try {
+            Entry old = entries.put(key, loaded);
+            if (old != null) {
+                totalSize -= old.buffer.capacity();
+            }
+            totalSize += buffer.capacity();
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (totalSize > maxTotalSize && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                totalSize -= eldest.buffer.capacity();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return buffer.duplicate();
+    }
+
+    public long getTotalSize() {
+        lock.lock();
+        try {
+            return totalSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读之前记下修改时间，读完再确认长度和修改时间都没变，否则说明读的过程中文件被改写，重新读
+     */
+    private static Entry load(File file) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long lastModified = file.lastModified();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                long size = channel.size();
+                ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (buffer.limit() == size && channel.size() == size && file.lastModified() == lastModified) {
+                    return new Entry(buffer.asReadOnlyBuffer(), lastModified);
+                }
+            }
+            if (attempt >= MAX_LOAD_ATTEMPTS) {
+                throw new IOException("static resource keeps changing while reading: " + file);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final ByteBuffer buffer;
+        private final long lastModified;
+
+        Entry(ByteBuffer buffer, long lastModified) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(StaticResource resource) {
+            return lastModified == resource.getLastModified() && buffer.capacity() == resource.getLength();
+        }
+    }
+}
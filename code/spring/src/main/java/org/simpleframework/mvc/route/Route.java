@@ -0,0 +1,21 @@
+package org.simpleframework.mvc.route;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.simpleframework.cache.TinyLfuCache;
+import org.simpleframework.mvc.interceptor.HandlerInterceptor;
+import org.simpleframework.mvc.type.CachedResponse;
+import org.simpleframework.mvc.type.ControllerMethod;
+
+/**
+ * 路由树的叶子，保存请求处理所需的一切，都在启动时确定好
+ */
+@Getter
+@AllArgsConstructor
+public class Route {
+    private final ControllerMethod controllerMethod;
+    // 按执行顺序排好的拦截器，请求时不再做路径匹配
+    private final HandlerInterceptor[] interceptors;
+    // 被@Cacheable标记的GET方法的响应缓存，key为请求路径加查询串，没有则为null
+    private final TinyLfuCache<String, CachedResponse> responseCache;
+}
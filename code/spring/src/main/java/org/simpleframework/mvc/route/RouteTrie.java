@@ -0,0 +1,44 @@
+package org.simpleframework.mvc.route;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按路径段组织的路由树，每个节点下再按请求方法存放Route
+ * 只在启动时写入，之后只读，所以用普通HashMap；查找时逐段下降，空段(连续的/和末尾的/)会被忽略
+ */
+public class RouteTrie {
+    private final Node root = new Node();
+
+    public Route put(String httpMethod, String path, Route route) {
+        Node node = root;
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        return node.routes.put(httpMethod, route);
+    }
+
+    public Route get(String httpMethod, String path) {
+        Node node = root;
+        int length = path.length();
+        int start = 0;
+        while (start < length && node != null) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node == null ? null : node.routes.get(httpMethod);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final Map<String, Route> routes = new HashMap<>(4);
+    }
+}
@@ -0,0 +1,70 @@
+package org.simpleframework.mvc.type;
+
+import lombok.Getter;
+
+/**
+ * 请求头Range中的单个字节区间，start和end都是闭区间下标
+ */
+@Getter
+public class ByteRange {
+    // 区间无法满足时使用，对应416
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * 解析Range头，只支持单个区间：bytes=start-end、bytes=start-、bytes=-suffixLength
+     * 没有Range头、格式不合法或者请求了多个区间时返回null，调用方按完整内容返回(RFC 7233允许忽略Range)
+     */
+    public static ByteRange parse(String header, long contentLength) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 后缀区间：最后suffixLength个字节
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, contentLength - suffixLength);
+                end = contentLength - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = contentLength - 1;
+                if (!last.isEmpty()) {
+                    long lastPosition = Long.parseLong(last);
+                    if (lastPosition < start) {
+                        return null;
+                    }
+                    end = Math.min(lastPosition, end);
+                }
+            }
+            if (start >= contentLength) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.simpleframework.mvc.type;
+
+import lombok.Getter;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * 缓存的Controller响应：序列化后的响应体和由响应体计算出的强ETag
+ */
+@Getter
+public class CachedResponse {
+    private final byte[] body;
+    private final String eTag;
+
+    public CachedResponse(byte[] body) {
+        this.body = body;
+        this.eTag = "\"" + digest(body) + "\"";
+    }
+
+    /**
+     * If-None-Match可能是"*"，或者逗号分隔的多个ETag，比较时忽略弱校验前缀W/
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || eTag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(body);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
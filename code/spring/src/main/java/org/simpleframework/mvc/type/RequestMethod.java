@@ -0,0 +1,6 @@
+package org.simpleframework.mvc.type;
+
+public enum RequestMethod {
+    GET,
+    POST
+}
@@ -0,0 +1,440 @@
+package org.simpleframework.reload;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.cache.CacheWeaver;
+import org.simpleframework.config.ConfigBinder;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.DependencyResolver;
+import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.inject.annotation.Qualifier;
+import org.simpleframework.util.ClassUtil;
+import tongji.java.util.concurrent.locks.ReentrantLock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * bean热加载: 监听扫描目录下的class文件，只重新加载变化的bean和必须跟着换的依赖方，不用重启整个容器
+ * <p>
+ * 1. WatchService监听ClassUtil扫描的各个目录，编译器会连续写多个文件，事件停止QUIET_MILLIS后再按CRC32找出真正变化的类
+ * 2. 变化的bean类用新的ReloadClassLoader重新定义，得到的是一个新的类
+ * 3. 反向依赖索引记录每个bean被注入到了哪些bean的哪个字段(按引用相同查找，构造器注入存下来的字段也包括在内)，
+ * @Autowired的List/Set/Map字段按其中的元素记录。
+ * 字段类型(集合字段看元素类型)是接口或者没有变化的父类时，新实例可以直接注入，集合字段按容器中当前的bean重新组装；
+ * 字段类型就是被重新加载的类时，依赖方也必须用新的类加载器重新加载，这样它的字段类型才是新的类，依此类推直到不再扩大
+ * 4. 新实例全部创建并注入完成后才替换容器中的bean、更新依赖方的字段，正在执行的调用继续使用旧实例；任何一步失败都不改动容器
+ * <p>
+ * 限制: 只重新加载已有的bean，新增的类需要重启；被重新加载的bean在容器中以新的类为key，按旧的具体类查找会找不到，
+ * 需要热加载的bean应当通过接口依赖和查找。
+ */
+@Slf4j
+public class HotReloader implements Closeable {
+    private static final long QUIET_MILLIS = 200;
+
+    private final BeanContainer beanContainer;
+    private final String scanPackage;
+    // 新实例注入完成后绑定配置字段，旧实例解除绑定
+    private final ConfigBinder configBinder;
+    private final CacheWeaver cacheWeaver = new CacheWeaver();
+    private final List<Consumer<Set<Class<?>>>> listeners = new CopyOnWriteArrayList<>();
+    // 热加载串行执行，下面的状态都在reloadLock下访问
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private Map<String, Long> checksums;
+    // 被依赖的bean的类 -> 引用了它的字段
+    private Map<Class<?>, List<Injection>> dependents;
+
+    private WatchService watchService;
+    private volatile Thread watcher;
+
+    /**
+     * targetClass对应的bean的field字段引用了另一个bean
+     */
+    @AllArgsConstructor
+    private static class Injection {
+        private final Class<?> targetClass;
+        private final Field field;
+        // 字段声明的依赖类型，集合字段是元素类型
+        private final Class<?> dependencyType;
+        private final boolean collection;
+    }
+
+    /**
+     * 在容器完成依赖注入之后创建，此时记录class文件的校验和并建立反向依赖索引
+     */
+    public HotReloader(BeanContainer beanContainer, String scanPackage) {
+        this(beanContainer, scanPackage, null);
+    }
+
+    public HotReloader(BeanContainer beanContainer, String scanPackage, ConfigBinder configBinder) {
+        this.beanContainer = beanContainer;
+        this.scanPackage = scanPackage;
+        this.configBinder = configBinder;
+        this.checksums = ClassUtil.extractPackageClassChecksums(scanPackage);
+        if (checksums == null) {
+            throw new RuntimeException("hot reload only supports packages in file directories: " + scanPackage);
+        }
+        this.dependents = buildDependents();
+    }
+
+    /**
+     * 每次热加载成功后以新的类为参数回调，比如让路由表重新解析重新加载过的Controller
+     */
+    public void addReloadListener(Consumer<Set<Class<?>>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 启动后台监听线程(守护线程)
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) throw new IllegalStateException("HotReloader has been started");
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<File> directories = new HashSet<>();
+        for (File file : ClassUtil.extractPackageClassFiles(scanPackage).values()) {
+            directories.add(file.getParentFile());
+        }
+        for (File directory : directories) {
+            directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        Thread t = new Thread(this::watch, "hot-reload-watcher");
+        t.setDaemon(true);
+        watcher = t;
+        t.start();
+        log.info("hot reload is watching {} directories of {}", directories.size(), scanPackage);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        Thread t = watcher;
+        watcher = null;
+        if (watchService != null) {
+            // take()中的监听线程会抛出ClosedWatchServiceException退出
+            watchService.close();
+        }
+        if (t != null) t.interrupt();
+    }
+
+    private void watch() {
+        Thread self = Thread.currentThread();
+        try {
+            while (watcher == self) {
+                drain(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                try {
+                    checkForChanges();
+                } catch (RuntimeException e) {
+                    log.error("hot reload error", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭
+        }
+    }
+
+    private static void drain(WatchKey key) {
+        key.pollEvents();
+        key.reset();
+    }
+
+    /**
+     * 按CRC32找出内容变化的类并重新加载，也可以不启动监听线程直接调用
+     *
+     * @return 重新加载得到的新类，没有需要重新加载的bean时为空
+     */
+    public Set<Class<?>> checkForChanges() {
+        reloadLock.lock();
+        try {
+            Map<String, Long> current = ClassUtil.extractPackageClassChecksums(scanPackage);
+            if (current == null) return Collections.emptySet();
+            Set<String> changed = new LinkedHashSet<>();
+            for (Map.Entry<String, Long> e : current.entrySet()) {
+                Long old = checksums.get(e.getKey());
+                if (old == null) {
+                    log.info("new class {} is ignored by hot reload, restart to load it", e.getKey());
+                } else if (!old.equals(e.getValue())) {
+                    changed.add(e.getKey());
+                }
+            }
+            // 重新加载失败时同样更新，等下一次修改再触发，而不是对着同一个有问题的class文件反复重试
+            checksums = current;
+            if (changed.isEmpty()) return Collections.emptySet();
+            return reload(changed);
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Set<Class<?>> reload(Set<String> changed) {
+        long start = System.nanoTime();
+        Map<String, Class<?>> beansByName = new HashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            beansByName.put(clazz.getName(), clazz);
+        }
+        Set<Class<?>> reloadBeans = new LinkedHashSet<>();
+        for (String className : changed) {
+            Class<?> clazz = beansByName.get(className);
+            // Repository接口的代理绑定着数据存储，不热加载
+            if (clazz != null && !clazz.isInterface()) reloadBeans.add(clazz);
+        }
+        if (reloadBeans.isEmpty()) {
+            log.info("changed classes {} are not beans, nothing to reload", changed);
+            return Collections.emptySet();
+        }
+        Map<String, File> classFiles = ClassUtil.extractPackageClassFiles(scanPackage);
+        Set<String> reloadNames = expand(reloadBeans, changed, classFiles.keySet());
+        Map<String, File> reloadFiles = new HashMap<>();
+        for (String className : reloadNames) {
+            File file = classFiles.get(className);
+            if (file != null) reloadFiles.put(className, file);
+        }
+        ReloadClassLoader classLoader = new ReloadClassLoader(ClassUtil.getClassLoader(), reloadFiles);
+
+        // 1.用新的类创建并注入所有新实例，这期间容器保持不变
+        Map<Class<?>, Class<?>> newClasses = new LinkedHashMap<>();
+        for (Class<?> oldClass : reloadBeans) {
+            try {
+                newClasses.put(oldClass, classLoader.loadClass(oldClass.getName()));
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.error("reload class {} error, keep the old beans", oldClass.getName(), e);
+                return Collections.emptySet();
+            }
+        }
+        Map<Class<?>, Object> fresh = new LinkedHashMap<>();
+        try {
+            for (Class<?> newClass : newClasses.values()) {
+                freshBean(newClass, newClasses, fresh, new ArrayDeque<>());
+            }
+            for (Map.Entry<Class<?>, Object> e : fresh.entrySet()) {
+                populateBean(e.getKey(), e.getValue(), newClasses, fresh);
+            }
+            if (configBinder != null) {
+                for (Map.Entry<Class<?>, Object> e : fresh.entrySet()) {
+                    configBinder.bind(e.getKey(), e.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("create reloaded beans {} error, keep the old beans", newClasses.keySet(), e);
+            if (configBinder != null) {
+                fresh.values().forEach(configBinder::unbind);
+            }
+            return Collections.emptySet();
+        }
+
+        // 2.替换容器中的bean，再把新实例注入到没有重新加载的依赖方
+        for (Map.Entry<Class<?>, Class<?>> e : newClasses.entrySet()) {
+            if (configBinder != null) {
+                configBinder.unbind(beanContainer.getBean(e.getKey()));
+            }
+            beanContainer.replaceBean(e.getKey(), e.getValue(), fresh.get(e.getValue()));
+        }
+        int reinjected = 0;
+        // 一个集合字段可能包含多个被替换的bean，只重新组装一次
+        Map<Field, Class<?>> collections = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, Class<?>> e : newClasses.entrySet()) {
+            Object bean = fresh.get(e.getValue());
+            for (Injection injection : dependents.getOrDefault(e.getKey(), Collections.emptyList())) {
+                if (newClasses.containsKey(injection.targetClass)) continue;
+                if (injection.collection) {
+                    collections.put(injection.field, injection.targetClass);
+                    continue;
+                }
+                ClassUtil.setField(injection.field, beanContainer.getBean(injection.targetClass), bean, true);
+                reinjected++;
+            }
+        }
+        if (!collections.isEmpty()) {
+            List<Class<?>> current = new ArrayList<>(beanContainer.getClasses());
+            DependencyResolver resolver = new DependencyResolver(() -> current);
+            for (Map.Entry<Field, Class<?>> e : collections.entrySet()) {
+                Field field = e.getKey();
+                String qualifier = DependencyResolver.qualifier(field.getAnnotation(Qualifier.class), field.getAnnotation(Autowired.class).value());
+                Object value = resolver.resolve(field.getGenericType(), qualifier).toValue(beanContainer::getBean);
+                ClassUtil.setField(field, beanContainer.getBean(e.getValue()), value, true);
+                reinjected++;
+            }
+        }
+        dependents = buildDependents();
+        Set<Class<?>> reloaded = Collections.unmodifiableSet(new LinkedHashSet<>(newClasses.values()));
+        log.info("reloaded beans {} (changed {}), reinjected {} fields in {} ms", newClasses.keySet(), changed, reinjected,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        for (Consumer<Set<Class<?>>> listener : listeners) {
+            try {
+                listener.accept(reloaded);
+            } catch (RuntimeException e) {
+                log.error("hot reload listener error", e);
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * 从变化的bean出发沿反向依赖索引扩大需要重新加载的范围，直到不再变化
+     *
+     * @return 需要由新的类加载器定义的类名: 变化的类、需要重新加载的bean以及它们的内部类
+     */
+    private Set<String> expand(Set<Class<?>> reloadBeans, Set<String> changed, Set<String> classNames) {
+        Set<String> reloadNames = new HashSet<>(changed);
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (Class<?> clazz : reloadBeans) {
+                reloadNames.add(clazz.getName());
+            }
+            for (String className : classNames) {
+                int index = className.indexOf('$');
+                if (index > 0 && reloadNames.contains(className.substring(0, index))) {
+                    reloadNames.add(className);
+                }
+            }
+            for (Class<?> clazz : new ArrayList<>(reloadBeans)) {
+                for (Injection injection : dependents.getOrDefault(clazz, Collections.emptyList())) {
+                    if (reloadNames.contains(injection.dependencyType.getName()) && reloadBeans.add(injection.targetClass)) {
+                        grown = true;
+                    }
+                }
+            }
+        }
+        return reloadNames;
+    }
+
+    private Object freshBean(Class<?> newClass, Map<Class<?>, Class<?>> newClasses, Map<Class<?>, Object> fresh, Deque<Class<?>> creating) {
+        Object bean = fresh.get(newClass);
+        if (bean != null) return bean;
+        if (creating.contains(newClass)) {
+            throw new RuntimeException("unresolvable circular dependency while reloading " + newClass.getName());
+        }
+        creating.push(newClass);
+        try {
+            Constructor<?> constructor = autowiredConstructor(newClass);
+            if (constructor == null) {
+                bean = cacheWeaver.createProxy(newClass);
+                if (bean == null) bean = ClassUtil.newInstance(newClass, true);
+            } else {
+                String autowiredValue = constructor.getAnnotation(Autowired.class).value();
+                Type[] parameterTypes = constructor.getGenericParameterTypes();
+                Parameter[] parameters = constructor.getParameters();
+                Object[] args = new Object[parameterTypes.length];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    String qualifier = DependencyResolver.qualifier(parameters[i].getAnnotation(Qualifier.class), autowiredValue);
+                    args[i] = resolve(parameterTypes[i], qualifier, newClasses, fresh, creating);
+                }
+                try {
+                    constructor.setAccessible(true);
+                    bean = constructor.newInstance(args);
+                } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                    throw new RuntimeException("create bean " + newClass.getName() + " error", e);
+                }
+            }
+            fresh.put(newClass, bean);
+            return bean;
+        } finally {
+            creating.pop();
+        }
+    }
+
+    private void populateBean(Class<?> newClass, Object bean, Map<Class<?>, Class<?>> newClasses, Map<Class<?>, Object> fresh) {
+        for (Field field : newClass.getDeclaredFields()) {
+            Autowired autowired = field.getAnnotation(Autowired.class);
+            if (autowired == null) continue;
+            String qualifier = DependencyResolver.qualifier(field.getAnnotation(Qualifier.class), autowired.value());
+            Object value = resolve(field.getGenericType(), qualifier, newClasses, fresh, new ArrayDeque<>());
+            ClassUtil.setField(field, bean, value, true);
+        }
+    }
+
+    /**
+     * 和DependencyInjector使用同样的规则查找依赖，候选是新创建的bean和没有被替换的旧bean
+     */
+    private Object resolve(Type type, String qualifier, Map<Class<?>, Class<?>> newClasses, Map<Class<?>, Object> fresh, Deque<Class<?>> creating) {
+        List<Class<?>> candidates = new ArrayList<>(newClasses.values());
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            if (!newClasses.containsKey(clazz)) candidates.add(clazz);
+        }
+        Object value = new DependencyResolver(() -> candidates).resolve(type, qualifier)
+                .toValue(chosen -> newClasses.containsValue(chosen) ? freshBean(chosen, newClasses, fresh, creating) : beanContainer.getBean(chosen));
+        if (value == null) {
+            throw new RuntimeException("can not resolve bean of " + type.getTypeName() + " while reloading");
+        }
+        return value;
+    }
+
+    private static Constructor<?> autowiredConstructor(Class<?> clazz) {
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Autowired.class)) return constructor;
+        }
+        return null;
+    }
+
+    /**
+     * 反向依赖索引: 扫描每个bean的实例字段，值是容器中的某个bean时记为一次依赖；
+     * @Autowired的集合字段中的每个bean各记一次
+     */
+    private Map<Class<?>, List<Injection>> buildDependents() {
+        Map<Object, Class<?>> beanToClass = new IdentityHashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            beanToClass.put(beanContainer.getBean(clazz), clazz);
+        }
+        Map<Class<?>, List<Injection>> index = new HashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            Object bean = beanContainer.getBean(clazz);
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                field.setAccessible(true);
+                Object value;
+                try {
+                    value = field.get(bean);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+                Class<?> elementClass = DependencyResolver.elementClass(field.getGenericType());
+                if (elementClass != null && value != null && field.isAnnotationPresent(Autowired.class)) {
+                    Collection<?> elements = value instanceof Map ? ((Map<?, ?>) value).values() : (Collection<?>) value;
+                    for (Object element : elements) {
+                        Class<?> dependency = beanToClass.get(element);
+                        if (dependency != null) {
+                            index.computeIfAbsent(dependency, k -> new ArrayList<>()).add(new Injection(clazz, field, elementClass, true));
+                        }
+                    }
+                    continue;
+                }
+                Class<?> dependency = value == null ? null : beanToClass.get(value);
+                if (dependency != null) {
+                    index.computeIfAbsent(dependency, k -> new ArrayList<>()).add(new Injection(clazz, field, field.getType(), false));
+                }
+            }
+        }
+        return index;
+    }
+}
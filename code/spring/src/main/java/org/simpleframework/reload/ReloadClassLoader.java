@@ -0,0 +1,48 @@
+package org.simpleframework.reload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * 热加载用的类加载器: 指定的类从class文件重新定义(子优先)，其余的委托给父加载器
+ * 每次热加载都新建一个，旧版本的类在旧bean不再被引用后和旧的加载器一起被回收
+ */
+class ReloadClassLoader extends ClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    // 类名 -> class文件
+    private final Map<String, File> classFiles;
+
+    ReloadClassLoader(ClassLoader parent, Map<String, File> classFiles) {
+        super(parent);
+        this.classFiles = classFiles;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        File file = classFiles.get(name);
+        if (file == null) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(file.toPath());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package org.simpleframework.snapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.DependencyResolver;
+import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.inject.annotation.Qualifier;
+import org.simpleframework.util.ClassUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 容器快照: 记录一次完整启动后解析出的bean图，之后的启动直接回放，跳过扫描、过滤和依赖解析
+ * <p>
+ * 记录的内容:
+ * 1. 扫描包下所有class文件的CRC32，回放前逐一比对，类增删或者任何一个class文件变了(比如加了注解)快照就失效
+ * 2. bean的类名，按创建顺序排列(被依赖的在前)
+ * 3. 字段注入关系: 哪个bean的哪个字段注入了哪个bean
+ * 4. 集合注入关系: 哪个bean的List/Set/Map字段注入了哪些bean，回放时按字段的类型和@Qualifier在这些bean中重新组装集合
+ * <p>
+ * 文件格式(DataOutputStream): 魔数、版本、扫描包名、class文件数 + (类名, CRC32)、bean数 + 类名、注入数 + (目标bean序号, 字段名, 来源bean序号)、
+ * 集合注入数 + (目标bean序号, 字段名, 来源bean数 + 来源bean序号)
+ * <p>
+ * 写快照时在旁边生成一个同名的.classlist文件，列出bean及其依赖的类，格式是AppCDS的类列表:
+ * java -Xshare:dump -XX:SharedClassListFile=app.snapshot.classlist -XX:SharedArchiveFile=app.jsa -cp ...
+ * 之后用-XX:SharedArchiveFile=app.jsa启动，这些类直接从共享归档映射进来，省掉解析和校验
+ */
+@Slf4j
+@Getter
+public class ContainerSnapshot {
+    private static final int MAGIC = 0x544A4353;
+    private static final int VERSION = 2;
+    public static final String CLASS_LIST_SUFFIX = ".classlist";
+
+    private final String scanPackage;
+    // 类名 -> class文件的CRC32
+    private final Map<String, Long> checksums;
+    // 按创建顺序
+    private final List<String> beanClassNames;
+    private final List<FieldWiring> wirings;
+    private final List<CollectionWiring> collectionWirings;
+
+    /**
+     * targetClass的fieldName字段注入了beanClass对应的bean
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class FieldWiring {
+        private final String targetClass;
+        private final String fieldName;
+        private final String beanClass;
+    }
+
+    /**
+     * targetClass的集合字段fieldName注入了beanClasses对应的bean
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CollectionWiring {
+        private final String targetClass;
+        private final String fieldName;
+        private final List<String> beanClasses;
+    }
+
+    ContainerSnapshot(String scanPackage, Map<String, Long> checksums, List<String> beanClassNames, List<FieldWiring> wirings,
+                      List<CollectionWiring> collectionWirings) {
+        this.scanPackage = scanPackage;
+        this.checksums = Collections.unmodifiableMap(checksums);
+        this.beanClassNames = Collections.unmodifiableList(beanClassNames);
+        this.wirings = Collections.unmodifiableList(wirings);
+        this.collectionWirings = Collections.unmodifiableList(collectionWirings);
+    }
+
+    /**
+     * 在loadBeans、doCache、doIoc都完成后调用，从容器里当前的bean和它们@Autowired字段的值还原出bean图
+     */
+    public static ContainerSnapshot record(BeanContainer beanContainer, String scanPackage) {
+        if (!beanContainer.getDeferredClasses().isEmpty()) {
+            // 快照只记录成员变量注入，构造器注入的bean回放时无法按无参构造器创建
+            throw new RuntimeException("can not record snapshot for constructor injected beans " + beanContainer.getDeferredClasses());
+        }
+        Map<String, Long> checksums = ClassUtil.extractPackageClassChecksums(scanPackage);
+        if (checksums == null) {
+            throw new RuntimeException("can not record snapshot for package " + scanPackage + ", only file protocol is supported");
+        }
+        // bean实例 -> 它在容器中的类，cglib代理也能找回原来的类
+        Map<Object, Class<?>> beanToClass = new IdentityHashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            beanToClass.put(beanContainer.getBean(clazz), clazz);
+        }
+        List<FieldWiring> wirings = new ArrayList<>();
+        List<CollectionWiring> collectionWirings = new ArrayList<>();
+        Map<Class<?>, List<Class<?>>> dependencies = new HashMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            Object bean = beanContainer.getBean(clazz);
+            List<Class<?>> deps = new ArrayList<>();
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(Autowired.class)) continue;
+                Object value = getField(field, bean);
+                if (DependencyResolver.elementClass(field.getGenericType()) != null && value != null) {
+                    Collection<?> elements = value instanceof Map ? ((Map<?, ?>) value).values() : (Collection<?>) value;
+                    List<String> beanClasses = new ArrayList<>(elements.size());
+                    for (Object element : elements) {
+                        Class<?> beanClass = beanToClass.get(element);
+                        if (beanClass == null) {
+                            throw new RuntimeException("field " + field + " contains " + element + " which is not a bean in the container");
+                        }
+                        beanClasses.add(beanClass.getName());
+                        deps.add(beanClass);
+                    }
+                    collectionWirings.add(new CollectionWiring(clazz.getName(), field.getName(), beanClasses));
+                    continue;
+                }
+                Class<?> beanClass = value == null ? null : beanToClass.get(value);
+                if (beanClass == null) {
+                    throw new RuntimeException("field " + field + " is not wired to a bean in the container");
+                }
+                wirings.add(new FieldWiring(clazz.getName(), field.getName(), beanClass.getName()));
+                deps.add(beanClass);
+            }
+            dependencies.put(clazz, deps);
+        }
+        List<String> order = new ArrayList<>();
+        Set<Class<?>> visited = new LinkedHashSet<>();
+        // 按类名遍历，保证同样的bean图每次得到同样的顺序
+        Map<String, Class<?>> sorted = new TreeMap<>();
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            sorted.put(clazz.getName(), clazz);
+        }
+        for (Class<?> clazz : sorted.values()) {
+            topologicalOrder(clazz, dependencies, visited, order);
+        }
+        return new ContainerSnapshot(scanPackage, checksums, order, wirings, collectionWirings);
+    }
+
+    /**
+     * 深度优先，依赖先于依赖它的bean加入；字段注入允许循环依赖，遇到已访问的直接跳过
+     */
+    private static void topologicalOrder(Class<?> clazz, Map<Class<?>, List<Class<?>>> dependencies, Set<Class<?>> visited, List<String> order) {
+        if (!visited.add(clazz)) return;
+        for (Class<?> dep : dependencies.getOrDefault(clazz, Collections.emptyList())) {
+            topologicalOrder(dep, dependencies, visited, order);
+        }
+        order.add(clazz.getName());
+    }
+
+    private static Object getField(Field field, Object target) {
+        field.setAccessible(true);
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 扫描包相同，并且包下的class文件和记录时完全一致
+     */
+    public boolean isValid(String scanPackage) {
+        return this.scanPackage.equals(scanPackage) && checksums.equals(ClassUtil.extractPackageClassChecksums(scanPackage));
+    }
+
+    /**
+     * 回放注入关系，代替DependencyInjector.doIoc；bean已经由BeanContainer.loadBeans(snapshot)创建好
+     */
+    public void inject(BeanContainer beanContainer) {
+        for (FieldWiring wiring : wirings) {
+            Class<?> targetClass = ClassUtil.loadClass(wiring.getTargetClass());
+            Object target = beanContainer.getBean(targetClass);
+            Object bean = beanContainer.getBean(ClassUtil.loadClass(wiring.getBeanClass()));
+            if (target == null || bean == null) {
+                throw new RuntimeException("snapshot wiring " + wiring.getTargetClass() + "." + wiring.getFieldName() + " refers to a missing bean");
+            }
+            ClassUtil.setField(field(targetClass, wiring.getFieldName()), target, bean, true);
+        }
+        for (CollectionWiring wiring : collectionWirings) {
+            Class<?> targetClass = ClassUtil.loadClass(wiring.getTargetClass());
+            Object target = beanContainer.getBean(targetClass);
+            List<Class<?>> beanClasses = new ArrayList<>(wiring.getBeanClasses().size());
+            for (String className : wiring.getBeanClasses()) {
+                Class<?> beanClass = ClassUtil.loadClass(className);
+                if (beanContainer.getBean(beanClass) == null) target = null;
+                beanClasses.add(beanClass);
+            }
+            if (target == null) {
+                throw new RuntimeException("snapshot wiring " + wiring.getTargetClass() + "." + wiring.getFieldName() + " refers to a missing bean");
+            }
+            // 候选只有记录下来的bean，按字段的类型和名字重新组装成List/Set/Map，顺序和Map的key与DependencyInjector一致
+            Field field = field(targetClass, wiring.getFieldName());
+            String qualifier = DependencyResolver.qualifier(field.getAnnotation(Qualifier.class), field.getAnnotation(Autowired.class).value());
+            Object value = new DependencyResolver(() -> beanClasses).resolve(field.getGenericType(), qualifier).toValue(beanContainer::getBean);
+            ClassUtil.setField(field, target, value, true);
+        }
+    }
+
+    private static Field field(Class<?> targetClass, String fieldName) {
+        try {
+            return targetClass.getDeclaredField(fieldName);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException("snapshot refers to missing field " + targetClass.getName() + "." + fieldName);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        Map<String, Integer> beanIndex = new HashMap<>();
+        for (int i = 0; i < beanClassNames.size(); i++) {
+            beanIndex.put(beanClassNames.get(i), i);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(scanPackage);
+            out.writeInt(checksums.size());
+            for (Map.Entry<String, Long> e : checksums.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+            out.writeInt(beanClassNames.size());
+            for (String className : beanClassNames) {
+                out.writeUTF(className);
+            }
+            out.writeInt(wirings.size());
+            for (FieldWiring wiring : wirings) {
+                out.writeInt(beanIndex.get(wiring.getTargetClass()));
+                out.writeUTF(wiring.getFieldName());
+                out.writeInt(beanIndex.get(wiring.getBeanClass()));
+            }
+            out.writeInt(collectionWirings.size());
+            for (CollectionWiring wiring : collectionWirings) {
+                out.writeInt(beanIndex.get(wiring.getTargetClass()));
+                out.writeUTF(wiring.getFieldName());
+                out.writeInt(wiring.getBeanClasses().size());
+                for (String beanClass : wiring.getBeanClasses()) {
+                    out.writeInt(beanIndex.get(beanClass));
+                }
+            }
+        }
+        writeClassList(new File(file.getPath() + CLASS_LIST_SUFFIX));
+    }
+
+    /**
+     * AppCDS类列表，每行一个用/分隔的类名
+     */
+    private void writeClassList(File file) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>(beanClassNames);
+        for (FieldWiring wiring : wirings) {
+            classNames.add(wiring.getBeanClass());
+        }
+        for (CollectionWiring wiring : collectionWirings) {
+            classNames.addAll(wiring.getBeanClasses());
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (String className : classNames) {
+                writer.write(className.replace('.', '/'));
+                writer.write('\n');
+            }
+        }
+    }
+
+    public static ContainerSnapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a container snapshot: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("unsupported container snapshot version " + version);
+            String scanPackage = in.readUTF();
+            int classCount = in.readInt();
+            Map<String, Long> checksums = new LinkedHashMap<>();
+            for (int i = 0; i < classCount; i++) {
+                checksums.put(in.readUTF(), in.readLong());
+            }
+            int beanCount = in.readInt();
+            List<String> beanClassNames = new ArrayList<>(beanCount);
+            for (int i = 0; i < beanCount; i++) {
+                beanClassNames.add(in.readUTF());
+            }
+            int wiringCount = in.readInt();
+            List<FieldWiring> wirings = new ArrayList<>(wiringCount);
+            for (int i = 0; i < wiringCount; i++) {
+                String target = beanClassNames.get(in.readInt());
+                String fieldName = in.readUTF();
+                String bean = beanClassNames.get(in.readInt());
+                wirings.add(new FieldWiring(target, fieldName, bean));
+            }
+            int collectionCount = in.readInt();
+            List<CollectionWiring> collectionWirings = new ArrayList<>(collectionCount);
+            for (int i = 0; i < collectionCount; i++) {
+                String target = beanClassNames.get(in.readInt());
+                String fieldName = in.readUTF();
+                int size = in.readInt();
+                List<String> beans = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    beans.add(beanClassNames.get(in.readInt()));
+                }
+                collectionWirings.add(new CollectionWiring(target, fieldName, beans));
+            }
+            return new ContainerSnapshot(scanPackage, checksums, beanClassNames, wirings, collectionWirings);
+        }
+    }
+
+    /**
+     * 读取快照并校验，文件不存在、损坏或者已经过期都返回null，调用者退回到正常的扫描流程
+     */
+    public static ContainerSnapshot loadIfValid(File file, String scanPackage) {
+        if (!file.isFile()) return null;
+        try {
+            ContainerSnapshot snapshot = read(file);
+            if (snapshot.isValid(scanPackage)) return snapshot;
+            log.info("container snapshot {} is stale, rescanning {}", file, scanPackage);
+        } catch (IOException | RuntimeException e) {
+            log.warn("read container snapshot {} error, rescanning {}", file, scanPackage, e);
+        }
+        return null;
+    }
+}
@@ -2,19 +2,36 @@ package org.simpleframework.util;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
 
 @Slf4j
 public class ClassUtil {
     private static final String FILE_PROTOCOL = "file";
+    private static final String JAR_PROTOCOL = "jar";
+    // 由processor模块在编译时生成，列出编译的所有类
+    public static final String CLASS_INDEX = "META-INF/simpleframework/classes.idx";
 
     /**
      * 为什么要这样：光是通过用户传入的包名，我们是没办法定位到具体路径的
@@ -25,20 +42,77 @@ public class ClassUtil {
      * 例如：传入包名：org.simpleframework.core
      * 会找到包下类全路径类名：org.simpleframework.core.annotation.Component
      * 通过Class.forName(className)加载
+     * <p>
+     * 包在jar里时遍历jar的条目；native image里没有类路径目录(资源是resource:协议或者根本找不到包)，
+     * 这时读取编译期生成的类索引
      */
     public static Set<Class<?>> extractPackageClass(String packageName) {
         ClassLoader classLoader = getClassLoader();
         URL url = classLoader.getResource(packageName.replace(".", "/"));
+        Set<Class<?>> classSet = null;
         if (url == null) {
+            classSet = extractIndexedClass(packageName);
+        } else if (url.getProtocol().equalsIgnoreCase(FILE_PROTOCOL)) {
+            // 过滤出文件类型的资源
+            classSet = new HashSet<>();
+            File packageDirectory = new File(url.getPath());
+            extractClassFile(classSet, packageDirectory, packageName);
+        } else if (url.getProtocol().equalsIgnoreCase(JAR_PROTOCOL)) {
+            classSet = extractJarClass(url, packageName);
+        } else {
+            classSet = extractIndexedClass(packageName);
+        }
+        if (classSet == null) {
             log.warn("unable to retrieve anything from packaging:" + packageName);
+        }
+        return classSet;
+    }
+
+    private static Set<Class<?>> extractJarClass(URL url, String packageName) {
+        String prefix = packageName.replace(".", "/") + "/";
+        Set<Class<?>> classSet = new HashSet<>();
+        try {
+            JarURLConnection connection = (JarURLConnection) url.openConnection();
+            // 不用缓存的JarFile，关闭时不会影响类加载器
+            connection.setUseCaches(false);
+            try (JarFile jarFile = connection.getJarFile()) {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.startsWith(prefix) && name.endsWith(".class")) {
+                        classSet.add(loadClass(name.substring(0, name.length() - ".class".length()).replace("/", ".")));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("read jar {} error", url, e);
             return null;
         }
+        return classSet;
+    }
+
+    /**
+     * @return 所有类索引中packageName包及其子包下的类；classpath上没有类索引时返回null
+     */
+    private static Set<Class<?>> extractIndexedClass(String packageName) {
+        String prefix = packageName + ".";
         Set<Class<?>> classSet = null;
-        // 过滤出文件类型的资源
-        if (url.getProtocol().equalsIgnoreCase(FILE_PROTOCOL)) {
-            classSet = new HashSet<>();
-            File packageDirectory = new File(url.getPath());
-            extractClassFile(classSet, packageDirectory, packageName);
+        try {
+            Enumeration<URL> indexes = getClassLoader().getResources(CLASS_INDEX);
+            while (indexes.hasMoreElements()) {
+                if (classSet == null) classSet = new HashSet<>();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(indexes.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String className;
+                    while ((className = reader.readLine()) != null) {
+                        if (className.startsWith(prefix)) {
+                            classSet.add(loadClass(className));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("read class index error", e);
+            return null;
         }
         return classSet;
     }
@@ -78,6 +152,59 @@ public class ClassUtil {
         }
     }
 
+    /**
+     * 和extractPackageClass扫描同样的目录，但只列出类名和对应的class文件，不加载类
+     * 用于在不付出类加载代价的前提下判断包里的类有没有变化
+     *
+     * @return 类名 -> class文件，按类名排序；包不存在或者不是文件目录(比如在jar里)时返回null
+     */
+    public static Map<String, File> extractPackageClassFiles(String packageName) {
+        URL url = getClassLoader().getResource(packageName.replace(".", "/"));
+        if (url == null || !url.getProtocol().equalsIgnoreCase(FILE_PROTOCOL)) {
+            return null;
+        }
+        Map<String, File> classFiles = new TreeMap<>();
+        collectClassFiles(classFiles, new File(url.getPath()), packageName);
+        return classFiles;
+    }
+
+    /**
+     * @return 包下所有class文件的CRC32，按类名排序；包不是文件目录或者读取失败时返回null
+     */
+    public static Map<String, Long> extractPackageClassChecksums(String packageName) {
+        Map<String, File> classFiles = extractPackageClassFiles(packageName);
+        if (classFiles == null) return null;
+        Map<String, Long> checksums = new LinkedHashMap<>();
+        byte[] buffer = new byte[8192];
+        for (Map.Entry<String, File> e : classFiles.entrySet()) {
+            CRC32 crc = new CRC32();
+            try (InputStream in = new FileInputStream(e.getValue())) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                }
+            } catch (IOException ex) {
+                log.warn("read class file {} error", e.getValue(), ex);
+                return null;
+            }
+            checksums.put(e.getKey(), crc.getValue());
+        }
+        return checksums;
+    }
+
+    private static void collectClassFiles(Map<String, File> classFiles, File directory, String packageName) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                collectClassFiles(classFiles, file, packageName + "." + name);
+            } else if (name.endsWith(".class")) {
+                classFiles.put(packageName + "." + name.substring(0, name.length() - ".class".length()), file);
+            }
+        }
+    }
+
     public static ClassLoader getClassLoader() {
         return Thread.currentThread().getContextClassLoader();
     }
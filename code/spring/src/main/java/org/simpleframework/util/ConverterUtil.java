@@ -0,0 +1,122 @@
+package org.simpleframework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+public class ConverterUtil {
+    /**
+     * 返回基本数据类型的空值，需要特殊处理的基本类型即int\double\short\long\byte\float\boolean
+     */
+    public static Object primitiveNull(Class<?> type) {
+        if (type == int.class || type == double.class || type == short.class || type == long.class
+                || type == byte.class || type == float.class) {
+            return convert(type, "0");
+        } else if (type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+
+    /**
+     * String类型转换成对应的参数类型
+     */
+    public static Object convert(Class<?> type, String requestValue) {
+        if (isPrimitive(type)) {
+            if (ValidationUtil.isEmpty(requestValue)) {
+                return primitiveNull(type);
+            }
+            if (type.equals(int.class) || type.equals(Integer.class)) {
+                return Integer.parseInt(requestValue);
+            } else if (type.equals(String.class)) {
+                return requestValue;
+            } else if (type.equals(Double.class) || type.equals(double.class)) {
+                return Double.parseDouble(requestValue);
+            } else if (type.equals(Float.class) || type.equals(float.class)) {
+                return Float.parseFloat(requestValue);
+            } else if (type.equals(Long.class) || type.equals(long.class)) {
+                return Long.parseLong(requestValue);
+            } else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
+                return Boolean.parseBoolean(requestValue);
+            } else if (type.equals(Short.class) || type.equals(short.class)) {
+                return Short.parseShort(requestValue);
+            } else if (type.equals(Byte.class) || type.equals(byte.class)) {
+                return Byte.parseByte(requestValue);
+            }
+            return requestValue;
+        } else {
+            throw new RuntimeException("count not support non primitive type conversion yet");
+        }
+    }
+
+    /**
+     * 预先按类型选好转换函数，之后每次转换不再逐个比较类型
+     * 除了convert支持的类型，还支持枚举、以逗号分隔的String[]和List<String>
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Function<String, Object> converterFor(Class<?> type) {
+        Function<String, Object> parser;
+        if (type == String.class || type == Object.class) {
+            return value -> value;
+        } else if (type == int.class || type == Integer.class) {
+            parser = value -> Integer.valueOf(value.trim());
+        } else if (type == long.class || type == Long.class) {
+            parser = value -> Long.valueOf(value.trim());
+        } else if (type == double.class || type == Double.class) {
+            parser = value -> Double.valueOf(value.trim());
+        } else if (type == float.class || type == Float.class) {
+            parser = value -> Float.valueOf(value.trim());
+        } else if (type == boolean.class || type == Boolean.class) {
+            parser = value -> Boolean.valueOf(value.trim());
+        } else if (type == short.class || type == Short.class) {
+            parser = value -> Short.valueOf(value.trim());
+        } else if (type == byte.class || type == Byte.class) {
+            parser = value -> Byte.valueOf(value.trim());
+        } else if (type == char.class || type == Character.class) {
+            parser = value -> value.charAt(0);
+        } else if (type.isEnum()) {
+            parser = value -> Enum.valueOf((Class) type, value.trim());
+        } else if (type == String[].class) {
+            return value -> split(value).toArray(new String[0]);
+        } else if (type == List.class) {
+            return value -> Collections.unmodifiableList(split(value));
+        } else {
+            throw new RuntimeException("can not convert string to " + type.getName());
+        }
+        Object emptyValue = primitiveNull(type);
+        return value -> ValidationUtil.isEmpty(value) ? emptyValue : parser.apply(value);
+    }
+
+    private static List<String> split(String value) {
+        List<String> items = new ArrayList<>();
+        if (ValidationUtil.isEmpty(value)) return items;
+        for (String item : value.split(",")) {
+            items.add(item.trim());
+        }
+        return items;
+    }
+
+    /**
+     * 判定是否是基本数据类型(包括包装类以及String)
+     */
+    private static boolean isPrimitive(Class<?> type) {
+        return type == boolean.class
+                || type == Boolean.class
+                || type == double.class
+                || type == Double.class
+                || type == float.class
+                || type == Float.class
+                || type == short.class
+                || type == Short.class
+                || type == int.class
+                || type == Integer.class
+                || type == long.class
+                || type == Long.class
+                || type == String.class
+                || type == byte.class
+                || type == Byte.class
+                || type == char.class
+                || type == Character.class;
+    }
+}
@@ -0,0 +1,69 @@
+package org.simpleframework.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ant风格的路径匹配：*匹配一段路径中的任意字符，**匹配任意多段路径(包括零段)
+ */
+public class PathMatchUtil {
+    public static boolean match(String pattern, String path) {
+        return matchSegments(split(pattern), 0, split(path), 0);
+    }
+
+    private static boolean matchSegments(List<String> patterns, int p, List<String> paths, int s) {
+        while (p < patterns.size()) {
+            String pattern = patterns.get(p);
+            if ("**".equals(pattern)) {
+                // 依次尝试让**吞掉0段、1段...
+                for (int i = s; i <= paths.size(); i++) {
+                    if (matchSegments(patterns, p + 1, paths, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (s >= paths.size() || !matchSegment(pattern, paths.get(s))) {
+                return false;
+            }
+            p++;
+            s++;
+        }
+        return s == paths.size();
+    }
+
+    /**
+     * 单段内的通配符匹配，只有*一种通配符
+     */
+    private static boolean matchSegment(String pattern, String segment) {
+        int p = 0, s = 0, star = -1, mark = 0;
+        while (s < segment.length()) {
+            if (p < pattern.length() && pattern.charAt(p) != '*' && pattern.charAt(p) == segment.charAt(s)) {
+                p++;
+                s++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = s;
+            } else if (star >= 0) {
+                p = star + 1;
+                s = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static List<String> split(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+}
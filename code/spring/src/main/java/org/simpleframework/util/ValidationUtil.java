@@ -9,4 +9,8 @@ public class ValidationUtil {
     public static boolean isEmpty(Collection<?> obj) {
         return obj == null || obj.isEmpty();
     }
+
+    public static boolean isEmpty(String obj) {
+        return obj == null || "".equals(obj);
+    }
 }
@@ -0,0 +1,127 @@
+package org.simpleframework.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TinyLfuCacheTest {
+    @DisplayName("容量有界，扫描流量不会冲掉热点数据")
+    @Test
+    public void evictionTest() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        // 前50个key被反复访问
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.getIfPresent(i);
+            }
+        }
+        // 一次性扫描大量只访问一次的key，期间热点数据仍在被访问
+        for (int i = 1000; i < 11000; i++) {
+            cache.put(i, i);
+            if (i % 500 == 0) {
+                for (int j = 0; j < 50; j++) {
+                    cache.getIfPresent(j);
+                }
+            }
+        }
+        Assertions.assertTrue(cache.size() <= 100);
+        int hotHits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.getIfPresent(i) != null) {
+                hotHits++;
+            }
+        }
+        Assertions.assertEquals(50, hotHits);
+    }
+
+    @Test
+    public void ttlTest() {
+        AtomicLong now = new AtomicLong();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 5, TimeUnit.SECONDS, now::get);
+        cache.put("k", "v");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        Assertions.assertEquals("v", cache.getIfPresent("k"));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertNull(cache.getIfPresent("k"));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @DisplayName("同一个key的并发未命中只加载一次")
+    @Test
+    public void singleFlightTest() throws Exception {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(10, 1, TimeUnit.HOURS);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> cache.get("k", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return 42;
+                }));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<?> future : futures) {
+                Assertions.assertEquals(42, future.get());
+            }
+            Assertions.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @DisplayName("并发的put、invalidate之后链表中的节点和map一一对应")
+    @Test
+    public void concurrentWriteTest() throws Exception {
+        // 容量足够大时没有淘汰，孤儿节点会一直留在链表里；容量小时淘汰和写入交错
+        for (int maximumSize : new int[]{1000, 2}) {
+            TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(maximumSize, 1, TimeUnit.HOURS);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            try {
+                Future<?>[] futures = new Future<?>[8];
+                for (int t = 0; t < futures.length; t++) {
+                    futures[t] = executor.submit(() -> {
+                        start.await();
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < 100_000; i++) {
+                            int key = random.nextInt(4);
+                            int op = random.nextInt(100);
+                            if (op < 70) {
+                                cache.put(key, i);
+                            } else if (op < 95) {
+                                cache.invalidate(key);
+                            } else {
+                                cache.getIfPresent(key);
+                            }
+                        }
+                        return null;
+                    });
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            Assertions.assertTrue(cache.size() <= maximumSize);
+            Assertions.assertEquals(cache.size(), cache.policySize());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.simpleframework.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.config.annotation.ConfigurationProperties;
+import org.simpleframework.inject.annotation.Value;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConfigBinderTest {
+    enum Mode {
+        FAST, SAFE
+    }
+
+    static class ServerConfig {
+        @Value("${server.port}")
+        volatile int port;
+        @Value("${server.mode:SAFE}")
+        volatile Mode mode;
+        @Value("${server.hosts:}")
+        volatile List<String> hosts;
+    }
+
+    @ConfigurationProperties(prefix = "cache")
+    static class CacheProperties {
+        volatile long maxSize = 100;
+        volatile boolean enabled;
+        volatile String[] names = {"default"};
+    }
+
+    private static ConfigSnapshot yaml(String text) throws IOException {
+        return ConfigSnapshot.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), "application.yml");
+    }
+
+    @Test
+    public void yamlFlattenTest() throws IOException {
+        ConfigSnapshot snapshot = yaml("# comment\n"
+                + "server:\n"
+                + "  port: 8080 # inline comment\n"
+                + "  name: \"a # b\"\n"
+                + "  hosts:\n"
+                + "    - a\n"
+                + "    - b\n"
+                + "  routes:\n"
+                + "  - path: /x\n"
+                + "    weight: 2\n"
+                + "  - path: /y\n"
+                + "cache:\n"
+                + "  names: [x, y]\n");
+        Assertions.assertEquals("8080", snapshot.get("server.port"));
+        Assertions.assertEquals("a # b", snapshot.get("server.name"));
+        Assertions.assertEquals("a,b", snapshot.get("server.hosts"));
+        Assertions.assertEquals("b", snapshot.get("server.hosts[1]"));
+        Assertions.assertEquals("/x", snapshot.get("server.routes[0].path"));
+        Assertions.assertEquals("2", snapshot.get("server.routes[0].weight"));
+        Assertions.assertEquals("/y", snapshot.get("server.routes[1].path"));
+        Assertions.assertEquals("x,y", snapshot.get("cache.names"));
+        Assertions.assertThrows(RuntimeException.class, () -> yaml("a:\n  b: |\n    text\n"));
+    }
+
+    @Test
+    public void bindAndReloadTest() throws IOException {
+        ConfigBinder binder = new ConfigBinder(yaml("server:\n  port: 8080\n  hosts: [a, b]\ncache:\n  max-size: 10\n"));
+        ServerConfig server = new ServerConfig();
+        CacheProperties cache = new CacheProperties();
+        binder.bind(ServerConfig.class, server);
+        binder.bind(CacheProperties.class, cache);
+        Assertions.assertEquals(8080, server.port);
+        Assertions.assertEquals(Mode.SAFE, server.mode);
+        Assertions.assertEquals(Arrays.asList("a", "b"), server.hosts);
+        Assertions.assertEquals(10, cache.maxSize);
+        Assertions.assertFalse(cache.enabled);
+        Assertions.assertArrayEquals(new String[]{"default"}, cache.names);
+
+        // 只有变化的key对应的字段被重新赋值
+        List<String> hosts = server.hosts;
+        Set<String> changed = binder.reload(yaml("server:\n  port: 9090\n  hosts: [a, b]\n  mode: FAST\ncache:\n  enabled: true\n"));
+        Assertions.assertTrue(changed.contains("server.port"));
+        Assertions.assertFalse(changed.contains("server.hosts"));
+        Assertions.assertEquals(9090, server.port);
+        Assertions.assertEquals(Mode.FAST, server.mode);
+        Assertions.assertSame(hosts, server.hosts);
+        Assertions.assertTrue(cache.enabled);
+        // 删除的key恢复为初始值
+        Assertions.assertEquals(100, cache.maxSize);
+
+        // 转换失败时整体放弃，保留旧值
+        Assertions.assertNull(binder.reload(yaml("server:\n  port: 1\n  mode: UNKNOWN\n")));
+        Assertions.assertEquals(9090, server.port);
+        Assertions.assertEquals(Mode.FAST, server.mode);
+        Assertions.assertEquals("9090", binder.getSnapshot().get("server.port"));
+
+        binder.unbind(server);
+        Map<String, String> values = new HashMap<>(binder.getSnapshot().asMap());
+        values.put("server.port", "1");
+        binder.reload(ConfigSnapshot.of(values));
+        Assertions.assertEquals(9090, server.port);
+    }
+
+    @Test
+    public void missingRequiredValueTest() {
+        ConfigBinder binder = new ConfigBinder(ConfigSnapshot.of(Collections.emptyMap()));
+        Assertions.assertThrows(RuntimeException.class, () -> binder.bind(ServerConfig.class, new ServerConfig()));
+    }
+}
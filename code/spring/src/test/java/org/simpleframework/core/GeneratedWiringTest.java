@@ -0,0 +1,165 @@
+package org.simpleframework.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.util.ClassUtil;
+import org.simpleframework.wiring.WiringProcessor;
+import tongji.java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 用WiringProcessor编译一组bean，检查编译期报错和生成的装配代码
+ */
+public class GeneratedWiringTest {
+    private static final String SENDER = "package app;\npublic interface Sender {}\n";
+    private static final String MAIL = "package app;\n@org.simpleframework.core.annotation.Component\npublic class MailSender implements Sender {}\n";
+    private static final String SMS = "package app;\n@org.simpleframework.core.annotation.Component\npublic class SmsSender implements Sender {}\n";
+
+    private static class Result {
+        final boolean success;
+        final List<String> errors = new ArrayList<>();
+        final File output;
+
+        Result(boolean success, File output) {
+            this.success = success;
+            this.output = output;
+        }
+    }
+
+    private static Result compile(String... sources) throws IOException, URISyntaxException {
+        File dir = Files.createTempDirectory("wiring").toFile();
+        File src = new File(dir, "src/app");
+        File out = new File(dir, "out");
+        src.mkdirs();
+        out.mkdirs();
+        List<File> files = new ArrayList<>();
+        for (String source : sources) {
+            String name = source.replaceAll("(?s).*(?:class|interface) (\\w+).*", "$1");
+            File file = new File(src, name + ".java");
+            Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        String classPath = location(GeneratedWiring.class) + File.pathSeparator + location(ConcurrentHashMap.class);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", classPath, "-d", out.getPath(), "-s", out.getPath()),
+                    null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections.singletonList(new WiringProcessor()));
+            Result result = new Result(task.call(), out);
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) result.errors.add(diagnostic.getMessage(null));
+            }
+            return result;
+        }
+    }
+
+    private static String location(Class<?> clazz) throws URISyntaxException {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    @Test
+    public void generateTest() throws Exception {
+        Result result = compile(SENDER, MAIL,
+                "package app;\n@org.simpleframework.core.annotation.Service\npublic class Notifier {\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired Sender sender;\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired java.util.List<Sender> senders;\n}\n",
+                "package app;\n@org.simpleframework.core.annotation.Controller\npublic class Api {\n"
+                        + "    final Notifier notifier;\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired public Api(Notifier notifier) { this.notifier = notifier; }\n}\n");
+        Assertions.assertTrue(result.success, result.errors.toString());
+        String source = new String(Files.readAllBytes(new File(result.output, "app/ApplicationWiring.java").toPath()), StandardCharsets.UTF_8);
+        // 同一个包中的字段直接赋值，不需要反射
+        Assertions.assertTrue(source.contains(".sender = (app.Sender) container.getBean(app.MailSender.class)"), source);
+        Assertions.assertTrue(source.contains("new app.Api((app.Notifier) container.getBean(app.Notifier.class))"), source);
+        Assertions.assertFalse(source.contains("setField"), source);
+        String services = new String(Files.readAllBytes(new File(result.output, "META-INF/services/" + GeneratedWiring.class.getName()).toPath()),
+                StandardCharsets.UTF_8);
+        Assertions.assertEquals("app.ApplicationWiring", services.trim());
+        // native-image配置: bean登记所有字段，索引列出编译的所有类
+        String reflectConfig = new String(Files.readAllBytes(new File(result.output,
+                "META-INF/native-image/simpleframework/app/reflect-config.json").toPath()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(reflectConfig.contains("{\"name\": \"app.Notifier\", \"allDeclaredFields\": true}"), reflectConfig);
+        Assertions.assertTrue(reflectConfig.contains("{\"name\": \"app.Sender\"}"), reflectConfig);
+        Assertions.assertTrue(reflectConfig.contains("{\"name\": \"app.ApplicationWiring\", \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]}"), reflectConfig);
+        List<String> index = Files.readAllLines(new File(result.output, ClassUtil.CLASS_INDEX).toPath(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("app.Sender", "app.MailSender", "app.Notifier", "app.Api")), new HashSet<>(index));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new java.net.URL[]{result.output.toURI().toURL()}, getClass().getClassLoader())) {
+            GeneratedWiring wiring = (GeneratedWiring) classLoader.loadClass("app.ApplicationWiring").newInstance();
+            Assertions.assertEquals("app", wiring.getBasePackage());
+            List<String> names = new ArrayList<>();
+            for (Class<?> clazz : wiring.getBeanClasses()) {
+                names.add(clazz.getSimpleName());
+            }
+            // 构造器注入的bean排在最后
+            Assertions.assertEquals(3, names.size());
+            Assertions.assertEquals("Api", names.get(2));
+        }
+    }
+
+    @Test
+    public void repositoryTest() throws Exception {
+        Result result = compile(
+                "package app;\npublic class User {\n    @org.simpleframework.data.annotation.Id Long id;\n}\n",
+                "package app;\n@org.simpleframework.core.annotation.Repository\n"
+                        + "public interface UserRepository extends org.simpleframework.data.CrudRepository<User, Long> {}\n",
+                "package app;\n@org.simpleframework.core.annotation.Service\npublic class UserService {\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired UserRepository users;\n}\n");
+        Assertions.assertTrue(result.success, result.errors.toString());
+        String source = new String(Files.readAllBytes(new File(result.output, "app/ApplicationWiring.java").toPath()), StandardCharsets.UTF_8);
+        // Repository接口不由生成的代码创建，只注入
+        Assertions.assertFalse(source.contains("new app.UserRepository"), source);
+        Assertions.assertTrue(source.contains("getRepositoryInterfaces"), source);
+        Assertions.assertTrue(source.contains(".users = (app.UserRepository) container.getBean(app.UserRepository.class)"), source);
+        String proxyConfig = new String(Files.readAllBytes(new File(result.output,
+                "META-INF/native-image/simpleframework/app/proxy-config.json").toPath()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(proxyConfig.contains("[\"app.UserRepository\"]"), proxyConfig);
+        String reflectConfig = new String(Files.readAllBytes(new File(result.output,
+                "META-INF/native-image/simpleframework/app/reflect-config.json").toPath()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(reflectConfig.contains("{\"name\": \"app.User\", \"allDeclaredFields\": true, \"methods\": [{\"name\": \"<init>\""), reflectConfig);
+    }
+
+    @Test
+    public void missingAndAmbiguousTest() throws Exception {
+        Result missing = compile("package app;\n@org.simpleframework.core.annotation.Service\npublic class Notifier {\n"
+                + "    @org.simpleframework.inject.annotation.Autowired Sender sender;\n}\n", SENDER);
+        Assertions.assertFalse(missing.success);
+        Assertions.assertTrue(missing.errors.get(0).contains("no bean of type app.Sender"), missing.errors.toString());
+
+        Result ambiguous = compile(SENDER, MAIL, SMS, "package app;\n@org.simpleframework.core.annotation.Service\npublic class Notifier {\n"
+                + "    @org.simpleframework.inject.annotation.Autowired Sender sender;\n}\n");
+        Assertions.assertFalse(ambiguous.success);
+        Assertions.assertTrue(ambiguous.errors.get(0).contains("multiple beans of type app.Sender"), ambiguous.errors.toString());
+
+        Result qualified = compile(SENDER, MAIL, SMS, "package app;\n@org.simpleframework.core.annotation.Service\npublic class Notifier {\n"
+                + "    @org.simpleframework.inject.annotation.Autowired @org.simpleframework.inject.annotation.Qualifier(\"SmsSender\") Sender sender;\n}\n");
+        Assertions.assertTrue(qualified.success, qualified.errors.toString());
+
+        Result cycle = compile(
+                "package app;\n@org.simpleframework.core.annotation.Service\npublic class A {\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired public A(B b) {}\n}\n",
+                "package app;\n@org.simpleframework.core.annotation.Service\npublic class B {\n"
+                        + "    @org.simpleframework.inject.annotation.Autowired public B(A a) {}\n}\n");
+        Assertions.assertFalse(cycle.success);
+        Assertions.assertTrue(cycle.errors.get(0).contains("circular constructor dependency"), cycle.errors.toString());
+    }
+}
@@ -0,0 +1,202 @@
+package org.simpleframework.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.data.annotation.Id;
+import org.simpleframework.data.annotation.Indexed;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class RepositoryFactoryTest {
+    public static class User {
+        @Id
+        Long id;
+        @Indexed(unique = true)
+        String email;
+        @Indexed
+        String city;
+        int age;
+
+        public User() {
+        }
+
+        User(long id, String email, String city, int age) {
+            this.id = id;
+            this.email = email;
+            this.city = city;
+            this.age = age;
+        }
+    }
+
+    public interface UserRepository extends CrudRepository<User, Long> {
+        List<User> findByCity(String city);
+
+        User findByEmail(String email);
+
+        long countByCity(String city);
+
+        boolean existsByEmail(String email);
+    }
+
+    public interface AgeRepository extends CrudRepository<User, Long> {
+        List<User> findByAge(int age);
+    }
+
+    public interface DefaultMethodRepository extends CrudRepository<User, Long> {
+        default boolean isEmpty() {
+            return count() == 0;
+        }
+    }
+
+    private static Set<Long> ids(List<User> users) {
+        Set<Long> ids = new HashSet<>();
+        for (User user : users) {
+            ids.add(user.id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void crudAndIndexTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        try (RepositoryFactory factory = new RepositoryFactory(dir, 0)) {
+            UserRepository users = factory.create(UserRepository.class);
+            users.save(new User(1, "a@x.com", "shanghai", 20));
+            users.save(new User(2, "b@x.com", "shanghai", 30));
+            users.save(new User(3, "c@x.com", "beijing", 40));
+            Assertions.assertEquals(3, users.count());
+            Assertions.assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), ids(users.findByCity("shanghai")));
+            Assertions.assertEquals(3L, users.findByEmail("c@x.com").id.longValue());
+            Assertions.assertEquals(1, users.countByCity("beijing"));
+            Assertions.assertTrue(users.existsByEmail("a@x.com"));
+
+            // 更新后旧的索引值失效
+            users.save(new User(2, "b@x.com", "beijing", 31));
+            Assertions.assertEquals(new HashSet<>(Arrays.asList(1L)), ids(users.findByCity("shanghai")));
+            Assertions.assertEquals(2, users.countByCity("beijing"));
+
+            // 唯一索引冲突时不修改任何数据
+            Assertions.assertThrows(RuntimeException.class, () -> users.save(new User(4, "a@x.com", "shenzhen", 50)));
+            Assertions.assertFalse(users.existsById(4L));
+            Assertions.assertEquals(0, users.countByCity("shenzhen"));
+
+            // 返回的是副本
+            User user = users.findById(1L);
+            user.city = "hangzhou";
+            Assertions.assertEquals("shanghai", users.findById(1L).city);
+
+            Assertions.assertTrue(users.deleteById(1L));
+            Assertions.assertFalse(users.deleteById(1L));
+            Assertions.assertNull(users.findByEmail("a@x.com"));
+            Assertions.assertTrue(users.findByCity("shanghai").isEmpty());
+            Assertions.assertEquals(2, users.findAll().size());
+
+            // 没有索引的字段不能声明查询方法
+            Assertions.assertThrows(RuntimeException.class, () -> factory.create(AgeRepository.class));
+        }
+    }
+
+    @Test
+    public void defaultMethodTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        try (RepositoryFactory factory = new RepositoryFactory(dir, 0)) {
+            // 默认方法在创建时就失败，异常里有方法名
+            RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> factory.create(DefaultMethodRepository.class));
+            Assertions.assertTrue(e.getMessage().contains(DefaultMethodRepository.class.getName() + ".isEmpty"));
+        }
+    }
+
+    @Test
+    public void recoveryTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        File file = new File(dir, User.class.getName() + ".log");
+        int size;
+        try (EntityStore<User> store = new EntityStore<>(User.class, file, 4096, 0)) {
+            for (int i = 0; i < 100; i++) {
+                store.save(new User(i, i + "@x.com", i % 2 == 0 ? "shanghai" : "beijing", i));
+            }
+            store.delete(0L);
+            store.save(new User(1, "1@x.com", "shanghai", 1));
+            size = (int) store.logSize();
+        }
+        // 模拟写到一半时进程退出: 长度已经写入但数据不完整
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(size);
+            raf.writeInt(100);
+            raf.writeInt(12345);
+            raf.write(AppendLog.PUT);
+        }
+        try (EntityStore<User> store = new EntityStore<>(User.class, file, 4096, 0)) {
+            Assertions.assertEquals(99, store.count());
+            Assertions.assertNull(store.findById(0L));
+            int city = store.metadata.indexOf("city");
+            Assertions.assertEquals(50, store.countBy(city, "shanghai"));
+            Assertions.assertEquals(size, store.logSize());
+            store.save(new User(100, "100@x.com", "shenzhen", 100));
+        }
+        try (EntityStore<User> store = new EntityStore<>(User.class, file, 4096, 0)) {
+            Assertions.assertEquals(100, store.count());
+            Assertions.assertEquals("shenzhen", store.findById(100L).city);
+        }
+    }
+
+    @Test
+    public void compactionTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        File file = new File(dir, User.class.getName() + ".log");
+        try (EntityStore<User> store = new EntityStore<>(User.class, file, 4096, 0)) {
+            for (int i = 0; i < 1000; i++) {
+                store.save(new User(i % 10, (i % 10) + "@x.com", "city" + i, i));
+            }
+            long before = store.logSize();
+            Assertions.assertTrue(store.compactIfNeeded());
+            Assertions.assertTrue(store.logSize() * 50 < before, store.logSize() + " " + before);
+            Assertions.assertFalse(store.compactIfNeeded());
+            // 压缩之后继续追加
+            store.save(new User(10, "10@x.com", "city", 10));
+        }
+        try (EntityStore<User> store = new EntityStore<>(User.class, file, 4096, 0)) {
+            Assertions.assertEquals(11, store.count());
+            Assertions.assertEquals("city999", store.findById(9L).city);
+            Assertions.assertEquals(990, store.findById(0L).age);
+        }
+    }
+
+    @Test
+    public void concurrentSaveTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        int threads = 8;
+        int perThread = 200;
+        try (RepositoryFactory factory = new RepositoryFactory(dir, 0)) {
+            UserRepository users = factory.create(UserRepository.class);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                Thread writer = new Thread(() -> {
+                    for (int i = base; i < base + perThread; i++) {
+                        users.save(new User(i, i + "@x.com", "city" + (i % 4), i));
+                    }
+                });
+                writers.add(writer);
+                writer.start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            Assertions.assertEquals(threads * perThread, users.count());
+        }
+        try (RepositoryFactory factory = new RepositoryFactory(dir, 0)) {
+            UserRepository users = factory.create(UserRepository.class);
+            Assertions.assertEquals(threads * perThread, users.count());
+            Assertions.assertEquals(threads * perThread / 4, users.countByCity("city3"));
+            Assertions.assertEquals(777, users.findByEmail("777@x.com").age);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.simpleframework.event;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.event.annotation.EventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventBusTest {
+    static class BaseEvent {
+    }
+
+    static class OrderEvent extends BaseEvent {
+        final int id;
+
+        OrderEvent(int id) {
+            this.id = id;
+        }
+    }
+
+    static class SyncListener {
+        final List<String> calls = new ArrayList<>();
+
+        @EventListener(order = 2)
+        public void onBase(BaseEvent event) {
+            calls.add("base");
+        }
+
+        @EventListener(order = 1)
+        public void onOrder(OrderEvent event) {
+            calls.add("order" + event.id);
+        }
+    }
+
+    static class AsyncListener {
+        final List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done;
+
+        AsyncListener(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @EventListener(async = true)
+        private void onOrder(OrderEvent event) {
+            ids.add(event.id);
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void syncSubtypeAndOrderTest() {
+        EventBus eventBus = new EventBus(BeanContainer.getInstance(), 1, 16);
+        SyncListener listener = new SyncListener();
+        eventBus.register(listener);
+        eventBus.publish(new OrderEvent(7));
+        eventBus.publish(new BaseEvent());
+        eventBus.publish("no listener");
+        Assertions.assertEquals(Arrays.asList("order7", "base", "base"), listener.calls);
+    }
+
+    @Test
+    public void asyncBatchTest() throws InterruptedException {
+        int count = 10000;
+        // 队列容量很小，发布线程会被迫帮忙处理，但事件不会丢失，也不会乱序
+        EventBus eventBus = new EventBus(BeanContainer.getInstance(), 2, 4);
+        AsyncListener listener = new AsyncListener(count);
+        eventBus.register(listener);
+        for (int i = 0; i < count; i++) {
+            eventBus.publish(new OrderEvent(i));
+        }
+        Assertions.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, listener.ids.get(i).intValue());
+        }
+        eventBus.shutdown();
+        Assertions.assertTrue(eventBus.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    static class ThreadRecordingListener {
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        @EventListener(async = true)
+        public void onOrder(OrderEvent event) {
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    @Test
+    public void publishAfterShutdownTest() throws InterruptedException {
+        EventBus eventBus = new EventBus(BeanContainer.getInstance(), 1, 4);
+        ThreadRecordingListener listener = new ThreadRecordingListener();
+        eventBus.register(listener);
+        eventBus.shutdown();
+        Assertions.assertTrue(eventBus.awaitTermination(10, TimeUnit.SECONDS));
+        // 线程池关闭后事件在发布线程中处理，队列满了也不会一直等待
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 100; i++) {
+                eventBus.publish(new OrderEvent(i));
+            }
+        });
+        Assertions.assertEquals(100, listener.threads.size());
+        Assertions.assertFalse(listener.threads.stream().anyMatch(name -> name.startsWith("event-bus-")));
+    }
+}
@@ -0,0 +1,102 @@
+package org.simpleframework.inject;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.inject.annotation.Primary;
+import org.simpleframework.inject.annotation.Qualifier;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DependencyResolverTest {
+    static class User {
+    }
+
+    static class Order {
+    }
+
+    interface Repository<T> {
+    }
+
+    static abstract class AbstractRepository<T> implements Repository<T> {
+    }
+
+    static class UserRepository extends AbstractRepository<User> {
+    }
+
+    static class OrderRepository implements Repository<Order> {
+    }
+
+    interface Sender {
+    }
+
+    @Primary
+    static class MailSender implements Sender {
+    }
+
+    @Qualifier("sms")
+    static class SmsSender implements Sender {
+    }
+
+    // 注入点，只用来取泛型类型
+    static class Injection {
+        Repository<User> userRepository;
+        Repository<? extends Object> anyRepository;
+        List<Sender> senders;
+        Map<String, Sender> senderMap;
+    }
+
+    private static Type typeOf(String field) throws NoSuchFieldException {
+        return Injection.class.getDeclaredField(field).getGenericType();
+    }
+
+    private static DependencyResolver resolver(AtomicInteger scans, Class<?>... classes) {
+        List<Class<?>> beanClasses = Arrays.asList(classes);
+        return new DependencyResolver(() -> {
+            scans.incrementAndGet();
+            return beanClasses;
+        });
+    }
+
+    @Test
+    public void genericTypeTest() throws NoSuchFieldException {
+        DependencyResolver resolver = resolver(new AtomicInteger(), UserRepository.class, OrderRepository.class);
+        Assertions.assertEquals(Arrays.asList(UserRepository.class),
+                resolver.resolve(typeOf("userRepository"), "").getClasses());
+        Assertions.assertThrows(RuntimeException.class, () -> resolver.resolve(typeOf("anyRepository"), ""));
+    }
+
+    @Test
+    public void qualifierAndPrimaryTest() throws NoSuchFieldException {
+        AtomicInteger scans = new AtomicInteger();
+        DependencyResolver resolver = resolver(scans, MailSender.class, SmsSender.class);
+        Assertions.assertEquals(MailSender.class, resolver.resolve(Sender.class, "").getClasses().get(0));
+        Assertions.assertEquals(SmsSender.class, resolver.resolve(Sender.class, "sms").getClasses().get(0));
+        Assertions.assertEquals(SmsSender.class, resolver.resolve(Sender.class, "SmsSender").getClasses().get(0));
+        Assertions.assertNull(resolver.resolve(Sender.class, "push").toValue(clazz -> clazz));
+
+        List<?> senders = (List<?>) resolver.resolve(typeOf("senders"), "").toValue(clazz -> clazz.getSimpleName());
+        Assertions.assertEquals(Arrays.asList("MailSender", "SmsSender"), senders);
+        Map<?, ?> senderMap = (Map<?, ?>) resolver.resolve(typeOf("senderMap"), "").toValue(clazz -> clazz);
+        Assertions.assertEquals(SmsSender.class, senderMap.get("sms"));
+        Assertions.assertEquals(MailSender.class, senderMap.get("MailSender"));
+
+        // 同一个(类型, 名字)只计算一次
+        int before = scans.get();
+        for (int i = 0; i < 10; i++) {
+            resolver.resolve(Sender.class, "sms");
+            resolver.resolve(typeOf("senders"), "");
+        }
+        Assertions.assertEquals(before, scans.get());
+    }
+
+    @Test
+    public void ambiguousTest() {
+        DependencyResolver resolver = resolver(new AtomicInteger(), SmsSender.class, OrderRepository.class, UserRepository.class);
+        Assertions.assertEquals(SmsSender.class, resolver.resolve(Sender.class, "").getClasses().get(0));
+        Assertions.assertThrows(RuntimeException.class, () -> resolver.resolve(Repository.class, ""));
+    }
+}
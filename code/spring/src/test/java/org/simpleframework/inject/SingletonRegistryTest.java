@@ -0,0 +1,136 @@
+package org.simpleframework.inject;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class SingletonRegistryTest {
+    static class A {
+        Object dependency;
+    }
+
+    static class B {
+        Object dependency;
+    }
+
+    @Test
+    public void fieldCycleTest() {
+        SingletonRegistry registry = new SingletonRegistry();
+        AtomicInteger created = new AtomicInteger();
+        A a = (A) registry.getSingleton(A.class, k -> {
+            A bean = new A();
+            created.incrementAndGet();
+            registry.addSingletonFactory(A.class, () -> bean);
+            bean.dependency = registry.getSingleton(B.class, k2 -> {
+                B b = new B();
+                created.incrementAndGet();
+                registry.addSingletonFactory(B.class, () -> b);
+                // 拿到A的提前引用
+                b.dependency = registry.getSingleton(A.class, k3 -> {
+                    throw new AssertionError("A created twice");
+                });
+                return b;
+            });
+            return bean;
+        });
+        B b = (B) a.dependency;
+        Assertions.assertSame(a, b.dependency);
+        Assertions.assertSame(b, registry.getSingleton(B.class));
+        Assertions.assertEquals(2, created.get());
+    }
+
+    @Test
+    public void constructorCycleTest() {
+        SingletonRegistry registry = new SingletonRegistry();
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () ->
+                registry.getSingleton(A.class, k -> registry.getSingleton(B.class, k2 -> registry.getSingleton(A.class, k3 -> new A()))));
+        Assertions.assertEquals("unresolvable circular dependency: " + A.class.getName() + " -> " + B.class.getName() + " -> " + A.class.getName(), e.getMessage());
+        Assertions.assertFalse(registry.isCurrentlyInCreation(A.class));
+        // 失败后可以重新创建
+        Assertions.assertNotNull(registry.getSingleton(A.class, k -> new A()));
+    }
+
+    @Test
+    public void crossThreadConstructorCycleTest() throws Exception {
+        SingletonRegistry registry = new SingletonRegistry();
+        CountDownLatch bothCreating = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 和DependencyInjector一样所有调用方共用同一个创建方法: A的构造器依赖B，B的构造器依赖A
+            Function<Class<?>, Object> constructor = new Function<Class<?>, Object>() {
+                @Override
+                public Object apply(Class<?> clazz) {
+                    bothCreating.countDown();
+                    await(bothCreating);
+                    registry.getSingleton(clazz == A.class ? B.class : A.class, this);
+                    return clazz == A.class ? new A() : new B();
+                }
+            };
+            Future<Object> fa = executor.submit(() -> registry.getSingleton(A.class, constructor));
+            Future<Object> fb = executor.submit(() -> registry.getSingleton(B.class, constructor));
+            Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertCircular(fa);
+                assertCircular(fb);
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void parallelFieldCycleTest() throws Exception {
+        SingletonRegistry registry = new SingletonRegistry();
+        CountDownLatch bothPublished = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> fa = executor.submit(() -> registry.getSingleton(A.class, k -> {
+                A a = new A();
+                registry.addSingletonFactory(A.class, () -> a);
+                bothPublished.countDown();
+                await(bothPublished);
+                a.dependency = registry.getSingleton(B.class, k2 -> new B());
+                return a;
+            }));
+            Future<Object> fb = executor.submit(() -> registry.getSingleton(B.class, k -> {
+                B b = new B();
+                registry.addSingletonFactory(B.class, () -> b);
+                bothPublished.countDown();
+                await(bothPublished);
+                b.dependency = registry.getSingleton(A.class, k2 -> new A());
+                return b;
+            }));
+            A a = (A) fa.get(10, TimeUnit.SECONDS);
+            B b = (B) fb.get(10, TimeUnit.SECONDS);
+            Assertions.assertSame(b, a.dependency);
+            Assertions.assertSame(a, b.dependency);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void assertCircular(Future<Object> future) throws InterruptedException {
+        try {
+            future.get();
+            Assertions.fail("circular dependency not detected");
+        } catch (ExecutionException e) {
+            Assertions.assertTrue(e.getCause().getMessage().contains("circular dependency"), e.getCause().getMessage());
+        }
+    }
+}
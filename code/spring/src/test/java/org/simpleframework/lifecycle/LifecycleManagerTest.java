@@ -0,0 +1,276 @@
+package org.simpleframework.lifecycle;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.lifecycle.annotation.PostConstruct;
+import org.simpleframework.lifecycle.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LifecycleManagerTest {
+    static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<>());
+
+    static class Dao {
+        @PostConstruct
+        void init() {
+            EVENTS.add("init dao");
+        }
+
+        @PreDestroy
+        void close() {
+            EVENTS.add("destroy dao");
+        }
+    }
+
+    static class Service {
+        Dao dao;
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @PostConstruct
+        void init() {
+            Assertions.assertTrue(EVENTS.contains("init dao"));
+            EVENTS.add("init service");
+        }
+
+        @PostConstruct(async = true)
+        void warmUp() throws InterruptedException {
+            release.await();
+        }
+
+        @PreDestroy(timeoutMillis = 100)
+        void close() throws InterruptedException {
+            EVENTS.add("destroy service");
+            // 超时后被中断
+            Thread.sleep(10_000);
+        }
+    }
+
+    static class Controller {
+        Service service;
+
+        @PreDestroy
+        void close() {
+            EVENTS.add("destroy controller");
+        }
+    }
+
+    @Test
+    public void lifecycleTest() throws InterruptedException {
+        EVENTS.clear();
+        Dao dao = new Dao();
+        Service service = new Service();
+        service.dao = dao;
+        Controller controller = new Controller();
+        controller.service = service;
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        beans.put(Controller.class, controller);
+        beans.put(Service.class, service);
+        beans.put(Dao.class, dao);
+        LifecycleManager manager = new LifecycleManager(() -> beans, 2);
+        Assertions.assertEquals(Arrays.asList(Collections.singletonList(Dao.class), Collections.singletonList(Service.class),
+                Collections.singletonList(Controller.class)), manager.levels());
+
+        manager.start();
+        Assertions.assertEquals(Arrays.asList("init dao", "init service"), EVENTS);
+        Assertions.assertFalse(manager.isReady());
+        service.release.countDown();
+        Assertions.assertTrue(manager.awaitReady(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        manager.shutdown();
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        Assertions.assertEquals(Arrays.asList("init dao", "init service", "destroy controller", "destroy service", "destroy dao"), EVENTS);
+        Assertions.assertFalse(manager.isReady());
+    }
+
+    static class A {
+        B b;
+
+        @PostConstruct
+        void init() {
+            EVENTS.add("a");
+        }
+    }
+
+    static class B {
+        A a;
+
+        @PostConstruct
+        void init() {
+            EVENTS.add("b");
+        }
+    }
+
+    @Test
+    public void cycleTest() {
+        EVENTS.clear();
+        A a = new A();
+        B b = new B();
+        a.b = b;
+        b.a = a;
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        beans.put(A.class, a);
+        beans.put(B.class, b);
+        LifecycleManager manager = new LifecycleManager(() -> beans, 2);
+        manager.start();
+        Assertions.assertEquals(2, EVENTS.size());
+        Assertions.assertTrue(manager.isReady());
+        manager.shutdown();
+    }
+
+    static class WarmUp {
+        static final CountDownLatch RELEASE = new CountDownLatch(1);
+        static final List<String> THREADS = Collections.synchronizedList(new ArrayList<>());
+
+        @PostConstruct(async = true)
+        void warmUp() throws InterruptedException {
+            THREADS.add(Thread.currentThread().getName());
+            RELEASE.await();
+        }
+    }
+
+    static class WarmUp1 extends WarmUp {
+    }
+
+    static class WarmUp2 extends WarmUp {
+    }
+
+    static class WarmUp3 extends WarmUp {
+    }
+
+    @Test
+    public void warmUpDoesNotBlockStartTest() throws InterruptedException {
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        beans.put(WarmUp1.class, new WarmUp1());
+        beans.put(WarmUp2.class, new WarmUp2());
+        beans.put(WarmUp3.class, new WarmUp3());
+        // 只有一个线程时预热占满线程也不影响同一层其他bean的初始化
+        LifecycleManager manager = new LifecycleManager(() -> beans, 1);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), manager::start);
+        Assertions.assertFalse(manager.isReady());
+        WarmUp.RELEASE.countDown();
+        Assertions.assertTrue(manager.awaitReady(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, WarmUp.THREADS.size());
+        for (String thread : WarmUp.THREADS) {
+            Assertions.assertTrue(thread.startsWith("lifecycle-warmup-"), thread);
+        }
+        // 启动完成后初始化线程池关闭
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hasThread("lifecycle-init-") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(hasThread("lifecycle-init-"));
+        manager.shutdown();
+    }
+
+    private static boolean hasThread(String prefix) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix) && thread.isAlive()) return true;
+        }
+        return false;
+    }
+
+    static class Reloadable {
+        static final AtomicInteger COUNT = new AtomicInteger();
+        final int id = COUNT.incrementAndGet();
+
+        @PostConstruct
+        void init() {
+            EVENTS.add("init " + id);
+        }
+
+        @PreDestroy
+        void close() {
+            EVENTS.add("destroy " + id);
+        }
+    }
+
+    @Test
+    public void beansReloadedTest() {
+        EVENTS.clear();
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        Reloadable first = new Reloadable();
+        beans.put(Reloadable.class, first);
+        LifecycleManager manager = new LifecycleManager(() -> new LinkedHashMap<>(beans), 2);
+        manager.start();
+
+        // 热加载替换了bean: 新实例初始化，旧实例销毁，关闭时销毁的是新实例
+        Reloadable second = new Reloadable();
+        beans.put(Reloadable.class, second);
+        manager.beansReloaded(Collections.singleton(Reloadable.class));
+        manager.shutdown();
+        Assertions.assertEquals(Arrays.asList("init " + first.id, "init " + second.id, "destroy " + first.id, "destroy " + second.id), EVENTS);
+    }
+
+    static class Warming {
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean fail;
+
+        Warming(boolean fail) {
+            this.fail = fail;
+        }
+
+        @PostConstruct(async = true)
+        void warmUp() throws InterruptedException {
+            release.await();
+            if (fail) throw new IllegalStateException("warm up failed");
+        }
+    }
+
+    /**
+     * 热加载的预热有自己的计数和失败记录: 新实例预热完成前不就绪，失败后不就绪，再次热加载成功后恢复就绪
+     */
+    @Test
+    public void reloadWarmUpReadinessTest() throws InterruptedException {
+        Map<Class<?>, Object> beans = new LinkedHashMap<>();
+        Warming first = new Warming(false);
+        first.release.countDown();
+        beans.put(Warming.class, first);
+        LifecycleManager manager = new LifecycleManager(() -> new LinkedHashMap<>(beans), 2);
+        manager.start();
+        Assertions.assertTrue(manager.awaitReady(5, TimeUnit.SECONDS));
+
+        Warming second = new Warming(false);
+        beans.put(Warming.class, second);
+        manager.beansReloaded(Collections.singleton(Warming.class));
+        Assertions.assertFalse(manager.isReady());
+        Assertions.assertFalse(manager.awaitReady(50, TimeUnit.MILLISECONDS));
+        second.release.countDown();
+        Assertions.assertTrue(manager.awaitReady(5, TimeUnit.SECONDS));
+
+        Warming failing = new Warming(true);
+        failing.release.countDown();
+        beans.put(Warming.class, failing);
+        manager.beansReloaded(Collections.singleton(Warming.class));
+        Assertions.assertFalse(manager.awaitReady(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(manager.isReady());
+
+        // 失败的预热被新实例替换后不再影响就绪
+        Warming fixed = new Warming(false);
+        fixed.release.countDown();
+        beans.put(Warming.class, fixed);
+        manager.beansReloaded(Collections.singleton(Warming.class));
+        Assertions.assertTrue(manager.awaitReady(5, TimeUnit.SECONDS));
+
+        // 去掉的bean的预热也不再影响就绪
+        Warming removed = new Warming(false);
+        beans.put(Warming.class, removed);
+        manager.beansReloaded(Collections.singleton(Warming.class));
+        Assertions.assertFalse(manager.isReady());
+        beans.remove(Warming.class);
+        manager.beansReloaded(Collections.emptySet());
+        Assertions.assertTrue(manager.isReady());
+        removed.release.countDown();
+        manager.shutdown();
+        Assertions.assertFalse(manager.isReady());
+    }
+}
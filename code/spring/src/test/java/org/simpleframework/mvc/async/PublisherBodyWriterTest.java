@@ -0,0 +1,104 @@
+package org.simpleframework.mvc.async;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PublisherBodyWriterTest {
+    @Test
+    public void writeBodyWhenReadyTest() throws IOException {
+        AtomicBoolean completed = new AtomicBoolean(false);
+        MockOutputStream outputStream = new MockOutputStream();
+        byte[] body = new byte[NonBlockingBodyWriter.CHUNK_SIZE * 2 + 10];
+        NonBlockingBodyWriter writer = new NonBlockingBodyWriter(new AsyncResponseContext(asyncContext(completed)), outputStream, body);
+
+        // 每次可写只允许写一块，模拟慢客户端
+        outputStream.readyWrites = 1;
+        writer.onWritePossible();
+        Assertions.assertEquals(NonBlockingBodyWriter.CHUNK_SIZE, outputStream.buffer.size());
+        Assertions.assertFalse(completed.get());
+
+        outputStream.readyWrites = Integer.MAX_VALUE;
+        writer.onWritePossible();
+        Assertions.assertEquals(body.length, outputStream.buffer.size());
+        Assertions.assertTrue(completed.get());
+    }
+
+    @Test
+    public void publisherBackPressureTest() throws IOException {
+        AtomicBoolean completed = new AtomicBoolean(false);
+        MockOutputStream outputStream = new MockOutputStream();
+        PublisherBodyWriter writer = new PublisherBodyWriter(new AsyncResponseContext(asyncContext(completed)), outputStream, new Gson());
+        long[] requested = new long[1];
+        writer.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                requested[0] += n;
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        // 输出不可写时不会向上游请求数据
+        Assertions.assertEquals(0, requested[0]);
+
+        outputStream.readyWrites = Integer.MAX_VALUE;
+        writer.writeListener().onWritePossible();
+        Assertions.assertEquals(1, requested[0]);
+        writer.onNext("a");
+        Assertions.assertEquals(2, requested[0]);
+        writer.onNext(1);
+        writer.onComplete();
+        Assertions.assertEquals("[\"a\",1]", new String(outputStream.buffer.toByteArray(), StandardCharsets.UTF_8));
+        Assertions.assertTrue(completed.get());
+    }
+
+    private static AsyncContext asyncContext(AtomicBoolean completed) {
+        return (AsyncContext) Proxy.newProxyInstance(PublisherBodyWriterTest.class.getClassLoader(),
+                new Class<?>[]{AsyncContext.class}, (proxy, method, args) -> {
+                    if ("complete".equals(method.getName())) {
+                        completed.set(true);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * readyWrites表示还允许写几次，用完后isReady()返回false
+     */
+    private static class MockOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private int readyWrites;
+
+        @Override
+        public boolean isReady() {
+            return readyWrites > 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            readyWrites--;
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            readyWrites--;
+            buffer.write(b, off, len);
+        }
+    }
+}
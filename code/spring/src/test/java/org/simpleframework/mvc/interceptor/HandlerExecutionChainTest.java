@@ -0,0 +1,151 @@
+package org.simpleframework.mvc.interceptor;
+
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.NoOp;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.annotation.InterceptorMapping;
+import org.simpleframework.mvc.metrics.RouteMetrics;
+import org.simpleframework.mvc.render.impl.TooManyRequestsResultRender;
+import org.simpleframework.mvc.route.Route;
+import org.simpleframework.mvc.route.RouteTrie;
+import org.simpleframework.mvc.type.ControllerMethod;
+import org.simpleframework.util.PathMatchUtil;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HandlerExecutionChainTest {
+    @DisplayName("路由树按路径段查找")
+    @Test
+    public void routeTrieTest() {
+        RouteTrie routeTrie = new RouteTrie();
+        Route hello = route();
+        Route post = route();
+        routeTrie.put("GET", "/my/hello", hello);
+        routeTrie.put("POST", "/my/hello", post);
+        Assertions.assertSame(hello, routeTrie.get("GET", "/my/hello"));
+        Assertions.assertSame(hello, routeTrie.get("GET", "/my/hello/"));
+        Assertions.assertSame(post, routeTrie.get("POST", "/my/hello"));
+        Assertions.assertNull(routeTrie.get("GET", "/my"));
+        Assertions.assertNull(routeTrie.get("GET", "/my/hello/world"));
+        Assertions.assertNull(routeTrie.get("PUT", "/my/hello"));
+    }
+
+    @DisplayName("拦截器路径匹配")
+    @Test
+    public void pathMatchTest() {
+        Assertions.assertTrue(PathMatchUtil.match("/**", "/my/hello"));
+        Assertions.assertTrue(PathMatchUtil.match("/my/**", "/my"));
+        Assertions.assertTrue(PathMatchUtil.match("/my/*", "/my/hello"));
+        Assertions.assertFalse(PathMatchUtil.match("/my/*", "/my/hello/world"));
+        Assertions.assertTrue(PathMatchUtil.match("/my/hel*", "/my/helloAsync"));
+        Assertions.assertTrue(PathMatchUtil.match("/**/hello", "/a/b/hello"));
+        Assertions.assertFalse(PathMatchUtil.match("/admin/**", "/my/hello"));
+    }
+
+    @DisplayName("cglib代理的拦截器仍按原始类上的@InterceptorMapping匹配")
+    @Test
+    public void proxiedMappingTest() {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(AdminInterceptor.class);
+        enhancer.setCallback(NoOp.INSTANCE);
+        HandlerInterceptor proxy = (HandlerInterceptor) enhancer.create();
+        Assertions.assertNotSame(AdminInterceptor.class, proxy.getClass());
+
+        MappedInterceptor mappedInterceptor = new MappedInterceptor(proxy);
+        Assertions.assertEquals(5, mappedInterceptor.getOrder());
+        Assertions.assertTrue(mappedInterceptor.matches("/admin/user"));
+        Assertions.assertFalse(mappedInterceptor.matches("/admin/login"));
+        Assertions.assertFalse(mappedInterceptor.matches("/my/hello"));
+    }
+
+    @DisplayName("preHandle正序执行，afterCompletion只倒序回调已通过的拦截器")
+    @Test
+    public void interceptorOrderTest() throws Exception {
+        List<String> calls = new ArrayList<>();
+        HandlerInterceptor[] interceptors = {new RecordingInterceptor("a", true, calls), new RecordingInterceptor("b", false, calls),
+                new RecordingInterceptor("c", true, calls)};
+        Route route = new Route(controllerMethod(), interceptors, null);
+        HandlerExecutionChain handlerExecutionChain = new HandlerExecutionChain(route, System.nanoTime());
+        RequestProcessorChain requestProcessorChain = requestProcessorChain();
+
+        Assertions.assertFalse(handlerExecutionChain.applyPreHandle(requestProcessorChain));
+        // 重复结束不会重复回调
+        handlerExecutionChain.triggerAfterCompletion(requestProcessorChain, null);
+        Assertions.assertEquals(Arrays.asList("pre-a", "pre-b", "after-a"), calls);
+        Assertions.assertEquals(1, route.getControllerMethod().getRouteMetrics().getCount());
+    }
+
+    @DisplayName("限流拦截器超出许可时拒绝请求，结束后归还许可")
+    @Test
+    public void throttleTest() throws Exception {
+        Route route = new Route(controllerMethod(), new HandlerInterceptor[]{new ThrottleInterceptor(1)}, null);
+        RequestProcessorChain first = requestProcessorChain();
+        HandlerExecutionChain running = new HandlerExecutionChain(route, System.nanoTime());
+        Assertions.assertTrue(running.applyPreHandle(first));
+
+        RequestProcessorChain second = requestProcessorChain();
+        Assertions.assertFalse(new HandlerExecutionChain(route, System.nanoTime()).applyPreHandle(second));
+        Assertions.assertTrue(second.getResultRender() instanceof TooManyRequestsResultRender);
+
+        running.triggerAfterCompletion(first, null);
+        Assertions.assertTrue(new HandlerExecutionChain(route, System.nanoTime()).applyPreHandle(requestProcessorChain()));
+    }
+
+    private static Route route() {
+        return new Route(controllerMethod(), new HandlerInterceptor[0], null);
+    }
+
+    private static ControllerMethod controllerMethod() {
+        return new ControllerMethod(Object.class, null, Collections.emptyMap(), new RouteMetrics("GET /my/hello"));
+    }
+
+    private static RequestProcessorChain requestProcessorChain() {
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return "GET";
+                        case "getServletPath":
+                            return "/my/hello";
+                        default:
+                            return null;
+                    }
+                });
+        return new RequestProcessorChain(Collections.emptyIterator(), request, null);
+    }
+
+    @InterceptorMapping(value = "/admin/**", exclude = "/admin/login", order = 5)
+    public static class AdminInterceptor implements HandlerInterceptor {
+    }
+
+    private static class RecordingInterceptor implements HandlerInterceptor {
+        private final String name;
+        private final boolean pass;
+        private final List<String> calls;
+
+        RecordingInterceptor(String name, boolean pass, List<String> calls) {
+            this.name = name;
+            this.pass = pass;
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean preHandle(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod) {
+            calls.add("pre-" + name);
+            return pass;
+        }
+
+        @Override
+        public void afterCompletion(RequestProcessorChain requestProcessorChain, ControllerMethod controllerMethod, Exception ex) {
+            calls.add("after-" + name);
+        }
+    }
+}
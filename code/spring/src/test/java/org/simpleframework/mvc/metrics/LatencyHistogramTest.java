@@ -0,0 +1,64 @@
+package org.simpleframework.mvc.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    @DisplayName("每个值都落在上界不小于自身、相对误差不超过1/32的桶里")
+    @Test
+    public void bucketBoundaryTest() {
+        for (long value = 0; value < 1_000_000; value++) {
+            long upper = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(value));
+            Assertions.assertTrue(upper >= value);
+            Assertions.assertTrue(upper - value <= value / 32, "value " + value + " upper " + upper);
+        }
+        Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf((1L << 38) - 1));
+    }
+
+    @DisplayName("分位数")
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        long[] counts = histogram.snapshot();
+        assertWithin(5_000_000, LatencyHistogram.valueAtPercentile(counts, 50));
+        assertWithin(9_900_000, LatencyHistogram.valueAtPercentile(counts, 99));
+        assertWithin(9_990_000, LatencyHistogram.valueAtPercentile(counts, 99.9));
+        Assertions.assertEquals(10_000_000, histogram.getMax());
+        Assertions.assertEquals(0, LatencyHistogram.valueAtPercentile(new long[LatencyHistogram.BUCKET_COUNT], 50));
+    }
+
+    @DisplayName("路由指标统计请求数和错误数")
+    @Test
+    public void routeMetricsTest() {
+        RouteMetrics routeMetrics = new RouteMetrics("GET /my/hello");
+        for (int i = 0; i < 10; i++) {
+            routeMetrics.record(System.nanoTime(), i % 5 == 0);
+        }
+        RouteMetricsSnapshot snapshot = routeMetrics.snapshot();
+        Assertions.assertEquals(10, snapshot.getCount());
+        Assertions.assertEquals(2, snapshot.getErrors());
+        Assertions.assertTrue(snapshot.getP50Micros() <= snapshot.getP99Micros());
+        Assertions.assertTrue(snapshot.getP99Micros() <= snapshot.getMaxMicros() * 33 / 32 + 0.001);
+    }
+
+    /**
+     * 目标是100ns以内，这里的上限放宽到1us，只用来发现数量级的退化，具体数字用RouteMetricsBenchmark测
+     */
+    @DisplayName("记录一次请求的开销")
+    @Test
+    public void recordCostTest() throws InterruptedException {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            best = Math.min(best, RouteMetricsBenchmark.measure(1, 1_000_000));
+        }
+        Assertions.assertTrue(best < 1000, "record took " + best + " ns");
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && actual - expected <= expected / 32, "expected ~" + expected + " but was " + actual);
+    }
+}
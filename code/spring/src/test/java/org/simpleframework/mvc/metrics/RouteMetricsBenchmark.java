@@ -0,0 +1,51 @@
+package org.simpleframework.mvc.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RouteMetrics.record的单次开销(包含其中的System.nanoTime调用)，目标是每个请求100ns以内
+ * <p>
+ * 每轮threads个线程同时在同一个路由上记录，输出每次record的平均耗时；前几轮是预热
+ * java -cp spring/target/classes:spring/target/test-classes:juc/target/classes org.simpleframework.mvc.metrics.RouteMetricsBenchmark
+ * 参数: [线程数] [每个线程的记录次数] [轮数]
+ */
+public class RouteMetricsBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.printf("threads=%d records=%d ncpu=%d%n", threads, records, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < rounds; round++) {
+            System.out.printf("round %d: %.1f ns/record%n", round, measure(threads, records));
+        }
+    }
+
+    /**
+     * @return 每次record的平均耗时(纳秒)，多线程时按总次数平均
+     */
+    static double measure(int threads, int records) throws InterruptedException {
+        RouteMetrics metrics = new RouteMetrics("GET /benchmark");
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Thread(() -> {
+                long start = System.nanoTime();
+                for (int i = 0; i < records; i++) {
+                    // 模拟耗时不同的请求，让值分散到不同的桶
+                    metrics.record(start - (i & 0xFFFF), false);
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.MINUTES.toMillis(5));
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (metrics.getCount() != (long) threads * records) throw new IllegalStateException("lost records: " + metrics.getCount());
+        return elapsed / (double) ((long) threads * records);
+    }
+}
@@ -0,0 +1,97 @@
+package org.simpleframework.mvc.processor.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.mvc.resource.StaticResource;
+import org.simpleframework.mvc.resource.StaticResourceCache;
+import org.simpleframework.mvc.type.ByteRange;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+public class StaticResourceRequestProcessorTest {
+    @Test
+    public void parseRangeTest() {
+        ByteRange range = ByteRange.parse("bytes=0-99", 1000);
+        Assertions.assertEquals(0, range.getStart());
+        Assertions.assertEquals(100, range.length());
+        Assertions.assertEquals(999, ByteRange.parse("bytes=500-", 1000).getEnd());
+        Assertions.assertEquals(900, ByteRange.parse("bytes=-100", 1000).getStart());
+        Assertions.assertEquals(999, ByteRange.parse("bytes=900-5000", 1000).getEnd());
+        Assertions.assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+        // 多区间和非法格式按完整内容返回
+        Assertions.assertNull(ByteRange.parse("bytes=0-1,5-6", 1000));
+        Assertions.assertNull(ByteRange.parse("bytes=9-3", 1000));
+        Assertions.assertNull(ByteRange.parse("items=0-1", 1000));
+    }
+
+    @Test
+    public void selectVariantTest() throws IOException {
+        File dir = Files.createTempDirectory("static").toFile();
+        File js = new File(dir, "app.js");
+        Files.write(js.toPath(), new byte[100]);
+        Files.write(new File(dir, "app.js.gz").toPath(), new byte[30]);
+
+        Assertions.assertTrue(StaticResourceRequestProcessor.accepts("gzip;q=0.8, br", "br"));
+        Assertions.assertFalse(StaticResourceRequestProcessor.accepts("gzip;q=0, deflate", "gzip"));
+
+        StaticResource gzip = StaticResourceRequestProcessor.selectVariant(js, "gzip, deflate, br");
+        Assertions.assertEquals("gzip", gzip.getContentEncoding());
+        Assertions.assertEquals(30, gzip.getLength());
+        Assertions.assertEquals("app.js", gzip.getContentTypeName());
+
+        StaticResource identity = StaticResourceRequestProcessor.selectVariant(js, null);
+        Assertions.assertNull(identity.getContentEncoding());
+        Assertions.assertEquals(100, identity.getLength());
+    }
+
+    @Test
+    public void resourceCacheTest() throws IOException {
+        File dir = Files.createTempDirectory("static").toFile();
+        StaticResourceCache cache = new StaticResourceCache(100, 250);
+        StaticResource[] resources = new StaticResource[3];
+        for (int i = 0; i < resources.length; i++) {
+            File file = new File(dir, i + ".css");
+            Files.write(file.toPath(), new byte[100]);
+            resources[i] = new StaticResource(file, file.getName(), null);
+        }
+        ByteBuffer buffer = cache.get(resources[0]);
+        Assertions.assertTrue(buffer.isDirect());
+        Assertions.assertEquals(100, buffer.remaining());
+        cache.get(resources[1]);
+        cache.get(resources[2]);
+        // 总量上限250字节，最久未访问的0.css被淘汰
+        Assertions.assertEquals(200, cache.getTotalSize());
+    }
+
+    @Test
+    public void resourceChangedAfterStatTest() throws IOException {
+        File dir = Files.createTempDirectory("static").toFile();
+        StaticResourceCache cache = new StaticResourceCache(100, 1000);
+        File file = new File(dir, "app.css");
+        Files.write(file.toPath(), new byte[10]);
+        Assertions.assertTrue(file.setLastModified(1_000_000L));
+        StaticResource stale = new StaticResource(file, file.getName(), null);
+
+        // 请求拿到文件属性之后文件被改写，长度不一致时失败，且不缓存
+        Files.write(file.toPath(), new byte[20]);
+        Assertions.assertThrows(IOException.class, () -> cache.get(stale));
+        Assertions.assertEquals(0, cache.getTotalSize());
+
+        // 长度相同但修改时间不同，返回读到的内容但不缓存
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        Assertions.assertTrue(file.setLastModified(2_000_000L));
+        Assertions.assertEquals(1, cache.get(stale).get(0));
+        Assertions.assertEquals(0, cache.getTotalSize());
+
+        // 重新取文件属性后正常缓存
+        StaticResource fresh = new StaticResource(file, file.getName(), null);
+        Assertions.assertEquals(10, cache.get(fresh).remaining());
+        Assertions.assertEquals(10, cache.getTotalSize());
+        // 旧的文件属性不会命中新缓存的内容，也不会把它替换掉
+        Assertions.assertEquals(10, cache.get(stale).remaining());
+        Assertions.assertEquals(10, cache.getTotalSize());
+    }
+}
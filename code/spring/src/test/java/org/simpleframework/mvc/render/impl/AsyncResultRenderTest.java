@@ -0,0 +1,226 @@
+package org.simpleframework.mvc.render.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.mvc.RequestProcessorChain;
+import org.simpleframework.mvc.async.Publisher;
+import org.simpleframework.mvc.async.Subscriber;
+import org.simpleframework.mvc.async.Subscription;
+import org.simpleframework.mvc.interceptor.HandlerExecutionChain;
+import org.simpleframework.mvc.interceptor.HandlerInterceptor;
+import org.simpleframework.mvc.metrics.RouteMetrics;
+import org.simpleframework.mvc.route.Route;
+import org.simpleframework.mvc.type.ControllerMethod;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AsyncResultRenderTest {
+    /**
+     * 同步发出给定元素的Publisher
+     */
+    private static Publisher<Object> publisher(List<Object> items, RuntimeException error) {
+        return subscriber -> subscriber.onSubscribe(new Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                if (done) return;
+                done = true;
+                items.forEach(subscriber::onNext);
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        });
+    }
+
+    @Test
+    public void blockingPublisherTest() throws Exception {
+        MockOutputStream outputStream = new MockOutputStream();
+        RequestProcessorChain chain = requestProcessorChain(false, null, outputStream);
+        new AsyncResultRender(publisher(Arrays.asList("a", 1), null), Runnable::run, 1000, null).render(chain);
+        // 不支持异步时收集成数组，和流式写出的结果一样
+        Assertions.assertEquals("[\"a\",1]", new String(outputStream.buffer.toByteArray(), StandardCharsets.UTF_8));
+
+        RuntimeException error = new IllegalStateException("publisher failed");
+        AsyncResultRender failing = new AsyncResultRender(publisher(Collections.singletonList("a"), error), Runnable::run, 1000, null);
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+                () -> failing.render(requestProcessorChain(false, null, new MockOutputStream())));
+        Assertions.assertSame(error, e.getCause());
+    }
+
+    /**
+     * 不支持异步时限时等待，超时取消上游并返回503
+     */
+    @Test
+    public void blockingTimeoutTest() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Publisher<Object> never = s -> s.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        MockOutputStream outputStream = new MockOutputStream();
+        RequestProcessorChain chain = requestProcessorChain(false, null, response(outputStream, errors));
+        long start = System.nanoTime();
+        new AsyncResultRender(never, Runnable::run, 50, null).render(chain);
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertTrue(cancelled.get());
+        Assertions.assertEquals(Collections.singletonList("503 async request timeout"), errors);
+        Assertions.assertEquals(0, outputStream.buffer.size());
+
+        errors.clear();
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        new AsyncResultRender(pending, Runnable::run, 50, null).render(requestProcessorChain(false, null, response(outputStream, errors)));
+        Assertions.assertTrue(pending.isCancelled());
+        Assertions.assertEquals(Collections.singletonList("503 async request timeout"), errors);
+    }
+
+    @Test
+    public void timeoutCancelsPublisherTest() throws Exception {
+        AtomicReference<AsyncListener> listener = new AtomicReference<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        MockOutputStream outputStream = new MockOutputStream();
+        HttpServletResponse response = response(outputStream);
+        AsyncContext asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AsyncContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addListener":
+                            listener.set((AsyncListener) args[0]);
+                            return null;
+                        case "getResponse":
+                            return response;
+                        case "complete":
+                            completed.set(true);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        AtomicReference<Subscriber<? super Object>> subscriber = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Publisher<Object> publisher = s -> {
+            subscriber.set(s);
+            s.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                }
+            });
+        };
+        RequestProcessorChain chain = requestProcessorChain(true, asyncContext, outputStream);
+        new AsyncResultRender(publisher, Runnable::run, 1000, handlerExecutionChain()).render(chain);
+        Assertions.assertNotNull(subscriber.get());
+        Assertions.assertFalse(cancelled.get());
+
+        listener.get().onTimeout(null);
+        Assertions.assertTrue(cancelled.get());
+        Assertions.assertTrue(completed.get());
+        // 超时之后到达的元素不再写出
+        outputStream.ready = true;
+        subscriber.get().onNext("late");
+        subscriber.get().onComplete();
+        Assertions.assertEquals(0, outputStream.buffer.size());
+    }
+
+    private static HandlerExecutionChain handlerExecutionChain() {
+        ControllerMethod controllerMethod = new ControllerMethod(Object.class, null, Collections.emptyMap(), new RouteMetrics("GET /my/stream"));
+        return new HandlerExecutionChain(new Route(controllerMethod, new HandlerInterceptor[0], null), System.nanoTime());
+    }
+
+    private static RequestProcessorChain requestProcessorChain(boolean asyncSupported, AsyncContext asyncContext, MockOutputStream outputStream) {
+        return requestProcessorChain(asyncSupported, asyncContext, response(outputStream));
+    }
+
+    private static RequestProcessorChain requestProcessorChain(boolean asyncSupported, AsyncContext asyncContext, HttpServletResponse response) {
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return "GET";
+                        case "getServletPath":
+                            return "/my/stream";
+                        case "isAsyncSupported":
+                            return asyncSupported;
+                        case "startAsync":
+                            return asyncContext;
+                        default:
+                            return null;
+                    }
+                });
+        return new RequestProcessorChain(Collections.emptyIterator(), request, response);
+    }
+
+    private static HttpServletResponse response(MockOutputStream outputStream) {
+        return response(outputStream, new ArrayList<>());
+    }
+
+    /**
+     * sendError按"状态码 消息"记录到errors
+     */
+    private static HttpServletResponse response(MockOutputStream outputStream, List<String> errors) {
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    if ("getOutputStream".equals(method.getName())) {
+                        return outputStream;
+                    }
+                    if ("sendError".equals(method.getName())) {
+                        errors.add(args[0] + (args.length > 1 ? " " + args[1] : ""));
+                    }
+                    return null;
+                });
+    }
+
+    private static class MockOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean ready;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.simpleframework.reload;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.DependencyInjector;
+import org.simpleframework.inject.annotation.Autowired;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 测试用的bean放在临时目录里，用独立的类加载器加载，修改源码重新编译后调用checkForChanges触发热加载
+ */
+public class HotReloaderTest {
+    private static final String PACKAGE = "reloadfixture";
+    private static final String GREETER = "package reloadfixture; public interface Greeter { String greet(); }";
+    private static final String CLIENT = "package reloadfixture; @org.simpleframework.core.annotation.Controller public class Client {"
+            + " @org.simpleframework.inject.annotation.Autowired public Greeter greeter; }";
+    // 字段类型是具体类，GreeterImpl重新加载时Audit也要跟着重新加载
+    private static final String AUDIT = "package reloadfixture; @org.simpleframework.core.annotation.Service public class Audit {"
+            + " @org.simpleframework.inject.annotation.Autowired public GreeterImpl impl; }";
+    private static final String REGISTRY = "package reloadfixture; @org.simpleframework.core.annotation.Component public class Registry {"
+            + " @org.simpleframework.inject.annotation.Autowired public java.util.List<Greeter> greeters;"
+            + " @org.simpleframework.inject.annotation.Autowired public java.util.Map<String, Greeter> byName; }";
+
+    private File sourceDir;
+    private File classDir;
+    private ClassLoader originalLoader;
+    private URLClassLoader loader;
+    private BeanContainer beanContainer;
+    private HotReloader hotReloader;
+
+    private static String greeterImpl(String body) {
+        return "package reloadfixture; @org.simpleframework.core.annotation.Service public class GreeterImpl implements Greeter { "
+                + body + " }";
+    }
+
+    private static String greeterImplReturning(String value) {
+        return greeterImpl("public String greet() { return \"" + value + "\"; }");
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        File root = Files.createTempDirectory("reload").toFile();
+        sourceDir = new File(root, "src");
+        classDir = new File(root, "classes");
+        Assertions.assertTrue(sourceDir.mkdirs() && classDir.mkdirs());
+        compile("Greeter", GREETER);
+        compile("GreeterImpl", greeterImplReturning("v1"));
+        compile("Client", CLIENT);
+        compile("Audit", AUDIT);
+        compile("Registry", REGISTRY);
+
+        originalLoader = Thread.currentThread().getContextClassLoader();
+        loader = new URLClassLoader(new URL[]{classDir.toURI().toURL()}, getClass().getClassLoader());
+        Thread.currentThread().setContextClassLoader(loader);
+        Constructor<BeanContainer> constructor = BeanContainer.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        beanContainer = constructor.newInstance();
+        for (String name : Arrays.asList("GreeterImpl", "Client", "Audit", "Registry")) {
+            Class<?> clazz = loader.loadClass(PACKAGE + "." + name);
+            beanContainer.addBean(clazz, clazz.newInstance());
+        }
+        new DependencyInjector(beanContainer).doIoc();
+        hotReloader = new HotReloader(beanContainer, PACKAGE);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Thread.currentThread().setContextClassLoader(originalLoader);
+        loader.close();
+    }
+
+    private void compile(String simpleName, String source) throws IOException {
+        File file = new File(sourceDir, simpleName + ".java");
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        String classpath = classDir.getPath() + File.pathSeparator
+                + new File(Autowired.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int status = compiler.run(null, null, null, "-proc:none", "-classpath", classpath, "-d", classDir.getPath(), file.getPath());
+        Assertions.assertEquals(0, status, "compile " + simpleName);
+    }
+
+    private Object bean(String simpleName) {
+        for (Class<?> clazz : beanContainer.getClasses()) {
+            if (clazz.getName().equals(PACKAGE + "." + simpleName)) return beanContainer.getBean(clazz);
+        }
+        return null;
+    }
+
+    private static Object field(Object target, String name) throws Exception {
+        return target.getClass().getField(name).get(target);
+    }
+
+    private static Object greet(Object greeter) throws Exception {
+        return greeter.getClass().getMethod("greet").invoke(greeter);
+    }
+
+    private static List<String> names(Set<Class<?>> classes) {
+        List<String> names = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getSimpleName());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Test
+    public void reloadChangedClassTest() throws Exception {
+        Object client = bean("Client");
+        Object oldImpl = bean("GreeterImpl");
+        Assertions.assertEquals("v1", greet(field(client, "greeter")));
+
+        compile("GreeterImpl", greeterImplReturning("v2"));
+        Set<Class<?>> reloaded = hotReloader.checkForChanges();
+        // Audit的字段类型就是GreeterImpl，跟着重新加载；Client通过接口依赖，只重新注入
+        Assertions.assertEquals(Arrays.asList("Audit", "GreeterImpl"), names(reloaded));
+        Object newImpl = bean("GreeterImpl");
+        Assertions.assertNotSame(oldImpl, newImpl);
+        Assertions.assertNotSame(oldImpl.getClass(), newImpl.getClass());
+        Assertions.assertTrue(reloaded.contains(newImpl.getClass()));
+        Assertions.assertNull(beanContainer.getBean(oldImpl.getClass()));
+
+        // 没有重新加载的依赖方被注入了新实例
+        Assertions.assertSame(client, bean("Client"));
+        Assertions.assertSame(newImpl, field(client, "greeter"));
+        Assertions.assertEquals("v2", greet(field(client, "greeter")));
+        // 重新加载的依赖方引用的也是新实例
+        Assertions.assertSame(newImpl, field(bean("Audit"), "impl"));
+
+        Assertions.assertTrue(hotReloader.checkForChanges().isEmpty());
+
+        // 反向依赖索引已经更新，可以再次热加载
+        compile("GreeterImpl", greeterImplReturning("v3"));
+        Assertions.assertEquals(Arrays.asList("Audit", "GreeterImpl"), names(hotReloader.checkForChanges()));
+        Assertions.assertEquals("v3", greet(field(client, "greeter")));
+    }
+
+    @Test
+    public void reinjectCollectionTest() throws Exception {
+        Object registry = bean("Registry");
+        Object oldImpl = bean("GreeterImpl");
+        Assertions.assertEquals(Collections.singletonList(oldImpl), field(registry, "greeters"));
+
+        compile("GreeterImpl", greeterImplReturning("v2"));
+        Assertions.assertFalse(hotReloader.checkForChanges().isEmpty());
+        // 集合字段按容器中当前的bean重新组装，不再持有旧实例
+        Object newImpl = bean("GreeterImpl");
+        Assertions.assertSame(registry, bean("Registry"));
+        Assertions.assertEquals(Collections.singletonList(newImpl), field(registry, "greeters"));
+        Assertions.assertEquals(Collections.singletonMap("GreeterImpl", newImpl), field(registry, "byName"));
+
+        compile("GreeterImpl", greeterImplReturning("v3"));
+        Assertions.assertFalse(hotReloader.checkForChanges().isEmpty());
+        Assertions.assertEquals("v3", greet(((List<?>) field(registry, "greeters")).get(0)));
+    }
+
+    @Test
+    public void brokenClassTest() throws Exception {
+        Object client = bean("Client");
+        Object oldImpl = bean("GreeterImpl");
+        Object oldAudit = bean("Audit");
+        Files.write(new File(classDir, PACKAGE + "/GreeterImpl.class").toPath(), "broken".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertTrue(hotReloader.checkForChanges().isEmpty());
+        Assertions.assertSame(oldImpl, bean("GreeterImpl"));
+        Assertions.assertSame(oldAudit, bean("Audit"));
+        Assertions.assertSame(oldImpl, field(client, "greeter"));
+        Assertions.assertEquals("v1", greet(field(client, "greeter")));
+        // 文件没有再变化时不会对着同一个坏的class文件反复重试
+        Assertions.assertTrue(hotReloader.checkForChanges().isEmpty());
+        Assertions.assertSame(oldImpl, bean("GreeterImpl"));
+
+        // 修好之后正常热加载
+        compile("GreeterImpl", greeterImplReturning("v2"));
+        Assertions.assertEquals(Arrays.asList("Audit", "GreeterImpl"), names(hotReloader.checkForChanges()));
+        Assertions.assertEquals("v2", greet(field(client, "greeter")));
+    }
+
+    @Test
+    public void keepOldBeansOnFailureTest() throws Exception {
+        Object client = bean("Client");
+        Object oldImpl = bean("GreeterImpl");
+        Object oldAudit = bean("Audit");
+        List<Class<?>> before = new ArrayList<>(beanContainer.getClasses());
+
+        // 类可以加载，但是创建实例失败
+        compile("GreeterImpl", greeterImpl("public GreeterImpl() { throw new IllegalStateException(\"broken\"); }"
+                + " public String greet() { return \"v2\"; }"));
+        Assertions.assertTrue(hotReloader.checkForChanges().isEmpty());
+
+        Assertions.assertEquals(before.size(), beanContainer.getClasses().size());
+        Assertions.assertTrue(beanContainer.getClasses().containsAll(before));
+        Assertions.assertSame(oldImpl, bean("GreeterImpl"));
+        Assertions.assertSame(oldAudit, bean("Audit"));
+        Assertions.assertSame(oldImpl, field(oldAudit, "impl"));
+        Assertions.assertSame(oldImpl, field(client, "greeter"));
+        Assertions.assertEquals("v1", greet(field(client, "greeter")));
+    }
+}
@@ -0,0 +1,114 @@
+package org.simpleframework.snapshot;
+
+import com.tongji.controller.MyController;
+import com.tongji.service.MyService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.simpleframework.core.BeanContainer;
+import org.simpleframework.inject.DependencyInjector;
+import org.simpleframework.inject.annotation.Autowired;
+import org.simpleframework.inject.annotation.Qualifier;
+import org.simpleframework.util.ClassUtil;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class ContainerSnapshotTest {
+    public interface Plugin {
+    }
+
+    @Qualifier("alpha")
+    public static class AlphaPlugin implements Plugin {
+    }
+
+    public static class BetaPlugin implements Plugin {
+    }
+
+    public static class Host {
+        @Autowired
+        List<Plugin> plugins;
+        @Autowired
+        Set<Plugin> pluginSet;
+        @Autowired
+        Map<String, Plugin> pluginMap;
+        @Autowired
+        BetaPlugin beta;
+    }
+
+    private static BeanContainer newContainer() throws Exception {
+        Constructor<BeanContainer> constructor = BeanContainer.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    @Test
+    public void writeReadValidateTest() throws Exception {
+        Map<String, Long> checksums = ClassUtil.extractPackageClassChecksums("com.tongji");
+        Assertions.assertNotNull(checksums);
+        Assertions.assertTrue(checksums.containsKey(MyController.class.getName()));
+        ContainerSnapshot snapshot = new ContainerSnapshot("com.tongji", checksums,
+                Arrays.asList(MyService.class.getName(), MyController.class.getName()),
+                Collections.singletonList(new ContainerSnapshot.FieldWiring(MyController.class.getName(), "myService", MyService.class.getName())),
+                Collections.emptyList());
+        File file = File.createTempFile("container", ".snapshot");
+        File classList = new File(file.getPath() + ContainerSnapshot.CLASS_LIST_SUFFIX);
+        file.deleteOnExit();
+        classList.deleteOnExit();
+        snapshot.write(file);
+
+        ContainerSnapshot read = ContainerSnapshot.loadIfValid(file, "com.tongji");
+        Assertions.assertNotNull(read);
+        Assertions.assertEquals(snapshot.getBeanClassNames(), read.getBeanClassNames());
+        Assertions.assertEquals(1, read.getWirings().size());
+        Assertions.assertEquals("myService", read.getWirings().get(0).getFieldName());
+        Assertions.assertTrue(classList.isFile());
+        Assertions.assertNull(ContainerSnapshot.loadIfValid(file, "com.other"));
+
+        // 任何一个class文件变化都会让快照失效
+        Map<String, Long> tampered = new TreeMap<>(checksums);
+        tampered.put(MyService.class.getName(), tampered.get(MyService.class.getName()) + 1);
+        ContainerSnapshot stale = new ContainerSnapshot("com.tongji", tampered, snapshot.getBeanClassNames(), snapshot.getWirings(),
+                snapshot.getCollectionWirings());
+        Assertions.assertFalse(stale.isValid("com.tongji"));
+    }
+
+    @Test
+    public void collectionWiringTest() throws Exception {
+        BeanContainer recorded = newContainer();
+        for (Class<?> clazz : Arrays.asList(AlphaPlugin.class, BetaPlugin.class, Host.class)) {
+            recorded.addBean(clazz, ClassUtil.newInstance(clazz, true));
+        }
+        new DependencyInjector(recorded).doIoc();
+        ContainerSnapshot snapshot = ContainerSnapshot.record(recorded, "com.tongji");
+        Assertions.assertEquals(1, snapshot.getWirings().size());
+        Assertions.assertEquals(3, snapshot.getCollectionWirings().size());
+        // 被集合注入的bean排在Host之前
+        Assertions.assertEquals(Host.class.getName(), snapshot.getBeanClassNames().get(2));
+
+        File file = File.createTempFile("container", ".snapshot");
+        file.deleteOnExit();
+        new File(file.getPath() + ContainerSnapshot.CLASS_LIST_SUFFIX).deleteOnExit();
+        snapshot.write(file);
+        ContainerSnapshot read = ContainerSnapshot.loadIfValid(file, "com.tongji");
+        Assertions.assertNotNull(read);
+
+        BeanContainer replayed = newContainer();
+        replayed.loadBeans(read);
+        read.inject(replayed);
+        Host host = (Host) replayed.getBean(Host.class);
+        Object alpha = replayed.getBean(AlphaPlugin.class);
+        Object beta = replayed.getBean(BetaPlugin.class);
+        Assertions.assertEquals(Arrays.asList(alpha, beta), host.plugins);
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList(alpha, beta)), host.pluginSet);
+        Assertions.assertSame(alpha, host.pluginMap.get("alpha"));
+        Assertions.assertSame(beta, host.pluginMap.get("BetaPlugin"));
+        Assertions.assertSame(beta, host.beta);
+    }
+}
@@ -1,10 +1,22 @@
 package org.simpleframework.util;
 
+import com.tongji.controller.MyController;
+import com.tongji.service.MyService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 public class ClassUtilTest {
     @DisplayName("提取目标类方法：extractPackageClassTest")
@@ -13,4 +25,53 @@ public class ClassUtilTest {
         Set<Class<?>> classSet = ClassUtil.extractPackageClass("org.simpleframework.core");
         Assertions.assertEquals(5, classSet.size());
     }
+
+    @DisplayName("包在jar里时遍历jar的条目")
+    @Test
+    public void extractJarClassTest() throws Exception {
+        File jar = File.createTempFile("classes", ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            // 和打包工具一样写入目录条目，getResource才能找到包
+            for (String directory : Arrays.asList("com/", "com/tongji/", "com/tongji/controller/", "com/tongji/service/")) {
+                out.putNextEntry(new JarEntry(directory));
+            }
+            for (Class<?> clazz : Arrays.asList(MyController.class, MyService.class)) {
+                String name = clazz.getName().replace(".", "/") + ".class";
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in = clazz.getClassLoader().getResourceAsStream(name)) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+        Set<Class<?>> classSet = extractWith(jar, "com.tongji");
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(MyController.class, MyService.class)), classSet);
+    }
+
+    @DisplayName("找不到包目录时(native image)读取类索引")
+    @Test
+    public void extractIndexedClassTest() throws Exception {
+        File dir = Files.createTempDirectory("classes").toFile();
+        File index = new File(dir, ClassUtil.CLASS_INDEX);
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), (MyController.class.getName() + "\n" + MyService.class.getName() + "\n" + ClassUtil.class.getName() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(MyController.class, MyService.class)), extractWith(dir, "com.tongji"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(MyService.class)), extractWith(dir, "com.tongji.service"));
+    }
+
+    private static Set<Class<?>> extractWith(File classPath, String packageName) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        // 父加载器为null，只能看到classPath中的资源
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classPath.toURI().toURL()}, null)) {
+            thread.setContextClassLoader(classLoader);
+            return ClassUtil.extractPackageClass(packageName);
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
 }